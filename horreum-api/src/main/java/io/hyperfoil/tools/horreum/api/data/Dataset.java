@@ -1,5 +1,6 @@
 package io.hyperfoil.tools.horreum.api.data;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
@@ -168,4 +169,36 @@ public class Dataset extends ProtectedTimeType {
                     '}';
         }
     }
+
+    public static class EventNewBatch {
+
+        public int testId;
+        public int[] datasetIds;
+        public int labelId = -1;
+        public boolean isRecalculation;
+
+        public EventNewBatch() {
+        }
+
+        public EventNewBatch(int testId, int[] datasetIds, boolean isRecalculation) {
+            this.testId = testId;
+            this.datasetIds = datasetIds;
+            this.isRecalculation = isRecalculation;
+        }
+
+        public EventNewBatch(int testId, int[] datasetIds, int labelId, boolean isRecalculation) {
+            this(testId, datasetIds, isRecalculation);
+            this.labelId = labelId;
+        }
+
+        @Override
+        public String toString() {
+            return "EventNewBatch{" +
+                    "testId=" + testId +
+                    ", datasetIds=" + Arrays.toString(datasetIds) +
+                    ", labelId=" + labelId +
+                    ", isRecalculation=" + isRecalculation +
+                    '}';
+        }
+    }
 }
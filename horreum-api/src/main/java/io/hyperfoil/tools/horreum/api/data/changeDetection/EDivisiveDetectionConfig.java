@@ -5,8 +5,17 @@ import org.eclipse.microprofile.openapi.annotations.media.Schema;
 
 import io.hyperfoil.tools.horreum.api.data.datastore.BaseChangeDetectionConfig;
 
+/*
+ * Concrete configuration type for io.hyperfoil.tools.horreum.changedetection.EDivisiveModel
+ */
 public class EDivisiveDetectionConfig extends BaseChangeDetectionConfig {
     @Schema(type = SchemaType.STRING, required = true, enumeration = { ChangeDetectionModelType.names.EDIVISIVE })
     public String model;
+    @Schema(type = SchemaType.INTEGER, example = "50", description = "Number of most recent datapoints analyzed in a single window; windows overlap by half of their length.")
+    public Integer windowLen;
+    @Schema(type = SchemaType.NUMBER, example = "0.001", description = "Maximum p-value of the t-test for a change point to be considered significant.")
+    public Double maxPValue;
+    @Schema(type = SchemaType.NUMBER, example = "0.0", description = "Minimum relative difference of means around the change point.")
+    public Double minMagnitude;
 
 }
@@ -169,6 +169,8 @@ public interface AlertingService {
         public boolean done;
         public Integer totalDatasets;
         public Integer errors;
+        public Double throughput;
+        public Long eta;
         @NotNull
         public Collection<Dataset.Info> datasetsWithoutValue;
     }
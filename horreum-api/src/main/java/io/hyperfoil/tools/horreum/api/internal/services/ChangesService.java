@@ -37,6 +37,10 @@ public interface ChangesService {
     @Path("/query")
     List<TimeseriesTarget> query(@RequestBody(required = true) Query query);
 
+    @POST
+    @Path("/query/columns")
+    List<TimeseriesColumns> queryColumns(@RequestBody(required = true) Query query);
+
     @Operation(hidden = true)
     @OPTIONS
     @Path("/annotations")
@@ -51,6 +55,10 @@ public interface ChangesService {
         public Range range;
         @NotNull
         public List<Target> targets;
+        // when set the datapoints of each target are downsampled to (approximately) this number of points
+        public Integer maxDataPoints;
+        // width of a single point in the panel; limits the number of points further
+        public Long intervalMs;
     }
 
     class Range {
@@ -71,6 +79,20 @@ public interface ChangesService {
         public int variableId;
     }
 
+    // the same data as TimeseriesTarget with one array per column instead of an array per datapoint
+    class TimeseriesColumns {
+        @NotNull
+        public String target;
+        @JsonProperty(required = true)
+        public int variableId;
+        @NotNull
+        public double[] values;
+        @NotNull
+        public long[] timestamps;
+        @NotNull
+        public int[] datasetIds;
+    }
+
     class AnnotationsQuery {
         public Range range;
         public AnnotationQuery annotation;
@@ -32,6 +32,12 @@ public interface SqlService {
     @Produces("text/plain")
     String roles(@QueryParam("system") @DefaultValue("false") boolean system);
 
+    @Path("roles/stats")
+    @GET
+    @Produces("text/plain")
+    @Operation(description = "Number of role switches issued to the database and skipped because the roles did not change")
+    String roleStats();
+
     @GET
     @Path("{id}/queryrun")
     QueryResult queryRunData(@PathParam("id") int id,
@@ -0,0 +1,32 @@
+package io.hyperfoil.tools.horreum.api.internal.services;
+
+import java.util.List;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+
+import org.eclipse.microprofile.openapi.annotations.tags.Tag;
+
+@Path("/api/tasks")
+@Produces(MediaType.APPLICATION_JSON)
+@Tag(name = "tasks", description = "Inspect background task queues")
+public interface TaskService {
+
+    @GET
+    @Path("queues")
+    List<QueueStats> queues();
+
+    class QueueStats {
+        public int testId;
+        public int queued;
+        public boolean active;
+        public long executed;
+        public long rejected;
+        public long avgWaitMillis;
+        public long maxWaitMillis;
+        public long avgExecutionMillis;
+        public long maxExecutionMillis;
+    }
+}
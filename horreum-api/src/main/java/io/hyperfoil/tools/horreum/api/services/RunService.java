@@ -1,5 +1,6 @@
 package io.hyperfoil.tools.horreum.api.services;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
@@ -128,6 +129,44 @@ public interface RunService {
             @QueryParam("exclude") @Separator(",") List<String> exclude,
             @QueryParam("multiFilter") @DefaultValue("false") boolean multiFilter);
 
+    @GET
+    @Path("{id}/labelValues/export")
+    @Produces({ "application/x-ndjson", "text/csv" })
+    @Operation(description = "Stream all the label values for the run as newline delimited JSON or CSV")
+    @Parameters(value = {
+            @Parameter(name = "id", in = ParameterIn.PATH, description = "Run Id", example = "101"),
+            @Parameter(name = "filter", description = "either a required json sub-document or path expression", examples = {
+                    @ExampleObject(name = "object", value = "{labelName:necessaryValue,...}", description = "json object that must exist in the values object"),
+                    @ExampleObject(name = "string", value = "$.count ? (@ < 20 && @ > 10)", description = "valid filtering jsonpath that returns null if not found (not predicates)")
+            }),
+            @Parameter(name = "direction", description = "either Ascending or Descending", example = "count"),
+            @Parameter(name = "include", description = "label name(s) to include in the result as scalar or comma separated", examples = {
+                    @ExampleObject(name = "single", value = "id", description = "including a single label"),
+                    @ExampleObject(name = "multiple", value = "id,count", description = "including multiple labels")
+            }),
+            @Parameter(name = "exclude", description = "label name(s) to exclude from the result as scalar or comma separated", examples = {
+                    @ExampleObject(name = "single", value = "id", description = "excluding a single label"),
+                    @ExampleObject(name = "multiple", value = "id,count", description = "excluding multiple labels")
+            }),
+            @Parameter(name = "multiFilter", description = "enable filtering for multiple values with an array of values", example = "true"),
+            @Parameter(name = "format", description = "ndjson for one label values object per line, csv for one line per label value", example = "ndjson")
+    })
+    @APIResponses(value = {
+            @APIResponse(responseCode = "200", description = "label Values", content = {
+                    @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = ExportedLabelValues.class)),
+                    @Content(mediaType = "text/csv", schema = @Schema(type = SchemaType.STRING), example = "runId,datasetId,start,stop,label,value")
+            }),
+            @APIResponse(responseCode = "400", description = "Invalid filter or format")
+    })
+    Response exportRunLabelValues(
+            @PathParam("id") int runId,
+            @QueryParam("filter") @DefaultValue("{}") String filter,
+            @QueryParam("direction") @DefaultValue("Ascending") String direction,
+            @QueryParam("include") @Separator(",") List<String> include,
+            @QueryParam("exclude") @Separator(",") List<String> exclude,
+            @QueryParam("multiFilter") @DefaultValue("false") boolean multiFilter,
+            @QueryParam("format") @DefaultValue("ndjson") String format);
+
     @GET
     @Path("{id}/metadata")
     @Operation(description = "Get Run  meta data by Run ID")
@@ -239,7 +278,7 @@ public interface RunService {
             @QueryParam("access") Access access,
             @QueryParam("schema") String schemaUri,
             @QueryParam("description") String description,
-            @RequestBody(required = true) String data);
+            @RequestBody(required = true, content = @Content(schema = @Schema(type = SchemaType.STRING))) InputStream data);
 
     @POST
     @Path("data")
@@ -15,6 +15,7 @@ import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
 
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.enums.ParameterIn;
@@ -221,6 +222,54 @@ public interface TestService {
             @QueryParam("exclude") @Separator(",") List<String> exclude,
             @QueryParam("multiFilter") @DefaultValue("false") boolean multiFilter);
 
+    @GET
+    @Path("{id}/labelValues/export")
+    @Produces({ "application/x-ndjson", "text/csv" })
+    @Operation(description = "Stream all Label Values for a Test as newline delimited JSON or CSV")
+    @Parameters(value = {
+            @Parameter(name = "id", description = "Test ID to retrieve Label Values for", example = "101"),
+            @Parameter(name = "filtering", description = "Retrieve values for Filtering Labels", example = "true"),
+            @Parameter(name = "metrics", description = "Retrieve values for Metric Labels", example = "false"),
+            @Parameter(name = "filter", description = "either a required json sub-document or path expression", examples = {
+                    @ExampleObject(name = "object", value = "{labelName:necessaryValue,...}", description = "json object that must exist in the values object"),
+                    @ExampleObject(name = "string", value = "$.count ? (@ < 20 && @ > 10)", description = "valid filtering jsonpath that returns null if not found (not predicates)")
+            }),
+            @Parameter(name = "before", description = "ISO-like date time string or epoch millis", example = "1970-01-01T00:00:00+00:00 or an integer"),
+            @Parameter(name = "after", description = "ISO-like date time string or epoch millis", example = "1970-01-01T00:00:00+00:00 or an integer"),
+            @Parameter(name = "sort", description = "start or stop for sorting by time", example = "start"),
+            @Parameter(name = "direction", description = "either Ascending or Descending", example = "count"),
+            @Parameter(name = "include", description = "label name(s) to include in the result as scalar or comma separated", examples = {
+                    @ExampleObject(name = "single", value = "id", description = "including a single label"),
+                    @ExampleObject(name = "multiple", value = "id,count", description = "including multiple labels")
+            }),
+            @Parameter(name = "exclude", description = "label name(s) to exclude from the result as scalar or comma separated", examples = {
+                    @ExampleObject(name = "single", value = "id", description = "excluding a single label"),
+                    @ExampleObject(name = "multiple", value = "id,count", description = "excluding multiple labels")
+            }),
+            @Parameter(name = "multiFilter", description = "enable filtering for multiple values with an array of values", example = "true"),
+            @Parameter(name = "format", description = "ndjson for one Label Values object per line, csv for one line per label value", example = "ndjson")
+    })
+    @APIResponses(value = {
+            @APIResponse(responseCode = "200", content = {
+                    @Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = ExportedLabelValues.class)),
+                    @Content(mediaType = "text/csv", schema = @Schema(type = SchemaType.STRING), example = "runId,datasetId,start,stop,label,value")
+            }),
+            @APIResponse(responseCode = "400", description = "Invalid filter or format")
+    })
+    Response exportTestLabelValues(
+            @PathParam("id") int testId,
+            @QueryParam("filter") @DefaultValue("{}") String filter,
+            @QueryParam("before") @DefaultValue("") String before,
+            @QueryParam("after") @DefaultValue("") String after,
+            @QueryParam("filtering") @DefaultValue("true") boolean filtering,
+            @QueryParam("metrics") @DefaultValue("true") boolean metrics,
+            @QueryParam("sort") @DefaultValue("") String sort,
+            @QueryParam("direction") @DefaultValue("Ascending") String direction,
+            @QueryParam("include") @Separator(",") List<String> include,
+            @QueryParam("exclude") @Separator(",") List<String> exclude,
+            @QueryParam("multiFilter") @DefaultValue("false") boolean multiFilter,
+            @QueryParam("format") @DefaultValue("ndjson") String format);
+
     @GET
     @Path("{id}/filteringLabelValues")
     @Operation(description = "List all unique Label Values for a Test")
@@ -346,6 +395,10 @@ public interface TestService {
         @JsonProperty(required = true)
         @Schema(description = "Total number of generated datasets", example = "186")
         public long datasets;
+        @Schema(description = "Number of Runs recalculated per second", example = "2.5")
+        public Double throughput;
+        @Schema(description = "Estimated timestamp of completion, not set when the recalculation is done or has not processed any Run yet", example = "1698013266000")
+        public Long eta;
 
         // required for serialization
         public RecalculationStatus() {
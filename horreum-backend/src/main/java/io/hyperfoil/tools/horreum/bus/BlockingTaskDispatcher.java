@@ -1,74 +1,284 @@
 package io.hyperfoil.tools.horreum.bus;
 
-import java.util.Queue;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import jakarta.transaction.Status;
+import jakarta.transaction.SystemException;
+import jakarta.transaction.TransactionManager;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import io.hyperfoil.tools.horreum.svc.Util;
 import io.quarkus.logging.Log;
 import io.quarkus.runtime.Startup;
-import io.vertx.core.Vertx;
+import io.quarkus.scheduler.Scheduled;
+import io.vertx.core.Context;
 
+/**
+ * Executes blocking tasks on a dedicated thread pool. Tasks of a single test are executed one after another
+ * in the order of submission, tasks of different tests run in parallel. Each worker executes a single task
+ * of a test and then puts the test at the back of the line, so a test with many queued tasks cannot starve
+ * the others.
+ * <p>
+ * Queue of each test is bounded: when it is full the submitting thread waits (up to {@code horreum.tasks.queue.offer-timeout})
+ * until there is space, and the task is rejected with {@link RejectedExecutionException} if there is still none.
+ * Tasks submitted from the event loop, from the tasks themselves or within a transaction are rejected right away,
+ * as waiting there would block the event loop, the pool or hold database locks.
+ * A task may still enqueue a continuation for its own test when the queue is full; as the task has left the queue
+ * already, the queue cannot grow more than one task above the limit.
+ * Follow-ups of work that has been accepted already (e.g. submitted after its transaction commits) are submitted
+ * through {@link #executeFollowUpForTest(int, Runnable)} that bypasses the limit, as there is nobody to report
+ * the rejection to and dropping them would leave the work unfinished.
+ * Queues of tests without any activity are dropped after {@code horreum.tasks.idle-timeout}.
+ */
 @Startup
 @ApplicationScoped
 public class BlockingTaskDispatcher {
+    private static final ThreadLocal<Boolean> WORKER = new ThreadLocal<>();
+    // test whose task is being executed by the current worker
+    private static final ThreadLocal<Integer> RUNNING_TEST = new ThreadLocal<>();
+
+    @Inject
+    @ConfigProperty(name = "horreum.tasks.concurrency", defaultValue = "8")
+    int concurrency;
+
+    @Inject
+    @ConfigProperty(name = "horreum.tasks.queue.max-size", defaultValue = "10000")
+    int maxQueueSize;
+
+    @Inject
+    @ConfigProperty(name = "horreum.tasks.queue.offer-timeout", defaultValue = "30s")
+    Duration offerTimeout;
 
     @Inject
-    Vertx vertx;
+    @ConfigProperty(name = "horreum.tasks.idle-timeout", defaultValue = "5m")
+    Duration idleTimeout;
+
+    @Inject
+    TransactionManager tm;
 
     private final ConcurrentMap<Integer, TaskQueue> taskQueues = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, concurrency), runnable -> {
+            Thread thread = new Thread(() -> {
+                WORKER.set(Boolean.TRUE);
+                runnable.run();
+            }, "horreum-tasks-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
 
+    /**
+     * @throws RejectedExecutionException when the queue of the test is full
+     */
     public void executeForTest(int testId, Runnable runnable) {
-        Runnable task = Util.wrapForBlockingExecution(runnable);
-        vertx.executeBlocking(promise -> {
-            try {
-                TaskQueue queue = taskQueues.computeIfAbsent(testId, TaskQueue::new);
-                queue.executeOrAdd(task);
-            } catch (Exception e) {
-                Log.error("Failed to execute blocking task", e);
-            } finally {
-                promise.complete();
+        execute(testId, Util.wrapForBlockingExecution(runnable), true);
+    }
+
+    /**
+     * Enqueues the task regardless of the size of the queue.
+     *
+     * @throws RejectedExecutionException when the dispatcher is shut down
+     */
+    public void executeFollowUpForTest(int testId, Runnable runnable) {
+        execute(testId, Util.wrapForBlockingExecution(runnable), false);
+    }
+
+    void execute(int testId, Runnable task) {
+        execute(testId, task, true);
+    }
+
+    void execute(int testId, Runnable task, boolean bounded) {
+        Task queued = new Task(task, System.nanoTime());
+        // the queue could be evicted concurrently
+        while (!taskQueues.computeIfAbsent(testId, TaskQueue::new).offer(queued, bounded)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    public boolean isRunning() {
+        return executor != null && !executor.isShutdown();
+    }
+
+    /**
+     * @return state of the queues, tests with most queued tasks first
+     */
+    public List<QueueStats> stats() {
+        return taskQueues.values().stream().map(TaskQueue::stats)
+                .sorted(Comparator.comparingInt(QueueStats::queued).reversed().thenComparingInt(QueueStats::testId))
+                .toList();
+    }
+
+    @Scheduled(every = "{horreum.tasks.idle-timeout}", delayed = "{horreum.tasks.idle-timeout}")
+    void evictIdleQueues() {
+        long idleSince = System.nanoTime() - idleTimeout.toNanos();
+        for (TaskQueue queue : taskQueues.values()) {
+            if (queue.evictIfIdle(idleSince)) {
+                taskQueues.remove(queue.testId, queue);
             }
-        });
+        }
     }
 
-}
+    private boolean canBlock() {
+        return !Context.isOnEventLoopThread() && WORKER.get() == null && !inTransaction();
+    }
 
-class TaskQueue {
-    private final int testId;
-    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
-    private final ReentrantLock lock = new ReentrantLock();
+    private boolean inTransaction() {
+        if (tm == null) {
+            return false;
+        }
+        try {
+            int status = tm.getStatus();
+            // after completion the locks are released already
+            return status != Status.STATUS_NO_TRANSACTION && status != Status.STATUS_COMMITTED
+                    && status != Status.STATUS_ROLLEDBACK;
+        } catch (SystemException e) {
+            return true;
+        }
+    }
 
-    public TaskQueue(int testId) {
-        this.testId = testId;
+    public record QueueStats(int testId, int queued, boolean active, long executed, long rejected, long avgWaitMillis,
+            long maxWaitMillis, long avgExecutionMillis, long maxExecutionMillis) {
     }
 
-    public void executeOrAdd(Runnable runnable) {
-        queue.add(runnable);
-        do {
-            if (lock.tryLock()) {
-                Log.debugf("This thread is going to execute tasks (%d) for test %d, lock level %d", queue.size(), testId,
-                        lock.getHoldCount());
+    private record Task(Runnable runnable, long enqueued) {
+    }
+
+    private class TaskQueue {
+        private final int testId;
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        // there is a turn of this queue submitted to the executor
+        private boolean scheduled;
+        private boolean evicted;
+        private long lastActivity = System.nanoTime();
+        private long executed;
+        private long rejected;
+        private long totalWait;
+        private long maxWait;
+        private long totalExecution;
+        private long maxExecution;
+
+        TaskQueue(int testId) {
+            this.testId = testId;
+        }
+
+        synchronized boolean offer(Task task, boolean bounded) {
+            if (evicted) {
+                return false;
+            }
+            int limit = !bounded ? Integer.MAX_VALUE : isContinuation() ? maxQueueSize + 1 : maxQueueSize;
+            if (tasks.size() >= limit) {
+                if (canBlock()) {
+                    long deadline = System.nanoTime() + offerTimeout.toNanos();
+                    long remaining;
+                    while (tasks.size() >= limit && (remaining = deadline - System.nanoTime()) > 0) {
+                        try {
+                            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                }
+                if (tasks.size() >= limit) {
+                    rejected++;
+                    throw new RejectedExecutionException(
+                            "Queue of tasks for test " + testId + " is full (" + tasks.size() + " tasks)");
+                }
+            }
+            tasks.add(task);
+            lastActivity = System.nanoTime();
+            if (!scheduled) {
                 try {
-                    while (!queue.isEmpty()) {
-                        Runnable task = queue.poll();
-                        task.run();
+                    executor.execute(this::runNext);
+                } catch (RejectedExecutionException e) {
+                    // shutting down; don't leave a queue that looks active with a task nobody will run
+                    tasks.removeLast();
+                    rejected++;
+                    throw e;
+                }
+                scheduled = true;
+            }
+            return true;
+        }
+
+        private void runNext() {
+            Task task;
+            synchronized (this) {
+                task = tasks.poll();
+                notifyAll();
+            }
+            long start = System.nanoTime();
+            RUNNING_TEST.set(testId);
+            try {
+                task.runnable.run();
+            } catch (Throwable t) {
+                Log.errorf(t, "Error executing task in the queue for test %d", testId);
+            } finally {
+                RUNNING_TEST.remove();
+            }
+            long end = System.nanoTime();
+            synchronized (this) {
+                executed++;
+                totalWait += start - task.enqueued;
+                maxWait = Math.max(maxWait, start - task.enqueued);
+                totalExecution += end - start;
+                maxExecution = Math.max(maxExecution, end - start);
+                lastActivity = end;
+                if (tasks.isEmpty()) {
+                    scheduled = false;
+                } else {
+                    try {
+                        // go to the back of the line to let other tests run
+                        executor.execute(this::runNext);
+                    } catch (RejectedExecutionException e) {
+                        Log.debugf("Dropping %d tasks for test %d on shutdown", tasks.size(), testId);
                     }
-                } catch (Throwable t) {
-                    Log.errorf(t, "Error executing task in the queue for test %d", testId);
-                } finally {
-                    Log.debugf("Finished executing tasks for test %d", testId);
-                    lock.unlock();
                 }
-            } else {
-                Log.debugf("There's another thread executing the tasks (%d) for test %d", queue.size(), testId);
-                return;
             }
-        } while (!queue.isEmpty());
+        }
+
+        private boolean isContinuation() {
+            Integer running = RUNNING_TEST.get();
+            return running != null && running == testId;
+        }
+
+        synchronized boolean evictIfIdle(long idleSince) {
+            if (!scheduled && tasks.isEmpty() && lastActivity - idleSince < 0) {
+                evicted = true;
+            }
+            return evicted;
+        }
+
+        synchronized QueueStats stats() {
+            long divisor = Math.max(1, executed);
+            return new QueueStats(testId, tasks.size(), scheduled, executed, rejected,
+                    TimeUnit.NANOSECONDS.toMillis(totalWait / divisor), TimeUnit.NANOSECONDS.toMillis(maxWait),
+                    TimeUnit.NANOSECONDS.toMillis(totalExecution / divisor), TimeUnit.NANOSECONDS.toMillis(maxExecution));
+        }
     }
 }
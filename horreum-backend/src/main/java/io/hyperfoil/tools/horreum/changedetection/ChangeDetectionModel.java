@@ -18,6 +18,27 @@ public interface ChangeDetectionModel {
     void analyze(List<DataPointDAO> dataPoints, JsonNode configuration, Consumer<ChangeDAO> changeConsumer)
             throws ChangeDetectionException;
 
+    /**
+     * Number of most recent datapoints the model needs when it gets statistics of all datapoints since
+     * the last change instead, see {@link #analyze(List, RunningStatistics, JsonNode, Consumer)}.
+     *
+     * @return number of datapoints or -1 if the model needs all datapoints since the last change
+     */
+    default int recentDataPoints(JsonNode configuration) {
+        return -1;
+    }
+
+    /**
+     * Incremental variant of {@link #analyze(List, JsonNode, Consumer)}.
+     *
+     * @param dataPoints most recent datapoints (at most {@link #recentDataPoints(JsonNode)}), newest first
+     * @param statistics values of all datapoints since the last change, including the recent ones
+     */
+    default void analyze(List<DataPointDAO> dataPoints, RunningStatistics statistics, JsonNode configuration,
+            Consumer<ChangeDAO> changeConsumer) throws ChangeDetectionException {
+        analyze(dataPoints, configuration, changeConsumer);
+    }
+
     ModelType getType();
 
 }
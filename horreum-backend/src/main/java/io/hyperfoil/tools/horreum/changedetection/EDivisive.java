@@ -0,0 +1,205 @@
+package io.hyperfoil.tools.horreum.changedetection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.commons.math3.distribution.TDistribution;
+
+/**
+ * In-process implementation of the E-Divisive means algorithm with the semantics of
+ * <a href="https://github.com/datastax-labs/hunter">Hunter</a>: the series is split into overlapping windows,
+ * candidates are found by the energy-distance statistic and tested for significance using Student's t-test,
+ * weak change points are merged away afterwards.
+ */
+final class EDivisive {
+
+    private EDivisive() {
+    }
+
+    record ChangePoint(int index, double meanBefore, double meanAfter, double pValue) {
+        double forwardChangePercent() {
+            return 100 * (meanAfter - meanBefore) / meanBefore;
+        }
+
+        double magnitude() {
+            return Math.abs((meanAfter - meanBefore) / meanBefore);
+        }
+    }
+
+    /**
+     * @param values series of values, oldest first
+     * @return change points sorted by index; the index points to the first value after the change
+     */
+    static List<ChangePoint> changePoints(double[] values, int windowLen, double maxPValue, double minMagnitude) {
+        // like Hunter we use relaxed p-value in the first pass and sort out weak change points in the merge
+        double firstPassPValue = maxPValue < 0.05 ? 10 * maxPValue : maxPValue < 0.5 ? 2 * maxPValue : maxPValue;
+        List<Integer> candidates = split(values, Math.max(2, windowLen), firstPassPValue);
+        return merge(candidates, values, maxPValue, minMagnitude);
+    }
+
+    private static List<Integer> split(double[] values, int windowLen, double maxPValue) {
+        List<Integer> indices = new ArrayList<>();
+        int step = windowLen / 2;
+        int start = 0;
+        while (start < values.length) {
+            int end = Math.min(start + windowLen, values.length);
+            List<Integer> found = divide(values, start, end, maxPValue);
+            int last = found.isEmpty() ? 0 : found.get(found.size() - 1);
+            start = Math.max(last, start + step);
+            indices.addAll(found);
+        }
+        return indices;
+    }
+
+    private static List<Integer> divide(double[] values, int from, int to, double maxPValue) {
+        List<Integer> bounds = new ArrayList<>(List.of(from, to));
+        TreeSet<Integer> found = new TreeSet<>();
+        double[] qhat = new double[1];
+        for (;;) {
+            int bestIndex = -1, bestSegment = -1;
+            double bestQhat = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i + 1 < bounds.size(); ++i) {
+                int index = bestSplit(values, bounds.get(i), bounds.get(i + 1), qhat);
+                if (index >= 0 && qhat[0] > bestQhat) {
+                    bestQhat = qhat[0];
+                    bestIndex = index;
+                    bestSegment = i;
+                }
+            }
+            if (bestIndex < 0) {
+                break;
+            }
+            ChangePoint candidate = tTest(values, bounds.get(bestSegment), bestIndex, bounds.get(bestSegment + 1));
+            if (!(candidate.pValue <= maxPValue)) {
+                break;
+            }
+            found.add(bestIndex);
+            bounds.add(bestSegment + 1, bestIndex);
+        }
+        return new ArrayList<>(found);
+    }
+
+    /**
+     * Finds the split of <code>values[from, to)</code> maximizing the scaled energy distance between both parts.
+     * Sums of pairwise distances are updated incrementally as the split moves right so this is O(n^2).
+     *
+     * @return index of the first value after the split or -1 if the range cannot be split
+     */
+    private static int bestSplit(double[] values, int from, int to, double[] qhat) {
+        if (to - from < 2) {
+            return -1;
+        }
+        double between = 0, left = 0, right = 0;
+        for (int i = from; i < to; ++i) {
+            for (int j = i + 1; j < to; ++j) {
+                right += Math.abs(values[i] - values[j]);
+            }
+        }
+        int best = -1;
+        double bestQhat = Double.NEGATIVE_INFINITY;
+        for (int tau = from; tau < to - 1; ++tau) {
+            // move values[tau] from the right part to the left part
+            double toLeft = 0, toRight = 0;
+            for (int i = from; i < tau; ++i) {
+                toLeft += Math.abs(values[tau] - values[i]);
+            }
+            for (int j = tau + 1; j < to; ++j) {
+                toRight += Math.abs(values[tau] - values[j]);
+            }
+            left += toLeft;
+            right -= toRight;
+            between += toRight - toLeft;
+            double m = tau + 1 - from, n = to - tau - 1;
+            double q = 2 * between / (m * n);
+            if (m > 1) {
+                q -= 2 * left / (m * (m - 1));
+            }
+            if (n > 1) {
+                q -= 2 * right / (n * (n - 1));
+            }
+            q *= m * n / (m + n);
+            if (q > bestQhat) {
+                bestQhat = q;
+                best = tau + 1;
+            }
+        }
+        qhat[0] = bestQhat;
+        return best;
+    }
+
+    private static List<ChangePoint> merge(List<Integer> candidates, double[] values, double maxPValue,
+            double minMagnitude) {
+        List<Integer> indices = new ArrayList<>(new TreeSet<>(candidates));
+        List<ChangePoint> changePoints = new ArrayList<>();
+        while (!indices.isEmpty()) {
+            changePoints.clear();
+            for (int i = 0; i < indices.size(); ++i) {
+                changePoints.add(tTest(values, i == 0 ? 0 : indices.get(i - 1), indices.get(i),
+                        i + 1 < indices.size() ? indices.get(i + 1) : values.length));
+            }
+            int weakest = 0;
+            for (int i = 1; i < changePoints.size(); ++i) {
+                if (changePoints.get(i).pValue > changePoints.get(weakest).pValue) {
+                    weakest = i;
+                }
+            }
+            if (changePoints.get(weakest).pValue < maxPValue) {
+                weakest = 0;
+                for (int i = 1; i < changePoints.size(); ++i) {
+                    if (changePoints.get(i).magnitude() < changePoints.get(weakest).magnitude()) {
+                        weakest = i;
+                    }
+                }
+                if (changePoints.get(weakest).magnitude() > minMagnitude) {
+                    return changePoints;
+                }
+            }
+            indices.remove(weakest);
+        }
+        return List.of();
+    }
+
+    /**
+     * Two-sided Student's t-test of <code>values[from, index)</code> and <code>values[index, to)</code>
+     * assuming equal variances; Hunter uses population standard deviation of both parts.
+     */
+    static ChangePoint tTest(double[] values, int from, int index, int to) {
+        int n1 = index - from, n2 = to - index;
+        double mean1 = 0, mean2 = 0;
+        for (int i = from; i < index; ++i) {
+            mean1 += values[i];
+        }
+        for (int i = index; i < to; ++i) {
+            mean2 += values[i];
+        }
+        mean1 /= n1;
+        mean2 /= n2;
+        if (n1 + n2 <= 2) {
+            return new ChangePoint(index, mean1, mean2, 1);
+        }
+        double var1 = 0, var2 = 0;
+        for (int i = from; i < index; ++i) {
+            var1 += (values[i] - mean1) * (values[i] - mean1);
+        }
+        for (int i = index; i < to; ++i) {
+            var2 += (values[i] - mean2) * (values[i] - mean2);
+        }
+        var1 /= n1;
+        var2 /= n2;
+        double df = n1 + n2 - 2;
+        double pooledVar = ((n1 - 1) * var1 + (n2 - 1) * var2) / df;
+        double t = (mean1 - mean2) / Math.sqrt(pooledVar * (1.0 / n1 + 1.0 / n2));
+        double pValue;
+        if (Double.isNaN(t)) {
+            // both parts are constant and equal
+            pValue = 1;
+        } else if (Double.isInfinite(t)) {
+            pValue = 0;
+        } else {
+            // we don't sample from the distribution, skip creating the random generator
+            pValue = 2 * new TDistribution(null, df).cumulativeProbability(-Math.abs(t));
+        }
+        return new ChangePoint(index, mean1, mean2, pValue);
+    }
+}
@@ -0,0 +1,110 @@
+package io.hyperfoil.tools.horreum.changedetection;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import io.hyperfoil.tools.horreum.api.data.ConditionConfig;
+import io.hyperfoil.tools.horreum.api.data.changeDetection.ChangeDetectionModelType;
+import io.hyperfoil.tools.horreum.api.data.changeDetection.EDivisiveDetectionConfig;
+import io.hyperfoil.tools.horreum.entity.alerting.ChangeDAO;
+import io.hyperfoil.tools.horreum.entity.alerting.DataPointDAO;
+import io.quarkus.logging.Log;
+
+/**
+ * E-Divisive means computed in-process; this replaces the model running the external <code>hunter</code> process
+ * for each analysis. As the analysis always starts at the last change and is limited
+ * to the last <code>windowLen</code> datapoints the model runs on every new datapoint.
+ */
+@ApplicationScoped
+public class EDivisiveModel implements ChangeDetectionModel {
+    static final int DEFAULT_WINDOW_LEN = 50;
+    static final double DEFAULT_MAX_P_VALUE = 0.001;
+    static final double DEFAULT_MIN_MAGNITUDE = 0.0;
+
+    @Inject
+    ObjectMapper mapper;
+
+    @Override
+    public ConditionConfig config() {
+        ConditionConfig conditionConfig = new ConditionConfig(ChangeDetectionModelType.names.EDIVISIVE, "eDivisive",
+                "This model uses the eDivisive means algorithm (as implemented in Hunter) to determine change points " +
+                        "in a continual series. The most recent datapoints since the last change are split into " +
+                        "overlapping windows and a change point is emitted when the means before and after differ " +
+                        "significantly according to Student's t-test.")
+                .addComponent("windowLen", new ConditionConfig.LogSliderComponent(1, 4, 1000, DEFAULT_WINDOW_LEN, true, " "),
+                        "Window length",
+                        "Number of most recent datapoints analyzed in a single window.")
+                .addComponent("maxPValue",
+                        new ConditionConfig.LogSliderComponent(100, 0.001, 10, DEFAULT_MAX_P_VALUE, false, "%"),
+                        "Maximum p-value",
+                        "Maximum p-value of the t-test for a change point to be considered significant.");
+        conditionConfig.defaults.put("model", new TextNode(ChangeDetectionModelType.names.EDIVISIVE));
+        return conditionConfig;
+    }
+
+    @Override
+    public ChangeDetectionModelType type() {
+        return ChangeDetectionModelType.EDIVISIVE;
+    }
+
+    @Override
+    public void analyze(List<DataPointDAO> dataPoints, JsonNode configuration, Consumer<ChangeDAO> changeConsumer)
+            throws ChangeDetectionException {
+        EDivisiveDetectionConfig config = parseConfig(configuration, dataPoints.get(0));
+        int windowLen = windowLen(config);
+        // datapoints are ordered newest first
+        int size = Math.min(dataPoints.size(), windowLen);
+        double[] values = new double[size];
+        for (int i = 0; i < size; ++i) {
+            values[i] = dataPoints.get(size - 1 - i).value;
+        }
+        double maxPValue = config.maxPValue == null ? DEFAULT_MAX_P_VALUE : config.maxPValue;
+        double minMagnitude = config.minMagnitude == null ? DEFAULT_MIN_MAGNITUDE : config.minMagnitude;
+        for (EDivisive.ChangePoint changePoint : EDivisive.changePoints(values, windowLen, maxPValue, minMagnitude)) {
+            DataPointDAO dataPoint = dataPoints.get(size - 1 - changePoint.index());
+            ChangeDAO change = ChangeDAO.fromDatapoint(dataPoint);
+            change.description = "eDivisive change `%+.1f%%` at `%s` for dataset: %d".formatted(
+                    changePoint.forwardChangePercent(), dataPoint.timestamp, dataPoint.dataset.id);
+            Log.debugf("%s, p-value %g", change.description, changePoint.pValue());
+            changeConsumer.accept(change);
+        }
+    }
+
+    @Override
+    public int recentDataPoints(JsonNode configuration) {
+        try {
+            return windowLen(mapper.treeToValue(configuration, EDivisiveDetectionConfig.class));
+        } catch (JsonProcessingException e) {
+            // let the full analysis report the error
+            return -1;
+        }
+    }
+
+    private static int windowLen(EDivisiveDetectionConfig config) {
+        return config.windowLen == null ? DEFAULT_WINDOW_LEN : Math.max(2, config.windowLen);
+    }
+
+    private EDivisiveDetectionConfig parseConfig(JsonNode configuration, DataPointDAO dataPoint)
+            throws ChangeDetectionException {
+        try {
+            return mapper.treeToValue(configuration, EDivisiveDetectionConfig.class);
+        } catch (JsonProcessingException e) {
+            String errMsg = "Failed to parse configuration for variable %d".formatted(dataPoint.variable.id);
+            Log.error(errMsg, e);
+            throw new ChangeDetectionException(errMsg, e);
+        }
+    }
+
+    @Override
+    public ModelType getType() {
+        return ModelType.CONTINOUS;
+    }
+}
@@ -76,6 +76,12 @@ public class FixedThresholdModel implements ChangeDetectionModel {
         }
     }
 
+    @Override
+    public int recentDataPoints(JsonNode configuration) {
+        // only the new datapoint is checked
+        return 1;
+    }
+
     @Override
     public ModelType getType() {
         return ModelType.CONTINOUS;
@@ -62,80 +62,105 @@ public class RelativeDifferenceChangeDetectionModel implements ChangeDetectionMo
     @Override
     public void analyze(List<DataPointDAO> dataPoints, JsonNode configuration, Consumer<ChangeDAO> changeConsumer)
             throws ChangeDetectionException {
-        DataPointDAO dataPoint = dataPoints.get(0);
+        RunningStatistics statistics = new RunningStatistics();
+        dataPoints.forEach(dp -> statistics.add(dp.value));
+        RelativeDifferenceDetectionConfig config = parseConfig(configuration, dataPoints.get(0));
+        analyze(dataPoints.subList(0, Math.min(dataPoints.size(), Math.max(1, config.window))), statistics, config,
+                changeConsumer);
+    }
 
+    @Override
+    public int recentDataPoints(JsonNode configuration) {
         try {
-            RelativeDifferenceDetectionConfig config = mapper.treeToValue(configuration,
-                    RelativeDifferenceDetectionConfig.class);
-
-            int window = Math.max(1, config.window);
-            int minPrevious = Math.max(window, config.minPrevious);
-
-            if (dataPoints.size() < minPrevious + window) {
-                Log.debugf("Too few (%d) previous datapoints for variable %d, skipping analysis", dataPoints.size() - window,
-                        dataPoint.variable.id);
-                return;
-            }
-            SummaryStatistics previousStats = new SummaryStatistics();
-            dataPoints.stream().skip(window).mapToDouble(dp -> dp.value).forEach(previousStats::addValue);
-
-            double filteredValue;
-            switch (config.filter) {
-                case "min":
-                    //noinspection OptionalGetWithoutIsPresent
-                    filteredValue = dataPoints.stream().limit(window).mapToDouble(dp -> dp.value).min().getAsDouble();
-                    break;
-                case "max":
-                    //noinspection OptionalGetWithoutIsPresent
-                    filteredValue = dataPoints.stream().limit(window).mapToDouble(dp -> dp.value).max().getAsDouble();
-                    break;
-                case "mean":
-                    SummaryStatistics windowStats = new SummaryStatistics();
-                    dataPoints.stream().limit(window).mapToDouble(dp -> dp.value).forEach(windowStats::addValue);
-                    filteredValue = windowStats.getMean();
-                    break;
-                default:
-                    String errMsg = "Unsupported option 'filter'='%s' for variable %d, skipping analysis"
-                            .formatted(config.filter, dataPoint.variable.id);
-                    Log.error(errMsg);
-                    throw new ChangeDetectionException(errMsg);
-            }
+            return Math.max(1, mapper.treeToValue(configuration, RelativeDifferenceDetectionConfig.class).window);
+        } catch (JsonProcessingException e) {
+            // let the full analysis report the error
+            return -1;
+        }
+    }
 
-            double ratio = filteredValue / previousStats.getMean();
-            Log.tracef("Previous mean %f, filtered value %f, ratio %f", previousStats.getMean(), filteredValue, ratio);
-            if (ratio < 1 - config.threshold || ratio > 1 + config.threshold) {
-                DataPointDAO dp = null;
-                // We cannot know which datapoint is first with the regression; as a heuristic approach
-                // we'll select first datapoint with value lower than mean (if this is a drop, e.g. throughput)
-                // or above the mean (if this is an increase, e.g. memory usage).
-                for (int i = window - 1; i >= 0; --i) {
-                    dp = dataPoints.get(i);
-                    if (ratio < 1 && dp.value < previousStats.getMean()) {
-                        break;
-                    } else if (ratio > 1 && dp.value > previousStats.getMean()) {
-                        break;
-                    }
-                }
-                assert dp != null;
-                ChangeDAO change = ChangeDAO.fromDatapoint(dp);
-                DataPointDAO prevDataPoint = dataPoints.get(window - 1);
-                DataPointDAO lastDataPoint = dataPoints.get(0);
-                change.description = "Datasets %d/%d (%s) - %d/%d (%s): %s %f, previous mean %f (stddev %f), relative change %.2f%%"
-                        .formatted(prevDataPoint.dataset.run.id, prevDataPoint.dataset.ordinal, prevDataPoint.timestamp,
-                                lastDataPoint.dataset.run.id, lastDataPoint.dataset.ordinal, lastDataPoint.timestamp,
-                                config.filter, filteredValue, previousStats.getMean(), previousStats.getStandardDeviation(),
-                                100 * (ratio - 1));
-
-                Log.debug(change.description);
-                changeConsumer.accept(change);
-            }
+    @Override
+    public void analyze(List<DataPointDAO> dataPoints, RunningStatistics statistics, JsonNode configuration,
+            Consumer<ChangeDAO> changeConsumer) throws ChangeDetectionException {
+        analyze(dataPoints, statistics, parseConfig(configuration, dataPoints.get(0)), changeConsumer);
+    }
 
+    private RelativeDifferenceDetectionConfig parseConfig(JsonNode configuration, DataPointDAO dataPoint)
+            throws ChangeDetectionException {
+        try {
+            return mapper.treeToValue(configuration, RelativeDifferenceDetectionConfig.class);
         } catch (JsonProcessingException e) {
             String errMsg = "Failed to parse configuration for variable %d".formatted(dataPoint.variable.id);
             Log.error(errMsg, e);
             throw new ChangeDetectionException(errMsg, e);
         }
+    }
 
+    private void analyze(List<DataPointDAO> dataPoints, RunningStatistics statistics,
+            RelativeDifferenceDetectionConfig config, Consumer<ChangeDAO> changeConsumer) throws ChangeDetectionException {
+        DataPointDAO dataPoint = dataPoints.get(0);
+
+        int window = Math.max(1, config.window);
+        int minPrevious = Math.max(window, config.minPrevious);
+
+        if (statistics.getCount() < minPrevious + window || dataPoints.size() < window) {
+            Log.debugf("Too few (%d) previous datapoints for variable %d, skipping analysis", statistics.getCount() - window,
+                    dataPoint.variable.id);
+            return;
+        }
+        RunningStatistics previousStats = statistics.copy();
+        dataPoints.stream().limit(window).mapToDouble(dp -> dp.value).forEach(previousStats::remove);
+
+        double filteredValue;
+        switch (config.filter) {
+            case "min":
+                //noinspection OptionalGetWithoutIsPresent
+                filteredValue = dataPoints.stream().limit(window).mapToDouble(dp -> dp.value).min().getAsDouble();
+                break;
+            case "max":
+                //noinspection OptionalGetWithoutIsPresent
+                filteredValue = dataPoints.stream().limit(window).mapToDouble(dp -> dp.value).max().getAsDouble();
+                break;
+            case "mean":
+                SummaryStatistics windowStats = new SummaryStatistics();
+                dataPoints.stream().limit(window).mapToDouble(dp -> dp.value).forEach(windowStats::addValue);
+                filteredValue = windowStats.getMean();
+                break;
+            default:
+                String errMsg = "Unsupported option 'filter'='%s' for variable %d, skipping analysis"
+                        .formatted(config.filter, dataPoint.variable.id);
+                Log.error(errMsg);
+                throw new ChangeDetectionException(errMsg);
+        }
+
+        double ratio = filteredValue / previousStats.getMean();
+        Log.tracef("Previous mean %f, filtered value %f, ratio %f", previousStats.getMean(), filteredValue, ratio);
+        if (ratio < 1 - config.threshold || ratio > 1 + config.threshold) {
+            DataPointDAO dp = null;
+            // We cannot know which datapoint is first with the regression; as a heuristic approach
+            // we'll select first datapoint with value lower than mean (if this is a drop, e.g. throughput)
+            // or above the mean (if this is an increase, e.g. memory usage).
+            for (int i = window - 1; i >= 0; --i) {
+                dp = dataPoints.get(i);
+                if (ratio < 1 && dp.value < previousStats.getMean()) {
+                    break;
+                } else if (ratio > 1 && dp.value > previousStats.getMean()) {
+                    break;
+                }
+            }
+            assert dp != null;
+            ChangeDAO change = ChangeDAO.fromDatapoint(dp);
+            DataPointDAO prevDataPoint = dataPoints.get(window - 1);
+            DataPointDAO lastDataPoint = dataPoints.get(0);
+            change.description = "Datasets %d/%d (%s) - %d/%d (%s): %s %f, previous mean %f (stddev %f), relative change %.2f%%"
+                    .formatted(prevDataPoint.dataset.run.id, prevDataPoint.dataset.ordinal, prevDataPoint.timestamp,
+                            lastDataPoint.dataset.run.id, lastDataPoint.dataset.ordinal, lastDataPoint.timestamp,
+                            config.filter, filteredValue, previousStats.getMean(), previousStats.getStandardDeviation(),
+                            100 * (ratio - 1));
+
+            Log.debug(change.description);
+            changeConsumer.accept(change);
+        }
     }
 
     @Override
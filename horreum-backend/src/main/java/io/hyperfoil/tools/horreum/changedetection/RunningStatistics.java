@@ -0,0 +1,95 @@
+package io.hyperfoil.tools.horreum.changedetection;
+
+/**
+ * Count, mean and sum of squared differences from the mean (M2) of datapoint values. Unlike
+ * {@link org.apache.commons.math3.stat.descriptive.SummaryStatistics} these can be persisted, updated as new datapoints
+ * arrive, merged and values can be removed again. The updates use Welford's algorithm (Chan et al. for merging),
+ * which does not lose precision when the values are large compared to their variance.
+ */
+public final class RunningStatistics {
+    private long count;
+    private double mean;
+    private double m2;
+
+    public RunningStatistics() {
+    }
+
+    public RunningStatistics(long count, double mean, double m2) {
+        this.count = count;
+        this.mean = count == 0 ? 0 : mean;
+        this.m2 = count == 0 ? 0 : m2;
+    }
+
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+    }
+
+    public void add(RunningStatistics other) {
+        if (other.count == 0) {
+            return;
+        } else if (count == 0) {
+            count = other.count;
+            mean = other.mean;
+            m2 = other.m2;
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * count * other.count / total;
+        count = total;
+    }
+
+    public void remove(double value) {
+        if (count <= 1) {
+            count = 0;
+            mean = 0;
+            m2 = 0;
+            return;
+        }
+        double previousMean = mean;
+        count--;
+        mean -= (value - mean) / count;
+        // rounding errors could make this slightly negative
+        m2 = Math.max(0, m2 - (value - mean) * (value - previousMean));
+    }
+
+    public RunningStatistics copy() {
+        return new RunningStatistics(count, mean, m2);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * @return sum of squared differences from the mean
+     */
+    public double getM2() {
+        return m2;
+    }
+
+    /**
+     * @return sample standard deviation, same as {@link org.apache.commons.math3.stat.descriptive.SummaryStatistics}
+     */
+    public double getStandardDeviation() {
+        if (count == 0) {
+            return Double.NaN;
+        } else if (count == 1) {
+            return 0;
+        }
+        return Math.sqrt(m2 / (count - 1));
+    }
+
+    @Override
+    public String toString() {
+        return "{n=" + count + ", mean=" + mean + ", m2=" + m2 + '}';
+    }
+}
@@ -1,5 +1,14 @@
 package io.hyperfoil.tools.horreum.entity;
 
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
@@ -11,6 +20,7 @@ import jakarta.persistence.OneToOne;
 import org.hibernate.annotations.Type;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
 
 import io.hyperfoil.tools.horreum.entity.data.DatasetDAO;
 import io.hyperfoil.tools.horreum.hibernate.JsonBinaryType;
@@ -18,6 +28,11 @@ import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
 
 @Entity(name = "Fingerprint")
 public class FingerprintDAO extends PanacheEntityBase {
+    /**
+     * Hash of datasets without a fingerprint, used in {@code datapoint.fp_hash} and {@code change.fp_hash}.
+     */
+    public static final long NULL_HASH = hash(null);
+
     @Id
     @Column(name = "dataset_id")
     public Integer datasetId;
@@ -31,11 +46,86 @@ public class FingerprintDAO extends PanacheEntityBase {
     @Column(columnDefinition = "jsonb")
     public JsonNode fingerprint;
 
+    @Column(name = "fp_hash")
+    public Long fpHash;
+
+    /**
+     * Computes a 64-bit hash of the fingerprint that does not depend on the order of keys in objects
+     * nor on the representation of numbers, so that fingerprints equal as JSON have equal hashes.
+     */
+    public static long hash(JsonNode fingerprint) {
+        StringBuilder sb = new StringBuilder();
+        appendCanonical(sb, fingerprint);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * SQL condition selecting datapoints or changes aliased as {@code alias} by the fingerprint hash in parameter
+     * {@code hashParam}. Rows stored before the hash was introduced get it in the background; until then these are
+     * matched by the fingerprint of their dataset, in parameter {@code fingerprintParam}.
+     */
+    public static String hashMatches(String alias, int hashParam, int fingerprintParam) {
+        return "(%1$s.fp_hash = ?%2$d OR %1$s.fp_hash IS NULL AND fingerprint_matches(%1$s.dataset_id, (?%3$d)::jsonb))"
+                .formatted(alias, hashParam, fingerprintParam);
+    }
+
+    /**
+     * HQL variant of {@link #hashMatches(String, int, int)}.
+     */
+    public static String hqlHashMatches(String alias, int hashParam, int fingerprintParam) {
+        return ("(%1$s.fpHash = ?%2$d OR %1$s.fpHash IS NULL " +
+                "AND TRUE = function('fingerprint_matches', %1$s.dataset.id, ?%3$d))")
+                .formatted(alias, hashParam, fingerprintParam);
+    }
+
+    private static void appendCanonical(StringBuilder sb, JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            sb.append("null");
+        } else if (node.isObject()) {
+            Map<String, JsonNode> sorted = new TreeMap<>();
+            for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext();) {
+                Map.Entry<String, JsonNode> entry = it.next();
+                sorted.put(entry.getKey(), entry.getValue());
+            }
+            sb.append('{');
+            boolean first = true;
+            for (var entry : sorted.entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                sb.append(TextNode.valueOf(entry.getKey())).append(':');
+                appendCanonical(sb, entry.getValue());
+            }
+            sb.append('}');
+        } else if (node.isArray()) {
+            sb.append('[');
+            for (int i = 0; i < node.size(); ++i) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                appendCanonical(sb, node.get(i));
+            }
+            sb.append(']');
+        } else if (node.isNumber()) {
+            BigDecimal number = node.decimalValue();
+            sb.append(number.signum() == 0 ? "0" : number.stripTrailingZeros().toPlainString());
+        } else {
+            sb.append(node);
+        }
+    }
+
     @Override
     public String toString() {
         return "FP{" +
                 "datasetId=" + datasetId +
                 ", fingerprint=" + fingerprint +
+                ", fpHash=" + fpHash +
                 '}';
     }
 }
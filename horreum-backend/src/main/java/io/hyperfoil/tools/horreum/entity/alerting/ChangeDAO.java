@@ -50,6 +50,9 @@ public class ChangeDAO extends PanacheEntityBase {
 
     public String description;
 
+    @Column(name = "fp_hash")
+    public Long fpHash;
+
     public DatasetDAO.Info getDatasetId() {
         if (dataset != null) {
             return dataset.getInfo();
@@ -75,6 +78,7 @@ public class ChangeDAO extends PanacheEntityBase {
         change.variable = dp.variable;
         change.timestamp = dp.timestamp;
         change.dataset = dp.dataset;
+        change.fpHash = dp.fpHash;
         return change;
     }
 
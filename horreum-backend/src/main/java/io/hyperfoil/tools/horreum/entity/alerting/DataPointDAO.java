@@ -56,6 +56,10 @@ public class DataPointDAO extends PanacheEntityBase {
     @ManyToOne(fetch = FetchType.LAZY)
     public VariableDAO variable;
 
+    // copy of the dataset's fingerprint hash (or FingerprintDAO.NULL_HASH) for indexed lookups
+    @Column(name = "fp_hash")
+    public Long fpHash;
+
     public void setDatasetId(int datasetId) {
         dataset = DatasetDAO.getEntityManager().getReference(DatasetDAO.class, datasetId);
     }
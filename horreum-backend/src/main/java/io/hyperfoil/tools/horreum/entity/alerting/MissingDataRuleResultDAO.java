@@ -79,6 +79,10 @@ public class MissingDataRuleResultDAO extends PanacheEntityBase {
         MissingDataRuleResultDAO.delete("pk.datasetId", id);
     }
 
+    public static void deleteForRun(int runId) {
+        MissingDataRuleResultDAO.delete("pk.datasetId IN (SELECT id FROM dataset WHERE run.id = ?1)", runId);
+    }
+
     public static void deleteForDataRule(int id) {
         MissingDataRuleResultDAO.delete("pk.ruleId", id);
     }
@@ -115,12 +115,22 @@ public class UserApiKey extends PanacheEntityBase implements Comparable<UserApiK
         }
     }
 
-    public static Optional<UserApiKey> findOptional(String key) {
+    // returns the hash of a given key or null if the key is not well-formed
+    public static String hashOf(String key) {
         // validate key structure before computing hash
         if (key.startsWith("H") && Stream.of(4, 13, 18, 23, 28).allMatch(i -> key.charAt(i) == '_')) {
-            return UserApiKey.<UserApiKey> find("hash", computeHash(key)).firstResultOptional();
+            return computeHash(key);
         }
-        return Optional.empty();
+        return null;
+    }
+
+    public static Optional<UserApiKey> findOptional(String key) {
+        String hash = hashOf(key);
+        return hash == null ? Optional.empty() : findByHash(hash);
+    }
+
+    public static Optional<UserApiKey> findByHash(String hash) {
+        return UserApiKey.<UserApiKey> find("hash", hash).firstResultOptional();
     }
 
     @Override
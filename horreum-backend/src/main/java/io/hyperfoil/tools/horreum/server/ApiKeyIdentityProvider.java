@@ -23,6 +23,9 @@ public class ApiKeyIdentityProvider implements IdentityProvider<ApiKeyAuthentica
     @Inject
     TimeService timeService;
 
+    @Inject
+    IdentityCache identityCache;
+
     @Override
     public Class<ApiKeyAuthenticationMechanism.Request> getRequestType() {
         return ApiKeyAuthenticationMechanism.Request.class;
@@ -34,18 +37,34 @@ public class ApiKeyIdentityProvider implements IdentityProvider<ApiKeyAuthentica
         return context.runBlocking(() -> identityFromKey(request.getKey()));
     }
 
-    @Transactional
     SecurityIdentity identityFromKey(String key) {
-        return UserApiKey.findOptional(key)
-                .filter(k -> !k.revoked)
-                .map((userKey) -> {
-                    Log.debugf("Authentication of user %s with key '%s'", userKey.user.username, userKey.name);
+        String hash = UserApiKey.hashOf(key);
+        if (hash == null) {
+            return null;
+        }
+        IdentityCache.ApiKey apiKey = identityCache.getApiKey(hash);
+        if (apiKey == null) {
+            long generation = identityCache.generation();
+            apiKey = loadApiKey(hash);
+            if (apiKey == null) {
+                return null;
+            }
+            identityCache.putApiKey(hash, apiKey, generation);
+        }
+        // last access is written in batches
+        identityCache.recordAccess(apiKey.id(), timeService.now());
 
-                    // update last access
-                    userKey.access = timeService.now();
+        // create identity with just the principal, roles will be populated in RolesAugmentor
+        return QuarkusSecurityIdentity.builder().setPrincipal(new QuarkusPrincipal(apiKey.username())).build();
+    }
 
-                    // create identity with just the principal, roles will be populated in RolesAugmentor
-                    return QuarkusSecurityIdentity.builder().setPrincipal(new QuarkusPrincipal(userKey.user.username)).build();
+    @Transactional
+    IdentityCache.ApiKey loadApiKey(String hash) {
+        return UserApiKey.findByHash(hash)
+                .filter(k -> !k.revoked)
+                .map(userKey -> {
+                    Log.debugf("Authentication of user %s with key '%s'", userKey.user.username, userKey.name);
+                    return new IdentityCache.ApiKey(userKey.id, userKey.user.username);
                 })
                 .orElse(null);
     }
@@ -0,0 +1,176 @@
+package io.hyperfoil.tools.horreum.server;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.transaction.Transactional;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.hyperfoil.tools.horreum.entity.user.UserApiKey;
+import io.hyperfoil.tools.horreum.svc.Roles;
+import io.quarkus.logging.Log;
+import io.quarkus.scheduler.Scheduled;
+
+/**
+ * Caches API keys and roles of authenticated users for a limited time, so that repeated requests of the same user
+ * (e.g. uploads from CI using an API key) don't need to hit the database (or Keycloak) every time.
+ * Last access of the API keys is recorded in memory and written to the database periodically.
+ * <p>
+ * Changes made through this instance invalidate the cached entries once they are committed; changes made elsewhere
+ * (other instances, Keycloak console) are picked up once the entry expires. When the cache is full the entries
+ * closest to expiration are evicted first.
+ */
+@ApplicationScoped
+public class IdentityCache {
+
+    @ConfigProperty(name = "horreum.auth.cache.ttl", defaultValue = "60s")
+    Duration ttl;
+
+    @ConfigProperty(name = "horreum.auth.cache.max-size", defaultValue = "10000")
+    int maxSize;
+
+    // API keys by hash of the key
+    private final ExpiringMap<String, ApiKey> apiKeys = new ExpiringMap<>();
+    private final ExpiringMap<String, Set<String>> roles = new ExpiringMap<>();
+    private final ConcurrentMap<Long, Instant> pendingAccess = new ConcurrentHashMap<>();
+    // incremented on every invalidation, entries loaded before that are not cached
+    private volatile long generation;
+
+    /**
+     * @return generation that should be passed to {@link #putApiKey(String, ApiKey, long)} or
+     *         {@link #putRoles(String, Collection, long)} after loading the data
+     */
+    public long generation() {
+        return generation;
+    }
+
+    public ApiKey getApiKey(String hash) {
+        return apiKeys.get(hash);
+    }
+
+    public void putApiKey(String hash, ApiKey apiKey, long generation) {
+        put(apiKeys, hash, apiKey, generation);
+    }
+
+    public Set<String> getRoles(String username) {
+        return roles.get(username);
+    }
+
+    public void putRoles(String username, Collection<String> userRoles, long generation) {
+        put(roles, username, Set.copyOf(userRoles), generation);
+    }
+
+    /**
+     * Records access of the key, the timestamp is written to database later.
+     */
+    public void recordAccess(long keyId, Instant timestamp) {
+        pendingAccess.merge(keyId, timestamp, (t1, t2) -> t1.isAfter(t2) ? t1 : t2);
+    }
+
+    public void invalidateApiKey(long keyId) {
+        synchronized (this) {
+            generation++;
+            apiKeys.entries.values().removeIf(entry -> entry.value.id() == keyId);
+        }
+    }
+
+    /**
+     * Drops cached roles and API keys of the user.
+     */
+    public void invalidateUser(String username) {
+        synchronized (this) {
+            generation++;
+            roles.entries.remove(username);
+            apiKeys.entries.values().removeIf(entry -> entry.value.username().equals(username));
+        }
+    }
+
+    /**
+     * Drops cached roles of all users, e.g. when a team is deleted.
+     */
+    public void invalidateRoles() {
+        synchronized (this) {
+            generation++;
+            roles.entries.clear();
+        }
+    }
+
+    @Scheduled(every = "{horreum.auth.access.flush}")
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    @Transactional
+    public void flushAccess() {
+        int updated = 0;
+        for (Map.Entry<Long, Instant> access : pendingAccess.entrySet()) {
+            // if the key has been used meanwhile the newer timestamp stays pending
+            if (pendingAccess.remove(access.getKey(), access.getValue())) {
+                UserApiKey.update("access = ?1 WHERE id = ?2 AND (access IS NULL OR access < ?1)", access.getValue(),
+                        access.getKey());
+                updated++;
+            }
+        }
+        if (updated > 0) {
+            Log.debugf("Updated last access of %d API keys", updated);
+        }
+    }
+
+    private <K, V> void put(ExpiringMap<K, V> map, K key, V value, long loadedGeneration) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (loadedGeneration != generation) {
+                // the data could have been loaded before a concurrent change was committed
+                return;
+            }
+            map.put(key, new Entry<>(value, now + ttl.toMillis()), now);
+        }
+    }
+
+    public record ApiKey(long id, String username) {
+    }
+
+    private record Entry<V>(V value, long expires) {
+    }
+
+    private final class ExpiringMap<K, V> {
+        private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+        // entries in the order of insertion, which is the order of expiration as all of them have the same TTL;
+        // entries replaced or removed meanwhile are skipped once they get to the head
+        private final ArrayDeque<Map.Entry<K, Entry<V>>> insertionOrder = new ArrayDeque<>();
+
+        V get(K key) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            } else if (entry.expires < System.currentTimeMillis()) {
+                entries.remove(key, entry);
+                return null;
+            }
+            return entry.value;
+        }
+
+        // must be called with the lock of the cache held
+        void put(K key, Entry<V> entry, long now) {
+            entries.put(key, entry);
+            insertionOrder.add(Map.entry(key, entry));
+            Map.Entry<K, Entry<V>> head;
+            while ((head = insertionOrder.peek()) != null) {
+                boolean current = entries.get(head.getKey()) == head.getValue();
+                if (current && head.getValue().expires >= now && entries.size() <= maxSize
+                        && insertionOrder.size() <= 2 * maxSize) {
+                    break;
+                }
+                insertionOrder.poll();
+                if (current) {
+                    entries.remove(head.getKey(), head.getValue());
+                }
+            }
+        }
+    }
+}
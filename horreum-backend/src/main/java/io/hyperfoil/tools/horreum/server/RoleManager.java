@@ -2,12 +2,15 @@ package io.hyperfoil.tools.horreum.server;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
+import jakarta.transaction.Status;
 import jakarta.transaction.SystemException;
 import jakarta.transaction.TransactionManager;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 
 import io.hyperfoil.tools.horreum.svc.Roles;
 import io.quarkus.logging.Log;
@@ -19,6 +22,8 @@ public class RoleManager {
     static final String SET_ROLES = "SELECT current_setting('horreum.userroles', true), set_config('horreum.userroles', ?, true)";
     static final CloseMe NOOP = () -> {
     };
+    // key of the transaction resource holding the roles currently set in the transaction
+    private static final Object CURRENT_ROLES = new Object();
 
     @Inject
     EntityManager em;
@@ -26,6 +31,12 @@ public class RoleManager {
     @Inject
     TransactionManager txManager;
 
+    @Inject
+    TransactionSynchronizationRegistry txRegistry;
+
+    private final LongAdder issuedSwitches = new LongAdder();
+    private final LongAdder skippedSwitches = new LongAdder();
+
     String setRoles(Iterable<String> roles) {
         return setRoles(String.join(",", roles));
     }
@@ -34,7 +45,19 @@ public class RoleManager {
         if (roles == null || roles.isEmpty() || Roles.HORREUM_SYSTEM.equals(roles)) {
             return "";
         }
+        // the setting is local to the transaction, so we can remember it only while the transaction is active
+        boolean active = txRegistry.getTransactionStatus() == Status.STATUS_ACTIVE;
+        if (active && roles.equals(txRegistry.getResource(CURRENT_ROLES))) {
+            // the query would flush pending changes; keep doing that so that the order of statements does not change
+            em.flush();
+            skippedSwitches.increment();
+            return roles;
+        }
         Object[] row = (Object[]) em.createNativeQuery(SET_ROLES).setParameter(1, roles).getSingleResult();
+        issuedSwitches.increment();
+        if (active) {
+            txRegistry.putResource(CURRENT_ROLES, roles);
+        }
 
         if (Log.isDebugEnabled()) { // enable with: `quarkus.log.category."io.hyperfoil.tools.horreum.server.RoleManager".level=DEBUG`
             try {
@@ -47,6 +70,20 @@ public class RoleManager {
         return (String) row[0];
     }
 
+    /**
+     * @return number of queries setting the roles issued since startup
+     */
+    public long getIssuedSwitches() {
+        return issuedSwitches.sum();
+    }
+
+    /**
+     * @return number of role switches skipped since startup because the transaction already had the same roles
+     */
+    public long getSkippedSwitches() {
+        return skippedSwitches.sum();
+    }
+
     public CloseMe withRoles(Iterable<String> roles) {
         if (roles == null || !roles.iterator().hasNext()) {
             return NOOP;
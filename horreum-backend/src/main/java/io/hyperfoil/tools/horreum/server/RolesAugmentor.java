@@ -1,5 +1,10 @@
 package io.hyperfoil.tools.horreum.server;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.inject.Instance;
 import jakarta.inject.Inject;
@@ -31,6 +36,9 @@ public class RolesAugmentor implements SecurityIdentityAugmentor {
     @Inject
     Instance<UserBackEnd> backend;
 
+    @Inject
+    IdentityCache identityCache;
+
     @Override
     public Uni<SecurityIdentity> augment(SecurityIdentity identity, AuthenticationRequestContext context) {
         return identity.isAnonymous() ? Uni.createFrom().item(identity) : context.runBlocking(() -> addHorreumRoles(identity));
@@ -46,7 +54,6 @@ public class RolesAugmentor implements SecurityIdentityAugmentor {
 
     private SecurityIdentity rolesFromDB(SecurityIdentity identity) {
         String username = identity.getPrincipal().getName();
-        String previousRoles = roleManager.setRoles(username);
         try {
             QuarkusSecurityIdentity.Builder builder;
             if (override) {
@@ -59,7 +66,14 @@ public class RolesAugmentor implements SecurityIdentityAugmentor {
             } else {
                 builder = QuarkusSecurityIdentity.builder(identity);
             }
-            backend.get().getRoles(username).forEach(builder::addRole);
+            userRoles(username, () -> {
+                String previousRoles = roleManager.setRoles(username);
+                try {
+                    return backend.get().getRoles(username);
+                } finally {
+                    roleManager.setRoles(previousRoles);
+                }
+            }).forEach(builder::addRole);
             return builder.build();
         } catch (Exception e) {
             if (override) {
@@ -67,8 +81,6 @@ public class RolesAugmentor implements SecurityIdentityAugmentor {
             } else {
                 return identity; // ignore exception when the user does not exist
             }
-        } finally {
-            roleManager.setRoles(previousRoles);
         }
     }
 
@@ -76,10 +88,22 @@ public class RolesAugmentor implements SecurityIdentityAugmentor {
         // no roles mean authentication from a horreum auth token. only in that case fetch roles from keycloak
         if (identity.getRoles().isEmpty()) {
             QuarkusSecurityIdentity.Builder builder = QuarkusSecurityIdentity.builder(identity);
-            backend.get().getRoles(identity.getPrincipal().getName()).forEach(builder::addRole);
+            String username = identity.getPrincipal().getName();
+            userRoles(username, () -> backend.get().getRoles(username)).forEach(builder::addRole);
             return builder.build();
         } else {
             return identity;
         }
     }
+
+    private Collection<String> userRoles(String username, Supplier<List<String>> loader) {
+        Set<String> roles = identityCache.getRoles(username);
+        if (roles != null) {
+            return roles;
+        }
+        long generation = identityCache.generation();
+        List<String> loaded = loader.get();
+        identityCache.putRoles(username, loaded, generation);
+        return loaded;
+    }
 }
@@ -28,7 +28,6 @@ import io.hyperfoil.tools.horreum.api.data.Test;
 import io.hyperfoil.tools.horreum.api.data.TestExport;
 import io.hyperfoil.tools.horreum.api.internal.services.ActionService;
 import io.hyperfoil.tools.horreum.api.services.ExperimentService;
-import io.hyperfoil.tools.horreum.entity.ActionLogDAO;
 import io.hyperfoil.tools.horreum.entity.PersistentLogDAO;
 import io.hyperfoil.tools.horreum.entity.data.ActionDAO;
 import io.hyperfoil.tools.horreum.entity.data.AllowedSiteDAO;
@@ -60,6 +59,9 @@ public class ActionServiceImpl implements ActionService {
     @Inject
     TestServiceImpl testService;
 
+    @Inject
+    PersistentLogSink logSink;
+
     @PostConstruct()
     public void postConstruct() {
         plugins = actionPlugins.stream().collect(Collectors.toMap(ActionPlugin::type, Function.identity()));
@@ -68,7 +70,7 @@ public class ActionServiceImpl implements ActionService {
     private void executeActions(ActionEvent event, int testId, Object payload, boolean notify) {
         List<ActionDAO> actions = getActions(event, testId);
         if (actions.isEmpty()) {
-            new ActionLogDAO(PersistentLogDAO.DEBUG, testId, event.name(), null, "No actions found.").persist();
+            logSink.actionLog(testId, event.name(), null, PersistentLogDAO.DEBUG, "No actions found.");
             return;
         }
         for (ActionDAO action : actions) {
@@ -81,8 +83,8 @@ public class ActionServiceImpl implements ActionService {
                 ActionPlugin plugin = plugins.get(action.type);
                 if (plugin == null) {
                     Log.errorf("No plugin for action type %s", action.type);
-                    new ActionLogDAO(PersistentLogDAO.ERROR, testId, event.name(), action.type,
-                            "No plugin for action type " + action.type).persist();
+                    logSink.actionLog(testId, event.name(), action.type, PersistentLogDAO.ERROR,
+                            "No plugin for action type " + action.type);
                     continue;
                 }
                 plugin.execute(action.config, action.secrets, payload).subscribe()
@@ -90,14 +92,13 @@ public class ActionServiceImpl implements ActionService {
                         }, throwable -> logActionError(testId, event.name(), action.type, throwable));
             } catch (Exception e) {
                 Log.errorf(e, "Failed to invoke action %d", action.id);
-                new ActionLogDAO(PersistentLogDAO.ERROR, testId, event.name(), action.type,
-                        "Failed to invoke: " + e.getMessage()).persist();
-                new ActionLogDAO(PersistentLogDAO.DEBUG, testId, event.name(), action.type,
+                logSink.actionLog(testId, event.name(), action.type, PersistentLogDAO.ERROR,
+                        "Failed to invoke: " + e.getMessage());
+                logSink.actionLog(testId, event.name(), action.type, PersistentLogDAO.DEBUG,
                         "Configuration: <pre>\n<code>" + action.config.toPrettyString() +
                                 "\n<code></pre>Payload: <pre>\n<code>"
                                 + Util.OBJECT_MAPPER.valueToTree(payload).toPrettyString() +
-                                "</code>\n</pre>")
-                        .persist();
+                                "</code>\n</pre>");
             }
         }
     }
@@ -105,6 +106,7 @@ public class ActionServiceImpl implements ActionService {
     void logActionError(int testId, String event, String type, Throwable throwable) {
         Log.errorf("Error executing action '%s' for event %s on test %d: %s: %s",
                 type, event, testId, throwable.getClass().getName(), throwable.getMessage());
+        // the log sink writes synchronously when its buffer is full, which must not happen on the event loop
         Util.executeBlocking(vertx, CachedSecurityIdentity.ANONYMOUS, Uni.createFrom().item(() -> {
             doLogActionError(testId, event, type, throwable);
             return null;
@@ -115,10 +117,8 @@ public class ActionServiceImpl implements ActionService {
         });
     }
 
-    @WithRoles(extras = Roles.HORREUM_SYSTEM)
-    @Transactional(Transactional.TxType.REQUIRES_NEW)
     void doLogActionError(int testId, String event, String type, Throwable throwable) {
-        new ActionLogDAO(PersistentLogDAO.ERROR, testId, event, type, throwable.getMessage()).persist();
+        logSink.actionLog(testId, event, type, PersistentLogDAO.ERROR, throwable.getMessage());
     }
 
     @WithRoles(extras = Roles.HORREUM_SYSTEM)
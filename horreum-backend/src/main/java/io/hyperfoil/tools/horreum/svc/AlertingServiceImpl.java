@@ -18,6 +18,7 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -42,6 +43,7 @@ import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.hibernate.Hibernate;
 import org.hibernate.Session;
 import org.hibernate.query.NativeQuery;
+import org.hibernate.query.SelectionQuery;
 import org.hibernate.type.StandardBasicTypes;
 
 import com.fasterxml.jackson.databind.JsonNode;
@@ -61,6 +63,7 @@ import io.hyperfoil.tools.horreum.changedetection.ChangeDetectionException;
 import io.hyperfoil.tools.horreum.changedetection.ChangeDetectionModel;
 import io.hyperfoil.tools.horreum.changedetection.ChangeDetectionModelResolver;
 import io.hyperfoil.tools.horreum.changedetection.ModelType;
+import io.hyperfoil.tools.horreum.changedetection.RunningStatistics;
 import io.hyperfoil.tools.horreum.entity.FingerprintDAO;
 import io.hyperfoil.tools.horreum.entity.PersistentLogDAO;
 import io.hyperfoil.tools.horreum.entity.alerting.*;
@@ -73,7 +76,6 @@ import io.hyperfoil.tools.horreum.mapper.*;
 import io.hyperfoil.tools.horreum.server.WithRoles;
 import io.quarkus.hibernate.orm.panache.PanacheEntityBase;
 import io.quarkus.logging.Log;
-import io.quarkus.panache.common.Parameters;
 import io.quarkus.runtime.Startup;
 import io.quarkus.scheduler.Scheduled;
 import io.quarkus.security.identity.SecurityIdentity;
@@ -174,12 +176,9 @@ public class AlertingServiceImpl implements AlertingService {
             DISTINCT ON(variable_id) variable_id AS variable,
             EXTRACT(EPOCH FROM timestamp) * 1000 AS timestamp
          FROM datapoint dp
-         LEFT JOIN fingerprint fp ON fp.dataset_id = dp.dataset_id
-         WHERE
-            ((fp.fingerprint IS NULL AND (?1)::jsonb IS NULL) OR json_equals(fp.fingerprint, (?1)::jsonb))
-            AND variable_id = ANY(?2)
+         WHERE %s AND variable_id = ANY(?2)
          ORDER BY variable_id, timestamp DESC
-         """;
+         """.formatted(FingerprintDAO.hashMatches("dp", 1, 3));
     //@formatter:on
     private static final Instant LONG_TIME_AGO = Instant.ofEpochSecond(0);
     private static final Instant VERY_DISTANT_FUTURE = Instant.parse("2666-06-06T06:06:06.00Z");
@@ -220,15 +219,14 @@ public class AlertingServiceImpl implements AlertingService {
     @Inject
     ChangeDetectionModelResolver modelResolver;
 
+    @Inject
+    PersistentLogSink logSink;
+
     static ConcurrentHashMap<Integer, AtomicInteger> retryCounterSet = new ConcurrentHashMap<>();
 
     // entries can be removed from timer thread while normally this is updated from one of blocking threads
     private final ConcurrentMap<Integer, Recalculation> recalcProgress = new ConcurrentHashMap<>();
 
-    // A new datapoint invalidates anything past its timestamp. Any attempt to recalculate starts
-    // at the timestamp.
-    private final ConcurrentMap<VarAndFingerprint, UpTo> validUpTo = new ConcurrentHashMap<>();
-
     static {
         System.setProperty("polyglot.engine.WarnInterpreterOnly", "false");
     }
@@ -247,10 +245,17 @@ public class AlertingServiceImpl implements AlertingService {
             if (retryCounter < labelCalcRetries) {
                 Log.infof("Retrying labels update for dataset %d, attempt %d/%d", event.datasetId, retryCounter,
                         this.labelCalcRetries);
-                vertx.setTimer(1000, timerId -> messageBus.executeForTest(event.datasetId, () -> Util.withTx(tm, () -> {
-                    onLabelsUpdated(event);
-                    return null;
-                })));
+                vertx.setTimer(1000, timerId -> {
+                    try {
+                        messageBus.executeForTest(event.datasetId, () -> Util.withTx(tm, () -> {
+                            onLabelsUpdated(event);
+                            return null;
+                        }));
+                    } catch (RejectedExecutionException e) {
+                        Log.warnf(e, "Cannot retry labels update for dataset %d", event.datasetId);
+                        retryCounterSet.remove(event.datasetId);
+                    }
+                });
                 return;
             } else {
                 //we have retried `horreum.alerting.updateLabel.retries` number of times, log a warning and stop retrying
@@ -461,7 +466,8 @@ public class AlertingServiceImpl implements AlertingService {
             }
         }
         Instant finalTimestamp = timestamp;
-        Util.evaluateWithCombinationFunction(values, data -> data.calculation, data -> data.value,
+        List<VariableValue> variableValues = new ArrayList<>(values.size());
+        Util.evaluateWithCombinationFunction(values, data -> data.calculation, data -> data.value, Util.JsInputMode.PROXY,
                 (data, result) -> {
                     Double value = Util.toDoubleOrNull(result,
                             error -> logCalculationMessage(dataset, PersistentLogDAO.ERROR,
@@ -469,7 +475,7 @@ public class AlertingServiceImpl implements AlertingService {
                             info -> logCalculationMessage(dataset, PersistentLogDAO.INFO, "Evaluation of variable %s: %s",
                                     data.fullName(), info));
                     if (value != null) {
-                        createDataPoint(dataset, finalTimestamp, data.variableId, value, notify, recalculation);
+                        variableValues.add(new VariableValue(data.variableId, value));
                     } else {
                         if (recalculation != null) {
                             recalculation.datasetsWithoutValue.put(dataset.id, dataset.getInfo());
@@ -511,7 +517,7 @@ public class AlertingServiceImpl implements AlertingService {
                         }
                         missingValueVariables.add(data.fullName());
                     } else {
-                        createDataPoint(dataset, finalTimestamp, data.variableId, value, notify, recalculation);
+                        variableValues.add(new VariableValue(data.variableId, value));
                     }
                 },
                 (data, exception, code) -> logCalculationMessage(dataset, PersistentLogDAO.ERROR,
@@ -519,6 +525,7 @@ public class AlertingServiceImpl implements AlertingService {
                         code),
                 output -> logCalculationMessage(dataset, PersistentLogDAO.DEBUG,
                         "Output while calculating variable: <pre>%s</pre>", output));
+        createDataPoints(dataset, finalTimestamp, variableValues, notify, recalculation);
         if (!missingValueVariables.isEmpty()) {
             MissingValuesEvent event = new MissingValuesEvent(dataset.getInfo(), missingValueVariables, notify);
             if (mediator.testMode())
@@ -533,32 +540,75 @@ public class AlertingServiceImpl implements AlertingService {
         mediator.dataPointsProcessed(event);
     }
 
+    private record VariableValue(int variableId, double value) {
+    }
+
+    /**
+     * Creates (or with {@link Recalculation#clearDatapoints} unset, loads) datapoints of all variables of the dataset
+     * and runs change detection for each of them. Datapoints are inserted in JDBC batches with a single flush.
+     */
     @Transactional
-    void createDataPoint(DatasetDAO dataset, Instant timestamp, int variableId, double value, boolean notify,
+    void createDataPoints(DatasetDAO dataset, Instant timestamp, List<VariableValue> values, boolean notify,
             Recalculation recalculation) {
-        DataPointDAO dataPoint = null;
-        VariableDAO variableDAO = VariableDAO.findById(variableId);
+        if (values.isEmpty()) {
+            return;
+        }
+        Optional<FingerprintDAO> fp = FingerprintDAO.findByIdOptional(dataset.id);
+        JsonNode fingerprint = fp.map(f -> f.fingerprint).orElse(null);
+        List<DataPointDAO> dataPoints = new ArrayList<>(values.size());
         if (recalculation.clearDatapoints) {
-            dataPoint = new DataPointDAO();
-            dataPoint.variable = variableDAO;
-            dataPoint.dataset = dataset;
-            dataPoint.timestamp = timestamp;
-            dataPoint.value = value;
-            dataPoint.persistAndFlush();
+            long fpHash = fp.map(f -> f.fpHash != null ? f.fpHash : FingerprintDAO.hash(f.fingerprint))
+                    .orElse(FingerprintDAO.NULL_HASH);
+            Map<Integer, VariableDAO> variables = VariableDAO.<VariableDAO> list("testId", dataset.testid).stream()
+                    .collect(Collectors.toMap(v -> v.id, Function.identity()));
+            for (VariableValue value : values) {
+                VariableDAO variable = variables.get(value.variableId());
+                if (variable == null) {
+                    Log.warnf("Could not create datapoint for dataset %d, could not find variable by id %d", dataset.id,
+                            value.variableId());
+                    continue;
+                }
+                DataPointDAO dataPoint = new DataPointDAO();
+                dataPoint.variable = variable;
+                dataPoint.dataset = dataset;
+                dataPoint.timestamp = timestamp;
+                dataPoint.value = value.value();
+                dataPoint.fpHash = fpHash;
+                dataPoint.persist();
+                dataPoints.add(dataPoint);
+            }
+            em.flush();
         } else {
-            dataPoint = DataPointDAO.find("dataset = :dataset and variable = :variable",
-                    Parameters.with("dataset", dataset).and("variable", variableDAO)).firstResult();
+            Map<Integer, DataPointDAO> existing = DataPointDAO
+                    .<DataPointDAO> list("SELECT dp FROM DataPoint dp JOIN FETCH dp.variable WHERE dp.dataset = ?1", dataset)
+                    .stream()
+                    .collect(Collectors.toMap(dp -> dp.variable.id, Function.identity(), (dp1, dp2) -> dp1));
+            for (VariableValue value : values) {
+                DataPointDAO dataPoint = existing.get(value.variableId());
+                if (dataPoint != null) {
+                    dataPoints.add(dataPoint);
+                } else {
+                    Log.debugf("DataPoint for dataset %d, variable %d, timestamp %s, value %f not found", dataset.id,
+                            value.variableId(), timestamp, value.value());
+                }
+            }
         }
-        if (dataPoint != null) {
-            DataPoint.Event event = new DataPoint.Event(DataPointMapper.from(dataPoint), dataset.testid, notify);
-            onNewDataPoint(event, recalculation.lastDatapoint); //Test failure if we do not start a new thread and new tx
-
-            if (mediator.testMode())
+        if (dataPoints.isEmpty()) {
+            return;
+        }
+        // all the datapoints must be invalidated before any change detection runs
+        dataPoints.stream().collect(Collectors.groupingBy(dp -> dp.timestamp,
+                Collectors.mapping(dp -> dp.variable.id, Collectors.toList())))
+                .forEach((ts, variableIds) -> invalidateUpTo(variableIds, fingerprint, ts));
+        for (DataPointDAO dataPoint : dataPoints) {
+            Log.debugf("Processing new datapoint for dataset %d at %s, variable %d (%s), value %f",
+                    dataset.id, dataPoint.timestamp, dataPoint.variable.id, dataPoint.variable.name, dataPoint.value);
+            runChangeDetection(dataPoint.variable, fingerprint, notify, true, recalculation.lastDatapoint);
+            if (mediator.testMode()) {
+                DataPoint.Event event = new DataPoint.Event(DataPointMapper.from(dataPoint), dataset.testid, notify);
                 Util.registerTxSynchronization(tm,
                         txStatus -> mediator.publishEvent(AsyncEventChannels.DATAPOINT_NEW, dataset.testid, event));
-        } else {
-            Log.debugf("DataPoint for dataset %d, variable %d, timestamp %s, value %f not found", dataset.id, variableId,
-                    timestamp, value);
+            }
         }
     }
 
@@ -569,8 +619,7 @@ public class AlertingServiceImpl implements AlertingService {
     private void logCalculationMessage(int testId, int datasetId, int level, String format, Object... args) {
         String msg = args.length == 0 ? format : format.formatted(args);
         Log.tracef("Logging %s for test %d, dataset %d: %s", PersistentLogDAO.logLevel(level), testId, datasetId, msg);
-        new DatasetLogDAO(em.getReference(TestDAO.class, testId), em.getReference(DatasetDAO.class, datasetId),
-                level, "variables", msg).persist();
+        logSink.datasetLog(testId, datasetId, level, "variables", msg);
     }
 
     private void logMissingDataMessage(DatasetDAO dataSet, int level, String format, Object... args) {
@@ -580,49 +629,13 @@ public class AlertingServiceImpl implements AlertingService {
     private void logMissingDataMessage(int testId, int datasetId, int level, String format, Object... args) {
         String msg = args.length == 0 ? format : format.formatted(args);
         Log.tracef("Logging %s for test %d, dataset %d: %s", PersistentLogDAO.logLevel(level), testId, datasetId, msg);
-        new DatasetLogDAO(em.getReference(TestDAO.class, testId), em.getReference(DatasetDAO.class, datasetId),
-                level, "missingdata", msg).persist();
+        logSink.datasetLog(testId, datasetId, level, "missingdata", msg);
     }
 
     private void logChangeDetectionMessage(int testId, int datasetId, int level, String format, Object... args) {
         String msg = args.length == 0 ? format : format.formatted(args);
         Log.tracef("Logging %s for test %d, dataset %d: %s", PersistentLogDAO.logLevel(level), testId, datasetId, msg);
-        new DatasetLogDAO(em.getReference(TestDAO.class, testId), em.getReference(DatasetDAO.class, datasetId),
-                level, "changes", msg).persist();
-    }
-
-    @WithRoles(extras = Roles.HORREUM_SYSTEM)
-    @Transactional
-    void onNewDataPoint(DataPoint.Event event, boolean lastDatapoint) {
-        DataPoint dataPoint = event.dataPoint;
-        if (dataPoint.variable != null && dataPoint.variable.id != null) {
-            VariableDAO variable = VariableDAO.findById(dataPoint.variable.id);
-            if (variable != null) {
-                Log.debugf("Processing new datapoint for dataset %d at %s, variable %d (%s), value %f",
-                        dataPoint.datasetId, dataPoint.timestamp,
-                        variable.id, variable.name, dataPoint.value);
-                JsonNode fingerprint = FingerprintDAO.<FingerprintDAO> findByIdOptional(dataPoint.datasetId)
-                        .map(fp -> fp.fingerprint).orElse(null);
-
-                VarAndFingerprint key = new VarAndFingerprint(variable.id, fingerprint);
-                Log.debugf("Invalidating variable %d FP %s timestamp %s, current value is %s", variable.id, fingerprint,
-                        dataPoint.timestamp, validUpTo.get(key));
-                validUpTo.compute(key, (ignored, current) -> {
-                    if (current == null || !dataPoint.timestamp.isAfter(current.timestamp)) {
-                        return new UpTo(dataPoint.timestamp, false);
-                    } else {
-                        return current;
-                    }
-                });
-                runChangeDetection(VariableDAO.findById(variable.id), fingerprint, event.notify, true, lastDatapoint);
-            } else {
-                Log.warnf("Could not process new datapoint for dataset %d at %s, could not find variable by id %d ",
-                        dataPoint.datasetId, dataPoint.timestamp, dataPoint.variable == null ? -1 : dataPoint.variable.id);
-            }
-        } else {
-            Log.warnf("Could not process new datapoint for dataset %d when the supplied variable or id reference is null ",
-                    dataPoint.datasetId);
-        }
+        logSink.datasetLog(testId, datasetId, level, "changes", msg);
     }
 
     @WithRoles(extras = Roles.HORREUM_SYSTEM)
@@ -633,15 +646,18 @@ public class AlertingServiceImpl implements AlertingService {
 
     private void runChangeDetection(VariableDAO variable, JsonNode fingerprint, boolean notify, boolean expectExists,
             boolean lastDatapoint) {
-        UpTo valid = validUpTo.get(new VarAndFingerprint(variable.id, fingerprint));
+        UpTo valid = loadUpTo(variable.id, fingerprint);
+        long fpHash = FingerprintDAO.hash(fingerprint);
         Instant nextTimestamp = session.createNativeQuery(
-                "SELECT MIN(timestamp) FROM datapoint dp LEFT JOIN fingerprint fp ON dp.dataset_id = fp.dataset_id " +
-                        "WHERE dp.variable_id = ?1 AND (timestamp > ?2 OR (timestamp = ?2 AND ?3)) AND json_equals(fp.fingerprint, ?4)",
+                "SELECT MIN(timestamp) FROM datapoint dp " +
+                        "WHERE dp.variable_id = ?1 AND " + FingerprintDAO.hashMatches("dp", 4, 5) +
+                        " AND (timestamp > ?2 OR (timestamp = ?2 AND ?3))",
                 Instant.class)
                 .setParameter(1, variable.id)
                 .setParameter(2, valid != null ? valid.timestamp : LONG_TIME_AGO, StandardBasicTypes.INSTANT)
                 .setParameter(3, valid == null || !valid.inclusive)
-                .setParameter(4, fingerprint, JsonBinaryType.INSTANCE)
+                .setParameter(4, fpHash)
+                .setParameter(5, fingerprint, JsonBinaryType.INSTANCE)
                 .getResultStream().filter(Objects::nonNull).findFirst().orElse(null);
         if (nextTimestamp == null) {
             Log.debugf("No further datapoints for change detection");
@@ -650,49 +666,66 @@ public class AlertingServiceImpl implements AlertingService {
 
         // this should happen only after reboot, let's start with last change
         if (valid != null) {
-            int numDeleted = session.createNativeQuery("DELETE FROM change cc WHERE cc.id IN (" +
-                    "SELECT id FROM change c LEFT JOIN fingerprint fp ON c.dataset_id = fp.dataset_id " +
-                    "WHERE NOT c.confirmed AND c.variable_id = ?1 AND (c.timestamp > ?2 OR (c.timestamp = ?2 AND ?3)) " +
-                    "AND json_equals(fp.fingerprint, ?4))", int.class)
+            int numDeleted = session.createNativeQuery("DELETE FROM change c " +
+                    "WHERE NOT c.confirmed AND c.variable_id = ?1 AND " + FingerprintDAO.hashMatches("c", 4, 5) +
+                    " AND (c.timestamp > ?2 OR (c.timestamp = ?2 AND ?3))", int.class)
                     .setParameter(1, variable.id)
                     .setParameter(2, valid.timestamp, StandardBasicTypes.INSTANT)
                     .setParameter(3, !valid.inclusive)
-                    .setParameter(4, fingerprint, JsonBinaryType.INSTANCE)
+                    .setParameter(4, fpHash)
+                    .setParameter(5, fingerprint, JsonBinaryType.INSTANCE)
                     .executeUpdate();
             Log.debugf("Deleted %d changes %s %s for variable %d, fingerprint %s", numDeleted, valid.inclusive ? ">" : ">=",
                     valid.timestamp, variable.id, fingerprint);
         }
 
-        var changeQuery = session
-                .createQuery("SELECT c FROM Change c LEFT JOIN Fingerprint fp ON c.dataset.id = fp.dataset.id " +
-                        "WHERE c.variable = ?1 AND (c.timestamp < ?2 OR (c.timestamp = ?2 AND ?3 = TRUE)) AND " +
-                        "TRUE = function('json_equals', fp.fingerprint, ?4) " +
-                        "ORDER by c.timestamp DESC", ChangeDAO.class);
-        changeQuery
-                .setParameter(1, variable)
-                .setParameter(2, valid != null ? valid.timestamp : VERY_DISTANT_FUTURE)
-                .setParameter(3, valid == null || valid.inclusive)
-                .setParameter(4, fingerprint, JsonBinaryType.INSTANCE);
-        ChangeDAO lastChange = changeQuery.setMaxResults(1).getResultStream().findFirst().orElse(null);
-
-        Instant changeTimestamp = LONG_TIME_AGO;
-        if (lastChange != null) {
-            Log.debugf("Filtering DP between %s (change %d) and %s", lastChange.timestamp, lastChange.id, nextTimestamp);
-            changeTimestamp = lastChange.timestamp;
+        List<ChangeDetectionDAO> detections = ChangeDetectionDAO.<ChangeDetectionDAO> find("variable", variable).list();
+        // When we have statistics of all datapoints since the last change and the models can use them
+        // it's sufficient to load only the most recent datapoints.
+        int recentDataPoints = valid != null && valid.statistics != null ? 1 : -1;
+        for (ChangeDetectionDAO detection : detections) {
+            ChangeDetectionModel model = modelResolver.getModel(ChangeDetectionModelType.fromString(detection.model));
+            if (recentDataPoints > 0 && model != null && shouldRun(model, lastDatapoint)) {
+                int required = model.recentDataPoints(detection.config);
+                recentDataPoints = required < 0 ? -1 : Math.max(recentDataPoints, required);
+            }
         }
 
-        List<DataPointDAO> dataPoints = session.createQuery(
-                "SELECT dp FROM DataPoint dp LEFT JOIN Fingerprint fp ON dp.dataset.id = fp.dataset.id " +
-                        "JOIN dp.dataset " + // ignore datapoints (that were not deleted yet) from deleted datasets
-                        "WHERE dp.variable = ?1 AND dp.timestamp BETWEEN ?2 AND ?3 " +
-                        "AND TRUE = function('json_equals', fp.fingerprint, ?4) " +
-                        "ORDER BY dp.timestamp DESC, dp.dataset.id DESC",
-                DataPointDAO.class)
-                .setParameter(1, variable)
-                .setParameter(2, changeTimestamp)
-                .setParameter(3, nextTimestamp)
-                .setParameter(4, fingerprint, JsonBinaryType.INSTANCE)
-                .getResultList();
+        Instant changeTimestamp;
+        final List<DataPointDAO> dataPoints;
+        final RunningStatistics statistics;
+        if (recentDataPoints > 0) {
+            changeTimestamp = valid.changeTimestamp;
+            Log.debugf("Using %d recent DP between %s and %s, previous statistics %s", recentDataPoints, changeTimestamp,
+                    nextTimestamp, valid.statistics);
+            dataPoints = dataPointsQuery(variable, fingerprint, changeTimestamp, nextTimestamp)
+                    .setMaxResults(recentDataPoints).getResultList();
+            statistics = valid.statistics;
+            statistics.add(dataPointStatistics(variable.id, fingerprint, valid.timestamp, false, nextTimestamp));
+        } else {
+            var changeQuery = session
+                    .createQuery("SELECT c FROM Change c " +
+                            "WHERE c.variable = ?1 AND " + FingerprintDAO.hqlHashMatches("c", 4, 5) +
+                            " AND (c.timestamp < ?2 OR (c.timestamp = ?2 AND ?3 = TRUE)) " +
+                            "ORDER by c.timestamp DESC", ChangeDAO.class);
+            changeQuery
+                    .setParameter(1, variable)
+                    .setParameter(2, valid != null ? valid.timestamp : VERY_DISTANT_FUTURE)
+                    .setParameter(3, valid == null || valid.inclusive)
+                    .setParameter(4, fpHash)
+                    .setParameter(5, fingerprint, JsonBinaryType.INSTANCE);
+            ChangeDAO lastChange = changeQuery.setMaxResults(1).getResultStream().findFirst().orElse(null);
+
+            changeTimestamp = LONG_TIME_AGO;
+            if (lastChange != null) {
+                Log.debugf("Filtering DP between %s (change %d) and %s", lastChange.timestamp, lastChange.id, nextTimestamp);
+                changeTimestamp = lastChange.timestamp;
+            }
+            dataPoints = dataPointsQuery(variable, fingerprint, changeTimestamp, nextTimestamp).getResultList();
+            statistics = new RunningStatistics();
+            dataPoints.forEach(dp -> statistics.add(dp.value));
+        }
+        Instant[] lastChangeTimestamp = new Instant[] { changeTimestamp };
         // Last datapoint is already in the list
         if (dataPoints.isEmpty()) {
             if (expectExists) {
@@ -700,17 +733,16 @@ public class AlertingServiceImpl implements AlertingService {
             }
         } else {
             int datasetId = dataPoints.get(0).getDatasetId();
-            for (ChangeDetectionDAO detection : ChangeDetectionDAO.<ChangeDetectionDAO> find("variable", variable).list()) {
+            for (ChangeDetectionDAO detection : detections) {
                 ChangeDetectionModel model = modelResolver.getModel(ChangeDetectionModelType.fromString(detection.model));
                 if (model == null) {
                     logChangeDetectionMessage(variable.testId, datasetId, PersistentLogDAO.ERROR,
                             "Cannot find change detection model %s", detection.model);
                     continue;
                 }
-                //Only run bulk models on the last datapoint, otherwise run on every datapoint
-                if (model.getType() == ModelType.CONTINOUS || (model.getType() == ModelType.BULK && lastDatapoint)) {
+                if (shouldRun(model, lastDatapoint)) {
                     try {
-                        model.analyze(dataPoints, detection.config, change -> {
+                        Consumer<ChangeDAO> changeConsumer = change -> {
                             logChangeDetectionMessage(variable.testId, datasetId, PersistentLogDAO.DEBUG,
                                     "Change %s detected using datapoints %s", change, reversedAndLimited(dataPoints));
                             DatasetDAO.Info info = session
@@ -727,6 +759,9 @@ public class AlertingServiceImpl implements AlertingService {
                                         return i;
                                     }).getSingleResult();
                             em.persist(change);
+                            if (change.timestamp.isAfter(lastChangeTimestamp[0])) {
+                                lastChangeTimestamp[0] = change.timestamp;
+                            }
                             Hibernate.initialize(change.dataset.run.id);
                             String testName = TestDAO.<TestDAO> findByIdOptional(variable.testId).map(test -> test.name)
                                     .orElse("<unknown>");
@@ -736,7 +771,12 @@ public class AlertingServiceImpl implements AlertingService {
                                 Util.registerTxSynchronization(tm, txStatus -> mediator
                                         .publishEvent(AsyncEventChannels.CHANGE_NEW, change.dataset.testid, event));
                             mediator.executeBlocking(() -> mediator.newChange(event));
-                        });
+                        };
+                        if (recentDataPoints > 0) {
+                            model.analyze(dataPoints, statistics, detection.config, changeConsumer);
+                        } else {
+                            model.analyze(dataPoints, detection.config, changeConsumer);
+                        }
                     } catch (ChangeDetectionException e) {
                         new ChangeDetectionLogDAO(variable, fingerprint, PersistentLogDAO.ERROR, e.getLocalizedMessage())
                                 .persist();
@@ -745,22 +785,130 @@ public class AlertingServiceImpl implements AlertingService {
                 }
             }
         }
+        RunningStatistics nextStatistics = statistics;
+        if (lastChangeTimestamp[0].isAfter(changeTimestamp)) {
+            // datapoints before the new change won't be used anymore
+            nextStatistics = dataPointStatistics(variable.id, fingerprint, lastChangeTimestamp[0], true, nextTimestamp);
+        } else if (changeTimestamp.isAfter(nextTimestamp)) {
+            // this should happen only when there was no state; next time we'll start from a change before nextTimestamp
+            nextStatistics = null;
+        }
+        validateUpTo(variable.id, fingerprint, nextTimestamp, lastChangeTimestamp[0], nextStatistics);
         Util.doAfterCommit(tm, () -> {
-            validateUpTo(variable, fingerprint, nextTimestamp);
             //assume not last datapoint if we have found more
-            messageBus.executeForTest(variable.testId, () -> tryRunChangeDetection(variable, fingerprint, notify, false));
+            try {
+                messageBus.executeFollowUpForTest(variable.testId,
+                        () -> tryRunChangeDetection(variable, fingerprint, notify, false));
+            } catch (RejectedExecutionException e) {
+                Log.errorf(e, "Cannot continue change detection for variable %d, fingerprint %s; recalculate test %d",
+                        variable.id, fingerprint, variable.testId);
+            }
         });
     }
 
-    private void validateUpTo(VariableDAO variable, JsonNode fingerprint, Instant timestamp) {
-        validUpTo.compute(new VarAndFingerprint(variable.id, fingerprint), (ignored, current) -> {
-            Log.debugf("Attempt %s, valid up to %s", timestamp, current);
-            if (current == null || !current.timestamp.isAfter(timestamp)) {
-                return new UpTo(timestamp, true);
-            } else {
-                return current;
-            }
-        });
+    //Only run bulk models on the last datapoint, otherwise run on every datapoint
+    private static boolean shouldRun(ChangeDetectionModel model, boolean lastDatapoint) {
+        return model.getType() == ModelType.CONTINOUS || (model.getType() == ModelType.BULK && lastDatapoint);
+    }
+
+    private SelectionQuery<DataPointDAO> dataPointsQuery(VariableDAO variable, JsonNode fingerprint, Instant from,
+            Instant to) {
+        return session.createQuery(
+                "SELECT dp FROM DataPoint dp " +
+                        "JOIN dp.dataset " + // ignore datapoints (that were not deleted yet) from deleted datasets
+                        "WHERE dp.variable = ?1 AND " + FingerprintDAO.hqlHashMatches("dp", 4, 5) +
+                        " AND dp.timestamp BETWEEN ?2 AND ?3 " +
+                        "ORDER BY dp.timestamp DESC, dp.dataset.id DESC",
+                DataPointDAO.class)
+                .setParameter(1, variable)
+                .setParameter(2, from)
+                .setParameter(3, to)
+                .setParameter(4, FingerprintDAO.hash(fingerprint))
+                .setParameter(5, fingerprint, JsonBinaryType.INSTANCE);
+    }
+
+    private RunningStatistics dataPointStatistics(int variableId, JsonNode fingerprint, Instant from, boolean fromInclusive,
+            Instant to) {
+        Object[] row = session.createNativeQuery(
+                "SELECT count(*) AS count, COALESCE(avg(dp.value), 0) AS mean, " +
+                        "COALESCE(var_pop(dp.value) * count(*), 0) AS m2 " +
+                        "FROM datapoint dp JOIN dataset ON dataset.id = dp.dataset_id " +
+                        "WHERE dp.variable_id = ?1 AND " + FingerprintDAO.hashMatches("dp", 5, 6) + " " +
+                        "AND (dp.timestamp > ?2 OR (dp.timestamp = ?2 AND ?3)) AND dp.timestamp <= ?4",
+                Object[].class)
+                .setParameter(1, variableId)
+                .setParameter(2, from, StandardBasicTypes.INSTANT)
+                .setParameter(3, fromInclusive)
+                .setParameter(4, to, StandardBasicTypes.INSTANT)
+                .setParameter(5, FingerprintDAO.hash(fingerprint))
+                .setParameter(6, fingerprint, JsonBinaryType.INSTANCE)
+                .addScalar("count", StandardBasicTypes.LONG)
+                .addScalar("mean", StandardBasicTypes.DOUBLE)
+                .addScalar("m2", StandardBasicTypes.DOUBLE)
+                .getSingleResult();
+        return new RunningStatistics((long) row[0], (double) row[1], (double) row[2]);
+    }
+
+    private UpTo loadUpTo(int variableId, JsonNode fingerprint) {
+        List<Object[]> rows = session.createNativeQuery(
+                "SELECT valid_up_to, inclusive, change_timestamp, count, mean, m2 FROM changedetection_state " +
+                        "WHERE variable_id = ?1 AND COALESCE(fingerprint, 'null'::jsonb) = COALESCE(?2, 'null'::jsonb) FOR UPDATE",
+                Object[].class)
+                .setParameter(1, variableId)
+                .setParameter(2, fingerprint, JsonBinaryType.INSTANCE)
+                .addScalar("valid_up_to", StandardBasicTypes.INSTANT)
+                .addScalar("inclusive", StandardBasicTypes.BOOLEAN)
+                .addScalar("change_timestamp", StandardBasicTypes.INSTANT)
+                .addScalar("count", StandardBasicTypes.LONG)
+                .addScalar("mean", StandardBasicTypes.DOUBLE)
+                .addScalar("m2", StandardBasicTypes.DOUBLE)
+                .getResultList();
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Object[] row = rows.get(0);
+        RunningStatistics statistics = row[2] == null || row[3] == null ? null
+                : new RunningStatistics((long) row[3], (double) row[4], (double) row[5]);
+        UpTo upTo = new UpTo((Instant) row[0], (boolean) row[1], (Instant) row[2], statistics);
+        Log.debugf("Variable %d FP %s is valid up to %s", variableId, fingerprint, upTo);
+        return upTo;
+    }
+
+    /**
+     * A new datapoint invalidates anything past its timestamp. Any attempt to recalculate starts at the timestamp.
+     */
+    private void invalidateUpTo(List<Integer> variableIds, JsonNode fingerprint, Instant timestamp) {
+        Log.debugf("Invalidating variables %s FP %s timestamp %s", variableIds, fingerprint, timestamp);
+        session.createNativeQuery("INSERT INTO changedetection_state (variable_id, fingerprint, valid_up_to, inclusive) " +
+                "SELECT variable_id, ?2, ?3, false FROM unnest(?1) AS variable_id " +
+                "ON CONFLICT (variable_id, (COALESCE(fingerprint, 'null'::jsonb))) DO UPDATE " +
+                "SET valid_up_to = EXCLUDED.valid_up_to, inclusive = false, change_timestamp = NULL, count = NULL, " +
+                "mean = NULL, m2 = NULL WHERE changedetection_state.valid_up_to >= EXCLUDED.valid_up_to")
+                .setParameter(1, variableIds.stream().mapToInt(Integer::intValue).toArray(), IntArrayType.INSTANCE)
+                .setParameter(2, fingerprint, JsonBinaryType.INSTANCE)
+                .setParameter(3, timestamp, StandardBasicTypes.INSTANT)
+                .executeUpdate();
+    }
+
+    private void validateUpTo(int variableId, JsonNode fingerprint, Instant timestamp, Instant changeTimestamp,
+            RunningStatistics statistics) {
+        Log.debugf("Variable %d FP %s is valid up to %s, statistics since %s: %s", variableId, fingerprint, timestamp,
+                changeTimestamp, statistics);
+        session.createNativeQuery("INSERT INTO changedetection_state " +
+                "(variable_id, fingerprint, valid_up_to, inclusive, change_timestamp, count, mean, m2) " +
+                "VALUES (?1, ?2, ?3, true, ?4, ?5, ?6, ?7) " +
+                "ON CONFLICT (variable_id, (COALESCE(fingerprint, 'null'::jsonb))) DO UPDATE " +
+                "SET valid_up_to = EXCLUDED.valid_up_to, inclusive = true, change_timestamp = EXCLUDED.change_timestamp, " +
+                "count = EXCLUDED.count, mean = EXCLUDED.mean, m2 = EXCLUDED.m2 " +
+                "WHERE changedetection_state.valid_up_to <= EXCLUDED.valid_up_to")
+                .setParameter(1, variableId)
+                .setParameter(2, fingerprint, JsonBinaryType.INSTANCE)
+                .setParameter(3, timestamp, StandardBasicTypes.INSTANT)
+                .setParameter(4, statistics == null ? null : changeTimestamp, StandardBasicTypes.INSTANT)
+                .setParameter(5, statistics == null ? null : statistics.getCount(), StandardBasicTypes.LONG)
+                .setParameter(6, statistics == null ? null : statistics.getMean(), StandardBasicTypes.DOUBLE)
+                .setParameter(7, statistics == null ? null : statistics.getM2(), StandardBasicTypes.DOUBLE)
+                .executeUpdate();
     }
 
     private String reversedAndLimited(List<DataPointDAO> list) {
@@ -954,12 +1102,11 @@ public class AlertingServiceImpl implements AlertingService {
         List<ChangeDAO> changes = session.createNativeQuery("""
                 SELECT change.*
                 FROM change
-                JOIN fingerprint fp ON change.dataset_id = fp.dataset_id
-                WHERE variable_id = ?1
-                   AND json_equals(fp.fingerprint, ?2)
-                """, ChangeDAO.class)
+                WHERE variable_id = ?1 AND %s
+                """.formatted(FingerprintDAO.hashMatches("change", 2, 3)), ChangeDAO.class)
                 .setParameter(1, varId)
-                .setParameter(2, fp, JsonBinaryType.INSTANCE)
+                .setParameter(2, FingerprintDAO.hash(fp))
+                .setParameter(3, fp, JsonBinaryType.INSTANCE)
                 .getResultList();
         return changes.stream().map(ChangeMapper::from).collect(Collectors.toList());
     }
@@ -999,9 +1146,13 @@ public class AlertingServiceImpl implements AlertingService {
             throw ServiceException.forbidden("This user cannot trigger the recalculation");
         }
 
-        messageBus.executeForTest(testId, () -> {
-            startRecalculation(testId, notify, debug, clearDatapoints == null ? true : clearDatapoints, from, to);
-        });
+        try {
+            messageBus.executeForTest(testId, () -> {
+                startRecalculation(testId, notify, debug, clearDatapoints == null ? true : clearDatapoints, from, to);
+            });
+        } catch (RejectedExecutionException e) {
+            throw ServiceException.serviceUnavailable("Too many pending tasks for test " + testId + ", try again later");
+        }
     }
 
     void startRecalculation(int testId, boolean notify, boolean debug, boolean clearDatapoints, Long from, Long to) {
@@ -1029,7 +1180,6 @@ public class AlertingServiceImpl implements AlertingService {
             recalculation.datasets = getDatasetsForRecalculation(testId, from, to, clearDatapoints);
             int numRuns = recalculation.datasets.size();
             Log.debugf("Starting recalculation of test %d, %d runs", testId, numRuns);
-            int completed = 0;
             recalcProgress.put(testId, recalculation);
             //TODO:: this could be more streamlined
             Map<String, Integer> lastDatapoints = new HashMap<>();
@@ -1044,7 +1194,7 @@ public class AlertingServiceImpl implements AlertingService {
                     recalculation.lastDatapoint = false;
                 }
                 recalculateForDataset(datasetId, notify, debug, recalculation);
-                recalculation.progress = 100 * ++completed / numRuns;
+                recalculation.progress = 100 * ++recalculation.completed / numRuns;
             }
 
         } catch (Throwable t) {
@@ -1107,6 +1257,12 @@ public class AlertingServiceImpl implements AlertingService {
         if (recalculation != null) {
             status.totalDatasets = recalculation.datasets.size();
             status.errors = recalculation.errors;
+            if (!recalculation.done) {
+                long now = System.currentTimeMillis();
+                status.throughput = RecalculationEngine.throughput(recalculation.completed, now - recalculation.started);
+                status.eta = RecalculationEngine.eta(recalculation.datasets.size() - recalculation.completed,
+                        status.throughput, now);
+            }
             status.datasetsWithoutValue = recalculation.datasetsWithoutValue.values().stream().map(DatasetMapper::fromInfo)
                     .collect(Collectors.toList());
         }
@@ -1144,10 +1300,12 @@ public class AlertingServiceImpl implements AlertingService {
     @PermitAll
     public List<DatapointLastTimestamp> findLastDatapoints(LastDatapointsParams params) {
         //noinspection unchecked
+        JsonNode fingerprint = Util.parseFingerprint(params.fingerprint);
         return em.createNativeQuery(FIND_LAST_DATAPOINTS)
                 .unwrap(NativeQuery.class)
-                .setParameter(1, Util.parseFingerprint(params.fingerprint), JsonBinaryType.INSTANCE)
+                .setParameter(1, FingerprintDAO.hash(fingerprint))
                 .setParameter(2, params.variables, IntArrayType.INSTANCE)
+                .setParameter(3, fingerprint, JsonBinaryType.INSTANCE)
                 .setTupleTransformer((tuples, aliases) -> {
                     return new DatapointLastTimestamp((int) tuples[0], (Number) tuples[1]);
                 }).getResultList();
@@ -1268,9 +1426,13 @@ public class AlertingServiceImpl implements AlertingService {
         // The recalculations are executed in independent transactions, therefore we need to make sure that
         // this rule is committed in DB before starting to reevaluate it.
         Util.doAfterCommit(tm, () -> {
-            messageBus.executeForTest(testId, () -> {
-                recalculateMissingDataRules(testId, rule);
-            });
+            try {
+                messageBus.executeFollowUpForTest(testId, () -> {
+                    recalculateMissingDataRules(testId, rule);
+                });
+            } catch (RejectedExecutionException e) {
+                Log.errorf(e, "Cannot recalculate missing data rule %d of test %d", rule.id, testId);
+            }
         });
         return rule.id;
     }
@@ -1346,12 +1508,12 @@ public class AlertingServiceImpl implements AlertingService {
 
     @WithRoles(extras = Roles.HORREUM_SYSTEM)
     @Transactional
-    void onDatasetDeleted(int datasetId) {
-        Log.debugf("Removing changes for dataset %d", datasetId);
-        ChangeDAO.delete("dataset.id = ?1 AND confirmed = false", datasetId);
-        DataPointDAO.delete("dataset.id", datasetId);
+    void onRunDatasetsDeleted(int runId) {
+        Log.debugf("Removing changes for datasets of run %d", runId);
+        ChangeDAO.delete("dataset.id IN (SELECT id FROM dataset WHERE run.id = ?1) AND confirmed = false", runId);
+        DataPointDAO.delete("dataset.id IN (SELECT id FROM dataset WHERE run.id = ?1)", runId);
         //Need to make sure we delete MissingDataRuleResults when datasets are removed
-        MissingDataRuleResultDAO.deleteForDataset(datasetId);
+        MissingDataRuleResultDAO.deleteForRun(runId);
     }
 
     @WithRoles(extras = Roles.HORREUM_SYSTEM)
@@ -1390,6 +1552,8 @@ public class AlertingServiceImpl implements AlertingService {
     // a method in AlertingServiceImpl the interceptors would not be invoked.
     public static class Recalculation {
         Map<Integer, String> datasets = Collections.emptyMap();
+        final long started = System.currentTimeMillis();
+        volatile int completed;
         int progress;
         boolean done;
         public int errors;
@@ -1400,44 +1564,26 @@ public class AlertingServiceImpl implements AlertingService {
         Map<Integer, DatasetDAO.Info> datasetsWithoutValue = new HashMap<>();
     }
 
-    static final class VarAndFingerprint {
-        final int varId;
-        final JsonNode fingerprint;
-
-        VarAndFingerprint(int varId, JsonNode fingerprint) {
-            this.varId = varId;
-            this.fingerprint = fingerprint;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o)
-                return true;
-            if (o == null || getClass() != o.getClass())
-                return false;
-            VarAndFingerprint that = (VarAndFingerprint) o;
-            return varId == that.varId && Objects.equals(fingerprint, that.fingerprint);
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(varId, fingerprint);
-        }
-    }
-
     private static class UpTo {
         final Instant timestamp;
         final boolean inclusive;
+        // timestamp of the last change and statistics of datapoints since then, null if unknown
+        final Instant changeTimestamp;
+        final RunningStatistics statistics;
 
-        private UpTo(Instant timestamp, boolean inclusive) {
+        private UpTo(Instant timestamp, boolean inclusive, Instant changeTimestamp, RunningStatistics statistics) {
             this.timestamp = timestamp;
             this.inclusive = inclusive;
+            this.changeTimestamp = changeTimestamp;
+            this.statistics = statistics;
         }
 
         @Override
         public String toString() {
             return "{ts=" + timestamp +
                     ", incl=" + inclusive +
+                    ", change=" + changeTimestamp +
+                    ", stats=" + statistics +
                     '}';
         }
     }
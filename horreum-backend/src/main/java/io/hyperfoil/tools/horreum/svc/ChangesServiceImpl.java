@@ -1,7 +1,11 @@
 package io.hyperfoil.tools.horreum.svc;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.security.PermitAll;
@@ -15,13 +19,14 @@ import org.eclipse.microprofile.config.Config;
 import org.eclipse.microprofile.config.ConfigProvider;
 import org.hibernate.Session;
 import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
 import io.hyperfoil.tools.horreum.api.changes.Target;
 import io.hyperfoil.tools.horreum.api.internal.services.ChangesService;
+import io.hyperfoil.tools.horreum.entity.FingerprintDAO;
 import io.hyperfoil.tools.horreum.entity.alerting.ChangeDAO;
-import io.hyperfoil.tools.horreum.entity.alerting.DataPointDAO;
 import io.hyperfoil.tools.horreum.entity.alerting.VariableDAO;
 import io.hyperfoil.tools.horreum.server.WithRoles;
 
@@ -66,12 +71,51 @@ public class ChangesServiceImpl implements ChangesService {
     @WithRoles
     @Override
     public List<TimeseriesTarget> query(Query query) {
+        List<TimeseriesTarget> result = new ArrayList<>();
+        for (Series series : querySeries(query)) {
+            TimeseriesTarget tt = new TimeseriesTarget();
+            tt.target = series.target;
+            tt.variableId = series.variableId;
+            for (int i = 0; i < series.values.length; ++i) {
+                tt.datapoints.add(new Number[] { series.values[i], series.timestamps[i],
+                        /* non-standard! */ series.datasetIds[i] });
+            }
+            result.add(tt);
+        }
+        return result;
+    }
+
+    @WithRoles
+    @Override
+    public List<TimeseriesColumns> queryColumns(Query query) {
+        List<TimeseriesColumns> result = new ArrayList<>();
+        for (Series series : querySeries(query)) {
+            TimeseriesColumns columns = new TimeseriesColumns();
+            columns.target = series.target;
+            columns.variableId = series.variableId;
+            columns.values = series.values;
+            columns.timestamps = series.timestamps;
+            columns.datasetIds = series.datasetIds;
+            result.add(columns);
+        }
+        return result;
+    }
+
+    private record Series(String target, int variableId, double[] values, long[] timestamps, int[] datasetIds) {
+    }
+
+    /**
+     * Loads datapoints of all targets in a single statement, fetching only the columns needed for the chart,
+     * and downsamples them when the query limits the number of points.
+     */
+    private List<Series> querySeries(Query query) {
         if (query == null) {
             throw ServiceException.badRequest("No query");
         } else if (query.range == null || query.range.from == null || query.range.to == null) {
             throw ServiceException.badRequest("Invalid time range");
         }
-        List<TimeseriesTarget> result = new ArrayList<>();
+        List<Integer> variableIds = new ArrayList<>();
+        List<JsonNode> fingerprints = new ArrayList<>();
         for (Target target : query.targets) {
             if (target.type != null && !target.type.equals("timeseries")) {
                 throw ServiceException.badRequest("Tables are not implemented");
@@ -87,45 +131,134 @@ public class ChangesServiceImpl implements ChangesService {
             if (variableId < 0) {
                 throw ServiceException.badRequest("Target must be variable ID");
             }
-            VariableDAO variable = VariableDAO.findById(variableId);
-            String variableName = String.valueOf(variableId);
-            if (variable != null) {
-                variableName = variable.name;
-            }
-            TimeseriesTarget tt = new TimeseriesTarget();
-            tt.target = variableName;
-            tt.variableId = variableId;
-            result.add(tt);
+            variableIds.add(variableId);
+            fingerprints.add(fingerprint);
+        }
+        if (variableIds.isEmpty()) {
+            return List.of();
+        }
+        int maxPoints = maxPoints(query);
+        boolean downsample = maxPoints < Integer.MAX_VALUE;
 
-            StringBuilder sql = new StringBuilder("WITH dp AS (")
-                    .append("(SELECT * FROM datapoint WHERE variable_id = ?1 AND timestamp BETWEEN ?2 AND ?3)");
-            if (query.range.oneBeforeAndAfter) {
-                sql.append(
-                        "UNION (SELECT * FROM datapoint WHERE variable_id = ?1 AND timestamp < ?2 ORDER BY timestamp DESC LIMIT 1) ")
-                        .append("UNION (SELECT * FROM datapoint WHERE variable_id = ?1 AND timestamp > ?3 ORDER BY timestamp LIMIT 1)");
+        // each target gets its own subquery so that it can use the (variable_id, fp_hash, timestamp) index
+        StringBuilder sql = new StringBuilder("SELECT dp.target, dp.value, dp.timestamp, dp.dataset_id");
+        if (downsample) {
+            // datapoints with a change are kept by downsampling as the change annotations point to them
+            sql.append(", EXISTS (SELECT 1 FROM change WHERE change.variable_id = dp.variable_id ")
+                    .append("AND change.dataset_id = dp.dataset_id) AS has_change");
+        }
+        sql.append(" FROM (");
+        int param = 3;
+        for (int i = 0; i < variableIds.size(); ++i) {
+            String filter = "variable_id = ?" + param++;
+            if (fingerprints.get(i) != null) {
+                filter += " AND " + FingerprintDAO.hashMatches("datapoint", param, param + 1);
+                param += 2;
             }
-            sql.append(") SELECT dp.* FROM dp ");
-            if (fingerprint != null) {
-                sql.append(
-                        "LEFT JOIN fingerprint fp ON fp.dataset_id = dp.dataset_id WHERE json_equals(fp.fingerprint, (?4)::jsonb) ");
+            String select = "(SELECT " + i + " AS target, variable_id, value, timestamp, dataset_id FROM datapoint WHERE "
+                    + filter;
+            if (i > 0) {
+                sql.append(" UNION ALL ");
             }
-            sql.append("ORDER BY timestamp ASC");
-            NativeQuery<DataPointDAO> nativeQuery = em.unwrap(Session.class)
-                    .createNativeQuery(sql.toString(), DataPointDAO.class)
-                    .setParameter(1, variableId)
-                    .setParameter(2, query.range.from)
-                    .setParameter(3, query.range.to);
-            if (fingerprint != null) {
-                nativeQuery.setParameter(4, fingerprint.toString());
+            sql.append(select).append(" AND timestamp BETWEEN ?1 AND ?2)");
+            if (query.range.oneBeforeAndAfter) {
+                sql.append(" UNION ALL ").append(select).append(" AND timestamp < ?1 ORDER BY timestamp DESC LIMIT 1)")
+                        .append(" UNION ALL ").append(select).append(" AND timestamp > ?2 ORDER BY timestamp LIMIT 1)");
             }
-            List<DataPointDAO> datapoints = nativeQuery.getResultList();
-            for (DataPointDAO dp : datapoints) {
-                tt.datapoints.add(new Number[] { dp.value, dp.timestamp.toEpochMilli(), /* non-standard! */ dp.dataset.id });
+        }
+        sql.append(") dp ORDER BY dp.target, dp.timestamp");
+        // the bounds are bound as timestamptz, matching the column, so that time partitions can be pruned
+        NativeQuery<Object[]> nativeQuery = em.unwrap(Session.class).createNativeQuery(sql.toString(), Object[].class)
+                .setParameter(1, query.range.from, StandardBasicTypes.INSTANT)
+                .setParameter(2, query.range.to, StandardBasicTypes.INSTANT)
+                .addScalar("target", StandardBasicTypes.INTEGER)
+                .addScalar("value", StandardBasicTypes.DOUBLE)
+                .addScalar("timestamp", StandardBasicTypes.INSTANT)
+                .addScalar("dataset_id", StandardBasicTypes.INTEGER);
+        if (downsample) {
+            nativeQuery.addScalar("has_change", StandardBasicTypes.BOOLEAN);
+        }
+        param = 3;
+        for (int i = 0; i < variableIds.size(); ++i) {
+            nativeQuery.setParameter(param++, variableIds.get(i));
+            if (fingerprints.get(i) != null) {
+                nativeQuery.setParameter(param++, FingerprintDAO.hash(fingerprints.get(i)));
+                nativeQuery.setParameter(param++, fingerprints.get(i), JsonBinaryType.INSTANCE);
             }
         }
+        List<Object[]> rows = nativeQuery.getResultList();
+
+        Map<Integer, String> variableNames = VariableDAO.<VariableDAO> list("id IN ?1", new HashSet<>(variableIds)).stream()
+                .collect(Collectors.toMap(v -> v.id, v -> v.name));
+        List<Series> result = new ArrayList<>(variableIds.size());
+        int row = 0;
+        for (int i = 0; i < variableIds.size(); ++i) {
+            int start = row;
+            while (row < rows.size() && (int) rows.get(row)[0] == i) {
+                ++row;
+            }
+            int variableId = variableIds.get(i);
+            String target = variableNames.getOrDefault(variableId, String.valueOf(variableId));
+            result.add(series(target, variableId, rows.subList(start, row), maxPoints));
+        }
         return result;
     }
 
+    private static int maxPoints(Query query) {
+        long maxPoints = query.maxDataPoints != null && query.maxDataPoints > 0 ? query.maxDataPoints : Long.MAX_VALUE;
+        if (query.intervalMs != null && query.intervalMs > 0) {
+            long range = query.range.to.toEpochMilli() - query.range.from.toEpochMilli();
+            maxPoints = Math.min(maxPoints, range / query.intervalMs + 1);
+        }
+        if (maxPoints >= Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE;
+        } else if (query.range.oneBeforeAndAfter) {
+            // the points outside of the range are not displayed
+            maxPoints += 2;
+        }
+        // the first and last point are always included
+        return (int) Math.max(maxPoints, 3);
+    }
+
+    private static Series series(String target, int variableId, List<Object[]> rows, int maxPoints) {
+        int size = rows.size();
+        double[] values = new double[size];
+        long[] timestamps = new long[size];
+        int[] datasetIds = new int[size];
+        for (int i = 0; i < size; ++i) {
+            Object[] row = rows.get(i);
+            values[i] = (Double) row[1];
+            timestamps[i] = ((Instant) row[2]).toEpochMilli();
+            datasetIds[i] = (Integer) row[3];
+        }
+        if (size <= maxPoints) {
+            return new Series(target, variableId, values, timestamps, datasetIds);
+        }
+        boolean[] keep = new boolean[size];
+        for (int index : Downsampling.largestTriangleThreeBuckets(timestamps, values, maxPoints)) {
+            keep[index] = true;
+        }
+        int count = 0;
+        for (int i = 0; i < size; ++i) {
+            keep[i] |= Boolean.TRUE.equals(rows.get(i)[4]);
+            if (keep[i]) {
+                ++count;
+            }
+        }
+        double[] sampledValues = new double[count];
+        long[] sampledTimestamps = new long[count];
+        int[] sampledDatasetIds = new int[count];
+        for (int i = 0, j = 0; i < size; ++i) {
+            if (keep[i]) {
+                sampledValues[j] = values[i];
+                sampledTimestamps[j] = timestamps[i];
+                sampledDatasetIds[j] = datasetIds[i];
+                ++j;
+            }
+        }
+        return new Series(target, variableId, sampledValues, sampledTimestamps, sampledDatasetIds);
+    }
+
     private int parseVariableId(String target) {
         int variableId;
         try {
@@ -171,20 +304,18 @@ public class ChangesServiceImpl implements ChangesService {
         if (variableId < 0) {
             throw ServiceException.badRequest("Query must be variable ID");
         }
-        StringBuilder sql = new StringBuilder("SELECT change.* FROM change ");
-        if (fingerprint != null) {
-            sql.append(" JOIN fingerprint fp ON fp.dataset_id = change.dataset_id ");
-        }
-        sql.append(" WHERE variable_id = ?1 AND timestamp BETWEEN ?2 AND ?3 ");
+        StringBuilder sql = new StringBuilder("SELECT change.* FROM change WHERE variable_id = ?1 ");
         if (fingerprint != null) {
-            sql.append("AND json_equals(fp.fingerprint, (?4)::jsonb)");
+            sql.append("AND ").append(FingerprintDAO.hashMatches("change", 4, 5)).append(" ");
         }
+        sql.append("AND timestamp BETWEEN ?2 AND ?3");
         NativeQuery<ChangeDAO> nativeQuery = em.unwrap(Session.class).createNativeQuery(sql.toString(), ChangeDAO.class)
                 .setParameter(1, variableId)
                 .setParameter(2, query.range.from)
                 .setParameter(3, query.range.to);
         if (fingerprint != null) {
-            nativeQuery.setParameter(4, fingerprint.toString());
+            nativeQuery.setParameter(4, FingerprintDAO.hash(fingerprint));
+            nativeQuery.setParameter(5, fingerprint, JsonBinaryType.INSTANCE);
         }
 
         List<ChangeDAO> changes = nativeQuery.getResultList();
@@ -1,7 +1,6 @@
 package io.hyperfoil.tools.horreum.svc;
 
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
@@ -42,13 +41,8 @@ import io.hyperfoil.tools.horreum.api.data.ValidationError;
 import io.hyperfoil.tools.horreum.api.services.DatasetService;
 import io.hyperfoil.tools.horreum.api.services.SchemaService;
 import io.hyperfoil.tools.horreum.bus.AsyncEventChannels;
-import io.hyperfoil.tools.horreum.entity.FingerprintDAO;
 import io.hyperfoil.tools.horreum.entity.PersistentLogDAO;
-import io.hyperfoil.tools.horreum.entity.alerting.DatasetLogDAO;
 import io.hyperfoil.tools.horreum.entity.data.DatasetDAO;
-import io.hyperfoil.tools.horreum.entity.data.LabelDAO;
-import io.hyperfoil.tools.horreum.entity.data.LabelValueDAO;
-import io.hyperfoil.tools.horreum.entity.data.TestDAO;
 import io.hyperfoil.tools.horreum.hibernate.JsonBinaryType;
 import io.hyperfoil.tools.horreum.mapper.DatasetMapper;
 import io.hyperfoil.tools.horreum.server.WithRoles;
@@ -61,39 +55,6 @@ import io.quarkus.security.identity.SecurityIdentity;
 public class DatasetServiceImpl implements DatasetService {
 
     //@formatter:off
-    private static final String LABEL_QUERY = """
-         WITH
-         used_labels AS (
-            SELECT label.id AS label_id, label.name, ds.schema_id, count(le) AS count
-            FROM dataset_schemas ds
-            JOIN label ON label.schema_id = ds.schema_id
-            LEFT JOIN label_extractors le ON le.label_id = label.id
-            WHERE ds.dataset_id = ?1 AND (?2 < 0 OR label.id = ?2) GROUP BY label.id, label.name, ds.schema_id
-         ),
-         lvalues AS (
-            SELECT ul.label_id, le.name,
-                  (CASE WHEN le.isarray THEN
-                     jsonb_path_query_array(dataset.data -> ds.index, le.jsonpath::jsonpath)
-                 ELSE
-                     jsonb_path_query_first(dataset.data -> ds.index, le.jsonpath::jsonpath)
-                  END) AS value
-            FROM dataset
-            JOIN dataset_schemas ds ON dataset.id = ds.dataset_id
-            JOIN used_labels ul ON ul.schema_id = ds.schema_id
-            LEFT JOIN label_extractors le ON ul.label_id = le.label_id
-            WHERE dataset.id = ?1
-         )
-         SELECT lvalues.label_id, ul.name, function,
-               (CASE
-                  WHEN ul.count > 1 THEN jsonb_object_agg(COALESCE(lvalues.name, ''), lvalues.value)
-                  WHEN ul.count = 1 THEN jsonb_agg(lvalues.value) -> 0
-                  ELSE '{}'::jsonb END
-               ) AS value
-         FROM label
-         JOIN lvalues ON lvalues.label_id = label.id
-         JOIN used_labels ul ON label.id = ul.label_id
-         GROUP BY lvalues.label_id, ul.name, function, ul.count
-         """;
     protected static final String LABEL_PREVIEW = """
          WITH
          le AS (
@@ -191,6 +152,12 @@ public class DatasetServiceImpl implements DatasetService {
     @Inject
     TransactionManager tm;
 
+    @Inject
+    LabelCalculationEngine labelCalculationEngine;
+
+    @Inject
+    PersistentLogSink logSink;
+
     @PermitAll
     @WithRoles
     @Override
@@ -414,60 +381,47 @@ public class DatasetServiceImpl implements DatasetService {
     @Transactional
     void calculateLabelValues(int testId, int datasetId, int queryLabelId, boolean isRecalculation) {
         Log.debugf("Calculating label values for dataset %d, label %d", datasetId, queryLabelId);
-        List<Object[]> extracted;
+        calculateLabelValues(testId, new int[] { datasetId }, queryLabelId, isRecalculation, true);
+    }
+
+    /**
+     * Calculates label values for multiple datasets of the same test in a single transaction.
+     *
+     * @param queryLabelId label that should be recalculated or -1 for all labels.
+     * @param reportFailure when set the extraction failure is logged to each of the datasets; otherwise the caller is
+     *        expected to process the datasets one by one to find out which one is failing.
+     * @return false if the label values could not be extracted; the transaction is then marked for rollback.
+     */
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    @Transactional
+    boolean calculateLabelValues(int testId, int[] datasetIds, int queryLabelId, boolean isRecalculation,
+            boolean reportFailure) {
+        Log.debugf("Calculating label values for %d datasets of test %d, label %d", datasetIds.length, testId,
+                queryLabelId);
         try {
             // Note: we are fetching even labels that are marked as private/could be otherwise inaccessible
             // to the uploading user. However, the uploader should not have rights to fetch these anyway...
-            extracted = em.unwrap(Session.class).createNativeQuery(LABEL_QUERY, Object[].class)
-                    .setParameter(1, datasetId)
-                    .setParameter(2, queryLabelId)
-                    .addScalar("label_id", StandardBasicTypes.INTEGER)
-                    .addScalar("name", StandardBasicTypes.TEXT)
-                    .addScalar("function", StandardBasicTypes.TEXT)
-                    .addScalar("value", JsonBinaryType.INSTANCE)
-                    .getResultList();
+            labelCalculationEngine.calculate(testId, datasetIds, queryLabelId,
+                    (datasetId, level, format, args) -> logMessage(testId, datasetId, level, format, args));
         } catch (PersistenceException e) {
-            logMessageInNewTx(datasetId, PersistentLogDAO.ERROR,
-                    "Failed to extract data (JSONPath expression error?): " + Util.explainCauses(e));
-            findFailingExtractor(datasetId);
-            return;
+            Log.debugf(e, "Failed to extract label values for datasets %s", Arrays.toString(datasetIds));
+            if (reportFailure) {
+                for (int datasetId : datasetIds) {
+                    logMessage(testId, datasetId, PersistentLogDAO.ERROR,
+                            "Failed to extract data (JSONPath expression error?): " + Util.explainCauses(e));
+                    findFailingExtractor(testId, datasetId);
+                }
+            }
+            return false;
         }
-
-        // While any change should remove the label_value first via trigger it is possible
-        // that something triggers two events after each other, removing the data (twice)
-        // before the first event is processed. The second event would then find the label_value
-        // already present and would fail with a constraint violation.
-        if (queryLabelId < 0) {
-            LabelValueDAO.delete("datasetId", datasetId);
-        } else {
-            LabelValueDAO.delete("datasetId = ?1 AND labelId = ?2", datasetId, queryLabelId);
+        for (int datasetId : datasetIds) {
+            mediator.updateLabels(new Dataset.LabelsUpdatedEvent(testId, datasetId, isRecalculation));
+            if (mediator.testMode())
+                Util.registerTxSynchronization(tm, txStatus -> mediator.publishEvent(
+                        AsyncEventChannels.DATASET_UPDATED_LABELS, testId,
+                        new Dataset.LabelsUpdatedEvent(testId, datasetId, isRecalculation)));
         }
-
-        FingerprintDAO.deleteById(datasetId);
-        Util.evaluateWithCombinationFunction(extracted,
-                (row) -> (String) row[2],
-                (row) -> (row[3] instanceof ArrayNode ? flatten((ArrayNode) row[3]) : (JsonNode) row[3]),
-                (row, result) -> createLabelValue(datasetId, testId, (int) row[0], Util.convertToJson(result)),
-                (row) -> createLabelValue(datasetId, testId, (int) row[0], (JsonNode) row[3]),
-                (row, e, jsCode) -> logMessage(datasetId, PersistentLogDAO.ERROR,
-                        "Evaluation of label %s failed: '%s' Code:<pre>%s</pre>", row[0], e.getMessage(), jsCode),
-                (out) -> logMessage(datasetId, PersistentLogDAO.DEBUG, "Output while calculating labels: <pre>%s</pre>", out));
-
-        // create new dataset views from the recently created label values
-        calcDatasetViews(datasetId);
-
-        createFingerprint(datasetId, testId);
-        mediator.updateLabels(new Dataset.LabelsUpdatedEvent(testId, datasetId, isRecalculation));
-        if (mediator.testMode())
-            Util.registerTxSynchronization(tm, txStatus -> mediator.publishEvent(AsyncEventChannels.DATASET_UPDATED_LABELS,
-                    testId, new Dataset.LabelsUpdatedEvent(testId, datasetId, isRecalculation)));
-    }
-
-    @Transactional
-    public void calcDatasetViews(int datasetId) {
-        // TODO(user) move calc_dataset_view into Horreum business logic see https://github.com/hibernate/hibernate-orm/pull/7457
-        em.createNativeQuery("DELETE FROM dataset_view WHERE dataset_id = ?1").setParameter(1, datasetId).executeUpdate();
-        em.createNativeQuery("call calc_dataset_view(?1, NULL);").setParameter(1, datasetId).executeUpdate();
+        return true;
     }
 
     @Transactional
@@ -500,30 +454,22 @@ public class DatasetServiceImpl implements DatasetService {
         }
     }
 
+    /**
+     * Deletes all datasets of the run together with their label values, schemas, views and fingerprints,
+     * using a single statement per table.
+     */
     @Transactional
-    public void deleteDataset(int datasetId) {
-        em.createNativeQuery("DELETE FROM label_values WHERE dataset_id = ?1").setParameter(1, datasetId).executeUpdate();
-        em.createNativeQuery("DELETE FROM dataset_schemas WHERE dataset_id = ?1").setParameter(1, datasetId).executeUpdate();
-        em.createNativeQuery("DELETE FROM dataset_view WHERE dataset_id = ?1").setParameter(1, datasetId).executeUpdate();
-        em.createNativeQuery("DELETE FROM fingerprint WHERE dataset_id = ?1").setParameter(1, datasetId).executeUpdate();
-        em.createNativeQuery("DELETE FROM dataset WHERE id = ?1").setParameter(1, datasetId).executeUpdate();
-    }
-
-    private ArrayNode flatten(ArrayNode bucket) {
-        JsonNode data = bucket.get(0);
-        if (data == null)
-            return bucket;
-
-        if (data instanceof ArrayNode) {
-            bucket.removeAll();
-            data.forEach(bucket::add);
+    public void deleteRunDatasets(int runId) {
+        for (String table : List.of("label_values", "dataset_schemas", "dataset_view", "fingerprint")) {
+            em.createNativeQuery("DELETE FROM " + table + " WHERE dataset_id IN (SELECT id FROM dataset WHERE runid = ?1)")
+                    .setParameter(1, runId).executeUpdate();
         }
-        return bucket;
+        em.createNativeQuery("DELETE FROM dataset WHERE runid = ?1").setParameter(1, runId).executeUpdate();
     }
 
     @WithRoles(extras = Roles.HORREUM_SYSTEM)
     @Transactional(Transactional.TxType.REQUIRES_NEW)
-    protected void findFailingExtractor(int datasetId) {
+    protected void findFailingExtractor(int testId, int datasetId) {
         List<Object[]> extractors = em.unwrap(Session.class).createNativeQuery("""
                 SELECT ds.uri, label.name AS name, le.name AS extractor_name, ds.index, le.jsonpath
                 FROM dataset_schemas ds
@@ -540,61 +486,23 @@ public class DatasetServiceImpl implements DatasetService {
                         "SELECT jsonb_path_query_first(data -> (?1), (?2)::jsonpath)#>>'{}' FROM dataset WHERE id = ?3")
                         .setParameter(1, row[3]).setParameter(2, row[4]).setParameter(3, datasetId).getSingleResult();
             } catch (PersistenceException e) {
-                logMessageInNewTx(datasetId, PersistentLogDAO.ERROR,
+                logMessage(testId, datasetId, PersistentLogDAO.ERROR,
                         "There seems to be an error in schema <code>%s</code> label <code>%s</code>, extractor <code>%s</code>, JSONPath expression <code>%s</code>: %s",
                         row[0], row[1], row[2], row[4], Util.explainCauses(e));
                 return;
             }
         }
-        logMessage(datasetId, PersistentLogDAO.DEBUG,
+        logMessage(testId, datasetId, PersistentLogDAO.DEBUG,
                 "We thought there's an error in one of the JSONPaths but independent validation did not find any problems.");
     }
 
-    private void createLabelValue(int datasetId, int testId, int labelId, JsonNode value) {
-        LabelValueDAO labelValue = new LabelValueDAO();
-        labelValue.datasetId = datasetId;
-        labelValue.labelId = labelId;
-        labelValue.value = value;
-        labelValue.persist();
-    }
-
-    private void createFingerprint(int datasetId, int testId) {
-        JsonNode json = null;
-        try {
-            json = em.createQuery("SELECT t.fingerprintLabels from test t WHERE t.id = ?1", JsonNode.class)
-                    .setParameter(1, testId).getSingleResult();
-        } catch (NoResultException noResultException) {
-            Log.infof("Could not find fingerprint for dataset: %d", datasetId);
-        }
-        if (json == null)
-            return;
-
-        ObjectNode fpNode = JsonNodeFactory.instance.objectNode();
-        List<LabelValueDAO> labelValues = LabelValueDAO.find("datasetId", datasetId).list();
-        List<String[]> labelPairs = new ArrayList<>(labelValues.size());
-        for (var lv : labelValues)
-            labelPairs.add(new String[] { LabelDAO.<LabelDAO> findById(lv.labelId).name, lv.value.asText() });
-
-        for (int i = 0; i < json.size(); i++)
-            for (var name : labelPairs) {
-                if (json.get(i).asText().equals(name[0]))
-                    fpNode.put(name[0], name[1]);
-            }
-
-        FingerprintDAO fp = new FingerprintDAO();
-        fp.datasetId = datasetId;
-        fp.dataset = DatasetDAO.findById(datasetId);
-        fp.fingerprint = fpNode;
-        if (fp.datasetId > 0 && fp.dataset != null)
-            fp.persist();
-    }
-
     @Transactional
     @WithRoles(extras = Roles.HORREUM_SYSTEM)
     void updateFingerprints(int testId) {
-        for (var dataset : DatasetDAO.<DatasetDAO> find("testid", testId).list()) {
-            FingerprintDAO.deleteById(dataset.id);
-            createFingerprint(dataset.id, testId);
+        int[] datasetIds = em.createQuery("SELECT id FROM dataset WHERE testid = ?1", Integer.class)
+                .setParameter(1, testId).getResultStream().mapToInt(Integer::intValue).toArray();
+        if (datasetIds.length > 0) {
+            labelCalculationEngine.rebuildFingerprints(testId, datasetIds);
         }
     }
 
@@ -602,20 +510,14 @@ public class DatasetServiceImpl implements DatasetService {
         calculateLabelValues(event.testId, event.datasetId, event.labelId, event.isRecalculation);
     }
 
-    @Transactional(Transactional.TxType.REQUIRES_NEW)
-    @WithRoles(extras = Roles.HORREUM_SYSTEM)
-    void logMessageInNewTx(int datasetId, int level, String message, Object... params) {
-        logMessage(datasetId, level, message, params);
+    public boolean onNewDatasets(Dataset.EventNewBatch batch, boolean reportFailure) {
+        return calculateLabelValues(batch.testId, batch.datasetIds, batch.labelId, batch.isRecalculation, reportFailure);
     }
 
-    private void logMessage(int datasetId, int level, String message, Object... params) {
+    // the message is persisted even if the current transaction is rolled back
+    private void logMessage(int testId, int datasetId, int level, String message, Object... params) {
         String msg = params.length == 0 ? message : message.formatted(params);
-        DatasetDAO dataset = DatasetDAO.findById(datasetId);
-        if (dataset != null) {
-            Log.tracef("Logging %s for test %d, dataset %d: %s", PersistentLogDAO.logLevel(level), dataset.testid, datasetId,
-                    msg);
-            new DatasetLogDAO(em.getReference(TestDAO.class, dataset.testid), em.getReference(DatasetDAO.class, datasetId),
-                    level, "labels", msg).persist();
-        }
+        Log.tracef("Logging %s for test %d, dataset %d: %s", PersistentLogDAO.logLevel(level), testId, datasetId, msg);
+        logSink.datasetLog(testId, datasetId, level, "labels", msg);
     }
 }
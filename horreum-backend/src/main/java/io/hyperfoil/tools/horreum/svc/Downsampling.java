@@ -0,0 +1,66 @@
+package io.hyperfoil.tools.horreum.svc;
+
+/**
+ * Reduces the number of points of a timeseries while preserving its visual shape.
+ */
+final class Downsampling {
+    private Downsampling() {
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets (Steinarsson, 2013): the first and last points are always kept, the rest is split
+     * into <code>threshold - 2</code> buckets and from each bucket the point forming the largest triangle with the point
+     * selected from the previous bucket and the average of the next bucket is selected.
+     *
+     * @param timestamps ascending timestamps
+     * @param values values, same length as <code>timestamps</code>
+     * @param threshold maximum number of points
+     * @return ascending indices of the selected points
+     */
+    static int[] largestTriangleThreeBuckets(long[] timestamps, double[] values, int threshold) {
+        int length = timestamps.length;
+        if (threshold >= length || length <= 2) {
+            int[] all = new int[length];
+            for (int i = 0; i < length; ++i) {
+                all[i] = i;
+            }
+            return all;
+        } else if (threshold <= 2) {
+            return new int[] { 0, length - 1 };
+        }
+        int[] selected = new int[threshold];
+        // timestamps are relative to the first one to avoid losing precision in the area computation
+        long origin = timestamps[0];
+        double bucketSize = (double) (length - 2) / (threshold - 2);
+        int a = 0;
+        for (int bucket = 0; bucket < threshold - 2; ++bucket) {
+            int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, length);
+            double avgX = 0, avgY = 0;
+            for (int i = nextStart; i < nextEnd; ++i) {
+                avgX += timestamps[i] - origin;
+                avgY += values[i];
+            }
+            avgX /= nextEnd - nextStart;
+            avgY /= nextEnd - nextStart;
+
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            double ax = timestamps[a] - origin, ay = values[a];
+            double maxArea = -1;
+            int maxIndex = start;
+            for (int i = start; i < end; ++i) {
+                // double of the triangle area, which does not matter for the comparison
+                double area = Math.abs((ax - avgX) * (values[i] - ay) - (ax - (timestamps[i] - origin)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = i;
+                }
+            }
+            selected[bucket + 1] = maxIndex;
+            a = maxIndex;
+        }
+        selected[threshold - 1] = length - 1;
+        return selected;
+    }
+}
@@ -2,6 +2,7 @@ package io.hyperfoil.tools.horreum.svc;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -12,6 +13,7 @@ import io.hyperfoil.tools.horreum.bus.BlockingTaskDispatcher;
 import io.hyperfoil.tools.horreum.entity.data.DatasetDAO;
 import io.hyperfoil.tools.horreum.events.DatasetChanges;
 import io.hyperfoil.tools.horreum.server.WithRoles;
+import io.quarkus.logging.Log;
 import io.quarkus.runtime.Startup;
 import io.vertx.core.Vertx;
 
@@ -57,11 +59,23 @@ public class EventAggregator {
                 if (timerId >= 0) {
                     vertx.cancelTimer(timerId);
                 }
-                timerId = vertx.setTimer(next.emitTimestamp() - now,
-                        timerId -> messageBus.executeForTest(next.dataset.testId, this::handleDatasetChanges));
+                scheduleHandling(next.emitTimestamp() - now, next.dataset.testId);
                 return;
             }
         }
     }
 
+    private void scheduleHandling(long delay, int testId) {
+        timerId = vertx.setTimer(delay, id -> {
+            try {
+                messageBus.executeForTest(testId, this::handleDatasetChanges);
+            } catch (RejectedExecutionException e) {
+                Log.debugf("Task queue of test %d is full, postponing dataset changes", testId);
+                synchronized (this) {
+                    scheduleHandling(1000, testId);
+                }
+            }
+        });
+    }
+
 }
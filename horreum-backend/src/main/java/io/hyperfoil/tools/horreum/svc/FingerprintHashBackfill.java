@@ -0,0 +1,89 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import java.util.List;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.Session;
+
+import io.hyperfoil.tools.horreum.entity.FingerprintDAO;
+import io.hyperfoil.tools.horreum.server.WithRoles;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+import io.vertx.core.Vertx;
+
+/**
+ * Computes hashes of fingerprints stored before the hash was introduced and copies them to the datapoints and
+ * changes of their datasets, one batch per transaction. Until this is finished queries match rows missing
+ * the hash by the fingerprint of their dataset (see {@link FingerprintDAO#hashMatches(String, int, int)}).
+ */
+@ApplicationScoped
+public class FingerprintHashBackfill {
+    @Inject
+    @ConfigProperty(name = "horreum.fingerprint.backfill.batch-size", defaultValue = "1000")
+    int batchSize;
+
+    @Inject
+    Session session;
+
+    @Inject
+    Vertx vertx;
+
+    void onStart(@Observes StartupEvent event) {
+        // When there are no rows left this finds nothing in the indexes of rows missing the hash.
+        Util.executeBlocking(vertx, this::backfill);
+    }
+
+    /**
+     * Processes one batch of fingerprints, datapoints and changes that miss the hash and schedules the next one.
+     * Fingerprints are hashed first as the hash is copied from them. Replicas running this concurrently skip
+     * rows locked by each other.
+     */
+    void backfill() {
+        int updated;
+        try {
+            updated = hashFingerprints();
+            if (updated == 0) {
+                updated = copyMissingHashes("datapoint") + copyMissingHashes("change");
+            }
+        } catch (Exception e) {
+            Log.error("Failed to backfill fingerprint hashes", e);
+            return;
+        }
+        if (updated > 0) {
+            Log.debugf("Backfilled hashes of %d rows", updated);
+            Util.executeBlocking(vertx, this::backfill);
+        }
+    }
+
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    @Transactional
+    int hashFingerprints() {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = session.createNativeQuery(
+                "SELECT dataset_id, fingerprint::text FROM fingerprint WHERE fp_hash IS NULL LIMIT ?1 FOR UPDATE SKIP LOCKED")
+                .setParameter(1, batchSize)
+                .getResultList();
+        for (Object[] row : rows) {
+            session.createNativeQuery("UPDATE fingerprint SET fp_hash = ?1 WHERE dataset_id = ?2")
+                    .setParameter(1, FingerprintDAO.hash(Util.toJsonNode((String) row[1])))
+                    .setParameter(2, row[0])
+                    .executeUpdate();
+        }
+        return rows.size();
+    }
+
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    @Transactional
+    int copyMissingHashes(String table) {
+        return session.createNativeQuery(LabelCalculationEngine.COPY_FINGERPRINT_HASHES.formatted(table,
+                "t.id IN (SELECT id FROM %s WHERE fp_hash IS NULL LIMIT ?1 FOR UPDATE SKIP LOCKED)".formatted(table)))
+                .setParameter(1, batchSize)
+                .setParameter(2, FingerprintDAO.NULL_HASH)
+                .executeUpdate();
+    }
+}
@@ -0,0 +1,227 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import org.eclipse.microprofile.config.ConfigProvider;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+
+import io.quarkus.logging.Log;
+
+/**
+ * Pool of JavaScript contexts used to evaluate transformer, label, variable and report functions.
+ * All contexts share a single {@link Engine} so that parsed and compiled code is shared between them,
+ * and function sources are cached by their body so that the same function is parsed only once.
+ * Contexts are handed out exclusively and reset to their initial global bindings when returned.
+ */
+public final class JsContextPool {
+    static final String POOL_SIZE_PROPERTY = "horreum.js.pool.max-size";
+    static final String SOURCE_CACHE_SIZE_PROPERTY = "horreum.js.source-cache.max-size";
+    // contexts are recycled after this many uses to limit the impact of functions modifying builtins
+    private static final int MAX_CONTEXT_USES = 1000;
+
+    private static final Source SETUP_SOURCE = Source.create("js",
+            "Object.defineProperty(Object,Symbol.hasInstance, {\n" +
+                    "  value: function myinstanceof(obj) {\n" +
+                    "    return isInstanceLike(obj);\n" +
+                    "  }\n" +
+                    "});");
+
+    private static volatile JsContextPool instance;
+
+    private final Engine engine;
+    private final int maxSize;
+    private final BlockingQueue<PooledContext> idle;
+    private final Semaphore permits;
+    private final ThreadLocal<int[]> borrowDepth = ThreadLocal.withInitial(() -> new int[1]);
+    private final Map<String, Source> sources;
+
+    JsContextPool(int maxSize, int sourceCacheSize) {
+        this.engine = Engine.newBuilder("js")
+                .option("engine.WarnInterpreterOnly", "false")
+                .build();
+        this.maxSize = maxSize;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+        this.permits = new Semaphore(maxSize);
+        this.sources = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Source> eldest) {
+                return size() > sourceCacheSize;
+            }
+        });
+    }
+
+    public static JsContextPool get() {
+        JsContextPool pool = instance;
+        if (pool == null) {
+            synchronized (JsContextPool.class) {
+                pool = instance;
+                if (pool == null) {
+                    int defaultSize = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+                    pool = new JsContextPool(intConfig(POOL_SIZE_PROPERTY, defaultSize),
+                            intConfig(SOURCE_CACHE_SIZE_PROPERTY, 1000));
+                    instance = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    private static int intConfig(String name, int defaultValue) {
+        try {
+            return ConfigProvider.getConfig().getOptionalValue(name, Integer.class).orElse(defaultValue);
+        } catch (IllegalStateException e) {
+            // no config available, e.g. in unit tests
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Borrows a context and enters it on the current thread. The context must be returned
+     * by closing the returned {@link PooledContext} on the same thread.
+     * Nested borrowing from a thread that already holds a context does not wait for the pool
+     * to avoid deadlocks when evaluating a function from within the callback of another one.
+     */
+    public PooledContext borrow() {
+        int[] depth = borrowDepth.get();
+        if (depth[0] == 0) {
+            permits.acquireUninterruptibly();
+        }
+        depth[0]++;
+        try {
+            PooledContext pooled = idle.poll();
+            if (pooled == null) {
+                pooled = new PooledContext();
+            }
+            pooled.context.enter();
+            return pooled;
+        } catch (RuntimeException e) {
+            returnPermit();
+            throw e;
+        }
+    }
+
+    private void returnPermit() {
+        int[] depth = borrowDepth.get();
+        if (--depth[0] == 0) {
+            permits.release();
+            borrowDepth.remove();
+        }
+    }
+
+    Source functionSource(String function) {
+        // the block keeps the declaration out of the global scope so that the source can be evaluated repeatedly
+        return sources.computeIfAbsent(function, body -> Source.newBuilder("js",
+                "{\nconst __func = " + body + ";\n__func\n}", "function.js").cached(true).buildLiteral());
+    }
+
+    int maxSize() {
+        return maxSize;
+    }
+
+    int idleSize() {
+        return idle.size();
+    }
+
+    public final class PooledContext implements AutoCloseable {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final Context context;
+        private final Set<String> initialGlobals;
+        private final Value jsonParse;
+        private int uses;
+        private boolean broken;
+
+        private PooledContext() {
+            context = Context.newBuilder("js")
+                    .engine(engine)
+                    .allowExperimentalOptions(true)
+                    .option("js.foreign-object-prototype", "true")
+                    .option("js.global-property", "true")
+                    .out(out)
+                    .err(out)
+                    .build();
+            try {
+                Value bindings = context.getBindings("js");
+                bindings.putMember("isInstanceLike", new ProxyJacksonObject.InstanceCheck());
+                context.eval(SETUP_SOURCE);
+                jsonParse = bindings.getMember("JSON").getMember("parse");
+                initialGlobals = new HashSet<>(bindings.getMemberKeys());
+            } catch (RuntimeException e) {
+                context.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Evaluates the function definition (cached by its body) into a callable value.
+         */
+        public Value function(String function) {
+            return context.eval(functionSource(function));
+        }
+
+        public Value parseJson(String json) {
+            return json == null ? null : jsonParse.execute(json);
+        }
+
+        /**
+         * Returns and clears anything the functions wrote to the standard or error output.
+         */
+        public String drainOutput() {
+            if (out.size() == 0) {
+                return null;
+            }
+            String output = out.toString(StandardCharsets.UTF_8);
+            out.reset();
+            return output;
+        }
+
+        void checkException(PolyglotException e) {
+            if (e.isCancelled() || e.isExit() || e.isInternalError() || e.isResourceExhausted()) {
+                broken = true;
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (!broken && ++uses < MAX_CONTEXT_USES) {
+                    reset();
+                }
+            } catch (RuntimeException e) {
+                Log.debug("Failed to reset JavaScript context, discarding it", e);
+                broken = true;
+            } finally {
+                try {
+                    context.leave();
+                } finally {
+                    if (broken || uses >= MAX_CONTEXT_USES || !idle.offer(this)) {
+                        context.close(true);
+                    }
+                    returnPermit();
+                }
+            }
+        }
+
+        private void reset() {
+            out.reset();
+            Value bindings = context.getBindings("js");
+            for (String key : bindings.getMemberKeys()) {
+                if (!initialGlobals.contains(key)) {
+                    bindings.removeMember(key);
+                }
+            }
+        }
+    }
+}
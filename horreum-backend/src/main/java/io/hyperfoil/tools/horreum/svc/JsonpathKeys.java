@@ -0,0 +1,136 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Finds object keys that must be present in a JSON document for a JSONPath expression to match it.
+ * These are looked up in the <code>run_search_key</code> index to narrow down the runs that need to be evaluated
+ * with <code>jsonb_path_exists</code>. When it cannot be proven that a key is required (disjunctions, negations,
+ * predicates outside of filters...) no keys are returned and all runs have to be evaluated.
+ */
+final class JsonpathKeys {
+    // longer keys are not stored in the index
+    static final int MAX_KEY_LENGTH = 256;
+
+    private JsonpathKeys() {
+    }
+
+    static Set<String> requiredKeys(String jsonpath) {
+        Set<String> keys = new LinkedHashSet<>();
+        int depth = 0;
+        int length = jsonpath.length();
+        int i = 0;
+        while (i < length) {
+            char c = jsonpath.charAt(i);
+            if (c == '"') {
+                // string literal
+                int end = stringEnd(jsonpath, i);
+                if (end < 0) {
+                    return Collections.emptySet();
+                }
+                i = end + 1;
+            } else if (c == '.') {
+                if (i + 1 < length && jsonpath.charAt(i + 1) == '"') {
+                    int end = stringEnd(jsonpath, i + 1);
+                    if (end < 0) {
+                        return Collections.emptySet();
+                    }
+                    String key = jsonpath.substring(i + 2, end);
+                    if (key.indexOf('\\') >= 0) {
+                        // escapes are rare in keys, don't bother decoding them
+                        return Collections.emptySet();
+                    }
+                    keys.add(key);
+                    i = end + 1;
+                } else if (i + 1 < length && isIdentifierStart(jsonpath.charAt(i + 1))) {
+                    int end = i + 2;
+                    while (end < length && isIdentifierPart(jsonpath.charAt(end))) {
+                        ++end;
+                    }
+                    String key = jsonpath.substring(i + 1, end);
+                    if (end < length && jsonpath.charAt(end) == '(') {
+                        // item method; keyvalue() creates objects with keys that are not in the document
+                        if (key.equals("keyvalue")) {
+                            return Collections.emptySet();
+                        }
+                    } else {
+                        keys.add(key);
+                    }
+                    i = end;
+                } else {
+                    // wildcards, numbers
+                    ++i;
+                }
+            } else if (c == '(') {
+                ++depth;
+                ++i;
+            } else if (c == ')') {
+                --depth;
+                ++i;
+            } else if (c == '|' || (c == '!' && (i + 1 >= length || jsonpath.charAt(i + 1) != '='))) {
+                // disjunction or negation
+                return Collections.emptySet();
+            } else if (depth == 0 && "=<>!&+-/%".indexOf(c) >= 0) {
+                // the path is a predicate or arithmetic expression; that always returns an item
+                return Collections.emptySet();
+            } else if (Character.isLetter(c) && (i == 0 || !isIdentifierPart(jsonpath.charAt(i - 1)))) {
+                int end = i + 1;
+                while (end < length && isIdentifierPart(jsonpath.charAt(end))) {
+                    ++end;
+                }
+                String word = jsonpath.substring(i, end);
+                if (word.equals("unknown") || (depth == 0 && !word.equals("lax") && !word.equals("strict")
+                        && !word.equals("to") && !word.equals("last"))) {
+                    return Collections.emptySet();
+                }
+                i = end;
+            } else {
+                ++i;
+            }
+        }
+        keys.removeIf(key -> key.length() > MAX_KEY_LENGTH);
+        return keys;
+    }
+
+    /**
+     * Search terms that are a plain key are looked up as <code>$.**.key</code>, which matches exactly the documents
+     * containing the key in any object. For these the index gives the answer without evaluating the JSONPath.
+     *
+     * @return the key if the term is a plain key, <code>null</code> otherwise
+     */
+    static String indexedKey(String term) {
+        if (term.isEmpty() || term.length() > MAX_KEY_LENGTH || !Character.isLetter(term.charAt(0))
+                && term.charAt(0) != '_') {
+            return null;
+        }
+        for (int i = 1; i < term.length(); ++i) {
+            char c = term.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_') {
+                return null;
+            }
+        }
+        return term;
+    }
+
+    private static int stringEnd(String jsonpath, int start) {
+        for (int i = start + 1; i < jsonpath.length(); ++i) {
+            char c = jsonpath.charAt(i);
+            if (c == '\\') {
+                ++i;
+            } else if (c == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '$';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+}
@@ -0,0 +1,276 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.NoResultException;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.Session;
+import org.hibernate.type.StandardBasicTypes;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.hyperfoil.tools.horreum.entity.FingerprintDAO;
+import io.hyperfoil.tools.horreum.entity.PersistentLogDAO;
+import io.hyperfoil.tools.horreum.hibernate.IntArrayType;
+import io.hyperfoil.tools.horreum.hibernate.JsonBinaryType;
+import io.quarkus.logging.Log;
+
+/**
+ * Calculates label values, dataset views and fingerprints of many datasets of a test at once. Values of labels
+ * without a combination function are computed and inserted by a single {@code INSERT ... SELECT}; only the labels
+ * with a function are loaded and evaluated in JavaScript, {@code horreum.labels.batch-size} datasets at a time.
+ * Dataset views and fingerprints are then rebuilt for all the datasets together.
+ * <p>
+ * The methods must be invoked within a transaction; failing extraction (e.g. an invalid JSONPath) throws
+ * a {@link jakarta.persistence.PersistenceException}.
+ * <p>
+ * Fingerprints are stored with their {@link FingerprintDAO#hash(JsonNode) hash} which is copied to the datapoints
+ * and changes of the dataset; hashes missing in rows stored by older versions are filled in by
+ * {@link FingerprintHashBackfill}.
+ */
+@ApplicationScoped
+public class LabelCalculationEngine {
+    //@formatter:off
+    private static final String NO_FUNCTION = "(label.function IS NULL OR label.function ~ '^\\s*$')";
+    private static final String LABEL_VALUES = """
+         WITH
+         used_labels AS (
+            SELECT ds.dataset_id, label.id AS label_id, label.function, ds.schema_id, count(le) AS count
+            FROM dataset_schemas ds
+            JOIN label ON label.schema_id = ds.schema_id
+            LEFT JOIN label_extractors le ON le.label_id = label.id
+            WHERE ds.dataset_id = ANY(?1) AND (?2 < 0 OR label.id = ?2) AND %s
+            GROUP BY ds.dataset_id, label.id, label.function, ds.schema_id
+         ),
+         lvalues AS (
+            SELECT ul.dataset_id, ul.label_id, le.name,
+                  (CASE WHEN le.isarray THEN
+                     jsonb_path_query_array(dataset.data -> ds.index, le.jsonpath::jsonpath)
+                  ELSE
+                     jsonb_path_query_first(dataset.data -> ds.index, le.jsonpath::jsonpath)
+                  END) AS value
+            FROM dataset
+            JOIN dataset_schemas ds ON dataset.id = ds.dataset_id
+            JOIN used_labels ul ON ul.dataset_id = ds.dataset_id AND ul.schema_id = ds.schema_id
+            LEFT JOIN label_extractors le ON ul.label_id = le.label_id
+            WHERE dataset.id = ANY(?1)
+         )
+         SELECT lvalues.dataset_id, lvalues.label_id, ul.function,
+               (CASE
+                  WHEN ul.count > 1 THEN jsonb_object_agg(COALESCE(lvalues.name, ''), lvalues.value)
+                  WHEN ul.count = 1 THEN jsonb_agg(lvalues.value) -> 0
+                  ELSE '{}'::jsonb END
+               ) AS value
+         FROM lvalues
+         JOIN used_labels ul ON ul.label_id = lvalues.label_id AND ul.dataset_id = lvalues.dataset_id
+         GROUP BY lvalues.dataset_id, lvalues.label_id, ul.function, ul.count
+         """;
+    private static final String INSERT_LABEL_VALUES = """
+         INSERT INTO label_values (dataset_id, label_id, value)
+         SELECT (e ->> 'd')::int, (e ->> 'l')::int, e -> 'v' FROM jsonb_array_elements(?1) e
+         """;
+    private static final String FINGERPRINT_VALUES = """
+         SELECT lv.dataset_id, label.name, lv.value
+         FROM label_values lv
+         JOIN label ON label.id = lv.label_id
+         WHERE lv.dataset_id = ANY(?1) AND jsonb_exists(?2, label.name)
+         ORDER BY lv.dataset_id, lv.label_id
+         """;
+    private static final String INSERT_FINGERPRINTS = """
+         INSERT INTO fingerprint (dataset_id, fingerprint, fp_hash)
+         SELECT dataset.id, e -> 'fp', (e ->> 'h')::bigint FROM jsonb_array_elements(?1) e
+         JOIN dataset ON dataset.id = (e ->> 'd')::int
+         """;
+    // datapoints and changes keep a copy of the hash to be indexed together with variable and timestamp
+    static final String COPY_FINGERPRINT_HASHES = """
+         UPDATE %s t SET fp_hash = COALESCE((SELECT fp_hash FROM fingerprint fp WHERE fp.dataset_id = t.dataset_id), ?2)
+         WHERE %s
+         """;
+    //@formatter:on
+
+    @Inject
+    @ConfigProperty(name = "horreum.labels.batch-size", defaultValue = "100")
+    int batchSize;
+
+    @Inject
+    Session session;
+
+    /**
+     * Receives messages that should be persisted in the log of a dataset.
+     */
+    @FunctionalInterface
+    interface DatasetLog {
+        void log(int datasetId, int level, String format, Object... args);
+    }
+
+    /**
+     * Replaces values of the label (or all labels if {@code labelId} is negative) in the datasets and rebuilds
+     * their dataset views and fingerprints.
+     */
+    void calculate(int testId, int[] datasetIds, int labelId, DatasetLog log) {
+        if (datasetIds.length == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        deleteLabelValues(datasetIds, labelId);
+        int inserted = session.createNativeQuery(
+                "INSERT INTO label_values (dataset_id, label_id, value) SELECT dataset_id, label_id, value FROM ("
+                        + LABEL_VALUES.formatted(NO_FUNCTION) + ") AS extracted")
+                .setParameter(1, datasetIds, IntArrayType.INSTANCE)
+                .setParameter(2, labelId)
+                .executeUpdate();
+        for (int i = 0; i < datasetIds.length; i += batchSize) {
+            evaluateFunctions(Arrays.copyOfRange(datasetIds, i, Math.min(datasetIds.length, i + batchSize)), labelId, log);
+        }
+        rebuildViews(datasetIds);
+        rebuildFingerprints(testId, datasetIds);
+        Log.debugf("Calculated label values for %d datasets of test %d (%d without function) in %d ms", datasetIds.length,
+                testId, inserted, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void deleteLabelValues(int[] datasetIds, int labelId) {
+        // While any change should remove the label_value first via trigger it is possible
+        // that something triggers two events after each other, removing the data (twice)
+        // before the first event is processed. The second event would then find the label_value
+        // already present and would fail with a constraint violation.
+        session.createNativeQuery("DELETE FROM label_values WHERE dataset_id = ANY(?1) AND (?2 < 0 OR label_id = ?2)")
+                .setParameter(1, datasetIds, IntArrayType.INSTANCE)
+                .setParameter(2, labelId)
+                .executeUpdate();
+    }
+
+    private void evaluateFunctions(int[] datasetIds, int labelId, DatasetLog log) {
+        List<Object[]> extracted = session.createNativeQuery(
+                LABEL_VALUES.formatted("NOT " + NO_FUNCTION) + " ORDER BY lvalues.dataset_id", Object[].class)
+                .setParameter(1, datasetIds, IntArrayType.INSTANCE)
+                .setParameter(2, labelId)
+                .addScalar("dataset_id", StandardBasicTypes.INTEGER)
+                .addScalar("label_id", StandardBasicTypes.INTEGER)
+                .addScalar("function", StandardBasicTypes.TEXT)
+                .addScalar("value", JsonBinaryType.INSTANCE)
+                .getResultList();
+        if (extracted.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<Object[]>> byDataset = extracted.stream()
+                .collect(Collectors.groupingBy(row -> (Integer) row[0], LinkedHashMap::new, Collectors.toList()));
+        ArrayNode values = JsonNodeFactory.instance.arrayNode(extracted.size());
+        for (var entry : byDataset.entrySet()) {
+            int datasetId = entry.getKey();
+            Util.evaluateWithCombinationFunction(entry.getValue(),
+                    (row) -> (String) row[2],
+                    (row) -> (row[3] instanceof ArrayNode ? flatten((ArrayNode) row[3]) : (JsonNode) row[3]),
+                    (row, result) -> addValue(values, datasetId, (int) row[1], Util.convertToJson(result)),
+                    (row) -> addValue(values, datasetId, (int) row[1], (JsonNode) row[3]),
+                    (row, e, jsCode) -> log.log(datasetId, PersistentLogDAO.ERROR,
+                            "Evaluation of label %s failed: '%s' Code:<pre>%s</pre>", row[1], e.getMessage(), jsCode),
+                    (out) -> log.log(datasetId, PersistentLogDAO.DEBUG, "Output while calculating labels: <pre>%s</pre>",
+                            out));
+        }
+        if (!values.isEmpty()) {
+            session.createNativeQuery(INSERT_LABEL_VALUES)
+                    .setParameter(1, values, JsonBinaryType.INSTANCE)
+                    .executeUpdate();
+        }
+    }
+
+    private static void addValue(ArrayNode values, int datasetId, int labelId, JsonNode value) {
+        ObjectNode row = values.addObject().put("d", datasetId).put("l", labelId);
+        // missing 'v' is inserted as SQL NULL
+        if (value != null) {
+            row.set("v", value);
+        }
+    }
+
+    private static ArrayNode flatten(ArrayNode bucket) {
+        JsonNode data = bucket.get(0);
+        if (data == null)
+            return bucket;
+
+        if (data instanceof ArrayNode) {
+            bucket.removeAll();
+            data.forEach(bucket::add);
+        }
+        return bucket;
+    }
+
+    void rebuildViews(int[] datasetIds) {
+        session.createNativeQuery("DELETE FROM dataset_view WHERE dataset_id = ANY(?1)")
+                .setParameter(1, datasetIds, IntArrayType.INSTANCE)
+                .executeUpdate();
+        session.createNativeQuery("call calc_dataset_views(?1)")
+                .setParameter(1, datasetIds, IntArrayType.INSTANCE)
+                .executeUpdate();
+    }
+
+    void rebuildFingerprints(int testId, int[] datasetIds) {
+        session.createNativeQuery("DELETE FROM fingerprint WHERE dataset_id = ANY(?1)")
+                .setParameter(1, datasetIds, IntArrayType.INSTANCE)
+                .executeUpdate();
+        insertFingerprints(testId, datasetIds);
+        copyFingerprintHashes(datasetIds);
+    }
+
+    private void insertFingerprints(int testId, int[] datasetIds) {
+        JsonNode fingerprintLabels;
+        try {
+            fingerprintLabels = session.createQuery("SELECT t.fingerprintLabels from test t WHERE t.id = ?1", JsonNode.class)
+                    .setParameter(1, testId).getSingleResult();
+        } catch (NoResultException e) {
+            Log.infof("Could not find fingerprint labels for test %d", testId);
+            return;
+        }
+        if (fingerprintLabels == null) {
+            return;
+        }
+        List<Object[]> rows = session.createNativeQuery(FINGERPRINT_VALUES, Object[].class)
+                .setParameter(1, datasetIds, IntArrayType.INSTANCE)
+                .setParameter(2, fingerprintLabels, JsonBinaryType.INSTANCE)
+                .addScalar("dataset_id", StandardBasicTypes.INTEGER)
+                .addScalar("name", StandardBasicTypes.TEXT)
+                .addScalar("value", JsonBinaryType.INSTANCE)
+                .getResultList();
+        Map<Integer, List<Object[]>> byDataset = rows.stream()
+                .collect(Collectors.groupingBy(row -> (Integer) row[0]));
+        ArrayNode fingerprints = JsonNodeFactory.instance.arrayNode(datasetIds.length);
+        for (int datasetId : datasetIds) {
+            ObjectNode fingerprint = JsonNodeFactory.instance.objectNode();
+            List<Object[]> values = byDataset.getOrDefault(datasetId, Collections.emptyList());
+            // keep the order of the fingerprint labels
+            for (JsonNode name : fingerprintLabels) {
+                for (Object[] value : values) {
+                    if (name.asText().equals(value[1])) {
+                        fingerprint.put((String) value[1], value[2] == null ? "null" : ((JsonNode) value[2]).asText());
+                    }
+                }
+            }
+            fingerprints.addObject().put("d", datasetId).put("h", FingerprintDAO.hash(fingerprint)).set("fp", fingerprint);
+        }
+        session.createNativeQuery(INSERT_FINGERPRINTS)
+                .setParameter(1, fingerprints, JsonBinaryType.INSTANCE)
+                .executeUpdate();
+    }
+
+    /**
+     * Copies fingerprint hashes to datapoints and changes of the datasets.
+     */
+    private void copyFingerprintHashes(int[] datasetIds) {
+        for (String table : List.of("datapoint", "change")) {
+            session.createNativeQuery(COPY_FINGERPRINT_HASHES.formatted(table, "t.dataset_id = ANY(?1)"))
+                    .setParameter(1, datasetIds, IntArrayType.INSTANCE)
+                    .setParameter(2, FingerprintDAO.NULL_HASH)
+                    .executeUpdate();
+        }
+    }
+}
@@ -1,24 +1,30 @@
 package io.hyperfoil.tools.horreum.svc;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
+import jakarta.ws.rs.core.StreamingOutput;
 
 import org.hibernate.query.NativeQuery;
 import org.hibernate.type.StandardBasicTypes;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.JsonNodeType;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -27,6 +33,7 @@ import io.hyperfoil.tools.horreum.api.data.ExportedLabelValues;
 import io.hyperfoil.tools.horreum.api.data.LabelValueMap;
 import io.hyperfoil.tools.horreum.hibernate.JsonBinaryType;
 import io.hyperfoil.tools.horreum.hibernate.JsonbSetType;
+import io.hyperfoil.tools.horreum.server.WithRoles;
 import io.quarkus.logging.Log;
 
 /**
@@ -47,29 +54,60 @@ public class LabelValuesService {
     //use @\\?\\? to turn into a @? in the query
     protected static final String LABEL_VALUES_FILTER_MATCHES_NOT_NULL = "inner_l.name = :jsonpathRoot AND inner_lv.value @\\?\\? CAST( :jsonpathFilter as jsonpath)";
 
+    // The page of datasets is selected first, label values are then aggregated only for the datasets in that page.
+    // Datasets without any label values are included only when there is no include/exclude clause.
     protected static final String LABEL_VALUES_QUERY_BY_TEST = """
             WITH
             combined as (
-            SELECT label.name AS labelName, lv.value AS value, runId, dataset.id AS datasetId, dataset.start AS start, dataset.stop AS stop
+            SELECT dataset.id AS datasetId, dataset.runId AS runId, dataset.start AS start, dataset.stop AS stop
                      FROM dataset
-                     LEFT JOIN label_values lv ON dataset.id = lv.dataset_id
-                     LEFT JOIN label ON label.id = lv.label_id
-                     WHERE dataset.testid = :testId
-                        AND (label.id IS NULL OR (:filteringLabels AND label.filtering) OR (:metricLabels AND label.metrics)) INCLUDE_EXCLUDE_PLACEHOLDER
-            ) SELECT * from combined FILTER_PLACEHOLDER ORDER_PLACEHOLDER
+                     WHERE dataset.testid = :testId AND (EMPTY_DATASETS_PLACEHOLDER EXISTS (
+                        SELECT 1 FROM label_values lv JOIN label ON label.id = lv.label_id
+                        WHERE lv.dataset_id = dataset.id
+                            AND ((:filteringLabels AND label.filtering) OR (:metricLabels AND label.metrics)) INCLUDE_EXCLUDE_PLACEHOLDER))
+            ),
+            page as (
+            SELECT * FROM combined FILTER_PLACEHOLDER ORDER_PLACEHOLDER LIMIT_PLACEHOLDER
+            )
+            SELECT page.runId, page.datasetId, page.start, page.stop, COALESCE(agg.labelValues, '{}'::jsonb) AS labelValues
+                     FROM page
+                     LEFT JOIN LATERAL (
+                        SELECT jsonb_object_agg(label.name, lv.value) AS labelValues
+                        FROM label_values lv JOIN label ON label.id = lv.label_id
+                        WHERE lv.dataset_id = page.datasetId
+                            AND ((:filteringLabels AND label.filtering) OR (:metricLabels AND label.metrics)) INCLUDE_EXCLUDE_PLACEHOLDER
+                     ) agg ON true
+            PAGE_ORDER_PLACEHOLDER
             """;
 
     protected static final String LABEL_VALUES_QUERY_BY_RUN = """
             WITH
             combined as (
-            SELECT label.name AS labelName, lv.value AS value, runId, dataset.id AS datasetId, dataset.start AS start, dataset.stop AS stop
+            SELECT dataset.id AS datasetId, dataset.runId AS runId, dataset.start AS start, dataset.stop AS stop
                      FROM dataset
-                     LEFT JOIN label_values lv ON dataset.id = lv.dataset_id
-                     LEFT JOIN label ON label.id = lv.label_id
-                     WHERE dataset.runid = :runId INCLUDE_EXCLUDE_PLACEHOLDER
-            ) SELECT * from combined FILTER_PLACEHOLDER ORDER_PLACEHOLDER
+                     WHERE dataset.runid = :runId AND (EMPTY_DATASETS_PLACEHOLDER EXISTS (
+                        SELECT 1 FROM label_values lv JOIN label ON label.id = lv.label_id
+                        WHERE lv.dataset_id = dataset.id INCLUDE_EXCLUDE_PLACEHOLDER))
+            ),
+            page as (
+            SELECT * FROM combined FILTER_PLACEHOLDER ORDER_PLACEHOLDER LIMIT_PLACEHOLDER
+            )
+            SELECT page.runId, page.datasetId, page.start, page.stop, COALESCE(agg.labelValues, '{}'::jsonb) AS labelValues
+                     FROM page
+                     LEFT JOIN LATERAL (
+                        SELECT jsonb_object_agg(label.name, lv.value) AS labelValues
+                        FROM label_values lv JOIN label ON label.id = lv.label_id
+                        WHERE lv.dataset_id = page.datasetId INCLUDE_EXCLUDE_PLACEHOLDER
+                     ) agg ON true
+            PAGE_ORDER_PLACEHOLDER
             """;
 
+    protected static final String EMPTY_DATASETS = "NOT EXISTS (SELECT 1 FROM label_values lv WHERE lv.dataset_id = dataset.id) OR";
+    protected static final String LIMIT_OFFSET = "LIMIT :limit OFFSET :offset";
+    // label values are exported in long format, one line per label value
+    protected static final String CSV_HEADER = "runId,datasetId,start,stop,label,value\n";
+    private static final int EXPORT_FETCH_SIZE = 100;
+
     protected static final String LABEL_VALUES_DATASETS_BY_TEST_AND_FILTER = """
             SELECT inner_d.id
             FROM dataset inner_d
@@ -93,6 +131,9 @@ public class LabelValuesService {
     @Inject
     EntityManager em;
 
+    @Inject
+    ObjectMapper mapper;
+
     protected FilterDef getFilterDef(JsonNode filter, Instant before, Instant after, boolean multiFilter, boolean byTest,
             Function<String, List<ExportedLabelValues>> checkFilter) {
         // byTest if true the datasets should be filtered by testId, otherwise by runId
@@ -250,14 +291,53 @@ public class LabelValuesService {
     public List<ExportedLabelValues> labelValuesByTest(int testId, String filter, String before, String after,
             boolean filtering, boolean metrics, String sort, String direction, Integer limit, int page, List<String> include,
             List<String> exclude, boolean multiFilter) {
+        FilterDef filterDef = labelValuesByTestFilter(testId, filter, before, after, filtering, metrics, sort, direction,
+                include, exclude, multiFilter);
+        return toExportedLabelValues(labelValuesByTestQuery(testId, filterDef, filter, before, after, filtering, metrics, sort,
+                direction, limit, page, include, exclude).getResultList());
+    }
+
+    /**
+     * Streams labelValues grouped by datasets for all runs under the provided test, see
+     * {@link LabelValuesService#labelValuesByTest}. The filter is resolved and validated when this is called,
+     * throwing {@link IllegalArgumentException} if it is not valid. The results are read when the returned output
+     * is written, with a forward-only cursor, so the memory used does not depend on the number of datasets.
+     */
+    @Transactional
+    @WithRoles
+    public StreamingOutput exportLabelValuesByTest(int testId, String filter, String before, String after,
+            boolean filtering, boolean metrics, String sort, String direction, List<String> include, List<String> exclude,
+            boolean multiFilter, ExportFormat format) {
+        FilterDef filterDef = labelValuesByTestFilter(testId, filter, before, after, filtering, metrics, sort, direction,
+                include, exclude, multiFilter);
+        return output -> writeLabelValuesByTest(testId, filterDef, filter, before, after, filtering, metrics, sort,
+                direction, include, exclude, format, output);
+    }
 
+    @Transactional
+    @WithRoles
+    void writeLabelValuesByTest(int testId, FilterDef filterDef, String filter, String before, String after,
+            boolean filtering, boolean metrics, String sort, String direction, List<String> include, List<String> exclude,
+            ExportFormat format, OutputStream output) throws IOException {
+        export(labelValuesByTestQuery(testId, filterDef, filter, before, after, filtering, metrics, sort, direction, null, 0,
+                include, exclude), format, output);
+    }
+
+    private FilterDef labelValuesByTestFilter(int testId, String filter, String before, String after, boolean filtering,
+            boolean metrics, String sort, String direction, List<String> include, List<String> exclude,
+            boolean multiFilter) {
+        // a single result is enough to tell whether a key is matched by the array as a whole
+        return getFilterDef(Util.getFilterObject(filter), Util.toInstant(before), Util.toInstant(after), multiFilter, true,
+                (str) -> labelValuesByTest(testId, str, before, after, filtering, metrics, sort, direction, 1, 0,
+                        include, exclude, false));
+    }
+
+    private NativeQuery<Object[]> labelValuesByTestQuery(int testId, FilterDef filterDef, String filter, String before,
+            String after, boolean filtering, boolean metrics, String sort, String direction, Integer limit, int page,
+            List<String> include, List<String> exclude) {
         Instant beforeInstant = Util.toInstant(before);
         Instant afterInstant = Util.toInstant(after);
 
-        FilterDef filterDef = getFilterDef(Util.getFilterObject(filter), beforeInstant, afterInstant, multiFilter, true,
-                (str) -> labelValuesByTest(testId, str,
-                        before, after, filtering, metrics, sort, direction, limit, page, include, exclude, false));
-
         ObjectNode simpleFilterObject = filterDef.simpleFilterObject();
         ObjectNode multiFilterObject = filterDef.multiFilterObject();
         String filterSql = filterDef.sql();
@@ -284,7 +364,7 @@ public class LabelValuesService {
         }
 
         // --- ordering
-        // by default order by runId
+        // by default order by runId, datasetId makes the order (and therefore paging) deterministic
         String orderSql = LABEL_ORDER_PREFIX + "combined.runId DESC";
         String orderDirection = direction.equalsIgnoreCase("ascending") ? "ASC" : "DESC";
         if ("start".equalsIgnoreCase(sort)) {
@@ -294,11 +374,15 @@ public class LabelValuesService {
         } else if (sort != null && !sort.isBlank()) {
             Log.warnf("Invalid sort order received: %s", sort);
         }
+        orderSql += ", combined.datasetId ASC";
 
         String sql = LABEL_VALUES_QUERY_BY_TEST
+                .replace("EMPTY_DATASETS_PLACEHOLDER", includeExcludeSql.isEmpty() ? EMPTY_DATASETS : "")
                 .replace("FILTER_PLACEHOLDER", filterSql)
                 .replace("INCLUDE_EXCLUDE_PLACEHOLDER", includeExcludeSql)
-                .replace("ORDER_PLACEHOLDER", orderSql);
+                .replace("PAGE_ORDER_PLACEHOLDER", orderSql.replace("combined.", "page."))
+                .replace("ORDER_PLACEHOLDER", orderSql)
+                .replace("LIMIT_PLACEHOLDER", limit != null && limit > 0 ? LIMIT_OFFSET : "");
 
         NativeQuery<Object[]> query = (NativeQuery<Object[]>) (em.createNativeQuery(sql))
                 .setParameter("testId", testId)
@@ -353,16 +437,12 @@ public class LabelValuesService {
             query.setParameter("exclude", exclude);
         }
 
-        // add query result types
-        query
-                .addScalar("labelName", String.class)
-                .addScalar("value", JsonBinaryType.INSTANCE)
-                .addScalar("runId", Integer.class)
-                .addScalar("datasetId", Integer.class)
-                .addScalar("start", StandardBasicTypes.INSTANT)
-                .addScalar("stop", StandardBasicTypes.INSTANT);
+        if (limit != null && limit > 0) {
+            query.setParameter("limit", limit);
+            query.setParameter("offset", (long) limit * Math.max(page, 0));
+        }
 
-        return LabelValuesService.parse(query.getResultList(), limit, page);
+        return addLabelValuesScalars(query);
     }
 
     /**
@@ -375,9 +455,38 @@ public class LabelValuesService {
     public List<ExportedLabelValues> labelValuesByRun(int runId, String filter, String sort, String direction, int limit,
             int page,
             List<String> include, List<String> exclude, boolean multiFilter) {
+        FilterDef filterDef = labelValuesByRunFilter(runId, filter, sort, direction, include, exclude, multiFilter);
+        return toExportedLabelValues(labelValuesByRunQuery(runId, filterDef, filter, sort, direction, limit, page, include,
+                exclude).getResultList());
+    }
+
+    /**
+     * Streams labelValues grouped by datasets for a specific run, see {@link LabelValuesService#exportLabelValuesByTest}.
+     */
+    @Transactional
+    @WithRoles
+    public StreamingOutput exportLabelValuesByRun(int runId, String filter, String sort, String direction,
+            List<String> include, List<String> exclude, boolean multiFilter, ExportFormat format) {
+        FilterDef filterDef = labelValuesByRunFilter(runId, filter, sort, direction, include, exclude, multiFilter);
+        return output -> writeLabelValuesByRun(runId, filterDef, filter, sort, direction, include, exclude, format, output);
+    }
 
-        FilterDef filterDef = getFilterDef(Util.getFilterObject(filter), null, null, multiFilter, false,
-                (str) -> labelValuesByRun(runId, str, sort, direction, limit, page, include, exclude, false));
+    @Transactional
+    @WithRoles
+    void writeLabelValuesByRun(int runId, FilterDef filterDef, String filter, String sort, String direction,
+            List<String> include, List<String> exclude, ExportFormat format, OutputStream output) throws IOException {
+        export(labelValuesByRunQuery(runId, filterDef, filter, sort, direction, 0, 0, include, exclude), format, output);
+    }
+
+    private FilterDef labelValuesByRunFilter(int runId, String filter, String sort, String direction, List<String> include,
+            List<String> exclude, boolean multiFilter) {
+        // a single result is enough to tell whether a key is matched by the array as a whole
+        return getFilterDef(Util.getFilterObject(filter), null, null, multiFilter, false,
+                (str) -> labelValuesByRun(runId, str, sort, direction, 1, 0, include, exclude, false));
+    }
+
+    private NativeQuery<Object[]> labelValuesByRunQuery(int runId, FilterDef filterDef, String filter, String sort,
+            String direction, int limit, int page, List<String> include, List<String> exclude) {
 
         ObjectNode simpleFilterObject = filterDef.simpleFilterObject();
         ObjectNode multiFilterObject = filterDef.multiFilterObject();
@@ -414,9 +523,12 @@ public class LabelValuesService {
         }
 
         String sql = LABEL_VALUES_QUERY_BY_RUN
+                .replace("EMPTY_DATASETS_PLACEHOLDER", includeExcludeSql.isEmpty() ? EMPTY_DATASETS : "")
                 .replace("FILTER_PLACEHOLDER", filterSql)
                 .replace("INCLUDE_EXCLUDE_PLACEHOLDER", includeExcludeSql)
-                .replace("ORDER_PLACEHOLDER", orderSql);
+                .replace("PAGE_ORDER_PLACEHOLDER", orderSql.replace("combined.", "page."))
+                .replace("ORDER_PLACEHOLDER", orderSql)
+                .replace("LIMIT_PLACEHOLDER", limit > 0 ? LIMIT_OFFSET : "");
 
         NativeQuery<Object[]> query = (NativeQuery<Object[]>) (em.createNativeQuery(sql))
                 .setParameter("runId", runId);
@@ -465,82 +577,131 @@ public class LabelValuesService {
             query.setParameter("orderBy", sort);
         }
 
-        // add query result types
-        query
-                .addScalar("labelName", String.class)
-                .addScalar("value", JsonBinaryType.INSTANCE)
+        if (limit > 0) {
+            query.setParameter("limit", limit);
+            query.setParameter("offset", (long) limit * Math.max(page, 0));
+        }
+
+        return addLabelValuesScalars(query);
+    }
+
+    private static NativeQuery<Object[]> addLabelValuesScalars(NativeQuery<Object[]> query) {
+        return query
                 .addScalar("runId", Integer.class)
                 .addScalar("datasetId", Integer.class)
                 .addScalar("start", StandardBasicTypes.INSTANT)
-                .addScalar("stop", StandardBasicTypes.INSTANT);
+                .addScalar("stop", StandardBasicTypes.INSTANT)
+                .addScalar("labelValues", JsonBinaryType.INSTANCE);
+    }
 
-        return LabelValuesService.parse(query.getResultList(), limit, page);
+    /**
+     * Maps the rows of the label values query, one row per dataset with all label values aggregated.
+     */
+    static List<ExportedLabelValues> toExportedLabelValues(List<Object[]> rows) {
+        List<ExportedLabelValues> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            result.add(toExportedLabelValues(row));
+        }
+        return result;
+    }
+
+    private void export(NativeQuery<Object[]> query, ExportFormat format, OutputStream output) throws IOException {
+        try (Stream<Object[]> results = query.setReadOnly(true).setFetchSize(EXPORT_FETCH_SIZE).getResultStream()) {
+            export(results.iterator(), format, output, mapper);
+        }
     }
 
     /**
-     * Parse a list of nodes, group them by run and dataset id
-     * and compute the aggregated object by merging the all obj
-     * with key the label name and as value the label value.
-     * The nodes must match the following structure:
-     * 0 - label name
-     * 1 - label value
-     * 2 - run id
-     * 3 - dataset id
-     * 4 - start time
-     * 5 - stop time
-     *
-     * @param nodes
-     * @return
+     * Writes the rows of the label values query one by one, without holding them in memory.
      */
-    protected static List<ExportedLabelValues> parse(List<Object[]> nodes, Integer limit, Integer page) {
-        if (nodes == null || nodes.isEmpty())
-            return new ArrayList<>();
-
-        Map<RunDatasetKey, ExportedLabelValues> exportedLabelValues = nodes.stream()
-                .collect(Collectors.groupingBy(
-                        objects -> { // Create the key as a combination of runId and datasetId
-                            Integer runId = (Integer) objects[2];
-                            Integer datasetId = (Integer) objects[3];
-                            return new RunDatasetKey(runId, datasetId);
-                        },
-                        LinkedHashMap::new, // preserve the order in which I receive the nodes
-                        Collectors.collectingAndThen(
-                                Collectors.toList(), // collect each group (by runId and datasetId) into a list of elements
-                                (groupedObjects) -> { // process each group and create the corresponding ExportedLabelValues
-                                    ExportedLabelValues exportedLabelValue = getExportedLabelValues(groupedObjects);
-
-                                    groupedObjects.forEach(objects -> {
-                                        // skip records where the labelName is null
-                                        if (objects[0] != null) {
-                                            String labelName = (String) objects[0];
-                                            JsonNode node = (JsonNode) objects[1];
-                                            exportedLabelValue.values.put(labelName, node);
-                                        }
-                                    });
-
-                                    return exportedLabelValue;
-                                })));
+    static void export(Iterator<Object[]> rows, ExportFormat format, OutputStream output, ObjectMapper mapper)
+            throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+        }
+        while (rows.hasNext()) {
+            ExportedLabelValues labelValues = toExportedLabelValues(rows.next());
+            if (format == ExportFormat.CSV) {
+                writeCsv(labelValues, writer, mapper);
+            } else {
+                writer.write(mapper.writeValueAsString(labelValues));
+                writer.write('\n');
+            }
+        }
+        writer.flush();
+    }
 
-        if (limit != null && limit > 0) {
-            long toSkip = (long) limit * ((page == null || page < 0) ? 0 : page);
-            return exportedLabelValues.values().stream().skip(toSkip).limit(limit).collect(Collectors.toList());
+    private static void writeCsv(ExportedLabelValues labelValues, Writer writer, ObjectMapper mapper) throws IOException {
+        String prefix = labelValues.runId + "," + labelValues.datasetId + "," + labelValues.start + "," + labelValues.stop
+                + ",";
+        if (labelValues.values == null || labelValues.values.isEmpty()) {
+            writer.write(prefix);
+            writer.write(",\n");
+            return;
         }
+        for (Map.Entry<String, JsonNode> entry : labelValues.values.entrySet()) {
+            writer.write(prefix);
+            writer.write(csvField(entry.getKey()));
+            writer.write(',');
+            JsonNode value = entry.getValue();
+            // strings are written as they are, anything else as JSON
+            if (value != null && !value.isNull()) {
+                writer.write(csvField(value.isTextual() ? value.asText() : mapper.writeValueAsString(value)));
+            }
+            writer.write('\n');
+        }
+    }
 
-        return new ArrayList<>(exportedLabelValues.values());
+    static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
     }
 
     /**
-     * Maps group of label value records in the form of list of array nodes
-     * to the {@link ExportedLabelValues} object
-     * @param groupedObjects all label values belonging to the same run and dataset group
-     * @return {@link ExportedLabelValues}
+     * The row must match the following structure:
+     * 0 - run id
+     * 1 - dataset id
+     * 2 - start time
+     * 3 - stop time
+     * 4 - label values aggregated into an object
      */
-    private static ExportedLabelValues getExportedLabelValues(List<Object[]> groupedObjects) {
-        Integer runId = (Integer) groupedObjects.get(0)[2];
-        Integer datasetId = (Integer) groupedObjects.get(0)[3];
-        Instant start = (Instant) groupedObjects.get(0)[4];
-        Instant stop = (Instant) groupedObjects.get(0)[5];
-        return new ExportedLabelValues(new LabelValueMap(), runId, datasetId, start, stop);
+    static ExportedLabelValues toExportedLabelValues(Object[] row) {
+        JsonNode values = (JsonNode) row[4];
+        return new ExportedLabelValues(
+                LabelValueMap.fromObjectNode(values instanceof ObjectNode ? (ObjectNode) values : null),
+                (Integer) row[0], (Integer) row[1], (Instant) row[2], (Instant) row[3]);
+    }
+
+    /**
+     * Format of the streamed label values export
+     */
+    public enum ExportFormat {
+        /**
+         * Newline delimited JSON, one {@link ExportedLabelValues} object per line
+         */
+        NDJSON("application/x-ndjson"),
+        /**
+         * CSV with one line per label value
+         */
+        CSV("text/csv");
+
+        public final String mediaType;
+
+        ExportFormat(String mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public static ExportFormat fromString(String format) {
+            for (ExportFormat f : values()) {
+                if (f.name().equalsIgnoreCase(format)) {
+                    return f;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported export format: " + format);
+        }
     }
 
     /**
@@ -555,37 +716,4 @@ public class LabelValuesService {
     protected record FilterDef(String sql, ObjectNode simpleFilterObject, ObjectNode multiFilterObject,
             List<String> multiFilterKeys, String jsonpathRoot, String jsonpathFilter, int totalKeyChecks) {
     }
-
-    /**
-     * Run and Dataset ids composed key that is used to
-     * group by all resulting label values
-     */
-    public static class RunDatasetKey {
-        Integer runId;
-        Integer datasetId;
-
-        public RunDatasetKey(Integer runId, Integer datasetId) {
-            this.runId = runId;
-            this.datasetId = datasetId;
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(runId, datasetId);
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o)
-                return true;
-            if (o == null || getClass() != o.getClass())
-                return false;
-
-            RunDatasetKey that = (RunDatasetKey) o;
-
-            if (!Objects.equals(runId, that.runId))
-                return false;
-            return Objects.equals(datasetId, that.datasetId);
-        }
-    }
 }
@@ -43,6 +43,13 @@ public class LogServiceImpl implements LogService {
     @Inject
     TimeService timeService;
 
+    // pending entries are flushed before reading or deleting the logs
+    @Inject
+    PersistentLogSink logSink;
+
+    @Inject
+    PartitionMaintenance partitionMaintenance;
+
     private Integer withDefault(Integer value, Integer defValue) {
         return value != null ? value : defValue;
     }
@@ -52,6 +59,7 @@ public class LogServiceImpl implements LogService {
     @Override
     public List<DatasetLog> getDatasetLog(String source, int testId, int level, Integer datasetId, Integer page,
             Integer limit) {
+        logSink.flush();
         page = withDefault(page, 0);
         limit = withDefault(limit, 25);
         PanacheQuery<DatasetLogDAO> query;
@@ -69,6 +77,7 @@ public class LogServiceImpl implements LogService {
     @WithRoles
     @RolesAllowed(Roles.TESTER)
     public long getDatasetLogCount(String source, int testId, int level, Integer datasetId) {
+        logSink.flush();
         if (datasetId == null) {
             return DatasetLogDAO.count("test.id = ?1 AND source = ?2 AND level >= ?3", testId, source, level);
         } else {
@@ -81,6 +90,7 @@ public class LogServiceImpl implements LogService {
     @WithRoles
     @Transactional
     public void deleteDatasetLogs(String source, int testId, Integer datasetId, Long from, Long to) {
+        logSink.flush();
         // Not using Instant.MIN/Instant.MAX as Hibernate converts to LocalDateTime internally
         Instant fromTs = from == null ? EPOCH_START : Instant.ofEpochMilli(from);
         Instant toTs = to == null ? FAR_FUTURE : Instant.ofEpochMilli(to);
@@ -100,6 +110,7 @@ public class LogServiceImpl implements LogService {
     @WithRoles
     @Override
     public List<TransformationLog> getTransformationLog(int testId, int level, Integer runId, Integer page, Integer limit) {
+        logSink.flush();
         page = withDefault(page, 0);
         limit = withDefault(limit, 25);
         if (runId == null || runId <= 0) {
@@ -119,6 +130,7 @@ public class LogServiceImpl implements LogService {
     @WithRoles
     @Override
     public long getTransformationLogCount(int testId, int level, Integer runId) {
+        logSink.flush();
         if (runId == null || runId <= 0) {
             return TransformationLogDAO.count("test.id = ?1 AND level >= ?2", testId, level);
         } else {
@@ -131,6 +143,7 @@ public class LogServiceImpl implements LogService {
     @WithRoles
     @Transactional
     public void deleteTransformationLogs(int testId, Integer runId, Long from, Long to) {
+        logSink.flush();
         // Not using Instant.MIN/Instant.MAX as Hibernate converts to LocalDateTime internally
         Instant fromTs = from == null ? EPOCH_START : Instant.ofEpochMilli(from);
         Instant toTs = to == null ? FAR_FUTURE : Instant.ofEpochMilli(to);
@@ -148,6 +161,7 @@ public class LogServiceImpl implements LogService {
     @WithRoles
     @RolesAllowed(Roles.TESTER)
     public List<ActionLog> getActionLog(int testId, int level, Integer page, Integer limit) {
+        logSink.flush();
         page = withDefault(page, 0);
         limit = withDefault(limit, 25);
         List<ActionLogDAO> logs = ActionLogDAO.find("testId = ?1 AND level >= ?2", Sort.descending("timestamp"), testId, level)
@@ -159,6 +173,7 @@ public class LogServiceImpl implements LogService {
     @WithRoles
     @RolesAllowed(Roles.TESTER)
     public long getActionLogCount(int testId, int level) {
+        logSink.flush();
         return ActionLogDAO.find("testId = ?1 AND level >= ?2", testId, level).count();
     }
 
@@ -167,6 +182,7 @@ public class LogServiceImpl implements LogService {
     @RolesAllowed(Roles.TESTER)
     @Transactional
     public void deleteActionLogs(int testId, Long from, Long to) {
+        logSink.flush();
         Instant fromTs = from == null ? EPOCH_START : Instant.ofEpochMilli(from);
         Instant toTs = to == null ? FAR_FUTURE : Instant.ofEpochMilli(to);
         long deleted = ActionLogDAO.delete("testId = ?1 AND timestamp >= ?2 AND timestamp < ?3", testId, fromTs, toTs);
@@ -176,6 +192,7 @@ public class LogServiceImpl implements LogService {
     @WithRoles(extras = Roles.HORREUM_SYSTEM)
     @Transactional
     public void onTestDelete(int testId) {
+        logSink.flush();
         DatasetLogDAO.delete("test.id", testId);
         TransformationLogDAO.delete("test.id", testId);
     }
@@ -184,6 +201,10 @@ public class LogServiceImpl implements LogService {
     @WithRoles(extras = Roles.HORREUM_SYSTEM)
     @Transactional
     void checkExpiredTransformationLogs() {
+        if (partitionMaintenance.isPartitioned("transformationlog")) {
+            // expired partitions are dropped according to the retention of each level
+            return;
+        }
         Duration maxLifespan = Duration.parse(transformationLogMaxLifespan);
         long logsDeleted = TransformationLogDAO.delete("timestamp < ?1", timeService.now().minus(maxLifespan));
         Log.debugf("Deleted %d expired transformation log messages", logsDeleted);
@@ -0,0 +1,140 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.Session;
+import org.hibernate.type.StandardBasicTypes;
+
+import io.hyperfoil.tools.horreum.entity.PersistentLogDAO;
+import io.hyperfoil.tools.horreum.server.WithRoles;
+import io.quarkus.logging.Log;
+import io.quarkus.scheduler.Scheduled;
+
+/**
+ * Maintains monthly partitions of the datapoint and persistent log tables when these have been partitioned
+ * by timestamp ({@code horreum.db.partitioning}); otherwise this does nothing. Partitions for the upcoming months
+ * are created ahead of time and log partitions older than the retention of their level are dropped as a whole.
+ * Without {@code horreum.log.retention.<level>} the retention is the same as without partitioning: transformation
+ * logs expire after {@code horreum.transformationlog.max.lifespan} and dataset and action logs are kept.
+ */
+@ApplicationScoped
+public class PartitionMaintenance {
+    static final List<String> LOG_TABLES = List.of("transformationlog", "datasetlog", "actionlog");
+    // suffixes of the per-level partitions of log tables, indexed by level
+    static final List<String> LEVELS = List.of("debug", "info", "warn", "error");
+    // key of the advisory lock held by the instance maintaining the partitions
+    private static final long LOCK_KEY = 0x486f727265756dL;
+
+    @ConfigProperty(name = "horreum.log.retention.debug")
+    Optional<Duration> debugRetention;
+
+    @ConfigProperty(name = "horreum.log.retention.info")
+    Optional<Duration> infoRetention;
+
+    @ConfigProperty(name = "horreum.log.retention.warn")
+    Optional<Duration> warnRetention;
+
+    @ConfigProperty(name = "horreum.log.retention.error")
+    Optional<Duration> errorRetention;
+
+    @ConfigProperty(name = "horreum.transformationlog.max.lifespan")
+    String transformationLogMaxLifespan;
+
+    @ConfigProperty(name = "horreum.partition.ahead", defaultValue = "P60D")
+    Duration ahead;
+
+    @Inject
+    Session session;
+
+    @Inject
+    TimeService timeService;
+
+    @Scheduled(every = "{horreum.partition.check}")
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    @Transactional
+    void maintainPartitions() {
+        List<String> parents = rangePartitionedTables();
+        if (parents.isEmpty()) {
+            return;
+        }
+        // other instances run this concurrently; the lock is released at the end of the transaction
+        if (!session.createNativeQuery("SELECT pg_try_advisory_xact_lock(?1)", Boolean.class)
+                .setParameter(1, LOCK_KEY).getSingleResult()) {
+            Log.debug("Partitions are maintained by another instance");
+            return;
+        }
+        Instant now = timeService.now();
+        int created = 0;
+        int dropped = 0;
+        for (String parent : parents) {
+            created += ((Number) session.createNativeQuery("SELECT create_time_partitions(CAST(?1 AS regclass), ?2, ?3)")
+                    .setParameter(1, parent)
+                    .setParameter(2, now, StandardBasicTypes.INSTANT)
+                    .setParameter(3, now.plus(ahead), StandardBasicTypes.INSTANT)
+                    .getSingleResult()).intValue();
+            int separator = parent.lastIndexOf('_');
+            int level = LEVELS.indexOf(parent.substring(separator + 1));
+            Optional<Duration> retention = level >= 0 ? retention(parent.substring(0, separator), level)
+                    : Optional.empty();
+            if (retention.isPresent()) {
+                dropped += ((Number) session.createNativeQuery("SELECT drop_time_partitions(CAST(?1 AS regclass), ?2)")
+                        .setParameter(1, parent)
+                        .setParameter(2, now.minus(retention.get()), StandardBasicTypes.INSTANT)
+                        .getSingleResult()).intValue();
+            }
+        }
+        Log.debugf("Created %d and dropped %d partitions", created, dropped);
+    }
+
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    @Transactional
+    boolean isPartitioned(String table) {
+        return !session.createNativeQuery("SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(?1)")
+                .setParameter(1, table).getResultList().isEmpty();
+    }
+
+    /**
+     * @return how long entries of the log table and level are kept, empty if these are never deleted
+     */
+    Optional<Duration> retention(String table, int level) {
+        Optional<Duration> retention = switch (level) {
+            case PersistentLogDAO.DEBUG -> debugRetention;
+            case PersistentLogDAO.INFO -> infoRetention;
+            case PersistentLogDAO.WARN -> warnRetention;
+            default -> errorRetention;
+        };
+        if (retention.isEmpty() && table.equals("transformationlog")) {
+            return Optional.of(Duration.parse(transformationLogMaxLifespan));
+        }
+        return retention;
+    }
+
+    /**
+     * @return tables that are partitioned by range of timestamp; log tables are partitioned by level first
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> rangePartitionedTables() {
+        List<String> candidates = new ArrayList<>();
+        candidates.add("datapoint");
+        for (String table : LOG_TABLES) {
+            for (String level : LEVELS) {
+                candidates.add(table + "_" + level);
+            }
+        }
+        return session.createNativeQuery("SELECT c.relname FROM pg_partitioned_table pt " +
+                "JOIN pg_class c ON c.oid = pt.partrelid " +
+                "WHERE pt.partstrat = 'r' AND c.relname = ANY(string_to_array(?1, ';'))")
+                .setParameter(1, String.join(";", candidates))
+                .addScalar("relname", StandardBasicTypes.STRING)
+                .getResultList();
+    }
+}
@@ -0,0 +1,326 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.control.ActivateRequestContext;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.transaction.Transactional;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+
+import io.hyperfoil.tools.horreum.entity.PersistentLogDAO;
+import io.hyperfoil.tools.horreum.server.RolesInterceptor;
+import io.hyperfoil.tools.horreum.server.WithRoles;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.Startup;
+
+/**
+ * Writes transformation, dataset and action logs in batches. Entries are buffered in memory and a dedicated thread
+ * inserts them with multi-row inserts, once {@code horreum.log.batch.size} entries are pending or
+ * {@code horreum.log.flush.interval} elapses. The entries are buffered regardless of the caller's transaction,
+ * so errors are recorded even when that transaction is rolled back.
+ * <p>
+ * The buffer holds at most {@code horreum.log.buffer.capacity} entries; when it is full, warnings and errors are written
+ * synchronously in a new transaction and debug and info messages are dropped; the same applies after shutdown has started.
+ * Readers of the logs should call {@link #flush()} first to see all entries logged so far.
+ */
+@Startup
+@ApplicationScoped
+public class PersistentLogSink {
+    // PostgreSQL limits the number of parameters in a statement to 32767
+    private static final int MAX_BATCH_SIZE = 4000;
+
+    @ConfigProperty(name = "horreum.log.buffer.capacity", defaultValue = "10000")
+    int capacity;
+
+    @ConfigProperty(name = "horreum.log.batch.size", defaultValue = "500")
+    int batchSize;
+
+    @ConfigProperty(name = "horreum.log.flush.interval", defaultValue = "1s")
+    Duration flushInterval;
+
+    @Inject
+    Session session;
+
+    private final ArrayDeque<Entry> buffer = new ArrayDeque<>();
+    private final ReentrantLock bufferLock = new ReentrantLock();
+    private final Condition bufferChanged = bufferLock.newCondition();
+    // held while writing so that flush() returns only after all previously buffered entries are stored
+    private final Object writeLock = new Object();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running = true;
+    private ExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "horreum-log-sink");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::writeLoop);
+    }
+
+    /**
+     * Lets the writer finish the batch it is writing and writes the remaining entries while the datasource
+     * is still available.
+     */
+    void onShutdown(@Observes ShutdownEvent event) {
+        bufferLock.lock();
+        try {
+            running = false;
+            bufferChanged.signalAll();
+        } finally {
+            bufferLock.unlock();
+        }
+        executor.shutdown();
+        RolesInterceptor.setCurrentIdentity(CachedSecurityIdentity.ANONYMOUS);
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                Log.warn("Persistent log writer did not terminate");
+            }
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            Log.errorf(e, "Failed to write %d persistent log entries on shutdown", pending());
+        } finally {
+            RolesInterceptor.setCurrentIdentity(null);
+        }
+    }
+
+    @PreDestroy
+    void destroy() {
+        executor.shutdownNow();
+    }
+
+    public void transformationLog(int testId, int runId, int level, String message) {
+        add(new TransformationEntry(level, Instant.now(), testId, runId, message));
+    }
+
+    public void datasetLog(int testId, int datasetId, int level, String source, String message) {
+        add(new DatasetEntry(level, Instant.now(), testId, datasetId, source, message));
+    }
+
+    public void actionLog(int testId, String event, String type, int level, String message) {
+        add(new ActionEntry(level, Instant.now(), testId, event, type, message));
+    }
+
+    private void add(Entry entry) {
+        bufferLock.lock();
+        try {
+            // after shutdown started nobody would write the buffered entries
+            if (running && buffer.size() < capacity) {
+                buffer.add(entry);
+                bufferChanged.signal();
+                return;
+            }
+        } finally {
+            bufferLock.unlock();
+        }
+        if (entry.level() >= PersistentLogDAO.WARN) {
+            write(List.of(entry));
+        } else if (dropped.getAndIncrement() % 1000 == 0) {
+            Log.warnf("Persistent log buffer is full, dropped %d debug/info entries so far", dropped.get());
+        }
+    }
+
+    int pending() {
+        bufferLock.lock();
+        try {
+            return buffer.size();
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    /**
+     * Writes all entries buffered so far.
+     */
+    @ActivateRequestContext
+    public void flush() {
+        synchronized (writeLock) {
+            List<Entry> batch;
+            while (!(batch = nextBatch()).isEmpty()) {
+                try {
+                    write(batch);
+                } catch (Exception e) {
+                    Log.errorf(e, "Failed to write %d persistent log entries, retrying one by one", batch.size());
+                    writeEach(batch);
+                }
+            }
+        }
+    }
+
+    // a single invalid entry fails the whole batch; don't let it take the others down
+    private void writeEach(List<Entry> batch) {
+        for (Entry entry : batch) {
+            try {
+                write(List.of(entry));
+            } catch (Exception e) {
+                Log.debugf(e, "Failed to write persistent log entry");
+                Log.logf(PersistentLogDAO.logLevel(entry.level()), "Lost log entry for test %d: %s",
+                        entry.testId(), entry.message());
+            }
+        }
+    }
+
+    private List<Entry> nextBatch() {
+        bufferLock.lock();
+        try {
+            List<Entry> batch = new ArrayList<>(Math.min(buffer.size(), batchSize));
+            while (batch.size() < batchSize && !buffer.isEmpty()) {
+                batch.add(buffer.poll());
+            }
+            return batch;
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        RolesInterceptor.setCurrentIdentity(CachedSecurityIdentity.ANONYMOUS);
+        try {
+            while (running) {
+                awaitBatch();
+                flush();
+            }
+        } catch (InterruptedException e) {
+            Log.debug("Persistent log writer interrupted");
+        } finally {
+            RolesInterceptor.setCurrentIdentity(null);
+        }
+    }
+
+    private void awaitBatch() throws InterruptedException {
+        bufferLock.lock();
+        try {
+            while (buffer.isEmpty() && running) {
+                bufferChanged.await();
+            }
+            // wait a bit to let more entries come in
+            long nanos = flushInterval.toNanos();
+            while (buffer.size() < batchSize && nanos > 0 && running) {
+                nanos = bufferChanged.awaitNanos(nanos);
+            }
+        } finally {
+            bufferLock.unlock();
+        }
+    }
+
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    void write(List<Entry> entries) {
+        List<TransformationEntry> transformationEntries = new ArrayList<>();
+        List<DatasetEntry> datasetEntries = new ArrayList<>();
+        List<ActionEntry> actionEntries = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry instanceof TransformationEntry transformationEntry) {
+                transformationEntries.add(transformationEntry);
+            } else if (entry instanceof DatasetEntry datasetEntry) {
+                datasetEntries.add(datasetEntry);
+            } else if (entry instanceof ActionEntry actionEntry) {
+                actionEntries.add(actionEntry);
+            }
+        }
+        if (!transformationEntries.isEmpty()) {
+            NativeQuery<?> query = session.createNativeQuery(insertSql("transformationlog", "testid, runid",
+                    "transformationlog_id_generator", 2, transformationEntries.size()));
+            int position = 1;
+            for (TransformationEntry entry : transformationEntries) {
+                position = setCommonParams(query, position, entry);
+                query.setParameter(position++, entry.runId());
+            }
+            query.executeUpdate();
+        }
+        if (!datasetEntries.isEmpty()) {
+            NativeQuery<?> query = session.createNativeQuery(insertSql("datasetlog", "testid, dataset_id, source",
+                    "datasetlog_id_generator", 3, datasetEntries.size()));
+            int position = 1;
+            for (DatasetEntry entry : datasetEntries) {
+                position = setCommonParams(query, position, entry);
+                query.setParameter(position++, entry.datasetId());
+                query.setParameter(position++, entry.source(), StandardBasicTypes.STRING);
+            }
+            query.executeUpdate();
+        }
+        if (!actionEntries.isEmpty()) {
+            NativeQuery<?> query = session.createNativeQuery(insertSql("actionlog", "testid, event, type",
+                    "actionlog_id_generator", 3, actionEntries.size()));
+            int position = 1;
+            for (ActionEntry entry : actionEntries) {
+                position = setCommonParams(query, position, entry);
+                query.setParameter(position++, entry.event(), StandardBasicTypes.STRING);
+                query.setParameter(position++, entry.type(), StandardBasicTypes.STRING);
+            }
+            query.executeUpdate();
+        }
+    }
+
+    private static int setCommonParams(NativeQuery<?> query, int position, Entry entry) {
+        query.setParameter(position++, entry.level());
+        query.setParameter(position++, entry.timestamp(), StandardBasicTypes.INSTANT);
+        query.setParameter(position++, entry.message(), StandardBasicTypes.STRING);
+        query.setParameter(position++, entry.testId());
+        return position;
+    }
+
+    /**
+     * Builds a multi-row insert; every row sets level, timestamp and message followed by the {@code columnCount}
+     * table-specific columns, the first of them being testid.
+     */
+    static String insertSql(String table, String columns, String sequence, int columnCount, int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+                .append(" (id, level, timestamp, message, ").append(columns).append(") VALUES ");
+        int position = 1;
+        for (int row = 0; row < rows; ++row) {
+            sql.append(row == 0 ? "(" : ", (").append("nextval('").append(sequence).append("')");
+            for (int i = 0; i < 3 + columnCount; ++i) {
+                sql.append(", ?").append(position++);
+            }
+            sql.append(')');
+        }
+        return sql.toString();
+    }
+
+    // Note: these types must be public, otherwise the interceptors of methods using them as parameters would not be invoked
+    public interface Entry {
+        int level();
+
+        Instant timestamp();
+
+        int testId();
+
+        String message();
+    }
+
+    public record TransformationEntry(int level, Instant timestamp, int testId, int runId, String message) implements Entry {
+    }
+
+    public record DatasetEntry(int level, Instant timestamp, int testId, int datasetId, String source,
+            String message) implements Entry {
+    }
+
+    public record ActionEntry(int level, Instant timestamp, int testId, String event, String type,
+            String message) implements Entry {
+    }
+}
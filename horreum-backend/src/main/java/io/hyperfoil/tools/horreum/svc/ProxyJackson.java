@@ -1,5 +1,8 @@
 package io.hyperfoil.tools.horreum.svc;
 
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.Proxy;
+
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -17,4 +20,21 @@ public class ProxyJackson {
             return object;
         }
     }
+
+    /**
+     * Returns the JSON node backing the value if it is one of our proxies, or null otherwise.
+     */
+    public static JsonNode unwrap(Value value) {
+        if (value == null || !value.isProxyObject()) {
+            return null;
+        }
+        Proxy proxy = value.asProxyObject();
+        if (proxy instanceof ProxyJacksonObject) {
+            return ((ProxyJacksonObject) proxy).getJsonNode();
+        } else if (proxy instanceof ProxyJacksonArray) {
+            return ((ProxyJacksonArray) proxy).getJsonNode();
+        } else {
+            return null;
+        }
+    }
 }
@@ -3,7 +3,6 @@ package io.hyperfoil.tools.horreum.svc;
 import org.graalvm.polyglot.Value;
 import org.graalvm.polyglot.proxy.ProxyArray;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 
 public class ProxyJacksonArray implements ProxyArray {
@@ -25,8 +24,7 @@ public class ProxyJacksonArray implements ProxyArray {
 
     @Override
     public void set(long index, Value value) {
-        Object converted = Util.convert(value);
-        node.set((int) index, new ObjectMapper().valueToTree(converted));
+        node.set((int) index, Util.convertToJson(value));
     }
 
     @Override
@@ -5,6 +5,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
 import org.graalvm.polyglot.proxy.ProxyExecutable;
 import org.graalvm.polyglot.proxy.ProxyObject;
 
@@ -38,19 +39,17 @@ public class ProxyJacksonObject implements ProxyObject {
 
     @Override
     public Object getMember(String key) {
-        Object rtrn = Util.convertFromJson(node.get(key));
-        return rtrn;
-
+        return Util.convertFromJson(node.get(key));
     }
 
     @Override
     public Object getMemberKeys() {
         Iterator<String> iter = node.fieldNames();
-        List<String> rtrn = new ArrayList<>();
+        List<Object> rtrn = new ArrayList<>(node.size());
         while (iter.hasNext()) {
             rtrn.add(iter.next());
         }
-        return rtrn;
+        return ProxyArray.fromList(rtrn);
     }
 
     @Override
@@ -60,7 +59,7 @@ public class ProxyJacksonObject implements ProxyObject {
 
     @Override
     public void putMember(String key, Value value) {
-        node.put(key, Util.convertToJson(value));
+        node.set(key, Util.convertToJson(value));
     }
 
     @Override
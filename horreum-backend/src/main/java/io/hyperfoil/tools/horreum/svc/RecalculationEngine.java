@@ -0,0 +1,431 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.control.ActivateRequestContext;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.transaction.Status;
+import jakarta.transaction.TransactionManager;
+import jakarta.transaction.Transactional;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+
+import io.hyperfoil.tools.horreum.api.services.TestService.RecalculationStatus;
+import io.hyperfoil.tools.horreum.bus.BlockingTaskDispatcher;
+import io.hyperfoil.tools.horreum.server.RolesInterceptor;
+import io.hyperfoil.tools.horreum.server.WithRoles;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Startup;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+
+/**
+ * Recalculates datasets of many runs, partitioned by test. Runs of a single test are transformed one after another
+ * in the order of their start, so that the datasets (and datapoints) are created in the same order as on upload,
+ * while the partitions of different tests are processed in parallel, up to {@code horreum.recalculation.concurrency}
+ * at a time. The runs are transformed by the {@link BlockingTaskDispatcher queue of the test}, one at a time, so these
+ * are serialized with other tasks of the test. Each partition stores a checkpoint in the {@code run_recalculation}
+ * table after every run; recalculations interrupted by a shutdown are resumed from the checkpoint.
+ * <p>
+ * A partition is leased by the replica processing it for {@code horreum.recalculation.lease}, and the lease is renewed
+ * with each checkpoint. Replicas take over partitions whose lease has expired (e.g. after a crash) on start and then
+ * periodically; a replica that finds out its lease has been taken over stops processing the partition.
+ */
+@Startup
+@ApplicationScoped
+public class RecalculationEngine {
+    private static final int BATCH_SIZE = 100;
+
+    @Inject
+    @ConfigProperty(name = "horreum.recalculation.concurrency", defaultValue = "4")
+    int concurrency;
+
+    @Inject
+    @ConfigProperty(name = "horreum.recalculation.lease", defaultValue = "10m")
+    Duration lease;
+
+    @Inject
+    Session session;
+
+    @Inject
+    TransactionManager tm;
+
+    @Inject
+    ServiceMediator mediator;
+
+    @Inject
+    BlockingTaskDispatcher messageBus;
+
+    // identifies the leases of this replica
+    private final String owner = UUID.randomUUID().toString();
+    private final ConcurrentMap<Integer, Partition> partitions = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, concurrency), runnable -> {
+            Thread thread = new Thread(runnable, "horreum-recalculation-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // running partitions keep their checkpoints and continue after restart
+        executor.shutdownNow();
+        if (!partitions.isEmpty()) {
+            RolesInterceptor.setCurrentIdentity(CachedSecurityIdentity.ANONYMOUS);
+            try {
+                // let other replicas (or this one after restart) resume the partitions without waiting for the lease
+                releaseLeases();
+            } catch (Exception e) {
+                Log.warn("Failed to release leases of recalculations", e);
+            } finally {
+                RolesInterceptor.setCurrentIdentity(null);
+            }
+        }
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        resumeExpired();
+    }
+
+    @Scheduled(every = "{horreum.recalculation.lease}", delayed = "{horreum.recalculation.lease}")
+    void resumeExpired() {
+        RolesInterceptor.setCurrentIdentity(CachedSecurityIdentity.ANONYMOUS);
+        try {
+            resume();
+        } catch (Exception e) {
+            Log.error("Failed to resume interrupted recalculations", e);
+        } finally {
+            RolesInterceptor.setCurrentIdentity(null);
+        }
+    }
+
+    /**
+     * Claims partitions that are not leased by any replica; rows locked by other replicas claiming them concurrently
+     * are skipped.
+     */
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    @Transactional
+    void resume() {
+        List<Object[]> rows = session.createNativeQuery("""
+                UPDATE run_recalculation SET owner = ?1, lease_until = now() + ?2 * interval '1 second'
+                WHERE testid IN (SELECT testid FROM run_recalculation WHERE lease_until IS NULL OR lease_until < now()
+                    FOR UPDATE SKIP LOCKED)
+                RETURNING testid, range_from, range_to, last_start, last_run, total, finished, datasets, started
+                """, Object[].class)
+                .setParameter(1, owner)
+                .setParameter(2, lease.toSeconds())
+                .addScalar("testid", StandardBasicTypes.INTEGER)
+                .addScalar("range_from", StandardBasicTypes.INSTANT)
+                .addScalar("range_to", StandardBasicTypes.INSTANT)
+                .addScalar("last_start", StandardBasicTypes.INSTANT)
+                .addScalar("last_run", StandardBasicTypes.INTEGER)
+                .addScalar("total", StandardBasicTypes.LONG)
+                .addScalar("finished", StandardBasicTypes.LONG)
+                .addScalar("datasets", StandardBasicTypes.LONG)
+                .addScalar("started", StandardBasicTypes.INSTANT)
+                .getResultList();
+        for (Object[] row : rows) {
+            Partition partition = new Partition((int) row[0], (Instant) row[1], (Instant) row[2], (long) row[5],
+                    ((Instant) row[8]).toEpochMilli());
+            partition.lastStart = (Instant) row[3];
+            partition.lastRun = (Integer) row[4];
+            partition.finished = partition.resumedFinished = (long) row[6];
+            partition.datasets = (long) row[7];
+            // a partition of this replica that lost its lease is still stopping
+            if (partitions.putIfAbsent(partition.testId, partition) == null) {
+                Log.infof("Resuming recalculation of test %d, %d/%d runs done", partition.testId, partition.finished,
+                        partition.total);
+                Util.registerTxSynchronization(tm, txStatus -> {
+                    if (txStatus == Status.STATUS_COMMITTED) {
+                        executor.execute(() -> runPartition(partition));
+                    } else {
+                        partitions.remove(partition.testId, partition);
+                    }
+                });
+            }
+        }
+    }
+
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    @Transactional
+    void releaseLeases() {
+        session.createNativeQuery("UPDATE run_recalculation SET owner = NULL, lease_until = NULL WHERE owner = ?1")
+                .setParameter(1, owner).executeUpdate();
+    }
+
+    /**
+     * Schedules recalculation of all runs of the test that started in the given range; a {@code null} bound
+     * means that the range is not limited on that side. The recalculation starts once the current transaction
+     * commits.
+     *
+     * @return {@code false} if a recalculation of this test is already in progress
+     */
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    @Transactional
+    boolean submit(int testId, Instant from, Instant to) {
+        long total = ((Number) runsQuery("SELECT count(*) FROM run", "", testId, from, to, null, null).getSingleResult())
+                .longValue();
+        Partition partition = new Partition(testId, from, to, total, System.currentTimeMillis());
+        if (partitions.putIfAbsent(testId, partition) != null) {
+            return false;
+        }
+        int inserted = session.createNativeQuery(
+                "INSERT INTO run_recalculation (testid, range_from, range_to, total, finished, datasets, started, " +
+                        "owner, lease_until) VALUES (?1, ?2, ?3, ?4, 0, 0, ?5, ?6, now() + ?7 * interval '1 second') " +
+                        "ON CONFLICT (testid) DO NOTHING")
+                .setParameter(1, testId)
+                .setParameter(2, from, StandardBasicTypes.INSTANT)
+                .setParameter(3, to, StandardBasicTypes.INSTANT)
+                .setParameter(4, total)
+                .setParameter(5, Instant.ofEpochMilli(partition.timestamp), StandardBasicTypes.INSTANT)
+                .setParameter(6, owner)
+                .setParameter(7, lease.toSeconds())
+                .executeUpdate();
+        if (inserted == 0) {
+            partitions.remove(testId, partition);
+            return false;
+        }
+        Util.registerTxSynchronization(tm, txStatus -> {
+            if (txStatus == Status.STATUS_COMMITTED) {
+                executor.execute(() -> runPartition(partition));
+            } else {
+                partitions.remove(testId, partition);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return status of the recalculation of the test or {@code null} if there is none in progress
+     */
+    RecalculationStatus getStatus(int testId) {
+        Partition partition = partitions.get(testId);
+        return partition == null ? null : partition.status();
+    }
+
+    @ActivateRequestContext
+    void runPartition(Partition partition) {
+        RolesInterceptor.setCurrentIdentity(CachedSecurityIdentity.ANONYMOUS);
+        try {
+            List<Object[]> runs;
+            while (!(runs = nextRuns(partition)).isEmpty()) {
+                for (Object[] run : runs) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        Log.infof("Recalculation of test %d interrupted after %d/%d runs", partition.testId,
+                                partition.finished, partition.total);
+                        return;
+                    }
+                    int runId = (int) run[0];
+                    int datasets = 0;
+                    try {
+                        datasets = transform(partition.testId, runId);
+                    } catch (InterruptedException e) {
+                        Log.infof("Recalculation of test %d interrupted after %d/%d runs", partition.testId,
+                                partition.finished, partition.total);
+                        return;
+                    } catch (Exception e) {
+                        Log.errorf(e, "Failed to recalculate datasets for run %d", runId);
+                    }
+                    partition.completed(runId, (Instant) run[1], datasets);
+                    if (!checkpoint(partition)) {
+                        Log.warnf("Recalculation of test %d has been taken over by another replica after %d/%d runs",
+                                partition.testId, partition.finished, partition.total);
+                        return;
+                    }
+                }
+            }
+            RecalculationStatus status = partition.status();
+            Log.infof("Datasets recalculation for test %d completed: %d runs, %d datasets, %.2f runs/s", partition.testId,
+                    status.finished, status.datasets, status.throughput == null ? 0 : status.throughput);
+            finish(partition);
+        } catch (Exception e) {
+            if (executor.isShutdown()) {
+                Log.infof("Recalculation of test %d stopped, it will be resumed on restart", partition.testId);
+            } else {
+                Log.errorf(e, "Recalculation of test %d failed", partition.testId);
+                finish(partition);
+            }
+        } finally {
+            partitions.remove(partition.testId, partition);
+            RolesInterceptor.setCurrentIdentity(null);
+        }
+    }
+
+    /**
+     * Transforms the run in the queue of the test and waits for the result. When the queue is full this waits
+     * for space, as the upload of new runs is more important than the recalculation.
+     */
+    private int transform(int testId, int runId) throws InterruptedException, ExecutionException {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        Runnable task = () -> {
+            try {
+                result.complete(mediator.transform(runId, true));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        };
+        while (true) {
+            try {
+                messageBus.executeForTest(testId, task);
+                break;
+            } catch (RejectedExecutionException e) {
+                if (!messageBus.isRunning() || Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Tasks are not accepted anymore");
+                }
+                Log.debugf("Queue of test %d is full, waiting to recalculate run %d", testId, runId);
+            }
+        }
+        return result.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    @Transactional
+    List<Object[]> nextRuns(Partition partition) {
+        return (List<Object[]>) runsQuery("SELECT id, start FROM run", " ORDER BY start, id", partition.testId,
+                partition.from, partition.to, partition.lastStart, partition.lastRun)
+                .addScalar("id", StandardBasicTypes.INTEGER)
+                .addScalar("start", StandardBasicTypes.INSTANT)
+                .setMaxResults(BATCH_SIZE)
+                .getResultList();
+    }
+
+    private NativeQuery<?> runsQuery(String select, String orderBy, int testId, Instant from, Instant to,
+            Instant afterStart, Integer afterRun) {
+        StringBuilder sql = new StringBuilder(select).append(" WHERE testid = :testId AND NOT trashed");
+        if (from != null) {
+            sql.append(" AND start >= :from");
+        }
+        if (to != null) {
+            sql.append(" AND start <= :to");
+        }
+        if (afterStart != null) {
+            sql.append(" AND (start, id) > (:afterStart, :afterRun)");
+        }
+        sql.append(orderBy);
+        NativeQuery<?> query = session.createNativeQuery(sql.toString()).setParameter("testId", testId);
+        if (from != null) {
+            query.setParameter("from", from, StandardBasicTypes.INSTANT);
+        }
+        if (to != null) {
+            query.setParameter("to", to, StandardBasicTypes.INSTANT);
+        }
+        if (afterStart != null) {
+            query.setParameter("afterStart", afterStart, StandardBasicTypes.INSTANT);
+            query.setParameter("afterRun", afterRun);
+        }
+        return query;
+    }
+
+    /**
+     * Stores the progress and renews the lease.
+     *
+     * @return {@code false} if the partition is not leased by this replica anymore
+     */
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    @Transactional
+    boolean checkpoint(Partition partition) {
+        synchronized (partition) {
+            return session.createNativeQuery("""
+                    UPDATE run_recalculation SET last_start = ?1, last_run = ?2, finished = ?3, datasets = ?4,
+                        lease_until = now() + ?7 * interval '1 second'
+                    WHERE testid = ?5 AND owner = ?6
+                    """)
+                    .setParameter(1, partition.lastStart, StandardBasicTypes.INSTANT)
+                    .setParameter(2, partition.lastRun)
+                    .setParameter(3, partition.finished)
+                    .setParameter(4, partition.datasets)
+                    .setParameter(5, partition.testId)
+                    .setParameter(6, owner)
+                    .setParameter(7, lease.toSeconds())
+                    .executeUpdate() > 0;
+        }
+    }
+
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    @Transactional
+    void finish(Partition partition) {
+        session.createNativeQuery("DELETE FROM run_recalculation WHERE testid = ?1 AND owner = ?2")
+                .setParameter(1, partition.testId).setParameter(2, owner).executeUpdate();
+    }
+
+    /**
+     * @return number of items processed per second, or {@code null} if nothing has been processed yet
+     */
+    static Double throughput(long processed, long elapsedMillis) {
+        return processed <= 0 ? null : processed * 1000.0 / Math.max(1, elapsedMillis);
+    }
+
+    /**
+     * @return estimated timestamp of completion, or {@code null} if it cannot be estimated
+     */
+    static Long eta(long remaining, Double throughput, long now) {
+        return throughput == null || remaining <= 0 ? null : now + (long) (remaining * 1000 / throughput);
+    }
+
+    // Note: this class must be public, otherwise the interceptors of methods using it as a parameter would not be invoked
+    public static final class Partition {
+        final int testId;
+        final Instant from;
+        final Instant to;
+        final long total;
+        final long timestamp;
+        // throughput is measured since the partition has been (re)started
+        final long resumedAt = System.currentTimeMillis();
+        long resumedFinished;
+        Instant lastStart;
+        Integer lastRun;
+        long finished;
+        long datasets;
+
+        Partition(int testId, Instant from, Instant to, long total, long timestamp) {
+            this.testId = testId;
+            this.from = from;
+            this.to = to;
+            this.total = total;
+            this.timestamp = timestamp;
+        }
+
+        synchronized void completed(int runId, Instant start, int newDatasets) {
+            lastRun = runId;
+            lastStart = start;
+            finished++;
+            datasets += newDatasets;
+        }
+
+        synchronized RecalculationStatus status() {
+            // runs uploaded during the recalculation can be included, too
+            RecalculationStatus status = new RecalculationStatus(Math.max(total, finished));
+            status.timestamp = timestamp;
+            status.finished = finished;
+            status.datasets = datasets;
+            long now = System.currentTimeMillis();
+            status.throughput = throughput(finished - resumedFinished, now - resumedAt);
+            status.eta = eta(status.totalRuns - finished, status.throughput, now);
+            return status;
+        }
+    }
+}
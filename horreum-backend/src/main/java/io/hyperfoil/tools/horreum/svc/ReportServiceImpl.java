@@ -1,6 +1,5 @@
 package io.hyperfoil.tools.horreum.svc;
 
-import java.io.ByteArrayOutputStream;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -19,7 +18,6 @@ import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
 
-import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.PolyglotException;
 import org.graalvm.polyglot.Value;
 import org.hibernate.Hibernate;
@@ -391,9 +389,8 @@ public class ReportServiceImpl implements ReportService {
                             }
                         }
                     } else {
-                        String jsCode = buildCode(component.function, String.valueOf(value));
                         try {
-                            Value calculatedValue = context.eval("js", jsCode);
+                            Value calculatedValue = evaluate(context, component.function, value);
                             Double maybeDouble = Util.toDoubleOrNull(calculatedValue,
                                     err -> log(report, PersistentLogDAO.ERROR, err),
                                     info -> log(report, PersistentLogDAO.INFO, info));
@@ -405,7 +402,7 @@ public class ReportServiceImpl implements ReportService {
                         } catch (PolyglotException e) {
                             log(report, PersistentLogDAO.ERROR,
                                     "Failed to run report %s(%d) label function on run %d. Offending code: <br><pre>%s</pre>",
-                                    config.title, config.id, datasetId, jsCode);
+                                    config.title, config.id, datasetId, Util.describeCode(component.function, value));
                             Log.debug("Caused by exception", e);
                         }
                     }
@@ -447,13 +444,13 @@ public class ReportServiceImpl implements ReportService {
                 if (nullOrEmpty(config.categoryFunction)) {
                     data.category = toText(value);
                 } else {
-                    String jsCode = buildCode(config.categoryFunction, String.valueOf(value));
                     try {
-                        data.category = Util.convert(context.eval("js", jsCode)).toString();
+                        data.category = Util.convert(evaluate(context, config.categoryFunction, value)).toString();
                     } catch (PolyglotException e) {
                         log(report, PersistentLogDAO.ERROR,
                                 "Failed to run report %s(%d) category function on dataset %d/%d (%d). Offending code: <br><pre>%s</pre>",
-                                config.title, config.id, data.runId, data.ordinal, data.datasetId, jsCode);
+                                config.title, config.id, data.runId, data.ordinal, data.datasetId,
+                                Util.describeCode(config.categoryFunction, value));
                         Log.debug("Caused by exception", e);
                         continue;
                     }
@@ -473,13 +470,13 @@ public class ReportServiceImpl implements ReportService {
                 if (nullOrEmpty(config.seriesFunction)) {
                     data.series = toText(value);
                 } else {
-                    String jsCode = buildCode(config.seriesFunction, String.valueOf(value));
                     try {
-                        data.series = Util.convert(context.eval("js", jsCode)).toString();
+                        data.series = Util.convert(evaluate(context, config.seriesFunction, value)).toString();
                     } catch (PolyglotException e) {
                         log(report, PersistentLogDAO.ERROR,
                                 "Failed to run report %s(%d) series function on run %d/%d (%d). Offending code: <br><pre>%s</pre>",
-                                config.title, config.id, runId, ordinal, datasetId, jsCode);
+                                config.title, config.id, runId, ordinal, datasetId,
+                                Util.describeCode(config.seriesFunction, value));
                         Log.debug("Caused by exception", e);
                     }
                 }
@@ -497,13 +494,13 @@ public class ReportServiceImpl implements ReportService {
                 if (nullOrEmpty(config.scaleFunction)) {
                     data.scale = toText(value);
                 } else {
-                    String jsCode = buildCode(config.scaleFunction, String.valueOf(value));
                     try {
-                        data.scale = Util.convert(context.eval("js", jsCode)).toString();
+                        data.scale = Util.convert(evaluate(context, config.scaleFunction, value)).toString();
                     } catch (PolyglotException e) {
                         log(report, PersistentLogDAO.ERROR,
                                 "Failed to run report %s(%d) label function on dataset %d/%d (%d). Offending code: <br><pre>%s</pre>",
-                                config.title, config.id, runId, ordinal, datasetId, jsCode);
+                                config.title, config.id, runId, ordinal, datasetId,
+                                Util.describeCode(config.scaleFunction, value));
                         Log.debug("Caused by exception", e);
                     }
                 }
@@ -653,13 +650,13 @@ public class ReportServiceImpl implements ReportService {
                     Integer datasetId = (Integer) row[0];
                     int runId = (int) row[1];
                     int ordinal = (int) row[2];
-                    String jsCode = buildCode(config.filterFunction, String.valueOf(row[3]));
+                    JsonNode input = (JsonNode) row[3];
                     if (debugList.length() != 0) {
                         debugList.append(", ");
                     }
                     debugList.append(runId).append('/').append(ordinal);
                     try {
-                        org.graalvm.polyglot.Value value = context.eval("js", jsCode);
+                        org.graalvm.polyglot.Value value = evaluate(context, config.filterFunction, input);
                         if (value.isBoolean()) {
                             if (value.asBoolean()) {
                                 datasetIds.add(datasetId);
@@ -672,13 +669,15 @@ public class ReportServiceImpl implements ReportService {
                             debugList.append("(filtered: not boolean)");
                             log(report, PersistentLogDAO.ERROR,
                                     "Report %s(%d) filter result for dataset %d/%d (%d) is not a boolean: %s. Offending code: <br><pre>%s</pre>",
-                                    config.title, config.id, runId, ordinal, datasetId, value, jsCode);
+                                    config.title, config.id, runId, ordinal, datasetId, value,
+                                    Util.describeCode(config.filterFunction, input));
                         }
                     } catch (PolyglotException e) {
                         debugList.append("(filtered: JS error)");
                         log(report, PersistentLogDAO.ERROR,
                                 "Failed to run report %s(%d) filter function on dataset %d/%d (%d). Offending code: <br><pre>%s</pre>",
-                                config.title, config.id, runId, ordinal, datasetId, jsCode);
+                                config.title, config.id, runId, ordinal, datasetId,
+                                Util.describeCode(config.filterFunction, input));
                         Log.debug("Caused by exception", e);
                     }
                 }
@@ -693,25 +692,20 @@ public class ReportServiceImpl implements ReportService {
         report.logs.add(new ReportLogDAO(report, level, message));
     }
 
-    private String buildCode(String function, String param) {
-        return "var __obj = " + param + ";\n" +
-                "var __func = " + function + ";\n" +
-                "__func(__obj)";
+    private Value evaluate(JsContextPool.PooledContext context, String function, JsonNode input) {
+        return context.function(function).execute(Util.toJsInput(context, input, Util.JsInputMode.PROXY));
     }
 
-    private void executeInContext(TableReportConfigDAO config, Consumer<Context> consumer) {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try (Context context = Context.newBuilder("js").out(out).err(out).build()) {
-            context.enter();
+    private void executeInContext(TableReportConfigDAO config, Consumer<JsContextPool.PooledContext> consumer) {
+        try (JsContextPool.PooledContext context = JsContextPool.get().borrow()) {
             try {
                 consumer.accept(context);
             } finally {
-                context.leave();
-            }
-        } finally {
-            if (out.size() > 0) {
-                Log.infof("Output while calculating data for report %s(%d): <pre>%s</pre>", config.title, config.id,
-                        out.toString());
+                String output = context.drainOutput();
+                if (output != null) {
+                    Log.infof("Output while calculating data for report %s(%d): <pre>%s</pre>", config.title, config.id,
+                            output);
+                }
             }
         }
     }
@@ -1,22 +1,32 @@
 package io.hyperfoil.tools.horreum.svc;
 
 import static com.fasterxml.jackson.databind.node.JsonNodeFactory.instance;
-import static io.hyperfoil.tools.horreum.entity.data.SchemaDAO.QUERY_1ST_LEVEL_BY_RUNID_TRANSFORMERID_SCHEMA_ID;
-import static io.hyperfoil.tools.horreum.entity.data.SchemaDAO.QUERY_2ND_LEVEL_BY_RUNID_TRANSFORMERID_SCHEMA_ID;
 import static io.hyperfoil.tools.horreum.entity.data.SchemaDAO.QUERY_TRANSFORMER_TARGETS;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import jakarta.annotation.security.PermitAll;
@@ -35,9 +45,12 @@ import jakarta.transaction.Transaction;
 import jakarta.transaction.TransactionManager;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
@@ -69,8 +82,6 @@ import io.hyperfoil.tools.horreum.datastore.Datastore;
 import io.hyperfoil.tools.horreum.datastore.DatastoreResolver;
 import io.hyperfoil.tools.horreum.datastore.DatastoreResponse;
 import io.hyperfoil.tools.horreum.entity.PersistentLogDAO;
-import io.hyperfoil.tools.horreum.entity.alerting.DataPointDAO;
-import io.hyperfoil.tools.horreum.entity.alerting.TransformationLogDAO;
 import io.hyperfoil.tools.horreum.entity.data.DatasetDAO;
 import io.hyperfoil.tools.horreum.entity.data.RunDAO;
 import io.hyperfoil.tools.horreum.entity.data.SchemaDAO;
@@ -84,6 +95,7 @@ import io.hyperfoil.tools.horreum.server.WithRoles;
 import io.quarkus.logging.Log;
 import io.quarkus.narayana.jta.runtime.TransactionConfiguration;
 import io.quarkus.runtime.Startup;
+import io.quarkus.runtime.configuration.MemorySize;
 import io.quarkus.security.identity.SecurityIdentity;
 
 @ApplicationScoped
@@ -98,6 +110,9 @@ public class RunServiceImpl implements RunService {
         WHERE jsonb_typeof(q) = 'object') AS keys
         WHERE keys.key LIKE CONCAT(?, '%');
     """;
+    private static final String FIND_AUTOCOMPLETE_ALL_KEYS = """
+        SELECT key FROM search_key WHERE key LIKE CONCAT(?1, '%')
+    """;
     private static final String FIND_RUNS_WITH_URI = """
         SELECT id, testid
         FROM run
@@ -120,9 +135,31 @@ public class RunServiceImpl implements RunService {
         ) INSERT INTO dataset_schemas(dataset_id, uri, index, schema_id)
             SELECT ?1 as dataset_id, indexed.uri, indexed.index, schema.id FROM indexed JOIN schema ON schema.uri = indexed.uri;
     """;
+    // evaluates the extractors of the given transformers on their targets in the run; run data and metadata
+    // are de-toasted only once
+    static final String EXTRACT_DATA = """
+        WITH r AS MATERIALIZED (
+            SELECT id, jsonb_path_query_first(data, '$') AS data, jsonb_path_query_first(metadata, '$') AS metadata
+            FROM run WHERE id = ?
+        ), targets AS MATERIALIZED (
+            SELECT t.id AS transformer_id, rs.type, rs.key, rs.source, (CASE rs.type
+                WHEN 0 THEN r.data
+                WHEN 1 THEN (CASE WHEN rs.source = 0 THEN r.data ELSE r.metadata END)->rs.key
+                ELSE (CASE WHEN rs.source = 0 THEN r.data ELSE r.metadata END)->(rs.key::integer) END) AS root
+            FROM r
+            JOIN run_schemas rs ON rs.runid = r.id
+            JOIN transformer t ON t.schema_id = rs.schemaid AND t.id = ANY(?)
+                AND t.id IN (SELECT transformer_id FROM test_transformers WHERE test_id = rs.testid)
+        ) SELECT targets.transformer_id, targets.type, targets.key, targets.source, te.name, (CASE WHEN te.isarray
+                THEN jsonb_path_query_array(targets.root, te.jsonpath::jsonpath)
+                ELSE jsonb_path_query_first(targets.root, te.jsonpath::jsonpath) END)::text AS value
+        FROM targets JOIN transformer_extractors te ON te.transformer_id = targets.transformer_id
+    """;
     //@formatter:on
     private static final String[] CONDITION_SELECT_TERMINAL = { "==", "!=", "<>", "<", "<=", ">", ">=", " " };
     private static final String CHANGE_ACCESS = "UPDATE run SET owner = ?, access = ? WHERE id = ?";
+    // runs stored before the search index existed and not indexed by the backfill yet
+    private static final String NOT_INDEXED = "run.id <= (SELECT last_run_id FROM run_search_key_backfill)";
     private static final String SCHEMA_USAGE = "COALESCE(jsonb_agg(jsonb_build_object(" +
             "'id', schema.id, 'uri', rs.uri, 'name', schema.name, 'source', rs.source, " +
             "'type', rs.type, 'key', rs.key, 'hasJsonSchema', schema.schema IS NOT NULL)), '[]')";
@@ -153,12 +190,28 @@ public class RunServiceImpl implements RunService {
 
     @Inject
     ServiceMediator mediator;
+
+    @Inject
+    RecalculationEngine recalculationEngine;
+
     @Inject
     DatastoreResolver backendResolver;
 
+    @ConfigProperty(name = "horreum.upload.max-size")
+    Optional<MemorySize> maxUploadSize;
+
+    @Inject
+    HttpHeaders httpHeaders;
+
+    @ConfigProperty(name = "horreum.dataset.event.batch-size", defaultValue = "100")
+    int datasetBatchSize;
+
     @Inject
     Session session;
 
+    @Inject
+    PersistentLogSink logSink;
+
     private final ConcurrentHashMap<Integer, TestService.RecalculationStatus> transformations = new ConcurrentHashMap<>();
 
     @Transactional
@@ -341,6 +394,32 @@ public class RunServiceImpl implements RunService {
         }
     }
 
+    @Transactional
+    @WithRoles
+    @Override
+    public Response exportRunLabelValues(int runId, String filter, String direction, List<String> include,
+            List<String> exclude, boolean multiFilter, String format) {
+        Run run = getRun(runId);
+        if (run == null) {
+            throw ServiceException.notFound("Cannot find run " + runId);
+        }
+        LabelValuesService.ExportFormat exportFormat;
+        try {
+            exportFormat = LabelValuesService.ExportFormat.fromString(format);
+        } catch (IllegalArgumentException e) {
+            throw ServiceException.badRequest(e.getMessage());
+        }
+        // the filter is validated here, the results are read while writing the response, outside of this transaction
+        StreamingOutput output;
+        try {
+            output = labelValuesService.exportLabelValuesByRun(runId, filter, "", direction, include, exclude, multiFilter,
+                    exportFormat);
+        } catch (IllegalArgumentException e) {
+            throw ServiceException.badRequest(e.getMessage());
+        }
+        return Response.ok(output, exportFormat.mediaType).build();
+    }
+
     @PermitAll
     @WithRoles
     @Override
@@ -398,21 +477,39 @@ public class RunServiceImpl implements RunService {
         TestDAO test = testService.ensureTestExists(testNameOrId);
         run.testid = test.id;
         RunPersistence runPersistence = addAuthenticated(RunMapper.to(run), test);
-        runPersistence.getDatasetIds().forEach(dsId -> {
-            DatasetDAO ds = DatasetDAO.findById(dsId);
-            if (ds != null) {
-                queueDatasetProcessing(ds, false);
-            } else {
-                Log.warnf("Dataset with id %d not found, cannot process it", dsId);
-            }
-        });
+        queueDatasetProcessing(test.id, Collections.singletonList(runPersistence), false);
         return Collections.singletonList(runPersistence.runId);
     }
 
     @Override
     public Response addRunFromData(String start, String stop, String test, String owner, Access access, String schemaUri,
-            String description, String data) {
-        return addRunFromData(start, stop, test, owner, access, schemaUri, description, data, null);
+            String description, InputStream data) {
+        if (data == null) {
+            Log.debugf("Failed to upload for test %s with description %s because of missing data", test, description);
+            throw ServiceException.badRequest("No data!");
+        }
+        // reject the upload before reading the body if the client declared its size
+        String contentLength = httpHeaders.getHeaderString(HttpHeaders.CONTENT_LENGTH);
+        if (contentLength != null) {
+            try {
+                checkUploadSize(test, description, "data", Long.parseLong(contentLength));
+            } catch (NumberFormatException e) {
+                throw ServiceException.badRequest("Invalid Content-Length: " + contentLength);
+            }
+        }
+        JsonNode dataNode;
+        try {
+            // the parser streams the body, the limit covers chunked requests that do not declare their size
+            dataNode = Util.OBJECT_MAPPER.readTree(maxUploadSize.isPresent()
+                    ? new SizeLimitedInputStream(data, maxUploadSize.get().asLongValue(), test, description)
+                    : data);
+        } catch (IOException e) {
+            throw ServiceException.badRequest("Could not map incoming data to JsonNode: " + e.getMessage());
+        }
+        if (dataNode == null || dataNode.isMissingNode()) {
+            throw ServiceException.badRequest("No data!");
+        }
+        return addRunFromData(start, stop, test, owner, access, schemaUri, description, dataNode, null);
     }
 
     @Override
@@ -433,9 +530,14 @@ public class RunServiceImpl implements RunService {
             throw ServiceException.badRequest(
                     "Part 'metadata' must use content-type: application/json, currently: " + metadata.contentType());
         }
+        checkUploadSize(test, description, "data", data.size());
+        if (metadata != null) {
+            checkUploadSize(test, description, "metadata", metadata.size());
+        }
         JsonNode dataNode;
         JsonNode metadataNode = null;
         try {
+            // the parser streams the content from the uploaded file
             dataNode = Util.OBJECT_MAPPER.readTree(data.uploadedFile().toFile());
             if (metadata != null) {
                 metadataNode = Util.OBJECT_MAPPER.readTree(metadata.uploadedFile().toFile());
@@ -466,12 +568,73 @@ public class RunServiceImpl implements RunService {
             Log.error("Failed to read data/metadata from upload file", e);
             throw ServiceException.badRequest("Provided data/metadata can't be read (JSON encoding problem?)");
         }
-        return addRunFromData(start, stop, test, owner, access, schemaUri, description, dataNode.toString(), metadataNode);
+        return addRunFromData(start, stop, test, owner, access, schemaUri, description, dataNode, metadataNode);
+    }
+
+    private void checkUploadSize(String test, String description, String part, long size) {
+        if (maxUploadSize.isPresent() && size > maxUploadSize.get().asLongValue()) {
+            throw uploadTooLarge(test, description, part, size, maxUploadSize.get().asLongValue());
+        }
+    }
+
+    private static ServiceException uploadTooLarge(String test, String description, String part, long size, long limit) {
+        Log.debugf("Failed to upload for test %s with description %s because %s is too large: %d bytes", test,
+                description, part, size);
+        return ServiceException.payloadTooLarge("Part '" + part + "' exceeds the maximum upload size of " + limit + " bytes");
+    }
+
+    /**
+     * Fails the upload as soon as more than {@code limit} bytes have been read, without buffering the content.
+     */
+    private static class SizeLimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private final String test;
+        private final String description;
+        private long count;
+
+        SizeLimitedInputStream(InputStream in, long limit, String test, String description) {
+            super(in);
+            this.limit = limit;
+            this.test = test;
+            this.description = description;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) {
+            count += n;
+            if (count > limit) {
+                throw uploadTooLarge(test, description, "data", count, limit);
+            }
+        }
     }
 
     /**
      * Processes and persists a run or multiple runs based on the provided data and metadata. It performs the following steps: -
-     * Validates and parses the input data string into a JSON structure. - Resolves the appropriate datastore to handle the run
+     * Identifies the test from the already parsed input data. - Resolves the appropriate datastore to handle the run
      * processing. - Handles single or multiple runs based on the datastore's response type. - Persists runs and their
      * associated datasets in the database. - Queues dataset recalculation tasks for further processing.
      *
@@ -485,7 +648,7 @@ public class RunServiceImpl implements RunService {
      * @param access the access level for the run
      * @param schemaUri the URI of the schema used for validation
      * @param description a description of the run
-     * @param stringData the raw string data to be processed
+     * @param data the parsed data to be processed
      * @param metadata additional metadata associated with the run
      * @return a Response indicating the result of the operation, including accepted or rejected status
      * @throws ServiceException if validation or data processing fails
@@ -495,18 +658,7 @@ public class RunServiceImpl implements RunService {
     Response addRunFromData(String start, String stop, String test,
             String owner, Access access,
             String schemaUri, String description,
-            String stringData, JsonNode metadata) {
-        if (stringData == null) {
-            Log.debugf("Failed to upload for test %s with description %s because of missing data", test, description);
-            throw ServiceException.badRequest("No data!");
-        }
-        JsonNode data = null;
-        try {
-            data = Util.OBJECT_MAPPER.readValue(stringData, JsonNode.class);
-        } catch (JsonProcessingException e) {
-            throw ServiceException.badRequest("Could not map incoming data to JsonNode: " + e.getMessage());
-        }
-
+            JsonNode data, JsonNode metadata) {
         Object foundTest = findIfNotSet(test, data);
         String testNameOrId = foundTest == null ? null : foundTest.toString().trim();
         if (testNameOrId == null || testNameOrId.isEmpty()) {
@@ -549,14 +701,7 @@ public class RunServiceImpl implements RunService {
         }
 
         if (!runs.isEmpty()) {
-            runs.stream().flatMap(runPersistence -> runPersistence.getDatasetIds().stream()).forEach(dsId -> {
-                DatasetDAO ds = DatasetDAO.findById(dsId);
-                if (ds != null) {
-                    queueDatasetProcessing(ds, false);
-                } else {
-                    Log.warnf("Dataset with id %d not found, cannot process it", dsId);
-                }
-            });
+            queueDatasetProcessing(testEntity.id, runs, false);
         }
         // if the request is accepted return 202 with all generated run ids
         // if no run ids, means all run upload have been queued up (datastore scenario)
@@ -759,9 +904,28 @@ public class RunServiceImpl implements RunService {
             jsonpath = "$.**." + jsonpath;
         }
         try {
-            NativeQuery<String> findAutocomplete = session.createNativeQuery(FIND_AUTOCOMPLETE, String.class);
-            findAutocomplete.setParameter(1, jsonpath);
-            findAutocomplete.setParameter(2, incomplete);
+            NativeQuery<String> findAutocomplete;
+            if (jsonpath.equals("$.**")) {
+                // keys of all objects in the data are in the search index
+                findAutocomplete = session.createNativeQuery(FIND_AUTOCOMPLETE_ALL_KEYS, String.class);
+                findAutocomplete.setParameter(1, incomplete);
+            } else {
+                List<String> keys = new ArrayList<>(JsonpathKeys.requiredKeys(jsonpath));
+                if (keys.isEmpty()) {
+                    findAutocomplete = session.createNativeQuery(FIND_AUTOCOMPLETE, String.class);
+                } else {
+                    StringBuilder sql = new StringBuilder("SELECT * FROM (SELECT DISTINCT jsonb_object_keys(q) AS key ")
+                            .append("FROM run, jsonb_path_query(run.data, ?1 ::jsonpath) q WHERE run.id IN (");
+                    appendRunsWithKeys(sql, keys.size(), 3);
+                    sql.append(") AND jsonb_typeof(q) = 'object') AS keys WHERE keys.key LIKE CONCAT(?2, '%')");
+                    findAutocomplete = session.createNativeQuery(sql.toString(), String.class);
+                    for (int i = 0; i < keys.size(); ++i) {
+                        findAutocomplete.setParameter(3 + i, keys.get(i));
+                    }
+                }
+                findAutocomplete.setParameter(1, jsonpath);
+                findAutocomplete.setParameter(2, incomplete);
+            }
             List<String> results = findAutocomplete.getResultList();
             return results.stream().map(option -> option.matches("^[a-zA-Z0-9_-]*$") ? option : "\"" + option + "\"")
                     .collect(Collectors.toList());
@@ -778,13 +942,16 @@ public class RunServiceImpl implements RunService {
         StringBuilder sql = new StringBuilder("SELECT run.id, run.start, run.stop, run.testId, ")
                 .append("run.owner, run.access, run.trashed, run.description, ")
                 .append("run.metadata IS NOT NULL AS has_metadata, test.name AS testname, ")
-                .append("'[]'::jsonb AS schemas, '[]'::jsonb AS datasets, '[]'::jsonb AS validationErrors ")
-                .append("FROM run JOIN test ON test.id = run.testId WHERE ");
+                .append("'[]'::jsonb AS schemas, '[]'::jsonb AS datasets, '[]'::jsonb AS validationErrors ");
         String[] queryParts;
+        List<String> keys = new ArrayList<>();
         boolean whereStarted = false;
         if (query == null || query.isEmpty()) {
+            sql.append("FROM run JOIN test ON test.id = run.testId WHERE ");
             queryParts = new String[0];
         } else {
+            // the counters in run_count cannot be used for filtered runs; count the matches in the same scan instead
+            sql.append(", count(*) OVER () AS total FROM run JOIN test ON test.id = run.testId WHERE ");
             query = query.trim();
             if (query.startsWith("$") || query.startsWith("@")) {
                 queryParts = new String[] { query };
@@ -796,7 +963,18 @@ public class RunServiceImpl implements RunService {
                 if (i != 0) {
                     sql.append(matchAll ? " AND " : " OR ");
                 }
+                String key = JsonpathKeys.indexedKey(queryParts[i]);
+                if (key != null) {
+                    // the data of indexed runs does not need to be loaded
+                    keys.add(key);
+                    sql.append("(run.id IN (");
+                    appendRunsWithKeys(sql, 1, queryParts.length + keys.size());
+                    sql.append(") OR (").append(NOT_INDEXED).append(" AND ");
+                }
                 sql.append("jsonb_path_exists(data, ?").append(i + 1).append(" ::jsonpath)");
+                if (key != null) {
+                    sql.append("))");
+                }
                 if (queryParts[i].startsWith("$")) {
                     // no change
                 } else if (queryParts[i].startsWith("@")) {
@@ -808,8 +986,10 @@ public class RunServiceImpl implements RunService {
             sql.append(")");
             whereStarted = true;
         }
+        appendSearchIndexFilter(sql, queryParts, matchAll, keys);
 
-        whereStarted = Roles.addRolesSql(identity, "run", sql, roles, queryParts.length + 1, whereStarted ? " AND" : null)
+        int rolesPosition = queryParts.length + keys.size() + 1;
+        whereStarted = Roles.addRolesSql(identity, "run", sql, roles, rolesPosition, whereStarted ? " AND" : null)
                 || whereStarted;
         if (!trashed) {
             if (whereStarted) {
@@ -817,21 +997,27 @@ public class RunServiceImpl implements RunService {
             }
             sql.append(" trashed = false ");
         }
+        String filteredSql = sql.toString();
         Util.addPaging(sql, limit, page, sort, direction);
 
         NativeQuery<Object[]> sqlQuery = session.createNativeQuery(sql.toString(), Object[].class);
-        for (int i = 0; i < queryParts.length; ++i) {
-            sqlQuery.setParameter(i + 1, queryParts[i]);
-        }
-
-        Roles.addRolesParam(identity, sqlQuery, queryParts.length + 1, roles);
+        setSearchParams(sqlQuery, queryParts, keys, roles, rolesPosition);
 
         try {
             List<Object[]> runs = sqlQuery.getResultList();
 
             RunsSummary summary = new RunsSummary();
-            // TODO: total does not consider the query but evaluating all the expressions would be expensive
-            summary.total = trashed ? RunDAO.count() : RunDAO.count("trashed = false");
+            if (queryParts.length == 0) {
+                summary.total = countRuns(null, roles, trashed);
+            } else if (!runs.isEmpty()) {
+                summary.total = ((Number) runs.get(0)[13]).longValue();
+            } else if (page != null && page > 1) {
+                // the page is past the end, the window count is not available
+                NativeQuery<Long> countQuery = session.createNativeQuery(
+                        "SELECT count(*) FROM (" + filteredSql + ") AS filtered", Long.class);
+                setSearchParams(countQuery, queryParts, keys, roles, rolesPosition);
+                summary.total = countQuery.getSingleResult();
+            }
             summary.runs = runs.stream().map(this::createSummary).collect(Collectors.toList());
             return summary;
         } catch (PersistenceException pe) {
@@ -855,6 +1041,86 @@ public class RunServiceImpl implements RunService {
         }
     }
 
+    private void setSearchParams(NativeQuery<?> query, String[] queryParts, List<String> keys, String roles,
+            int rolesPosition) {
+        for (int i = 0; i < queryParts.length; ++i) {
+            query.setParameter(i + 1, queryParts[i]);
+        }
+        for (int i = 0; i < keys.size(); ++i) {
+            query.setParameter(queryParts.length + i + 1, keys.get(i));
+        }
+        Roles.addRolesParam(identity, query, rolesPosition, roles);
+    }
+
+    /**
+     * Sums up the counters maintained by triggers on the <code>run</code> table. Row-level security on
+     * <code>run_count</code> mirrors the one on <code>run</code>, so only the visible runs are counted.
+     */
+    private long countRuns(Integer testId, String roles, boolean trashed) {
+        StringBuilder sql = new StringBuilder("SELECT COALESCE(SUM(active")
+                .append(trashed ? " + trashed" : "").append("), 0)::bigint FROM run_count");
+        boolean whereStarted = false;
+        if (testId != null) {
+            sql.append(" WHERE testid = ?1");
+            whereStarted = true;
+        }
+        int rolesPosition = testId != null ? 2 : 1;
+        Roles.addRolesSql(identity, "run_count", sql, roles, rolesPosition, whereStarted ? " AND" : " WHERE");
+        NativeQuery<Long> query = session.createNativeQuery(sql.toString(), Long.class);
+        if (testId != null) {
+            query.setParameter(1, testId);
+        }
+        Roles.addRolesParam(identity, query, rolesPosition, roles);
+        return query.getSingleResult();
+    }
+
+    /**
+     * Restricts the runs to those that contain all object keys required by the JSONPath expressions,
+     * so that only these need to be loaded and evaluated.
+     *
+     * @param keys the keys that must be set as parameters, following the JSONPath parameters; the keys used
+     *        by this filter are appended
+     */
+    private static void appendSearchIndexFilter(StringBuilder sql, String[] jsonpaths, boolean matchAll,
+            List<String> keys) {
+        List<Set<String>> requiredKeys = Stream.of(jsonpaths).map(JsonpathKeys::requiredKeys).toList();
+        // with OR a path without known keys can match any run
+        if (requiredKeys.isEmpty() || (matchAll ? requiredKeys.stream().allMatch(Set::isEmpty)
+                : requiredKeys.stream().anyMatch(Set::isEmpty))) {
+            return;
+        }
+        sql.append(" AND (run.id IN (");
+        if (matchAll) {
+            List<String> allKeys = requiredKeys.stream().flatMap(Set::stream).distinct().toList();
+            appendRunsWithKeys(sql, allKeys.size(), jsonpaths.length + keys.size() + 1);
+            keys.addAll(allKeys);
+        } else {
+            boolean first = true;
+            for (Set<String> pathKeys : requiredKeys) {
+                if (!first) {
+                    sql.append(" UNION ");
+                }
+                first = false;
+                sql.append("(");
+                appendRunsWithKeys(sql, pathKeys.size(), jsonpaths.length + keys.size() + 1);
+                sql.append(")");
+                keys.addAll(pathKeys);
+            }
+        }
+        // runs stored before the index existed might not be indexed yet
+        sql.append(") OR ").append(NOT_INDEXED).append(")");
+    }
+
+    private static void appendRunsWithKeys(StringBuilder sql, int keys, int position) {
+        for (int i = 0; i < keys; ++i) {
+            if (i != 0) {
+                sql.append(" INTERSECT ");
+            }
+            sql.append("SELECT rsk.run_id FROM run_search_key rsk JOIN search_key ON search_key.id = rsk.key_id ")
+                    .append("WHERE search_key.key = ?").append(position + i);
+        }
+    }
+
     private void initTypes(Query query) {
         query.unwrap(NativeQuery.class)
                 .addScalar("id", StandardBasicTypes.INTEGER)
@@ -917,8 +1183,8 @@ public class RunServiceImpl implements RunService {
     @Override
     public RunCount runCount(int testId) {
         RunCount counts = new RunCount();
-        counts.total = RunDAO.count("testid = ?1", testId);
-        counts.active = RunDAO.count("testid = ?1 AND trashed = false", testId);
+        counts.active = countRuns(testId, null, false);
+        counts.total = countRuns(testId, null, true);
         counts.trashed = counts.total - counts.active;
         return counts;
     }
@@ -959,7 +1225,7 @@ public class RunServiceImpl implements RunService {
         initTypes(query);
         List<Object[]> resultList = query.getResultList();
         RunsSummary summary = new RunsSummary();
-        summary.total = trashed ? RunDAO.count("testid = ?1", testId) : RunDAO.count("testid = ?1 AND trashed = false", testId);
+        summary.total = countRuns(testId, null, trashed);
         summary.runs = resultList.stream().map(this::createSummary).collect(Collectors.toList());
         return summary;
     }
@@ -1031,11 +1297,8 @@ public class RunServiceImpl implements RunService {
     private void trashConnectedDatasets(int runId, int testId) {
         //Make sure to remove run_schemas as we've trashed the run
         em.createNativeQuery("DELETE FROM run_schemas WHERE runid = ?1").setParameter(1, runId).executeUpdate();
-        List<DatasetDAO> datasets = DatasetDAO.list("run.id", runId);
-        Log.debugf("Trashing run %d (test %d, %d datasets)", runId, testId, datasets.size());
-        for (var dataset : datasets) {
-            mediator.propagatedDatasetDelete(dataset.id);
-        }
+        Log.debugf("Trashing run %d (test %d)", runId, testId);
+        mediator.propagatedRunDatasetsDelete(runId);
     }
 
     @RolesAllowed(Roles.TESTER)
@@ -1139,24 +1402,19 @@ public class RunServiceImpl implements RunService {
             Log.debugf("Deleted %d datasets for trashed runs between %s and %s", deleted, from, to);
         }
 
-        ScrollableResults<Recalculate> results = session
-                .createNativeQuery("SELECT id, testid FROM run WHERE start BETWEEN ?1 AND ?2 AND NOT trashed ORDER BY start",
-                        Recalculate.class)
+        List<Integer> testIds = session
+                .createNativeQuery("SELECT DISTINCT testid FROM run WHERE start BETWEEN ?1 AND ?2 AND NOT trashed",
+                        Integer.class)
                 .setParameter(1, from).setParameter(2, to)
-                .setTupleTransformer((tuples, aliases) -> {
-                    Recalculate r = new Recalculate();
-                    r.runId = (int) tuples[0];
-                    r.testId = (int) tuples[1];
-                    return r;
-                })
-                .setReadOnly(true).setFetchSize(100)
-                .scroll(ScrollMode.FORWARD_ONLY);
-        while (results.next()) {
-            Recalculate r = results.get();
-            Log.debugf("Recalculate Datasets for run %d - forcing recalculation of all between %s and %s", r.runId, from, to);
-            // transform will add proper roles anyway
-            //         messageBus.executeForTest(r.testId, () -> datasetService.withRecalculationLock(() -> transform(r.runId, true)));
-            Util.registerTxSynchronization(tm, txStatus -> mediator.queueRunRecalculation(r.runId));
+                .getResultList();
+        for (int testId : testIds) {
+            // runs of each test are recalculated in order of their start, tests are processed in parallel
+            if (recalculationEngine.submit(testId, from, to)) {
+                Log.debugf("Recalculate Datasets for test %d - forcing recalculation of all between %s and %s", testId, from,
+                        to);
+            } else {
+                Log.infof("Recalculation for test %d already in progress, skipping", testId);
+            }
         }
     }
 
@@ -1196,12 +1454,7 @@ public class RunServiceImpl implements RunService {
 
         // We need to make sure all old datasets are gone before creating new; otherwise we could
         // break the runid,ordinal uniqueness constraint
-        for (DatasetDAO old : DatasetDAO.<DatasetDAO> list("run.id", runId)) {
-            for (DataPointDAO dp : DataPointDAO.<DataPointDAO> list("dataset.id", old.getInfo().id)) {
-                dp.delete();
-            }
-            mediator.propagatedDatasetDelete(old.id);
-        }
+        mediator.propagatedRunDatasetsDelete(runId);
 
         RunDAO run = RunDAO.findById(runId);
         if (run == null) {
@@ -1223,6 +1476,9 @@ public class RunServiceImpl implements RunService {
                 .getResultList());
 
         int schemasAndTransformers = relevantSchemas.size();
+        Map<Integer, TransformerDAO> transformers = loadTransformers(relevantSchemas);
+        Map<String, List<Object[]>> extracted = transformers.isEmpty() ? Collections.emptyMap()
+                : extractData(run, transformers.keySet());
         for (Object[] relevantSchema : relevantSchemas) {
             int type = (int) relevantSchema[0];
             String key = (String) relevantSchema[1];
@@ -1232,7 +1488,7 @@ public class RunServiceImpl implements RunService {
 
             TransformerDAO t;
             if (transformerId != null) {
-                t = TransformerDAO.findById(transformerId);
+                t = transformers.get(transformerId);
                 if (t == null) {
                     Log.errorf("Missing transformer with ID %d", transformerId);
                 }
@@ -1243,33 +1499,8 @@ public class RunServiceImpl implements RunService {
                 JsonNode root = JsonNodeFactory.instance.objectNode();
                 JsonNode result;
                 if (t.extractors != null && !t.extractors.isEmpty()) {
-                    List<Object[]> extractedData;
-                    try {
-                        if (type == SchemaDAO.TYPE_1ST_LEVEL) {
-                            // note: metadata always follow the 2nd level format
-                            extractedData = unchecked(em.createNamedQuery(QUERY_1ST_LEVEL_BY_RUNID_TRANSFORMERID_SCHEMA_ID)
-                                    .setParameter(1, run.id).setParameter(2, transformerId)
-                                    .unwrap(NativeQuery.class)
-                                    .addScalar("name", StandardBasicTypes.TEXT)
-                                    .addScalar("value", JsonBinaryType.INSTANCE)
-                                    .getResultList());
-                        } else {
-                            extractedData = unchecked(em.createNamedQuery(QUERY_2ND_LEVEL_BY_RUNID_TRANSFORMERID_SCHEMA_ID)
-                                    .setParameter(1, run.id).setParameter(2, transformerId)
-                                    .setParameter(3, type == SchemaDAO.TYPE_2ND_LEVEL ? key : Integer.parseInt(key))
-                                    .setParameter(4, source)
-                                    .unwrap(NativeQuery.class)
-                                    .addScalar("name", StandardBasicTypes.TEXT)
-                                    .addScalar("value", JsonBinaryType.INSTANCE)
-                                    .getResultList());
-                        }
-                    } catch (PersistenceException e) {
-                        logMessage(run, PersistentLogDAO.ERROR,
-                                "Failed to extract data (JSONPath expression error?): " + Util.explainCauses(e));
-                        findFailingExtractor(runId);
-                        extractedData = Collections.emptyList();
-                    }
-                    addExtracted((ObjectNode) root, extractedData);
+                    addExtracted((ObjectNode) root,
+                            extracted.getOrDefault(extractedKey(transformerId, type, key, source), Collections.emptyList()));
                 }
                 // In Horreum it's customary that when a single extractor is used we pass the result directly to the function
                 // without wrapping it in an extra object.
@@ -1285,7 +1516,7 @@ public class RunServiceImpl implements RunService {
                         "Run transformer %s/%s with input: <pre>%s</pre>, function: <pre>%s</pre>",
                         uri, t.name, limitLength(root.toPrettyString()), t.function);
                 if (t.function != null && !t.function.isBlank()) {
-                    result = Util.evaluateOnce(t.function, root, Util::convertToJson,
+                    result = Util.evaluateOnce(t.function, root, Util.JsInputMode.PROXY, Util::convertToJson,
                             (code, e) -> logMessage(run, PersistentLogDAO.ERROR,
                                     "Evaluation of transformer %s/%s failed: '%s' Code: <pre>%s</pre>", uri, t.name,
                                     e.getMessage(), code),
@@ -1399,13 +1630,23 @@ public class RunServiceImpl implements RunService {
                     instance.arrayNode());
             datasetIds.add(createDataset(ds, isRecalculation));
         }
+        if (isRecalculation) {
+            try {
+                int[] ids = datasetIds.stream().mapToInt(Integer::intValue).toArray();
+                mediator.onNewDatasets(new Dataset.EventNewBatch(run.testid, ids, true), true);
+            } catch (TransactionRequiredException tre) {
+                Log.error(
+                        "Failed attempt to persist and send Dataset event during inactive Transaction. Likely due to prior error.",
+                        tre);
+            }
+        }
         mediator.validateRun(run.id);
         return datasetIds;
     }
 
     /**
-     * Persists a dataset, optionally triggers recalculation events, and validates the dataset. The recalculation is getting
-     * triggered sync only if the {isRecalculation} is set to true otherwise it is completely skipped
+     * Persists a dataset and validates it. When {isRecalculation} is set to true the label values of all datasets
+     * of the run are calculated synchronously by the caller, otherwise this is completely skipped.
      *
      * @param ds the DatasetDAO object to be persisted
      * @param isRecalculation whether the dataset is a result of recalculation
@@ -1416,19 +1657,10 @@ public class RunServiceImpl implements RunService {
         // re-create the dataset_schemas associations
         updateDatasetSchemas(ds.id);
 
-        if (isRecalculation) {
-            try {
-                Dataset.EventNew event = new Dataset.EventNew(DatasetMapper.from(ds), true);
-                mediator.onNewDataset(event);
-                if (mediator.testMode())
-                    Util.registerTxSynchronization(tm,
-                            txStatus -> mediator.publishEvent(AsyncEventChannels.DATASET_NEW, ds.testid,
-                                    event));
-            } catch (TransactionRequiredException tre) {
-                Log.error(
-                        "Failed attempt to persist and send Dataset event during inactive Transaction. Likely due to prior error.",
-                        tre);
-            }
+        if (isRecalculation && mediator.testMode()) {
+            Dataset.EventNew event = new Dataset.EventNew(DatasetMapper.from(ds), true);
+            Util.registerTxSynchronization(tm,
+                    txStatus -> mediator.publishEvent(AsyncEventChannels.DATASET_NEW, ds.testid, event));
         }
         mediator.validateDataset(ds.id);
         return ds.id;
@@ -1438,18 +1670,29 @@ public class RunServiceImpl implements RunService {
         return str.length() > 1024 ? str.substring(0, 1024) + "...(truncated)" : str;
     }
 
-    private void queueDatasetProcessing(DatasetDAO ds, boolean isRecalculation) {
-        mediator.queueDatasetEvents(new Dataset.EventNew(DatasetMapper.from(ds), isRecalculation));
-        if (mediator.testMode())
-            Util.registerTxSynchronization(tm, txStatus -> mediator.publishEvent(AsyncEventChannels.DATASET_NEW, ds.testid,
-                    new Dataset.EventNew(DatasetMapper.from(ds), isRecalculation)));
+    /**
+     * Queues label calculation for the datasets of the runs, in batches of up to {@code horreum.dataset.event.batch-size}
+     * datasets.
+     */
+    private void queueDatasetProcessing(int testId, List<RunPersistence> runs, boolean isRecalculation) {
+        int[] datasetIds = runs.stream().flatMap(r -> r.getDatasetIds().stream()).mapToInt(Integer::intValue).toArray();
+        for (int i = 0; i < datasetIds.length; i += datasetBatchSize) {
+            int[] batch = Arrays.copyOfRange(datasetIds, i, Math.min(datasetIds.length, i + datasetBatchSize));
+            mediator.queueDatasetEvents(new Dataset.EventNewBatch(testId, batch, isRecalculation));
+        }
+        if (mediator.testMode()) {
+            for (RunPersistence run : runs) {
+                for (int datasetId : run.getDatasetIds()) {
+                    Util.registerTxSynchronization(tm, txStatus -> mediator.publishEvent(AsyncEventChannels.DATASET_NEW,
+                            testId, new Dataset.EventNew(datasetId, testId, run.getRunId(), -1, isRecalculation)));
+                }
+            }
+        }
     }
 
-    @WithRoles(extras = Roles.HORREUM_SYSTEM)
-    @Transactional(Transactional.TxType.REQUIRES_NEW)
     protected void logMessage(RunDAO run, int level, String format, Object... args) {
         String msg = args.length == 0 ? format : format.formatted(args);
-        new TransformationLogDAO(em.getReference(TestDAO.class, run.testid), run, level, msg).persist();
+        logSink.transformationLog(run.testid, run.id, level, msg);
     }
 
     @WithRoles(extras = Roles.HORREUM_SYSTEM)
@@ -1493,6 +1736,101 @@ public class RunServiceImpl implements RunService {
         return (List<Object[]>) list;
     }
 
+    private Map<Integer, TransformerDAO> loadTransformers(List<Object[]> relevantSchemas) {
+        List<Integer> transformerIds = relevantSchemas.stream().map(row -> (Integer) row[2]).filter(Objects::nonNull)
+                .distinct().toList();
+        if (transformerIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, TransformerDAO> transformers = new HashMap<>();
+        for (TransformerDAO t : TransformerDAO.<TransformerDAO> list(
+                "FROM Transformer t JOIN FETCH t.schema LEFT JOIN FETCH t.extractors WHERE t.id IN ?1", transformerIds)) {
+            transformers.put(t.id, t);
+        }
+        return transformers;
+    }
+
+    /**
+     * Evaluates the extractors of all transformers applicable to the run in a single query. When that fails
+     * (e.g. due to an invalid JSONPath) the extractors are evaluated per transformer, so that only the transformers
+     * with the failing extractor get no input.
+     *
+     * @return extracted name and value pairs keyed by {@link #extractedKey(int, int, String, int)}
+     */
+    private Map<String, List<Object[]>> extractData(RunDAO run, Collection<Integer> transformerIds) {
+        Map<String, List<Object[]>> extracted = new HashMap<>();
+        // the queries bypass Hibernate and would not see pending changes
+        session.flush();
+        List<Object[]> extractedData = extractDataInSavepoint(run, transformerIds);
+        if (extractedData == null) {
+            findFailingExtractor(run.id);
+            extractedData = new ArrayList<>();
+            for (int transformerId : transformerIds) {
+                List<Object[]> transformerData = extractDataInSavepoint(run, List.of(transformerId));
+                if (transformerData != null) {
+                    extractedData.addAll(transformerData);
+                }
+            }
+        }
+        for (Object[] row : extractedData) {
+            extracted.computeIfAbsent(extractedKey((int) row[0], (int) row[1], (String) row[2], (int) row[3]),
+                    k -> new ArrayList<>()).add(new Object[] { row[4], row[5] });
+        }
+        return extracted;
+    }
+
+    /**
+     * The query runs directly on the connection within a savepoint: a failure through Hibernate would mark the whole
+     * transaction for rollback.
+     *
+     * @return extracted rows or <code>null</code> when the extraction failed
+     */
+    private List<Object[]> extractDataInSavepoint(RunDAO run, Collection<Integer> transformerIds) {
+        return session.doReturningWork(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SAVEPOINT extract_data");
+            }
+            try {
+                List<Object[]> extractedData = extractData(connection, run.id, transformerIds);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("RELEASE SAVEPOINT extract_data");
+                }
+                return extractedData;
+            } catch (SQLException e) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("ROLLBACK TO SAVEPOINT extract_data");
+                }
+                logMessage(run, PersistentLogDAO.ERROR,
+                        "Failed to extract data for transformers %s (JSONPath expression error?): %s", transformerIds,
+                        Util.explainCauses(e));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return rows of transformer ID, target type, key, source, extractor name and extracted value
+     */
+    static List<Object[]> extractData(Connection connection, int runId, Collection<Integer> transformerIds)
+            throws SQLException {
+        List<Object[]> extractedData = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(EXTRACT_DATA)) {
+            statement.setInt(1, runId);
+            statement.setArray(2, connection.createArrayOf("integer", transformerIds.toArray()));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    extractedData.add(new Object[] { rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getInt(4),
+                            rs.getString(5), Util.toJsonNode(rs.getString(6)) });
+                }
+            }
+        }
+        return extractedData;
+    }
+
+    private static String extractedKey(int transformerId, int type, String key, int source) {
+        return transformerId + ":" + type + ":" + source + ":" + key;
+    }
+
     private void addExtracted(ObjectNode root, List<Object[]> resultSet) {
         for (Object[] labelValue : resultSet) {
             String name = (String) labelValue[0];
@@ -1512,11 +1850,6 @@ public class RunServiceImpl implements RunService {
         }
     }
 
-    static class Recalculate {
-        private int runId;
-        private int testId;
-    }
-
     static class RunFromUri {
         private int id;
         private int testId;
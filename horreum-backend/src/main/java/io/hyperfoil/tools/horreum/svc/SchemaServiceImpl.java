@@ -1,7 +1,6 @@
 package io.hyperfoil.tools.horreum.svc;
 
 import java.io.ByteArrayInputStream;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -15,12 +14,17 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import jakarta.annotation.security.PermitAll;
 import jakarta.annotation.security.RolesAllowed;
+import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
@@ -29,6 +33,7 @@ import jakarta.transaction.TransactionManager;
 import jakarta.transaction.Transactional;
 import jakarta.ws.rs.DefaultValue;
 
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
@@ -42,6 +47,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.networknt.schema.AbsoluteIri;
 import com.networknt.schema.JsonMetaSchema;
+import com.networknt.schema.JsonSchema;
 import com.networknt.schema.JsonSchemaFactory;
 import com.networknt.schema.SchemaLocation;
 import com.networknt.schema.resource.InputStreamSource;
@@ -79,6 +85,7 @@ import io.quarkus.panache.common.Page;
 import io.quarkus.panache.common.Sort;
 import io.quarkus.security.identity.SecurityIdentity;
 
+@ApplicationScoped
 public class SchemaServiceImpl implements SchemaService {
 
     //@formatter:off
@@ -105,6 +112,11 @@ public class SchemaServiceImpl implements SchemaService {
             .addMetaSchema(JsonMetaSchema.getV7())
             .addMetaSchema(JsonMetaSchema.getV201909()).build();
     private static final String[] ALL_URNS = new String[] { "urn", "uri", "http", "https", "ftp", "file", "jar" };
+    private static final int VALIDATION_BATCH_SIZE = 100;
+
+    // compiled JSON schemas by URI, shared by all validations
+    private final ConcurrentMap<String, CompiledSchema> compiledSchemas = new ConcurrentHashMap<>();
+    volatile long compiledSchemasGeneration;
 
     @Inject
     EntityManager em;
@@ -126,6 +138,10 @@ public class SchemaServiceImpl implements SchemaService {
     @Inject
     Session session;
 
+    @Inject
+    @ConfigProperty(name = "horreum.dataset.event.batch-size", defaultValue = "100")
+    int datasetBatchSize;
+
     @Inject
     @Util.FailUnknownProperties
     ObjectMapper mapper;
@@ -186,6 +202,7 @@ public class SchemaServiceImpl implements SchemaService {
         // whether we should trigger a schema synchronization
         // this happens when creating new schemas or, updating uri or JSON schema
         boolean syncSchemas = false;
+        String previousUri = null;
 
         validateSchema(schemaDTO);
 
@@ -202,6 +219,7 @@ public class SchemaServiceImpl implements SchemaService {
             if (!Objects.equals(schema.uri, existing.uri) || !Objects.equals(schema.schema, existing.schema)) {
                 syncSchemas = true;
             }
+            previousUri = existing.uri;
             em.merge(schema);
             em.flush();
         } else {
@@ -212,15 +230,22 @@ public class SchemaServiceImpl implements SchemaService {
         }
 
         if (syncSchemas) {
-            newOrUpdatedSchema(schema);
+            newOrUpdatedSchema(schema, previousUri);
         }
 
         return schema.id;
     }
 
-    private void newOrUpdatedSchema(SchemaDAO schema) {
+    private void newOrUpdatedSchema(SchemaDAO schema, String previousUri) {
         Log.debugf("Push schema event for async run schemas update: %d (%s)", schema.id, schema.uri);
-        Util.registerTxSynchronization(tm, txStatus -> mediator.queueSchemaSync(schema.id));
+        String uri = schema.uri;
+        Util.registerTxSynchronization(tm, txStatus -> {
+            invalidateCompiledSchemas(uri);
+            if (previousUri != null && !previousUri.equals(uri)) {
+                invalidateCompiledSchemas(previousUri);
+            }
+            mediator.queueSchemaSync(schema.id);
+        });
     }
 
     private void validateSchema(Schema schemaDTO) {
@@ -414,8 +439,9 @@ public class SchemaServiceImpl implements SchemaService {
         Predicate<String> schemaFilter = uri -> uri.equals(schema.uri);
         // If the URI was updated together with JSON schema run_schemas are removed and filled-in asynchronously
         // so we cannot rely on run_schemas
+        Map<Integer, List<Integer>> runsByTest = new HashMap<>();
         runService.findRunsWithUri(schema.uri,
-                (runId, testId) -> messageBus.executeForTest(testId, () -> validateRunData(runId, schemaFilter)));
+                (runId, testId) -> runsByTest.computeIfAbsent(testId, t -> new ArrayList<>()).add(runId));
         // Datasets might be re-created if URI is changing, so we might work on old, non-existent ones
         ScrollableResults<RecreateDataset> results = session
                 .createNativeQuery("SELECT id, testid FROM dataset WHERE ?1 IN (SELECT jsonb_array_elements(data)->>'$schema')",
@@ -429,13 +455,36 @@ public class SchemaServiceImpl implements SchemaService {
                 })
                 .setReadOnly(true).setFetchSize(100)
                 .scroll(ScrollMode.FORWARD_ONLY);
+        Map<Integer, List<Integer>> datasetsByTest = new HashMap<>();
         while (results.next()) {
             RecreateDataset r = results.get();
-            messageBus.executeForTest(r.testId, () -> validateDatasetData(r.datasetId, schemaFilter));
+            datasetsByTest.computeIfAbsent(r.testId, t -> new ArrayList<>()).add(r.datasetId);
+        }
+        // The validations are follow-ups of the committed schema change, so these are not subject to the queue limits;
+        // submit them in chunks to not flood the queues with one task per run/dataset
+        Util.doAfterCommit(tm, () -> {
+            submitValidations(runsByTest, runId -> validateRunData(runId, schemaFilter));
+            submitValidations(datasetsByTest, datasetId -> validateDatasetData(datasetId, schemaFilter));
+        });
+    }
+
+    private void submitValidations(Map<Integer, List<Integer>> idsByTest, IntConsumer validation) {
+        for (var entry : idsByTest.entrySet()) {
+            List<Integer> ids = entry.getValue();
+            for (int i = 0; i < ids.size(); i += VALIDATION_BATCH_SIZE) {
+                List<Integer> batch = ids.subList(i, Math.min(ids.size(), i + VALIDATION_BATCH_SIZE));
+                try {
+                    messageBus.executeFollowUpForTest(entry.getKey(), () -> batch.forEach(validation::accept));
+                } catch (RejectedExecutionException e) {
+                    // shutting down
+                    Log.errorf(e, "Cannot validate %d items of test %d", ids.size() - i, entry.getKey());
+                    return;
+                }
+            }
         }
     }
 
-    private void validateData(JsonNode data, Predicate<String> filter, Collection<ValidationErrorDAO> consumer) {
+    void validateData(JsonNode data, Predicate<String> filter, Collection<ValidationErrorDAO> consumer) {
         Map<String, List<JsonNode>> toCheck = new HashMap<>();
         addIfHasSchema(toCheck, data);
         for (JsonNode child : data) {
@@ -446,29 +495,16 @@ public class SchemaServiceImpl implements SchemaService {
             if (filter != null && !filter.test(schemaUri)) {
                 continue;
             }
-            NativeQuery<SchemaDAO> fetchSchemas = session.createNativeQuery(FETCH_SCHEMAS_RECURSIVE, SchemaDAO.class);
-            fetchSchemas.setParameter(1, schemaUri);
-            Map<String, SchemaDAO> schemas = fetchSchemas.getResultStream()
-                    .collect(Collectors.toMap(s -> s.uri, Function.identity()));
-
-            // this is root in the sense of JSON schema referencing other schemas, NOT Horreum first-level schema
-            SchemaDAO rootSchema = schemas.get(schemaUri);
-            if (rootSchema == null || rootSchema.schema == null) {
+            CompiledSchema compiled = getCompiledSchema(schemaUri, consumer);
+            if (compiled == null) {
                 continue;
             }
 
             try {
-                HorreumURIFetcher fetcher = new HorreumURIFetcher();
-                fetcher.addResource(SchemaLocation.of(schemaUri).getAbsoluteIri(), rootSchema.schema.toString());
-
-                JsonSchemaFactory factory = JsonSchemaFactory.builder(JSON_SCHEMA_FACTORY)
-                        .schemaLoaders(schemaLoaders -> schemaLoaders.add(fetcher))
-                        .build();
-
                 for (JsonNode node : toCheck.get(schemaUri)) {
-                    factory.getSchema(rootSchema.schema).validate(node).forEach(msg -> {
+                    compiled.jsonSchema.validate(node).forEach(msg -> {
                         ValidationErrorDAO error = new ValidationErrorDAO();
-                        error.schema = rootSchema;
+                        error.setSchema(compiled.schemaId);
                         error.error = Util.OBJECT_MAPPER.valueToTree(msg);
                         if (!consumer.contains(error))
                             consumer.add(error);
@@ -477,17 +513,103 @@ public class SchemaServiceImpl implements SchemaService {
             } catch (Throwable e) {
                 // Do not let messed up schemas fail the upload
                 Log.error("Schema validation failed", e);
-                ValidationErrorDAO error = new ValidationErrorDAO();
-                error.schema = rootSchema;
-                error.error = JsonNodeFactory.instance.objectNode().put("type", "Execution error").put("message",
-                        e.getMessage());
-                if (!consumer.contains(error))
-                    consumer.add(error);
+                addExecutionError(consumer, compiled.schemaId, e);
             }
             Log.debug("Validation completed");
         }
     }
 
+    private CompiledSchema getCompiledSchema(String schemaUri, Collection<ValidationErrorDAO> consumer) {
+        CompiledSchema compiled = compiledSchemas.get(schemaUri);
+        if (compiled != null) {
+            return compiled;
+        }
+        long generation = compiledSchemasGeneration;
+        NativeQuery<SchemaDAO> fetchSchemas = session.createNativeQuery(FETCH_SCHEMAS_RECURSIVE, SchemaDAO.class);
+        fetchSchemas.setParameter(1, schemaUri);
+        Map<String, SchemaDAO> schemas = fetchSchemas.getResultStream()
+                .collect(Collectors.toMap(s -> s.uri, Function.identity()));
+
+        // this is root in the sense of JSON schema referencing other schemas, NOT Horreum first-level schema
+        SchemaDAO rootSchema = schemas.get(schemaUri);
+        if (rootSchema == null || rootSchema.schema == null) {
+            return null;
+        }
+        try {
+            return compileSchema(rootSchema, schemas.values(), generation);
+        } catch (Throwable e) {
+            // Do not let messed up schemas fail the upload
+            Log.error("Schema compilation failed", e);
+            addExecutionError(consumer, rootSchema.id, e);
+            return null;
+        }
+    }
+
+    CompiledSchema compileSchema(SchemaDAO rootSchema, Collection<SchemaDAO> schemas, long generation) {
+        HorreumURIFetcher fetcher = new HorreumURIFetcher();
+        for (SchemaDAO schema : schemas) {
+            if (schema.schema != null) {
+                fetcher.addResource(SchemaLocation.of(schema.uri).getAbsoluteIri(), schema.schema.toString());
+            }
+        }
+        JsonSchemaFactory factory = JsonSchemaFactory.builder(JSON_SCHEMA_FACTORY)
+                .schemaLoaders(schemaLoaders -> schemaLoaders.add(fetcher))
+                .build();
+        JsonSchema jsonSchema = factory.getSchema(rootSchema.schema);
+        // compile the whole schema upfront, validation of a compiled schema is thread-safe
+        jsonSchema.initializeValidators();
+        Set<String> uris = new HashSet<>();
+        for (SchemaDAO schema : schemas) {
+            uris.add(schema.uri);
+            // referenced URIs without a schema yet, creating that schema must drop this one
+            addReferencedUris(schema.schema, uris);
+        }
+        CompiledSchema compiled = new CompiledSchema(rootSchema.id, jsonSchema, uris);
+        synchronized (compiledSchemas) {
+            // do not cache the schema if it could have been loaded before a concurrent update was committed
+            if (generation == compiledSchemasGeneration) {
+                compiledSchemas.put(rootSchema.uri, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    private static void addReferencedUris(JsonNode node, Set<String> uris) {
+        if (node == null) {
+            return;
+        }
+        if (node.isObject()) {
+            JsonNode ref = node.get("$ref");
+            if (ref != null && ref.isTextual() && !ref.asText().startsWith("#")) {
+                String uri = ref.asText();
+                int fragment = uri.indexOf('#');
+                uris.add(fragment < 0 ? uri : uri.substring(0, fragment));
+            }
+        }
+        for (JsonNode child : node) {
+            addReferencedUris(child, uris);
+        }
+    }
+
+    private void addExecutionError(Collection<ValidationErrorDAO> consumer, int schemaId, Throwable e) {
+        ValidationErrorDAO error = new ValidationErrorDAO();
+        error.setSchema(schemaId);
+        error.error = JsonNodeFactory.instance.objectNode().put("type", "Execution error").put("message",
+                e.getMessage());
+        if (!consumer.contains(error))
+            consumer.add(error);
+    }
+
+    /**
+     * Drops compiled schemas with given URI and all schemas referencing it.
+     */
+    void invalidateCompiledSchemas(String uri) {
+        synchronized (compiledSchemas) {
+            compiledSchemasGeneration++;
+            compiledSchemas.values().removeIf(compiled -> compiled.uris.contains(uri));
+        }
+    }
+
     private void addIfHasSchema(Map<String, List<JsonNode>> toCheck, JsonNode node) {
         String uri = node.path("$schema").asText();
         if (uri != null && !uri.isBlank()) {
@@ -518,6 +640,8 @@ public class SchemaServiceImpl implements SchemaService {
             em.createNativeQuery("DELETE FROM run_schemas WHERE schemaid = ?1").setParameter(1, id).executeUpdate();
             em.createNativeQuery("DELETE FROM dataset_schemas WHERE schema_id = ?1").setParameter(1, id).executeUpdate();
             schema.delete();
+            String uri = schema.uri;
+            Util.registerTxSynchronization(tm, txStatus -> invalidateCompiledSchemas(uri));
         }
     }
 
@@ -872,9 +996,17 @@ public class SchemaServiceImpl implements SchemaService {
                 return;
             }
 
-            for (var dataset : datasetIds) {
-                Util.registerTxSynchronization(tm, txStatus -> mediator.queueDatasetEvents(
-                        new Dataset.EventNew((Integer) dataset[0], (Integer) dataset[1], 0, labelId, true)));
+            // recalculate the label in batches of datasets of the same test
+            Map<Integer, List<Integer>> byTest = datasetIds.stream().filter(row -> row[0] != null)
+                    .collect(Collectors.groupingBy(row -> (Integer) row[1], TreeMap::new,
+                            Collectors.mapping(row -> (Integer) row[0], Collectors.toList())));
+            for (var entry : byTest.entrySet()) {
+                int[] ids = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+                for (int i = 0; i < ids.length; i += datasetBatchSize) {
+                    Dataset.EventNewBatch batch = new Dataset.EventNewBatch(entry.getKey(),
+                            Arrays.copyOfRange(ids, i, Math.min(ids.length, i + datasetBatchSize)), labelId, true);
+                    Util.registerTxSynchronization(tm, txStatus -> mediator.queueDatasetEvents(batch));
+                }
             }
         } catch (NoResultException nre) {
             Log.debugf("Could not find datasetId/testId to recalculate labels: %s", nre.getMessage());
@@ -1010,12 +1142,14 @@ public class SchemaServiceImpl implements SchemaService {
                 : Optional.empty();
         boolean isNewSchema = schemaOpt.isEmpty();
         SchemaDAO schema;
+        String previousUri = null;
 
         validateSchema(importSchema);
 
         if (!isNewSchema) {
             // updating an existing schema
             schema = schemaOpt.get();
+            previousUri = schema.uri;
             if (!Objects.equals(schema.uri, importSchema.uri) || Objects.equals(schema.schema, importSchema.schema)) {
                 syncSchemas = true;
             }
@@ -1065,7 +1199,7 @@ public class SchemaServiceImpl implements SchemaService {
         try {
             em.flush();
             if (syncSchemas) {
-                newOrUpdatedSchema(schema);
+                newOrUpdatedSchema(schema, previousUri);
             }
         } catch (Exception e) {
             throw ServiceException.serverError("Failed to persist Schema: " + e.getMessage());
@@ -1086,6 +1220,19 @@ public class SchemaServiceImpl implements SchemaService {
         }
     }
 
+    static final class CompiledSchema {
+        final int schemaId;
+        final JsonSchema jsonSchema;
+        // URIs of this schema and all schemas it references, including those that do not exist
+        final Set<String> uris;
+
+        CompiledSchema(int schemaId, JsonSchema jsonSchema, Set<String> uris) {
+            this.schemaId = schemaId;
+            this.jsonSchema = jsonSchema;
+            this.uris = uris;
+        }
+    }
+
     static class RecreateDataset {
         private int datasetId;
         private int testId;
@@ -1093,19 +1240,16 @@ public class SchemaServiceImpl implements SchemaService {
 
     private static class HorreumURIFetcher implements SchemaLoader {
 
-        private final Map<AbsoluteIri, InputStream> uriToResource = new HashMap<>();
+        private final Map<AbsoluteIri, byte[]> uriToResource = new HashMap<>();
 
         void addResource(AbsoluteIri uri, String schema) {
-            addResource(uri, new ByteArrayInputStream(schema.getBytes(StandardCharsets.UTF_8)));
-        }
-
-        void addResource(AbsoluteIri uri, InputStream is) {
-            uriToResource.put(uri, is);
+            uriToResource.put(uri, schema.getBytes(StandardCharsets.UTF_8));
         }
 
         @Override
         public InputStreamSource getSchema(AbsoluteIri absoluteIri) {
-            return () -> uriToResource.get(absoluteIri);
+            byte[] resource = uriToResource.get(absoluteIri);
+            return resource == null ? null : () -> new ByteArrayInputStream(resource);
         }
     }
 }
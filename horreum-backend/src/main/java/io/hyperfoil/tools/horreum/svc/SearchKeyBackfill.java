@@ -0,0 +1,56 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.hyperfoil.tools.horreum.server.WithRoles;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+import io.vertx.core.Vertx;
+
+/**
+ * Indexes object keys of runs stored before the <code>run_search_key</code> index existed, one batch of run ids
+ * per transaction. Until this is finished the search evaluates these runs without the index.
+ */
+@ApplicationScoped
+public class SearchKeyBackfill {
+    @Inject
+    @ConfigProperty(name = "horreum.search.backfill.batch-size", defaultValue = "1000")
+    int batchSize;
+
+    @Inject
+    EntityManager em;
+
+    @Inject
+    Vertx vertx;
+
+    void onStart(@Observes StartupEvent event) {
+        Util.executeBlocking(vertx, this::backfill);
+    }
+
+    void backfill() {
+        int remaining;
+        try {
+            remaining = indexBatch();
+        } catch (Exception e) {
+            Log.error("Failed to index keys of existing runs", e);
+            return;
+        }
+        if (remaining > 0) {
+            Log.debugf("Indexed keys of runs, %d run ids left", remaining);
+            Util.executeBlocking(vertx, this::backfill);
+        }
+    }
+
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    @Transactional
+    int indexBatch() {
+        return ((Number) em.createNativeQuery("SELECT backfill_run_search_keys(?1)")
+                .setParameter(1, batchSize).getSingleResult()).intValue();
+    }
+}
@@ -18,10 +18,18 @@ public class ServiceException extends WebApplicationException {
         return new ServiceException(Response.Status.NOT_FOUND, message);
     }
 
+    public static ServiceException payloadTooLarge(String message) {
+        return new ServiceException(Response.Status.REQUEST_ENTITY_TOO_LARGE, message);
+    }
+
     public static ServiceException serverError(String message) {
         return new ServiceException(Response.Status.INTERNAL_SERVER_ERROR, message);
     }
 
+    public static ServiceException serviceUnavailable(String message) {
+        return new ServiceException(Response.Status.SERVICE_UNAVAILABLE, message);
+    }
+
     public ServiceException(Response.Status status, String message) {
         super(message, Response.status(status)
                 .header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN).entity(message).build());
@@ -86,6 +86,10 @@ public class ServiceMediator {
     @Channel("dataset-event-out")
     Emitter<Dataset.EventNew> dataSetEmitter;
 
+    @OnOverflow(value = OnOverflow.Strategy.BUFFER, bufferSize = 10000)
+    @Channel("dataset-batch-event-out")
+    Emitter<Dataset.EventNewBatch> dataSetBatchEmitter;
+
     @OnOverflow(value = OnOverflow.Strategy.BUFFER, bufferSize = 10000)
     @Channel("run-recalc-out")
     Emitter<Integer> runEmitter;
@@ -118,7 +122,7 @@ public class ServiceMediator {
 
     @Transactional
     void deleteTest(int testId) {
-        // runService will call mediator.propagatedDatasetDelete which needs
+        // runService will call mediator.propagatedRunDatasetsDelete which needs
         // to be completed before we call the other services
         runService.onTestDeleted(testId);
         actionService.onTestDelete(testId);
@@ -137,10 +141,10 @@ public class ServiceMediator {
     }
 
     @Transactional
-    void propagatedDatasetDelete(int datasetId) {
-        //make sure to delete the entities that has a reference on dataset first
-        alertingService.onDatasetDeleted(datasetId);
-        datasetService.deleteDataset(datasetId);
+    void propagatedRunDatasetsDelete(int runId) {
+        //make sure to delete the entities that has a reference on the datasets first
+        alertingService.onRunDatasetsDeleted(runId);
+        datasetService.deleteRunDatasets(runId);
     }
 
     @Transactional
@@ -172,6 +176,32 @@ public class ServiceMediator {
         dataSetEmitter.send(event);
     }
 
+    @Incoming("dataset-batch-event-in")
+    @Blocking(ordered = false, value = "horreum.dataset.pool")
+    @ActivateRequestContext
+    @WithRoles(extras = Roles.HORREUM_SYSTEM)
+    public void processDatasetBatchEvents(Dataset.EventNewBatch batch) {
+        if (onNewDatasets(batch, false)) {
+            for (int datasetId : batch.datasetIds) {
+                validateDataset(datasetId);
+            }
+        } else {
+            // fall back to processing the datasets one by one to report the failure on the right dataset
+            for (int datasetId : batch.datasetIds) {
+                queueDatasetEvents(new Dataset.EventNew(datasetId, batch.testId, 0, batch.labelId, batch.isRecalculation));
+            }
+        }
+    }
+
+    boolean onNewDatasets(Dataset.EventNewBatch batch, boolean reportFailure) {
+        return datasetService.onNewDatasets(batch, reportFailure);
+    }
+
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    void queueDatasetEvents(Dataset.EventNewBatch batch) {
+        dataSetBatchEmitter.send(batch);
+    }
+
     @Incoming("run-recalc-in")
     @Blocking(ordered = false, value = "horreum.run.pool")
     @ActivateRequestContext
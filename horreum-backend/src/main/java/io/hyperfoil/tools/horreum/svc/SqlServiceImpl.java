@@ -158,4 +158,13 @@ public class SqlServiceImpl implements SqlService {
         }
         return roleManager.getDebugQuery(identity);
     }
+
+    @Override
+    @PermitAll
+    public String roleStats() {
+        if (!debug.orElse(false)) {
+            throw ServiceException.notFound("Not available without debug mode.");
+        }
+        return "issued: " + roleManager.getIssuedSwitches() + "\nskipped: " + roleManager.getSkippedSwitches();
+    }
 }
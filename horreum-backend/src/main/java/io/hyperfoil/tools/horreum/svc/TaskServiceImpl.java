@@ -0,0 +1,35 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import java.util.List;
+
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import io.hyperfoil.tools.horreum.api.internal.services.TaskService;
+import io.hyperfoil.tools.horreum.bus.BlockingTaskDispatcher;
+
+@ApplicationScoped
+public class TaskServiceImpl implements TaskService {
+
+    @Inject
+    BlockingTaskDispatcher dispatcher;
+
+    @RolesAllowed(Roles.ADMIN)
+    @Override
+    public List<QueueStats> queues() {
+        return dispatcher.stats().stream().map(s -> {
+            QueueStats stats = new QueueStats();
+            stats.testId = s.testId();
+            stats.queued = s.queued();
+            stats.active = s.active();
+            stats.executed = s.executed();
+            stats.rejected = s.rejected();
+            stats.avgWaitMillis = s.avgWaitMillis();
+            stats.maxWaitMillis = s.maxWaitMillis();
+            stats.avgExecutionMillis = s.avgExecutionMillis();
+            stats.maxExecutionMillis = s.maxExecutionMillis();
+            return stats;
+        }).toList();
+    }
+}
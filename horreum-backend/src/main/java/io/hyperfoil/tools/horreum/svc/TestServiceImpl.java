@@ -9,7 +9,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import jakarta.annotation.security.PermitAll;
@@ -24,9 +23,8 @@ import jakarta.transaction.Transactional;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 
-import org.hibernate.ScrollMode;
-import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.query.NativeQuery;
 import org.hibernate.type.StandardBasicTypes;
@@ -99,7 +97,8 @@ public class TestServiceImpl implements TestService {
     @Inject
     TransactionManager tm;
 
-    private final ConcurrentHashMap<Integer, RecalculationStatus> recalculations = new ConcurrentHashMap<>();
+    @Inject
+    RecalculationEngine recalculationEngine;
 
     @RolesAllowed(Roles.TESTER)
     @WithRoles
@@ -616,6 +615,32 @@ public class TestServiceImpl implements TestService {
         }
     }
 
+    @Transactional
+    @WithRoles
+    @Override
+    public Response exportTestLabelValues(int testId, String filter, String before, String after, boolean filtering,
+            boolean metrics, String sort, String direction, List<String> include, List<String> exclude, boolean multiFilter,
+            String format) {
+        if (!checkTestExists(testId)) {
+            throw ServiceException.notFound("Cannot find test " + testId);
+        }
+        LabelValuesService.ExportFormat exportFormat;
+        try {
+            exportFormat = LabelValuesService.ExportFormat.fromString(format);
+        } catch (IllegalArgumentException e) {
+            throw ServiceException.badRequest(e.getMessage());
+        }
+        // the filter is validated here, the results are read while writing the response, outside of this transaction
+        StreamingOutput output;
+        try {
+            output = labelValuesService.exportLabelValuesByTest(testId, filter, before, after, filtering, metrics, sort,
+                    direction, include, exclude, multiFilter, exportFormat);
+        } catch (IllegalArgumentException e) {
+            throw ServiceException.badRequest(e.getMessage());
+        }
+        return Response.ok(output, exportFormat.mediaType).build();
+    }
+
     @Transactional
     @WithRoles
     @Override
@@ -653,10 +678,8 @@ public class TestServiceImpl implements TestService {
     @Transactional
     public void recalculateTestDatasets(int testId) {
         TestDAO test = getTestForUpdate(testId);
-        RecalculationStatus status = new RecalculationStatus(RunDAO.count("testid = ?1 AND trashed = false", testId));
         // we don't have to care about races with new runs
-        RecalculationStatus prev = recalculations.putIfAbsent(testId, status);
-        if (prev != null) {
+        if (!recalculationEngine.submit(testId, null, null)) {
             Log.infof("Recalculation for test %d (%s) already in progress", testId, test.name);
             return;
         }
@@ -668,35 +691,7 @@ public class TestServiceImpl implements TestService {
         if (deleted > 0) {
             Log.debugf("Deleted %d datasets for trashed runs in test %s (%d)", deleted, test.name, (Object) testId);
         }
-
         Log.infof("Recalculating datasets for test %d (%s)", testId, test.name);
-        try (ScrollableResults<Integer> results = em
-                .createNativeQuery("SELECT id FROM run WHERE testid = ?1 AND NOT trashed ORDER BY start")
-                .setParameter(1, testId)
-                .unwrap(NativeQuery.class).setReadOnly(true).setFetchSize(100)
-                .scroll(ScrollMode.FORWARD_ONLY)) {
-            while (results.next()) {
-                int runId = (int) results.get();
-                Log.debugf("Recalculate Datasets for run %d - forcing recalculation for test %d (%s)", runId, testId,
-                        test.name);
-
-                mediator.executeBlocking(() -> {
-                    int newDatasets = 0;
-                    try {
-                        newDatasets = mediator.transform(runId, true);
-                    } finally {
-                        synchronized (status) {
-                            status.finished++;
-                            status.datasets += newDatasets;
-                            if (status.finished == status.totalRuns) {
-                                Log.infof("Datasets recalculation for test %d (%s) completed", testId, test.name);
-                                recalculations.remove(testId, status);
-                            }
-                        }
-                    }
-                });
-            }
-        }
     }
 
     @Override
@@ -705,7 +700,7 @@ public class TestServiceImpl implements TestService {
         if (!checkTestExists(testId)) {
             throw ServiceException.serverError("Cannot find test " + testId);
         }
-        RecalculationStatus status = recalculations.get(testId);
+        RecalculationStatus status = recalculationEngine.getStatus(testId);
         if (status == null) {
             status = new RecalculationStatus(RunDAO.count("testid = ?1 AND trashed = false", testId));
             status.finished = status.totalRuns;
@@ -13,12 +13,14 @@ import jakarta.annotation.security.RolesAllowed;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.inject.Instance;
 import jakarta.inject.Inject;
+import jakarta.transaction.TransactionManager;
 import jakarta.transaction.Transactional;
 
 import io.hyperfoil.tools.horreum.api.services.UserService;
 import io.hyperfoil.tools.horreum.entity.user.UserApiKey;
 import io.hyperfoil.tools.horreum.entity.user.UserInfo;
 import io.hyperfoil.tools.horreum.mapper.UserApiKeyMapper;
+import io.hyperfoil.tools.horreum.server.IdentityCache;
 import io.hyperfoil.tools.horreum.server.WithRoles;
 import io.hyperfoil.tools.horreum.svc.user.UserBackEnd;
 import io.quarkus.logging.Log;
@@ -49,6 +51,12 @@ public class UserServiceImpl implements UserService {
     @Inject
     TimeService timeService;
 
+    @Inject
+    IdentityCache identityCache;
+
+    @Inject
+    TransactionManager tm;
+
     private UserInfo currentUser() {
         return UserInfo.<UserInfo> findByIdOptional(getUsername())
                 .orElseThrow(() -> ServiceException.notFound("Username '" + getUsername() + "' not found"));
@@ -83,6 +91,7 @@ public class UserServiceImpl implements UserService {
         userIsManagerForTeam(user.team);
         backend.get().createUser(user);
         createLocalUser(user.user.username, user.team);
+        Util.registerTxSynchronization(tm, txStatus -> identityCache.invalidateUser(user.user.username));
         Log.infof("%s created user '%s %s' with username '%s' on team '%s'", getUsername(),
                 user.user.firstName, user.user.lastName, user.user.username, user.team);
     }
@@ -95,6 +104,7 @@ public class UserServiceImpl implements UserService {
         }
         backend.get().removeUser(username);
         removeLocalUser(username);
+        Util.registerTxSynchronization(tm, txStatus -> identityCache.invalidateUser(username));
         Log.infof("'%s' removed user '%s'", getUsername(), username);
     }
 
@@ -144,6 +154,7 @@ public class UserServiceImpl implements UserService {
         Map<String, List<String>> roles = new HashMap<>(newRoles);
         backend.get().teamMembers(team).forEach((username, old) -> roles.putIfAbsent(username, emptyList()));
         backend.get().updateTeamMembers(team, roles);
+        Util.registerTxSynchronization(tm, txStatus -> roles.keySet().forEach(identityCache::invalidateUser));
     }
 
     @RolesAllowed(Roles.ADMIN)
@@ -165,6 +176,7 @@ public class UserServiceImpl implements UserService {
     public void deleteTeam(String unsafeTeam) {
         String team = validateTeamName(unsafeTeam);
         backend.get().deleteTeam(team);
+        Util.registerTxSynchronization(tm, txStatus -> identityCache.invalidateRoles());
         Log.infof("%s deleted team %s", getUsername(), team);
     }
 
@@ -181,6 +193,7 @@ public class UserServiceImpl implements UserService {
             throw ServiceException.badRequest("Cannot remove yourself from administrator list");
         }
         backend.get().updateAdministrators(newAdmins);
+        Util.registerTxSynchronization(tm, txStatus -> identityCache.invalidateRoles());
     }
 
     private void userIsManagerForTeam(String team) {
@@ -292,6 +305,7 @@ public class UserServiceImpl implements UserService {
         UserApiKey key = UserApiKey.<UserApiKey> findByIdOptional(keyId)
                 .orElseThrow(() -> ServiceException.notFound("Key with id " + keyId + " not found"));
         key.revoked = true;
+        Util.registerTxSynchronization(tm, txStatus -> identityCache.invalidateApiKey(keyId));
         Log.debugf("'%s' revoked API key '%s'", getUsername(), key.name);
     }
 
@@ -300,6 +314,8 @@ public class UserServiceImpl implements UserService {
     @WithRoles(extras = Roles.HORREUM_SYSTEM)
     @Scheduled(every = "P1d") // daily -- it may lag up tp 24h compared to the actual date, but keys are revoked 24h after notification
     public void apiKeyDailyTask() {
+        // make sure that keys used recently are not considered expired
+        identityCache.flushAccess();
         // notifications of keys expired and about to expire -- hardcoded to send multiple notices in the week prior to expiration
         for (long toExpiration : List.of(7, 2, 1, 0, -1)) {
             UserApiKey.<UserApiKey> stream("#UserApiKey.expire", timeService.now().plus(toExpiration, ChronoUnit.DAYS))
@@ -309,6 +325,7 @@ public class UserServiceImpl implements UserService {
         UserApiKey.<UserApiKey> stream("#UserApiKey.pastExpiration", timeService.now()).forEach(key -> {
             Log.debugf("Idle API key '%s' revoked", key.name);
             key.revoked = true;
+            Util.registerTxSynchronization(tm, txStatus -> identityCache.invalidateApiKey(key.id));
         });
     }
 
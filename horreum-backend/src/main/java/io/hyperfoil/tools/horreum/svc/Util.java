@@ -3,9 +3,7 @@ package io.hyperfoil.tools.horreum.svc;
 import static java.lang.annotation.ElementType.*;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
@@ -279,10 +277,11 @@ public class Util {
     }
 
     public static JsonNode convertToJson(Value value) {
-        if (value == null || value.isNull()) {
+        JsonNode unwrapped = ProxyJackson.unwrap(value);
+        if (unwrapped != null) {
+            return unwrapped;
+        } else if (value == null || value.isNull()) {
             return JsonNodeFactory.instance.nullNode();
-        } else if (value.isProxyObject()) {
-            return value.asProxyObject();
         } else if (value.isBoolean()) {
             return JsonNodeFactory.instance.booleanNode(value.asBoolean());
         } else if (value.isNumber()) {
@@ -306,6 +305,9 @@ public class Util {
     }
 
     public static Object convertFromJson(JsonNode node) {
+        if (node == null) {
+            return null;
+        }
         switch (node.getNodeType()) {
             case BINARY:
             case STRING:
@@ -323,9 +325,9 @@ public class Util {
                     return value;
                 }
             case OBJECT:
-                return (ObjectNode) node;
             case ARRAY:
-                return (ArrayNode) node;
+                // nested nodes are wrapped lazily as they are accessed
+                return ProxyJackson.wrap(node);
             default:
                 return node;
         }
@@ -377,7 +379,10 @@ public class Util {
         ArrayNode json = JsonNodeFactory.instance.arrayNode();
         for (int i = 0; i < value.getArraySize(); i++) {
             Value element = value.getArrayElement(i);
-            if (element == null || element.isNull()) {
+            JsonNode unwrapped = ProxyJackson.unwrap(element);
+            if (unwrapped != null) {
+                json.add(unwrapped);
+            } else if (element == null || element.isNull()) {
                 json.addNull();
             } else if (element.isBoolean()) {
                 json.add(element.asBoolean());
@@ -405,7 +410,10 @@ public class Util {
         ObjectNode json = JsonNodeFactory.instance.objectNode();
         for (String key : value.getMemberKeys()) {
             Value element = value.getMember(key);
-            if (element == null || element.isNull()) {
+            JsonNode unwrapped = ProxyJackson.unwrap(element);
+            if (unwrapped != null) {
+                json.set(key, unwrapped);
+            } else if (element == null || element.isNull()) {
                 json.set(key, JsonNodeFactory.instance.nullNode());
             } else if (element.isBoolean()) {
                 json.set(key, JsonNodeFactory.instance.booleanNode(element.asBoolean()));
@@ -603,63 +611,63 @@ public class Util {
             Consumer<T> nonFuncResultConsumer,
             ExecutionExceptionConsumer<T> onJsEvaluationException,
             Consumer<String> jsOutputConsumer) {
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        evaluateWithCombinationFunction(inputData, jsCombinationFunction, evaluationInputObject, JsInputMode.COPY,
+                jsFuncResultConsumer, nonFuncResultConsumer, onJsEvaluationException, jsOutputConsumer);
+    }
+
+    static <T> void evaluateWithCombinationFunction(List<T> inputData,
+            Function<T, String> jsCombinationFunction,
+            Function<T, JsonNode> evaluationInputObject,
+            JsInputMode inputMode,
+            BiConsumer<T, Value> jsFuncResultConsumer,
+            Consumer<T> nonFuncResultConsumer,
+            ExecutionExceptionConsumer<T> onJsEvaluationException,
+            Consumer<String> jsOutputConsumer) {
+        StringBuilder out = new StringBuilder();
 
-        for (int i = 0; i < inputData.size(); i++) {
-            T element = inputData.get(i);
+        for (T element : inputData) {
             String jsFuncBody = jsCombinationFunction.apply(element);
             if (jsFuncBody != null && !jsFuncBody.isBlank()) {
-                try (org.graalvm.polyglot.Context context = createContext(out)) {
-                    context.enter();
+                JsonNode input = evaluationInputObject.apply(element);
+                try (JsContextPool.PooledContext context = JsContextPool.get().borrow()) {
                     try {
-                        setupContext(context);
-                        StringBuilder jsCode = new StringBuilder("const __obj").append(i).append(" = ")
-                                .append(evaluationInputObject.apply(element)).append(";\n");
-                        jsCode.append("const __func").append(i).append(" = ").append(jsFuncBody).append(";\n");
-                        jsCode.append("__func").append(i).append("(__obj").append(i).append(")");
-                        try {
-                            Value value = context.eval("js", jsCode);
-                            value = resolvePromise(value);
-                            jsFuncResultConsumer.accept(element, value);
-                        } catch (PolyglotException e) {
-                            onJsEvaluationException.accept(element, e, jsCode.toString());
-                        }
-                    } catch (IOException e) {
-                        onJsEvaluationException.accept(null, e, "<init>");
+                        Value value = context.function(jsFuncBody).execute(toJsInput(context, input, inputMode));
+                        value = resolvePromise(value);
+                        jsFuncResultConsumer.accept(element, value);
+                    } catch (PolyglotException e) {
+                        context.checkException(e);
+                        onJsEvaluationException.accept(element, e, describeCode(jsFuncBody, input));
                     } finally {
-                        context.leave();
+                        String output = context.drainOutput();
+                        if (output != null) {
+                            out.append(output);
+                        }
                     }
                 }
             } else {
                 nonFuncResultConsumer.accept(element);
             }
         }
-        if (out.size() > 0) {
-            jsOutputConsumer.accept(out.toString(StandardCharsets.UTF_8));
+        if (out.length() > 0) {
+            jsOutputConsumer.accept(out.toString());
         }
     }
 
-    private static Context createContext(OutputStream out) {
-        return Context.newBuilder("js")
-                .engine(Engine.newBuilder()
-                        .option("engine.WarnInterpreterOnly", "false")
-                        .build())
-                .allowExperimentalOptions(true)
-                .option("js.foreign-object-prototype", "true")
-                .option("js.global-property", "true")
-                .out(out)
-                .err(out)
-                .build();
+    static Object toJsInput(JsContextPool.PooledContext context, JsonNode input, JsInputMode inputMode) {
+        if (inputMode == JsInputMode.PROXY) {
+            return convertFromJson(input);
+        } else {
+            return context.parseJson(String.valueOf(input));
+        }
     }
 
-    private static void setupContext(Context context) throws IOException {
-        context.getBindings("js").putMember("isInstanceLike", new ProxyJacksonObject.InstanceCheck());
-        context.eval("js",
-                "Object.defineProperty(Object,Symbol.hasInstance, {\n" +
-                        "  value: function myinstanceof(obj) {\n" +
-                        "    return isInstanceLike(obj);\n" +
-                        "  }\n" +
-                        "});");
+    /**
+     * Reconstructs the code equivalent to a function evaluation, to be used in error messages.
+     */
+    static String describeCode(String function, JsonNode input) {
+        return "const __obj = " + input + ";\n" +
+                "const __func = " + function + ";\n" +
+                "__func(__obj)";
     }
 
     public static Value resolvePromise(Value value) {
@@ -694,31 +702,28 @@ public class Util {
     //I SWEAR IF I FIND ANOTHER PLACE THAT PERFORMS THE SAME CALCULATION I WILL BUY MORE SCREWDRIVERS
     static <T> T evaluateOnce(String function, JsonNode input, Function<Value, T> processResult,
             BiConsumer<String, Throwable> onException, Consumer<String> onOutput) {
-        StringBuilder jsCode = new StringBuilder("const __obj = ").append(input).append(";\n");
-        jsCode.append("const __func = ").append(function).append(";\n");
-        jsCode.append("__func(__obj)");
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try (Context context = createContext(out)) {
-            context.enter();
+        return evaluateOnce(function, input, JsInputMode.COPY, processResult, onException, onOutput);
+    }
+
+    static <T> T evaluateOnce(String function, JsonNode input, JsInputMode inputMode, Function<Value, T> processResult,
+            BiConsumer<String, Throwable> onException, Consumer<String> onOutput) {
+        try (JsContextPool.PooledContext context = JsContextPool.get().borrow()) {
             try {
-                setupContext(context);
-                Value value = context.eval("js", jsCode);
+                Value value = context.function(function).execute(toJsInput(context, input, inputMode));
                 value = resolvePromise(value);
                 //end of the sin
                 return processResult.apply(value);
             } catch (PolyglotException e) {
-                onException.accept(jsCode.toString(), e);
+                context.checkException(e);
+                onException.accept(describeCode(function, input), e);
                 return null;
-            } catch (IOException e) {
-                onException.accept(jsCode.toString(), e);
             } finally {
-                if (out.size() > 0) {
-                    onOutput.accept(out.toString());
+                String output = context.drainOutput();
+                if (output != null) {
+                    onOutput.accept(output);
                 }
-                context.leave();
             }
         }
-        return null;
     }
 
     static boolean evaluateTest(String function, JsonNode input,
@@ -889,6 +894,21 @@ public class Util {
         }
     }
 
+    /**
+     * Determines how the input JSON is passed to a JavaScript function.
+     */
+    enum JsInputMode {
+        /**
+         * The input is serialized and parsed into a JavaScript object; the function works on a copy.
+         */
+        COPY,
+        /**
+         * The input is bound through lazy {@link ProxyJacksonObject}/{@link ProxyJacksonArray} proxies,
+         * so it is neither serialized nor copied. Modifications made by the function are applied to the input.
+         */
+        PROXY
+    }
+
     interface ExecutionExceptionConsumer<T> {
         void accept(T row, Throwable exception, String code);
     }
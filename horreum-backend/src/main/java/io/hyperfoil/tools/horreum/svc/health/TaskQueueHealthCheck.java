@@ -0,0 +1,26 @@
+package io.hyperfoil.tools.horreum.svc.health;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Readiness;
+
+import io.hyperfoil.tools.horreum.bus.BlockingTaskDispatcher;
+
+/**
+ * Reports whether the task queues accept work; details of the queues are available to admins
+ * through {@code /api/tasks/queues}.
+ */
+@Readiness
+@ApplicationScoped
+public class TaskQueueHealthCheck implements HealthCheck {
+    @Inject
+    BlockingTaskDispatcher dispatcher;
+
+    @Override
+    public HealthCheckResponse call() {
+        return HealthCheckResponse.named("Task queues").status(dispatcher.isRunning()).build();
+    }
+}
@@ -0,0 +1,199 @@
+package io.hyperfoil.tools.horreum.bus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.transaction.Status;
+import jakarta.transaction.TransactionManager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class BlockingTaskDispatcherTest {
+    private BlockingTaskDispatcher dispatcher;
+
+    private BlockingTaskDispatcher dispatcher(int concurrency, int maxQueueSize) {
+        dispatcher = new BlockingTaskDispatcher();
+        dispatcher.concurrency = concurrency;
+        dispatcher.maxQueueSize = maxQueueSize;
+        dispatcher.offerTimeout = Duration.ofMillis(200);
+        dispatcher.idleTimeout = Duration.ZERO;
+        dispatcher.init();
+        return dispatcher;
+    }
+
+    @AfterEach
+    public void shutdown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testOrderWithinTest() throws InterruptedException {
+        dispatcher(4, 1000);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(100);
+        for (int i = 0; i < 100; ++i) {
+            int index = i;
+            dispatcher.execute(1, () -> {
+                executed.add(index);
+                latch.countDown();
+            });
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(i, executed.get(i));
+        }
+    }
+
+    @Test
+    public void testFairness() throws InterruptedException {
+        dispatcher(1, 1000);
+        CountDownLatch blocker = new CountDownLatch(1);
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        dispatcher.execute(1, () -> awaitQuietly(blocker));
+        for (int i = 0; i < 10; ++i) {
+            dispatcher.execute(1, () -> executed.add(1));
+        }
+        CountDownLatch other = new CountDownLatch(1);
+        dispatcher.execute(2, () -> {
+            executed.add(2);
+            other.countDown();
+        });
+        blocker.countDown();
+        assertTrue(other.await(10, TimeUnit.SECONDS));
+        // test 2 does not wait until all tasks of test 1 are done
+        assertTrue(executed.indexOf(2) <= 1, executed.toString());
+    }
+
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        dispatcher(1, 2);
+        CountDownLatch blocker = new CountDownLatch(1);
+        dispatcher.execute(1, () -> awaitQuietly(blocker));
+        dispatcher.execute(1, () -> {
+        });
+        dispatcher.execute(1, () -> {
+        });
+        long start = System.nanoTime();
+        // the queue is full, this waits until the timeout and then rejects the task
+        assertThrows(RejectedExecutionException.class, () -> dispatcher.execute(1, () -> {
+        }));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+        assertEquals(2, dispatcher.stats().get(0).queued());
+        assertEquals(1, dispatcher.stats().get(0).rejected());
+
+        new Thread(() -> {
+            sleepQuietly(100);
+            blocker.countDown();
+        }).start();
+        start = System.nanoTime();
+        dispatcher.execute(1, () -> {
+        });
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+    }
+
+    @Test
+    public void testFollowUpBypassesLimit() throws InterruptedException {
+        dispatcher(1, 1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        dispatcher.execute(1, () -> awaitQuietly(blocker));
+        dispatcher.execute(1, () -> {
+        });
+        CountDownLatch latch = new CountDownLatch(3);
+        for (int i = 0; i < 3; ++i) {
+            dispatcher.execute(1, latch::countDown, false);
+        }
+        assertEquals(4, dispatcher.stats().get(0).queued());
+        assertEquals(0, dispatcher.stats().get(0).rejected());
+        blocker.countDown();
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRejectedAfterShutdown() {
+        dispatcher(1, 10);
+        dispatcher.shutdown();
+        assertThrows(RejectedExecutionException.class, () -> dispatcher.execute(1, () -> {
+        }));
+        BlockingTaskDispatcher.QueueStats stats = dispatcher.stats().get(0);
+        assertEquals(0, stats.queued());
+        assertFalse(stats.active());
+        assertEquals(1, stats.rejected());
+        // the queue is not stuck as scheduled, it can be evicted
+        dispatcher.evictIdleQueues();
+        assertEquals(0, dispatcher.stats().size());
+    }
+
+    @Test
+    public void testNoBlockingInTransaction() {
+        dispatcher(1, 1);
+        dispatcher.tm = (TransactionManager) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { TransactionManager.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("getStatus")) {
+                        return Status.STATUS_ACTIVE;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            dispatcher.execute(1, () -> awaitQuietly(blocker));
+            dispatcher.execute(1, () -> {
+            });
+            long start = System.nanoTime();
+            assertThrows(RejectedExecutionException.class, () -> dispatcher.execute(1, () -> {
+            }));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(150));
+        } finally {
+            blocker.countDown();
+        }
+    }
+
+    @Test
+    public void testEviction() throws InterruptedException {
+        dispatcher(2, 10);
+        CountDownLatch latch = new CountDownLatch(2);
+        dispatcher.execute(1, latch::countDown);
+        dispatcher.execute(2, latch::countDown);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        while (dispatcher.stats().stream().anyMatch(BlockingTaskDispatcher.QueueStats::active)) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, dispatcher.stats().size());
+        assertEquals(1, dispatcher.stats().get(0).executed());
+        dispatcher.evictIdleQueues();
+        assertEquals(0, dispatcher.stats().size());
+
+        CountDownLatch another = new CountDownLatch(1);
+        dispatcher.execute(1, another::countDown);
+        assertTrue(another.await(10, TimeUnit.SECONDS));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package io.hyperfoil.tools.horreum.changedetection;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+import io.hyperfoil.tools.horreum.api.data.changeDetection.ChangeDetectionModelType;
+import io.hyperfoil.tools.horreum.entity.alerting.ChangeDAO;
+import io.hyperfoil.tools.horreum.entity.alerting.DataPointDAO;
+import io.hyperfoil.tools.horreum.entity.alerting.VariableDAO;
+import io.hyperfoil.tools.horreum.entity.data.DatasetDAO;
+
+public class EDivisiveTest {
+    private static final double[] EXAMPLE = { 1, 2, 1, 2, 2, 1, 1, 2, 2, 10 };
+
+    @Test
+    public void testChangeAtLastValue() {
+        List<EDivisive.ChangePoint> changePoints = EDivisive.changePoints(EXAMPLE, 50, 0.001, 0);
+        assertEquals(1, changePoints.size());
+        assertEquals(9, changePoints.get(0).index());
+        assertEquals("+542.9%", "%+.1f%%".formatted(changePoints.get(0).forwardChangePercent()));
+    }
+
+    @Test
+    public void testNoChangeBeforeLastValue() {
+        for (int i = 1; i < EXAMPLE.length; ++i) {
+            assertEquals(List.of(), EDivisive.changePoints(Arrays.copyOf(EXAMPLE, i), 50, 0.001, 0), "Length " + i);
+        }
+        assertEquals(List.of(), EDivisive.changePoints(new double[] { 5, 5, 5, 5, 5, 5 }, 50, 0.001, 0));
+    }
+
+    @Test
+    public void testMinMagnitude() {
+        assertEquals(List.of(), EDivisive.changePoints(EXAMPLE, 50, 0.001, 10));
+    }
+
+    @Test
+    public void testChangePointsOfFixture() throws IOException {
+        List<double[]> rows = readFixture("change/eDivisive/valid/tests/resources/horreum.csv");
+        double[] values = rows.stream().mapToDouble(row -> row[0]).toArray();
+        List<EDivisive.ChangePoint> changePoints = EDivisive.changePoints(values, 50, 0.001, 0);
+        assertFalse(changePoints.isEmpty());
+        // first change point reported by Hunter for the same data
+        assertEquals(1535410, (int) rows.get(changePoints.get(0).index())[2]);
+        for (EDivisive.ChangePoint changePoint : changePoints) {
+            assertTrue(changePoint.pValue() < 0.001);
+        }
+    }
+
+    @Test
+    public void testModelAnalyze() throws ChangeDetectionException {
+        EDivisiveModel model = new EDivisiveModel();
+        model.mapper = new ObjectMapper();
+        VariableDAO variable = new VariableDAO();
+        variable.id = 1;
+        List<DataPointDAO> dataPoints = new ArrayList<>();
+        // newest first
+        for (int i = EXAMPLE.length - 1; i >= 0; --i) {
+            DataPointDAO dataPoint = new DataPointDAO();
+            dataPoint.id = i;
+            dataPoint.value = EXAMPLE[i];
+            dataPoint.timestamp = Instant.ofEpochSecond(i);
+            dataPoint.variable = variable;
+            dataPoint.dataset = new DatasetDAO();
+            dataPoint.dataset.id = 100 + i;
+            dataPoints.add(dataPoint);
+        }
+        List<ChangeDAO> changes = new ArrayList<>();
+        model.analyze(dataPoints, JsonNodeFactory.instance.objectNode().put("model", ChangeDetectionModelType.names.EDIVISIVE),
+                changes::add);
+        assertEquals(1, changes.size());
+        assertEquals(109, changes.get(0).dataset.id);
+        assertTrue(changes.get(0).description.contains("`+542.9%`"), changes.get(0).description);
+        assertEquals(10, model.recentDataPoints(JsonNodeFactory.instance.objectNode().put("windowLen", 10)));
+    }
+
+    static List<double[]> readFixture(String resource) throws IOException {
+        List<double[]> rows = new ArrayList<>();
+        try (InputStream stream = EDivisiveTest.class.getClassLoader().getResourceAsStream(resource);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+            // skip header
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                rows.add(Arrays.stream(line.split(",")).mapToDouble(Double::parseDouble).toArray());
+            }
+        }
+        return rows;
+    }
+}
@@ -8,6 +8,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
@@ -22,6 +23,10 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import io.hyperfoil.tools.horreum.api.alerting.Change;
 import io.hyperfoil.tools.horreum.api.alerting.ChangeDetection;
 import io.hyperfoil.tools.horreum.api.alerting.DataPoint;
@@ -49,8 +54,8 @@ import io.quarkus.test.oidc.server.OidcWiremockTestResource;
 @Tag("CiTests")
 public class EdivisiveTests extends BaseServiceTest {
 
-    @Inject
-    ChangeDetectionModelResolver resolver;
+    // the external Hunter process is used as the reference for EDivisiveModel
+    HunterEDivisiveModel hunter = new HunterEDivisiveModel();
 
     @Inject
     ServiceMediator serviceMediator;
@@ -68,23 +73,18 @@ public class EdivisiveTests extends BaseServiceTest {
     @Test
     public void testFileStructures() {
 
-        HunterEDivisiveModel model = (HunterEDivisiveModel) resolver.getModel(ChangeDetectionModelType.EDIVISIVE);
-        assertNotNull(model);
-
         try {
             //1. Valid File Structure
             HunterEDivisiveModel.TmpFiles tmpFiles = getTmpFiles("change/eDivisive/valid/tests/resources/horreum.csv");
 
-            //cast ChangeDetectionModel to access protected methods
-            boolean valid = model.validateInputCsv(tmpFiles);
+            boolean valid = hunter.validateInputCsv(tmpFiles);
 
             assertTrue(valid);
 
             //2. Invalid File Structure
             tmpFiles = getTmpFiles("change/eDivisive/invalid/tests/resources/horreum.csv");
 
-            //cast ChangeDetectionModel to access protected methods
-            valid = model.validateInputCsv(tmpFiles);
+            valid = hunter.validateInputCsv(tmpFiles);
 
             assertFalse(valid);
 
@@ -116,21 +116,17 @@ public class EdivisiveTests extends BaseServiceTest {
     @Test
     public void testDetectedChangePoints() {
 
-        HunterEDivisiveModel model = (HunterEDivisiveModel) resolver.getModel(ChangeDetectionModelType.EDIVISIVE);
-        assertNotNull(model);
-
         List<ChangeDAO> changePoints = new ArrayList<>();
 
         try {
             HunterEDivisiveModel.TmpFiles tmpFiles = getTmpFiles("change/eDivisive/valid/tests/resources/horreum.csv");
 
             Instant sinceInstant = Instant.ofEpochSecond(1702002504);
-            //cast ChangeDetectionModel to access protected methods
-            boolean valid = model.validateInputCsv(tmpFiles);
+            boolean valid = hunter.validateInputCsv(tmpFiles);
 
             assertTrue(valid);
 
-            model.processChangePoints(
+            hunter.processChangePoints(
                     (datapointID) -> {
                         DataPointDAO datapoint = new DataPointDAO();
                         datapoint.id = datapointID;
@@ -155,6 +151,89 @@ public class EdivisiveTests extends BaseServiceTest {
         }
     }
 
+    @Test
+    public void testNativeMatchesHunter() throws IOException {
+        String resource = "change/eDivisive/valid/tests/resources/horreum.csv";
+        List<Integer> hunterChanges = new ArrayList<>();
+        HunterEDivisiveModel.TmpFiles tmpFiles = getTmpFiles(resource);
+        try {
+            hunter.processChangePoints(
+                    (datapointID) -> {
+                        DataPointDAO datapoint = new DataPointDAO();
+                        datapoint.id = datapointID;
+                        datapoint.dataset = new DatasetDAO();
+                        datapoint.dataset.id = datapointID;
+                        return Optional.of(datapoint);
+                    },
+                    change -> hunterChanges.add(change.dataset.id),
+                    tmpFiles,
+                    Instant.ofEpochSecond(1702002504));
+        } finally {
+            tmpFiles.cleanup();
+        }
+
+        List<double[]> rows = EDivisiveTest.readFixture(resource);
+        double[] values = rows.stream().mapToDouble(row -> row[0]).toArray();
+        List<Integer> nativeChanges = EDivisive.changePoints(values, EDivisiveModel.DEFAULT_WINDOW_LEN,
+                EDivisiveModel.DEFAULT_MAX_P_VALUE, EDivisiveModel.DEFAULT_MIN_MAGNITUDE).stream()
+                .map(changePoint -> (int) rows.get(changePoint.index())[2]).toList();
+        assertEquals(hunterChanges, nativeChanges);
+    }
+
+    @Test
+    public void testReplayMatchesHunter() throws Exception {
+        List<double[]> rows = EDivisiveTest.readFixture("change/eDivisive/valid/tests/resources/horreum.csv");
+        EDivisiveModel model = new EDivisiveModel();
+        model.mapper = new ObjectMapper();
+        ObjectNode config = JsonNodeFactory.instance.objectNode().put("model", ChangeDetectionModelType.names.EDIVISIVE);
+        int windowLen = model.recentDataPoints(config);
+        VariableDAO variable = new VariableDAO();
+        variable.id = 1;
+
+        List<DataPointDAO> history = new ArrayList<>();
+        int lastChange = 0;
+        List<String> nativeChanges = new ArrayList<>();
+        List<String> hunterChanges = new ArrayList<>();
+        for (double[] row : rows) {
+            DataPointDAO dataPoint = new DataPointDAO();
+            dataPoint.id = (int) row[2];
+            dataPoint.value = row[0];
+            dataPoint.timestamp = Instant.ofEpochSecond((long) row[1]);
+            dataPoint.variable = variable;
+            dataPoint.dataset = new DatasetDAO();
+            dataPoint.dataset.id = dataPoint.id;
+            history.add(dataPoint);
+
+            // as in AlertingServiceImpl: datapoints since the last change, limited to the window, newest first
+            List<DataPointDAO> window = new ArrayList<>(
+                    history.subList(Math.max(lastChange, history.size() - windowLen), history.size()));
+            Collections.reverse(window);
+            // Hunter cannot analyze a single datapoint
+            if (window.size() < 3) {
+                continue;
+            }
+            List<ChangeDAO> found = new ArrayList<>();
+            model.analyze(new ArrayList<>(window), config, found::add);
+            hunter.analyze(new ArrayList<>(window), config, change -> hunterChanges.add(describe(dataPoint, change)));
+            for (ChangeDAO change : found) {
+                nativeChanges.add(describe(dataPoint, change));
+                for (int i = lastChange; i < history.size(); ++i) {
+                    if (history.get(i).dataset.id.equals(change.dataset.id)) {
+                        lastChange = i;
+                    }
+                }
+            }
+        }
+        assertFalse(nativeChanges.isEmpty());
+        assertEquals(hunterChanges, nativeChanges);
+    }
+
+    private static String describe(DataPointDAO last, ChangeDAO change) {
+        Matcher matcher = Pattern.compile("`([^`]+)`").matcher(change.description);
+        assertTrue(matcher.find(), change.description);
+        return "after dataset %d: change %s at dataset %d".formatted(last.dataset.id, matcher.group(1), change.dataset.id);
+    }
+
     @Test
     public void testEdvisiveModelAnalyze(TestInfo info) throws Exception {
 
@@ -25,8 +25,6 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import jakarta.enterprise.context.ApplicationScoped;
-
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 
@@ -36,7 +34,10 @@ import io.hyperfoil.tools.horreum.entity.alerting.ChangeDAO;
 import io.hyperfoil.tools.horreum.entity.alerting.DataPointDAO;
 import io.quarkus.logging.Log;
 
-@ApplicationScoped
+/**
+ * Runs the external <code>hunter</code> process; this is the reference implementation {@link EDivisiveModel}
+ * is compared to.
+ */
 public class HunterEDivisiveModel implements ChangeDetectionModel {
     public static final String HUNTER_CONFIG = "HUNTER_CONFIG";
     private static String[] HEADERS = { "kpi", "timestamp", "datasetid" };
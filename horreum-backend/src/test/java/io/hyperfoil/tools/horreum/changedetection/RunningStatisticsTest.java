@@ -0,0 +1,80 @@
+package io.hyperfoil.tools.horreum.changedetection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.junit.jupiter.api.Test;
+
+public class RunningStatisticsTest {
+    // large values with a small variance lose all precision when the variance is computed from the sum of squares
+    private static final double OFFSET = 1e9;
+
+    @Test
+    public void testAddMatchesSummaryStatistics() {
+        Random random = new Random(42);
+        RunningStatistics statistics = new RunningStatistics();
+        SummaryStatistics expected = new SummaryStatistics();
+        for (int i = 0; i < 1000; ++i) {
+            double value = OFFSET + random.nextGaussian();
+            statistics.add(value);
+            expected.addValue(value);
+        }
+        assertEquals(expected.getN(), statistics.getCount());
+        assertEquals(expected.getMean(), statistics.getMean(), 1e-5);
+        assertEquals(expected.getStandardDeviation(), statistics.getStandardDeviation(), 1e-5);
+    }
+
+    @Test
+    public void testMerge() {
+        Random random = new Random(42);
+        RunningStatistics first = new RunningStatistics();
+        RunningStatistics second = new RunningStatistics();
+        SummaryStatistics expected = new SummaryStatistics();
+        for (int i = 0; i < 1000; ++i) {
+            double value = OFFSET + random.nextGaussian() + (i < 300 ? 0 : 5);
+            (i < 300 ? first : second).add(value);
+            expected.addValue(value);
+        }
+        first.add(second);
+        assertEquals(expected.getN(), first.getCount());
+        assertEquals(expected.getMean(), first.getMean(), 1e-5);
+        assertEquals(expected.getStandardDeviation(), first.getStandardDeviation(), 1e-5);
+
+        RunningStatistics empty = new RunningStatistics();
+        empty.add(first);
+        assertEquals(first.getMean(), empty.getMean());
+        assertEquals(first.getStandardDeviation(), empty.getStandardDeviation());
+    }
+
+    @Test
+    public void testRemove() {
+        Random random = new Random(42);
+        double[] values = new double[100];
+        RunningStatistics statistics = new RunningStatistics();
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = OFFSET + random.nextGaussian();
+            statistics.add(values[i]);
+        }
+        SummaryStatistics expected = new SummaryStatistics();
+        for (int i = 0; i < values.length; ++i) {
+            if (i % 3 == 0) {
+                statistics.remove(values[i]);
+            } else {
+                expected.addValue(values[i]);
+            }
+        }
+        assertEquals(expected.getN(), statistics.getCount());
+        assertEquals(expected.getMean(), statistics.getMean(), 1e-5);
+        assertEquals(expected.getStandardDeviation(), statistics.getStandardDeviation(), 1e-5);
+
+        RunningStatistics single = new RunningStatistics();
+        single.add(OFFSET);
+        single.remove(OFFSET);
+        assertEquals(0, single.getCount());
+        single.add(1);
+        assertEquals(1, single.getMean());
+        assertEquals(0, single.getStandardDeviation());
+    }
+}
@@ -0,0 +1,59 @@
+package io.hyperfoil.tools.horreum.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class IdentityCacheTest {
+    private IdentityCache cache(int maxSize) {
+        IdentityCache cache = new IdentityCache();
+        cache.ttl = Duration.ofMinutes(1);
+        cache.maxSize = maxSize;
+        return cache;
+    }
+
+    @Test
+    public void testEvictsClosestToExpiration() {
+        IdentityCache cache = cache(3);
+        for (String user : List.of("a", "b", "c")) {
+            cache.putRoles(user, List.of("tester"), cache.generation());
+        }
+        // reloaded, expires last now
+        cache.putRoles("a", List.of("tester", "viewer"), cache.generation());
+        cache.putRoles("d", List.of("tester"), cache.generation());
+
+        assertNull(cache.getRoles("b"));
+        assertEquals(Set.of("tester", "viewer"), cache.getRoles("a"));
+        assertNotNull(cache.getRoles("c"));
+        assertNotNull(cache.getRoles("d"));
+
+        cache.putRoles("e", List.of("tester"), cache.generation());
+        assertNull(cache.getRoles("c"));
+        assertNotNull(cache.getRoles("a"));
+    }
+
+    @Test
+    public void testExpiredEntriesEvicted() {
+        IdentityCache cache = cache(10);
+        cache.ttl = Duration.ofMillis(-1);
+        cache.putRoles("a", List.of("tester"), cache.generation());
+        assertNull(cache.getRoles("a"));
+    }
+
+    @Test
+    public void testLoadedBeforeInvalidation() {
+        IdentityCache cache = cache(10);
+        long generation = cache.generation();
+        cache.invalidateUser("a");
+        cache.putRoles("a", List.of("tester"), generation);
+        assertNull(cache.getRoles("a"));
+        cache.putRoles("a", List.of("tester"), cache.generation());
+        assertNotNull(cache.getRoles("a"));
+    }
+}
@@ -29,6 +29,7 @@ import io.hyperfoil.tools.horreum.api.data.Schema;
 import io.hyperfoil.tools.horreum.api.data.Test;
 import io.hyperfoil.tools.horreum.api.data.changeDetection.ChangeDetectionModelType;
 import io.hyperfoil.tools.horreum.api.internal.services.AlertingService;
+import io.hyperfoil.tools.horreum.api.internal.services.ChangesService;
 import io.hyperfoil.tools.horreum.api.services.TestService;
 import io.hyperfoil.tools.horreum.bus.AsyncEventChannels;
 import io.hyperfoil.tools.horreum.entity.FingerprintDAO;
@@ -64,6 +65,9 @@ public class AlertingServiceTest extends BaseServiceTest {
     @Inject
     ServiceMediator serviceMediator;
 
+    @Inject
+    FingerprintHashBackfill fingerprintHashBackfill;
+
     @org.junit.jupiter.api.Test
     public void testNotifications(TestInfo info) throws InterruptedException {
         Test test = createTest(createExampleTest(getTestName(info)));
@@ -114,6 +118,7 @@ public class AlertingServiceTest extends BaseServiceTest {
         assertNotNull(event);
         assertEquals(runId, event.dataset.runId);
 
+        logSink.flush();
         Util.withTx(tm, () -> {
             try (CloseMe ignored = roleManager.withRoles(Arrays.asList(TESTER_ROLES))) {
                 List<DatasetLogDAO> logs = DatasetLogDAO.find("dataset.run.id", runId).list();
@@ -197,6 +202,64 @@ public class AlertingServiceTest extends BaseServiceTest {
         assertEquals(run6, changeEvent3.change.dataset.runId);
     }
 
+    @org.junit.jupiter.api.Test
+    public void testChangeDetectionState(TestInfo info) throws InterruptedException {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        Schema schema = createExampleSchema(info);
+        addChangeDetectionVariable(test, schema.id);
+        int variableId;
+        try (CloseMe ignored = roleManager.withRoles(SYSTEM_ROLES)) {
+            variableId = VariableDAO.<VariableDAO> find("testId", test.id).firstResult().id;
+        }
+
+        BlockingQueue<DataPoint.Event> datapointQueue = serviceMediator.getEventQueue(AsyncEventChannels.DATAPOINT_NEW,
+                test.id);
+        BlockingQueue<Change.Event> changeQueue = serviceMediator.getEventQueue(AsyncEventChannels.CHANGE_NEW, test.id);
+
+        long ts = System.currentTimeMillis();
+        for (int i = 0; i < 4; ++i) {
+            uploadRun(ts + i, ts + i, runWithValue(1 + i % 2, schema), test.name);
+            assertValue(datapointQueue, 1 + i % 2);
+        }
+        // statistics of all datapoints since the last change are kept up to date
+        pollChangeDetectionStatistics(variableId, 4L, 6.0);
+
+        uploadRun(ts + 4, ts + 4, runWithValue(3, schema), test.name);
+        assertValue(datapointQueue, 3);
+        Change.Event changeEvent = changeQueue.poll(10, TimeUnit.SECONDS);
+        assertNotNull(changeEvent);
+        // the change is detected at the fourth datapoint, the statistics start there
+        pollChangeDetectionStatistics(variableId, 2L, 5.0);
+
+        // removing the change invalidates the statistics
+        jsonRequest().delete("/api/alerting/change/" + changeEvent.change.id).then().statusCode(204);
+        pollChangeDetectionStatistics(variableId, null, null);
+
+        // with the statistics gone all datapoints are loaded again; the change is found at the fifth datapoint now
+        uploadRun(ts + 5, ts + 5, runWithValue(3, schema), test.name);
+        assertValue(datapointQueue, 3);
+        Change.Event changeEvent2 = changeQueue.poll(10, TimeUnit.SECONDS);
+        assertNotNull(changeEvent2);
+        assertEquals(changeEvent.change.timestamp.plusMillis(1), changeEvent2.change.timestamp);
+        pollChangeDetectionStatistics(variableId, 2L, 6.0);
+    }
+
+    private void pollChangeDetectionStatistics(int variableId, Long count, Double sum) throws InterruptedException {
+        try (CloseMe h = roleManager.withRoles(SYSTEM_ROLES)) {
+            Object[] row = null;
+            for (int i = 0; i < 1000; ++i) {
+                em.clear();
+                row = (Object[]) em.createNativeQuery("SELECT count, sum FROM changedetection_state WHERE variable_id = ?1")
+                        .setParameter(1, variableId).getResultStream().findFirst().orElse(null);
+                if (row != null && Objects.equals(count, row[0]) && Objects.equals(sum, row[1])) {
+                    return;
+                }
+                Thread.sleep(10);
+            }
+            fail("Unexpected statistics " + (row == null ? null : Arrays.toString(row)));
+        }
+    }
+
     @org.junit.jupiter.api.Test
     public void testChangeDetectionWithFingerprint(TestInfo info) throws InterruptedException {
         Test test = createExampleTest(getTestName(info));
@@ -280,6 +343,50 @@ public class AlertingServiceTest extends BaseServiceTest {
         assertEquals(0L, DataPointDAO.findAll().count());
     }
 
+    @org.junit.jupiter.api.Test
+    public void testBackfillFingerprintHashes(TestInfo info) throws InterruptedException {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        Schema schema = createExampleSchema(info);
+        setTestVariables(test, "Value", new Label("value", schema.id));
+
+        BlockingQueue<DataPoint.Event> datapointQueue = serviceMediator.getEventQueue(AsyncEventChannels.DATAPOINT_NEW,
+                test.id);
+        int runId = uploadRun(runWithValue(42, schema), test.name);
+        assertNotNull(datapointQueue.poll(10, TimeUnit.SECONDS));
+
+        String hashesOfRun = "SELECT fp_hash FROM datapoint WHERE dataset_id IN (SELECT id FROM dataset WHERE runid = ?1)";
+        List<Long> hashes = Util.withTx(tm, () -> {
+            try (CloseMe ignored = roleManager.withRoles(SYSTEM_ROLES)) {
+                List<Long> original = em.createNativeQuery(hashesOfRun, Long.class).setParameter(1, runId).getResultList();
+                // datapoints stored before the hash was introduced
+                em.createNativeQuery("UPDATE datapoint SET fp_hash = NULL WHERE dataset_id IN " +
+                        "(SELECT id FROM dataset WHERE runid = ?1)").setParameter(1, runId).executeUpdate();
+                return original;
+            }
+        });
+        assertEquals(1, hashes.size());
+        assertNotNull(hashes.get(0));
+
+        // until the backfill reaches them the datapoints are matched by the fingerprint of the dataset
+        AlertingService.LastDatapointsParams params = new AlertingService.LastDatapointsParams();
+        params.variables = new int[] { variables(test.id).get(0).id };
+        List<AlertingService.DatapointLastTimestamp> timestamps = jsonRequest().body(params)
+                .post("/api/alerting/datapoint/last")
+                .then().statusCode(200).extract().body()
+                .as(new ParameterizedTypeImpl(List.class, AlertingService.DatapointLastTimestamp.class));
+        assertEquals(1, timestamps.size());
+
+        fingerprintHashBackfill.backfill();
+        TestUtil.eventually(() -> {
+            List<Long> current = Util.withTx(tm, () -> {
+                try (CloseMe ignored = roleManager.withRoles(SYSTEM_ROLES)) {
+                    return em.createNativeQuery(hashesOfRun, Long.class).setParameter(1, runId).getResultList();
+                }
+            });
+            return hashes.equals(current);
+        });
+    }
+
     //we need to find a way to determine when the re-calculation is complete
     @org.junit.jupiter.api.Disabled
     public void testFingerprintFilter(TestInfo info) throws Exception {
@@ -626,6 +733,60 @@ public class AlertingServiceTest extends BaseServiceTest {
         assertEquals(run4, changeEvent2.change.dataset.runId);
     }
 
+    @org.junit.jupiter.api.Test
+    public void testQueryDownsampled(TestInfo info) throws InterruptedException {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        Schema schema = createExampleSchema(info);
+        ChangeDetection rd = new ChangeDetection();
+        rd.model = ChangeDetectionModelType.names.FIXED_THRESHOLD;
+        ObjectNode config = JsonNodeFactory.instance.objectNode();
+        config.putObject("min").put("value", 3).put("enabled", true).put("inclusive", true);
+        config.putObject("max").put("value", 6).put("enabled", false).put("inclusive", false);
+        rd.config = config;
+        setTestVariables(test, "Value", new Label("value", schema.id), rd);
+
+        BlockingQueue<DataPoint.Event> datapointQueue = serviceMediator.getEventQueue(AsyncEventChannels.DATAPOINT_NEW,
+                test.id);
+        BlockingQueue<Change.Event> changeQueue = serviceMediator.getEventQueue(AsyncEventChannels.CHANGE_NEW, test.id);
+        long ts = System.currentTimeMillis();
+        for (int i = 0; i < 20; ++i) {
+            double value = i == 13 ? 2 : 4 + i % 2;
+            uploadRun(ts + i, ts + i, runWithValue(value, schema), test.name);
+            assertValue(datapointQueue, value);
+        }
+        assertNotNull(changeQueue.poll(10, TimeUnit.SECONDS));
+        int variableId = VariableDAO.<VariableDAO> find("testId", test.id).firstResult().id;
+
+        ObjectNode query = JsonNodeFactory.instance.objectNode();
+        query.putObject("range").put("from", Instant.ofEpochMilli(ts).toString())
+                .put("to", Instant.ofEpochMilli(ts + 19).toString());
+        query.putArray("targets").add(JsonNodeFactory.instance.objectNode().put("target", String.valueOf(variableId)))
+                .add(JsonNodeFactory.instance.objectNode().put("target", variableId + ";{\"foo\":\"bar\"}"));
+        List<ChangesService.TimeseriesTarget> all = jsonRequest().body(query.toString()).post("/api/changes/query")
+                .then().statusCode(200).extract().body().as(new TypeRef<>() {
+                });
+        assertEquals(2, all.size());
+        assertEquals(20, all.get(0).datapoints.size());
+        assertEquals(List.of(), all.get(1).datapoints);
+
+        query.put("maxDataPoints", 5);
+        List<ChangesService.TimeseriesColumns> sampled = jsonRequest().body(query.toString())
+                .post("/api/changes/query/columns")
+                .then().statusCode(200).extract().body().as(new TypeRef<>() {
+                });
+        assertEquals(2, sampled.size());
+        ChangesService.TimeseriesColumns columns = sampled.get(0);
+        assertEquals(variableId, columns.variableId);
+        assertTrue(columns.values.length >= 5 && columns.values.length <= 6, Arrays.toString(columns.values));
+        assertEquals(columns.values.length, columns.timestamps.length);
+        assertEquals(columns.values.length, columns.datasetIds.length);
+        assertEquals(ts, columns.timestamps[0]);
+        assertEquals(ts + 19, columns.timestamps[columns.timestamps.length - 1]);
+        // the datapoint with a change is always included
+        assertTrue(Arrays.stream(columns.values).anyMatch(v -> v == 2));
+        assertEquals(0, sampled.get(1).values.length);
+    }
+
     @org.junit.jupiter.api.Test
     public void testCustomTimeline(TestInfo info) throws InterruptedException {
         Test test = createTest(createExampleTest(getTestName(info)));
@@ -707,6 +868,39 @@ public class AlertingServiceTest extends BaseServiceTest {
         assertEquals(1, DataPointDAO.count());
     }
 
+    @org.junit.jupiter.api.Test
+    public void testDatapointsOfManyVariables(TestInfo info) throws InterruptedException {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        Schema schema = createExampleSchema(info);
+        ChangeDetection cd = new ChangeDetection();
+        cd.model = ChangeDetectionModelType.names.RELATIVE_DIFFERENCE;
+        cd.config = JsonNodeFactory.instance.objectNode().put("threshold", 0.1).put("minPrevious", 2)
+                .put("window", 2).put("filter", "mean");
+        List<Variable> variables = IntStream.rangeClosed(1, 20)
+                .mapToObj(i -> new Variable(null, test.id, "Value" + i, null, i, List.of("value"), "value => value * " + i,
+                        Set.of(cd)))
+                .collect(Collectors.toList());
+        updateVariables(test.id, variables);
+
+        BlockingQueue<DataPoint.Event> datapointQueue = serviceMediator.getEventQueue(AsyncEventChannels.DATAPOINT_NEW,
+                test.id);
+        long ts = System.currentTimeMillis();
+        int runId = uploadRun(ts, ts, runWithValue(2, schema), test.name);
+        Set<Double> values = new HashSet<>();
+        for (int i = 0; i < 20; ++i) {
+            DataPoint.Event dpe = datapointQueue.poll(10, TimeUnit.SECONDS);
+            assertNotNull(dpe);
+            values.add(dpe.dataPoint.value);
+        }
+        assertEquals(IntStream.rangeClosed(1, 20).mapToObj(i -> 2.0 * i).collect(Collectors.toSet()), values);
+
+        em.clear();
+        List<DataPointDAO> dataPoints = DataPointDAO.find("dataset.run.id", runId).list();
+        assertEquals(20, dataPoints.size());
+        // all datapoints of the dataset share the fingerprint hash
+        assertEquals(1, dataPoints.stream().map(dp -> dp.fpHash).filter(Objects::nonNull).distinct().count());
+    }
+
     //we need to find a way to determine when the re-calculation is complete
     @org.junit.jupiter.api.Disabled
     public void testRandomOrder(TestInfo info) throws InterruptedException {
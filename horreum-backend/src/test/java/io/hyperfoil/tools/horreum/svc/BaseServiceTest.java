@@ -109,6 +109,9 @@ public class BaseServiceTest {
     @Inject
     ServiceMediator serviceMediator;
 
+    @Inject
+    PersistentLogSink logSink;
+
     List<Runnable> afterMethodCleanup = new ArrayList<>();
 
     protected String getUploaderToken() {
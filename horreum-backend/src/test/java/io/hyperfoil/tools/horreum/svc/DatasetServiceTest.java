@@ -108,6 +108,45 @@ public class DatasetServiceTest extends BaseServiceTest {
         }, "urn:A", "urn:B");
     }
 
+    @org.junit.jupiter.api.Test
+    public void testDatasetLabelsBatch() {
+        withExampleSchemas((schemas) -> {
+            int labelA = addLabel(schemas[0], "value", null, new Extractor("value", "$.value", false));
+            int labelB = addLabel(schemas[1], "value", "v => v + 1", new Extractor("value", "$.value", false));
+            Test test = createTest(createExampleTest("batch"));
+            BlockingQueue<Dataset.LabelsUpdatedEvent> updateQueue = serviceMediator
+                    .getEventQueue(AsyncEventChannels.DATASET_UPDATED_LABELS, test.id);
+            uploadRun(createABData(), test.name);
+            uploadRun(createABData(), test.name);
+            int[] datasetIds = DatasetDAO.<DatasetDAO> find("testid", test.id).list().stream()
+                    .mapToInt(ds -> ds.id).toArray();
+            assertEquals(2, datasetIds.length);
+            try {
+                for (int i = 0; i < 2; ++i) {
+                    assertNotNull(updateQueue.poll(10, TimeUnit.SECONDS));
+                }
+                assertTrue(serviceMediator.onNewDatasets(new Dataset.EventNewBatch(test.id, datasetIds, false), true));
+                Set<Integer> updated = new HashSet<>();
+                for (int i = 0; i < 2; ++i) {
+                    Dataset.LabelsUpdatedEvent event = updateQueue.poll(10, TimeUnit.SECONDS);
+                    assertNotNull(event);
+                    updated.add(event.datasetId);
+                }
+                assertEquals(Arrays.stream(datasetIds).boxed().collect(Collectors.toSet()), updated);
+            } catch (InterruptedException e) {
+                fail(e);
+            }
+            for (int datasetId : datasetIds) {
+                List<LabelValueDAO> values = LabelValueDAO.<LabelValueDAO> find("datasetId", datasetId).list();
+                assertEquals(2, values.size());
+                assertEquals(24, values.stream().filter(v -> v.labelId == labelA).map(v -> v.value.numberValue())
+                        .findFirst().orElse(null));
+                assertEquals(43, values.stream().filter(v -> v.labelId == labelB).map(v -> v.value.numberValue())
+                        .findFirst().orElse(null));
+            }
+        }, "urn:A", "urn:B");
+    }
+
     @org.junit.jupiter.api.Test
     public void testDatasetLabelSingleWithReduceFunctionArray() {
         withExampleSchemas((schemas) -> {
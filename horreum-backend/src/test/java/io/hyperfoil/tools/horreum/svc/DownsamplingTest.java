@@ -0,0 +1,43 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+public class DownsamplingTest {
+
+    @Test
+    public void testNoDownsampling() {
+        long[] timestamps = { 1, 2, 3 };
+        double[] values = { 1, 2, 3 };
+        assertArrayEquals(new int[] { 0, 1, 2 }, Downsampling.largestTriangleThreeBuckets(timestamps, values, 3));
+        assertArrayEquals(new int[] { 0, 1, 2 }, Downsampling.largestTriangleThreeBuckets(timestamps, values, 10));
+        assertArrayEquals(new int[] { 0, 2 }, Downsampling.largestTriangleThreeBuckets(timestamps, values, 2));
+        assertArrayEquals(new int[0], Downsampling.largestTriangleThreeBuckets(new long[0], new double[0], 2));
+    }
+
+    @Test
+    public void testKeepsPeaks() {
+        int length = 1000;
+        long[] timestamps = IntStream.range(0, length).mapToLong(i -> 1700000000000L + i * 1000L).toArray();
+        double[] values = new double[length];
+        Arrays.fill(values, 10);
+        values[123] = 100;
+        values[789] = -50;
+
+        int[] selected = Downsampling.largestTriangleThreeBuckets(timestamps, values, 50);
+        assertEquals(50, selected.length);
+        assertEquals(0, selected[0]);
+        assertEquals(length - 1, selected[selected.length - 1]);
+        for (int i = 1; i < selected.length; ++i) {
+            assertTrue(selected[i - 1] < selected[i]);
+        }
+        assertTrue(Arrays.stream(selected).anyMatch(i -> i == 123));
+        assertTrue(Arrays.stream(selected).anyMatch(i -> i == 789));
+    }
+}
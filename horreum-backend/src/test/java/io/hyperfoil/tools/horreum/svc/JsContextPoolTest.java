@@ -0,0 +1,102 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.graalvm.polyglot.Value;
+import org.junit.jupiter.api.Test;
+
+public class JsContextPoolTest {
+
+    @Test
+    public void contextIsReusedAndReset() {
+        JsContextPool pool = new JsContextPool(1, 10);
+        try (JsContextPool.PooledContext context = pool.borrow()) {
+            Value value = context.function("x => { globalThis.leaked = x; return x + 1; }").execute(41);
+            assertEquals(42, value.asInt());
+        }
+        assertEquals(1, pool.idleSize());
+        try (JsContextPool.PooledContext context = pool.borrow()) {
+            Value value = context.function("x => typeof leaked").execute(0);
+            assertEquals("undefined", value.asString());
+        }
+    }
+
+    @Test
+    public void sourcesAreCachedByFunctionBody() {
+        JsContextPool pool = new JsContextPool(2, 10);
+        assertSame(pool.functionSource("x => x"), pool.functionSource("x => x"));
+        assertNotSame(pool.functionSource("x => x"), pool.functionSource("x => x + 1"));
+    }
+
+    @Test
+    public void trailingSemicolonAndComment() {
+        JsContextPool pool = new JsContextPool(1, 10);
+        try (JsContextPool.PooledContext context = pool.borrow()) {
+            assertEquals(3, context.function("x => x.a + x.b; // sum\n").execute(context.parseJson("{\"a\":1,\"b\":2}"))
+                    .asInt());
+        }
+    }
+
+    @Test
+    public void outputIsCapturedPerUse() {
+        JsContextPool pool = new JsContextPool(1, 10);
+        try (JsContextPool.PooledContext context = pool.borrow()) {
+            context.function("x => console.log('hello ' + x)").execute("world");
+            assertEquals("hello world", context.drainOutput().trim());
+            assertNull(context.drainOutput());
+        }
+    }
+
+    @Test
+    public void nestedBorrowDoesNotBlock() {
+        JsContextPool pool = new JsContextPool(1, 10);
+        try (JsContextPool.PooledContext outer = pool.borrow()) {
+            try (JsContextPool.PooledContext inner = pool.borrow()) {
+                assertNotSame(outer, inner);
+                assertEquals(2, inner.function("x => x * 2").execute(1).asInt());
+            }
+            assertEquals(3, outer.function("x => x * 3").execute(1).asInt());
+        }
+        assertEquals(1, pool.idleSize());
+    }
+
+    @Test
+    public void poolIsBounded() throws Exception {
+        JsContextPool pool = new JsContextPool(2, 10);
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            Future<?>[] futures = new Future<?>[6];
+            for (int i = 0; i < futures.length; ++i) {
+                futures[i] = executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < 20; ++j) {
+                        try (JsContextPool.PooledContext context = pool.borrow()) {
+                            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                            assertEquals(j, context.function("x => x").execute(j).asInt());
+                            concurrent.decrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(maxConcurrent.get() <= pool.maxSize());
+        assertTrue(pool.idleSize() <= pool.maxSize());
+    }
+}
@@ -0,0 +1,51 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class JsonpathKeysTest {
+
+    @Test
+    public void testRequiredKeys() {
+        assertEquals(Set.of("foo"), JsonpathKeys.requiredKeys("$.**.foo"));
+        assertEquals(List.of("foo", "bar"), List.copyOf(JsonpathKeys.requiredKeys("$.**.foo.bar")));
+        assertEquals(Set.of("buildHash"), JsonpathKeys.requiredKeys("$.buildHash ? (@ == \"defec8eddeadbeaf\")"));
+        assertEquals(Set.of("x", "y"), JsonpathKeys.requiredKeys("$.** ? (@.x == 1 && @.y.size() > 2)"));
+        assertEquals(Set.of("a b", "c"), JsonpathKeys.requiredKeys("strict $.\"a b\"[*].c"));
+        assertEquals(Set.of("items"), JsonpathKeys.requiredKeys("$.items[1 to last]"));
+        assertEquals(Set.of("name"), JsonpathKeys.requiredKeys("$.** ? (@.name like_regex \"x.y\" flag \"i\")"));
+        assertEquals(Set.of("a"), JsonpathKeys.requiredKeys("$.a ? (@ != 1.5e3)"));
+    }
+
+    @Test
+    public void testNoRequiredKeys() {
+        assertEquals(Set.of(), JsonpathKeys.requiredKeys("$.*"));
+        assertEquals(Set.of(), JsonpathKeys.requiredKeys("$.** ? (@.x == 1 || @.y == 2)"));
+        assertEquals(Set.of(), JsonpathKeys.requiredKeys("$.** ? (!exists(@.x))"));
+        assertEquals(Set.of(), JsonpathKeys.requiredKeys("$.** ? ((@.x == 1) is unknown)"));
+        assertEquals(Set.of(), JsonpathKeys.requiredKeys("$.a.keyvalue() ? (@.key == \"b\")"));
+        // predicates always return a value
+        assertEquals(Set.of(), JsonpathKeys.requiredKeys("$.a == 1"));
+        assertEquals(Set.of(), JsonpathKeys.requiredKeys("exists($.a)"));
+        assertEquals(Set.of(), JsonpathKeys.requiredKeys("$.\"unterminated"));
+        assertEquals(Set.of(), JsonpathKeys.requiredKeys("$.\"" + "x".repeat(JsonpathKeys.MAX_KEY_LENGTH + 1) + "\""));
+    }
+
+    @Test
+    public void testIndexedKey() {
+        assertEquals("foo", JsonpathKeys.indexedKey("foo"));
+        assertEquals("_foo_2", JsonpathKeys.indexedKey("_foo_2"));
+        assertNull(JsonpathKeys.indexedKey(""));
+        assertNull(JsonpathKeys.indexedKey("foo.bar"));
+        assertNull(JsonpathKeys.indexedKey("foo[*]"));
+        assertNull(JsonpathKeys.indexedKey("2foo"));
+        assertNull(JsonpathKeys.indexedKey("$.foo"));
+        assertNull(JsonpathKeys.indexedKey("@.foo > 1"));
+        assertNull(JsonpathKeys.indexedKey("x".repeat(JsonpathKeys.MAX_KEY_LENGTH + 1)));
+    }
+}
@@ -0,0 +1,231 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.inject.Inject;
+
+import org.hibernate.query.NativeQuery;
+import org.junit.jupiter.api.TestInfo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+import io.hyperfoil.tools.horreum.api.data.Dataset;
+import io.hyperfoil.tools.horreum.api.data.Extractor;
+import io.hyperfoil.tools.horreum.api.data.Schema;
+import io.hyperfoil.tools.horreum.api.data.Test;
+import io.hyperfoil.tools.horreum.bus.AsyncEventChannels;
+import io.hyperfoil.tools.horreum.entity.PersistentLogDAO;
+import io.hyperfoil.tools.horreum.entity.data.DatasetDAO;
+import io.hyperfoil.tools.horreum.entity.data.LabelValueDAO;
+import io.hyperfoil.tools.horreum.entity.data.ViewComponentDAO;
+import io.hyperfoil.tools.horreum.entity.data.ViewDAO;
+import io.hyperfoil.tools.horreum.hibernate.IntArrayType;
+import io.hyperfoil.tools.horreum.server.CloseMe;
+import io.hyperfoil.tools.horreum.test.HorreumTestProfile;
+import io.hyperfoil.tools.horreum.test.PostgresResource;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.oidc.server.OidcWiremockTestResource;
+
+@QuarkusTest
+@QuarkusTestResource(PostgresResource.class)
+@QuarkusTestResource(OidcWiremockTestResource.class)
+@TestProfile(HorreumTestProfile.class)
+public class LabelCalculationEngineTest extends BaseServiceTest {
+    @Inject
+    LabelCalculationEngine labelCalculationEngine;
+
+    @org.junit.jupiter.api.Test
+    public void testLabelsWithoutFunction(TestInfo info) throws InterruptedException {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        Schema schema = createExampleSchema(info);
+        int labelValue = labelId(schema, "value");
+        int labelObject = addLabel(schema, "object", null, new Extractor("value", "$.value", false),
+                new Extractor("values", "$.values", true));
+        int[] datasetIds = uploadRuns(test, schema, 1, 2, 3);
+
+        List<String> errors = calculate(test.id, datasetIds);
+        assertEquals(List.of(), errors);
+        for (int i = 0; i < datasetIds.length; ++i) {
+            Map<Integer, JsonNode> values = labelValues(datasetIds[i]);
+            assertEquals(2, values.size());
+            double value = i + 1;
+            assertEquals(value, values.get(labelValue).asDouble());
+            assertEquals(JsonNodeFactory.instance.objectNode().put("value", value).set("values",
+                    JsonNodeFactory.instance.arrayNode().add(value + 1).add(value + 2).add(value + 3)),
+                    values.get(labelObject));
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testLabelsWithFunctionInBatch(TestInfo info) throws InterruptedException {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        Schema schema = createExampleSchema(info);
+        int labelValue = labelId(schema, "value");
+        int labelDouble = addLabel(schema, "double", "v => v * 2", new Extractor("value", "$.value", false));
+        int labelSum = addLabel(schema, "sum", "({ value, values }) => values.reduce((a, b) => a + b, value)",
+                new Extractor("value", "$.value", false), new Extractor("values", "$.values", true));
+        int[] datasetIds = uploadRuns(test, schema, 1, 2, 3, 4, 5);
+
+        List<String> errors = calculate(test.id, datasetIds);
+        assertEquals(List.of(), errors);
+        for (int i = 0; i < datasetIds.length; ++i) {
+            Map<Integer, JsonNode> values = labelValues(datasetIds[i]);
+            assertEquals(3, values.size());
+            double value = i + 1;
+            // each dataset gets the result of its own extracted values
+            assertEquals(value, values.get(labelValue).asDouble());
+            assertEquals(2 * value, values.get(labelDouble).asDouble());
+            assertEquals(4 * value + 6, values.get(labelSum).asDouble());
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testFunctionErrorInOneDataset(TestInfo info) throws InterruptedException {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        Schema schema = createExampleSchema(info);
+        int labelValue = labelId(schema, "value");
+        int labelChecked = addLabel(schema, "checked",
+                "v => { if (v === 2) { throw new Error('unexpected value'); } return v; }",
+                new Extractor("value", "$.value", false));
+        int[] datasetIds = uploadRuns(test, schema, 1, 2, 3);
+
+        List<String> errors = calculate(test.id, datasetIds);
+        assertEquals(1, errors.size(), errors.toString());
+        assertTrue(errors.get(0).startsWith(datasetIds[1] + ": "), errors.get(0));
+        assertTrue(errors.get(0).contains("unexpected value"), errors.get(0));
+
+        for (int i = 0; i < datasetIds.length; ++i) {
+            Map<Integer, JsonNode> values = labelValues(datasetIds[i]);
+            // values of the other labels and datasets are not affected
+            assertEquals(i + 1, values.get(labelValue).asDouble());
+            if (i == 1) {
+                assertNull(values.get(labelChecked));
+            } else {
+                assertEquals(i + 1, values.get(labelChecked).asDouble());
+            }
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testDatasetViewsMatchSingleDataset(TestInfo info) throws InterruptedException {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        Schema schema = createExampleSchema(info);
+        addLabel(schema, "double", "v => v * 2", new Extractor("value", "$.value", false));
+        addLabel(schema, "first", null, new Extractor("first", "$.values[0]", false));
+        Util.withTx(tm, () -> {
+            try (CloseMe ignored = roleManager.withRoles(Arrays.asList(TESTER_ROLES))) {
+                ViewDAO view = ViewDAO.find("test.id", test.id).firstResult();
+                view.components.clear();
+                view.components.add(component(view, "Value", 0, "value"));
+                view.components.add(component(view, "Both", 1, "value", "double"));
+                view.components.add(component(view, "First", 2, "first", "missing"));
+                view.persistAndFlush();
+            }
+            return null;
+        });
+        int[] datasetIds = uploadRuns(test, schema, 1, 2, 3, 4);
+
+        List<String> batched = Util.withTx(tm, () -> {
+            try (CloseMe ignored = roleManager.withRoles(SYSTEM_ROLES)) {
+                labelCalculationEngine.rebuildViews(datasetIds);
+                return datasetViews(datasetIds);
+            }
+        });
+        List<String> single = Util.withTx(tm, () -> {
+            try (CloseMe ignored = roleManager.withRoles(SYSTEM_ROLES)) {
+                em.createNativeQuery("DELETE FROM dataset_view WHERE dataset_id = ANY(?1)")
+                        .unwrap(NativeQuery.class)
+                        .setParameter(1, datasetIds, IntArrayType.INSTANCE)
+                        .executeUpdate();
+                for (int datasetId : datasetIds) {
+                    em.createNativeQuery("call calc_dataset_view(?1)").setParameter(1, datasetId).executeUpdate();
+                }
+                return datasetViews(datasetIds);
+            }
+        });
+        // one row for the default view of the test for each dataset
+        assertEquals(datasetIds.length, batched.size());
+        assertEquals(single, batched);
+    }
+
+    private int labelId(Schema schema, String name) {
+        return ((Number) em.createNativeQuery("SELECT id FROM label WHERE schema_id = ?1 AND name = ?2")
+                .setParameter(1, schema.id).setParameter(2, name).getSingleResult()).intValue();
+    }
+
+    private int[] uploadRuns(Test test, Schema schema, double... values) throws InterruptedException {
+        BlockingQueue<Dataset.LabelsUpdatedEvent> updateQueue = serviceMediator
+                .getEventQueue(AsyncEventChannels.DATASET_UPDATED_LABELS, test.id);
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < values.length; ++i) {
+            uploadRun(timestamp + i, runWithValue(values[i], schema), test.name);
+            assertNotNull(updateQueue.poll(10, TimeUnit.SECONDS));
+        }
+        int[] datasetIds = DatasetDAO.<DatasetDAO> find("testid = ?1 ORDER BY start", test.id).list().stream()
+                .mapToInt(ds -> ds.id).toArray();
+        assertEquals(values.length, datasetIds.length);
+        return datasetIds;
+    }
+
+    /**
+     * @return errors reported by the engine, prefixed with the dataset id
+     */
+    private List<String> calculate(int testId, int[] datasetIds) {
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        Util.withTx(tm, () -> {
+            try (CloseMe ignored = roleManager.withRoles(SYSTEM_ROLES)) {
+                labelCalculationEngine.calculate(testId, datasetIds, -1, (datasetId, level, format, args) -> {
+                    if (level == PersistentLogDAO.ERROR) {
+                        errors.add(datasetId + ": " + String.format(format, args));
+                    }
+                });
+            }
+            return null;
+        });
+        return errors;
+    }
+
+    private Map<Integer, JsonNode> labelValues(int datasetId) {
+        Map<Integer, JsonNode> values = new HashMap<>();
+        for (LabelValueDAO value : LabelValueDAO.<LabelValueDAO> find("datasetId", datasetId).list()) {
+            values.put(value.labelId, value.value);
+        }
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> datasetViews(int[] datasetIds) {
+        return em.createNativeQuery("""
+                SELECT dataset_id || ' ' || view_id || ' ' || (SELECT array_agg(id ORDER BY id) FROM unnest(label_ids) id)::text
+                    || ' ' || value::text FROM dataset_view
+                WHERE dataset_id = ANY(?1) ORDER BY dataset_id, view_id
+                """)
+                .unwrap(NativeQuery.class)
+                .setParameter(1, datasetIds, IntArrayType.INSTANCE)
+                .getResultList();
+    }
+
+    private ViewComponentDAO component(ViewDAO view, String header, int order, String... labels) {
+        ViewComponentDAO component = new ViewComponentDAO();
+        component.view = view;
+        component.headerName = header;
+        component.headerOrder = order;
+        component.labels = jsonArray(labels);
+        return component;
+    }
+}
@@ -2,6 +2,7 @@ package io.hyperfoil.tools.horreum.svc;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.ArrayList;
@@ -22,6 +23,7 @@ import io.hyperfoil.tools.horreum.api.data.Label;
 import io.hyperfoil.tools.horreum.api.data.Schema;
 import io.hyperfoil.tools.horreum.api.data.Test;
 import io.hyperfoil.tools.horreum.bus.AsyncEventChannels;
+import io.hyperfoil.tools.horreum.entity.PersistentLogDAO;
 import io.hyperfoil.tools.horreum.test.HorreumTestProfile;
 import io.hyperfoil.tools.horreum.test.PostgresResource;
 import io.quarkus.arc.impl.ParameterizedTypeImpl;
@@ -133,4 +135,47 @@ public class LogServiceTest extends BaseServiceTest {
 
         assertEquals(0, datasetLogCount);
     }
+
+    @org.junit.jupiter.api.Test
+    public void testBufferedLogs(TestInfo info) throws Exception {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        // more entries than fit into a single batch
+        tm.begin();
+        try {
+            for (int i = 0; i < 1200; ++i) {
+                logSink.actionLog(test.id, "TEST_NEW", "http", PersistentLogDAO.INFO, "Message " + i);
+            }
+            logSink.actionLog(test.id, "TEST_NEW", null, PersistentLogDAO.ERROR, "Failure");
+        } finally {
+            // the entries must be kept even though the transaction is rolled back
+            tm.rollback();
+        }
+
+        int count = jsonRequest().get("/api/log/action/" + test.id + "/count")
+                .then().statusCode(200).extract().as(Integer.class);
+        assertEquals(1201, count);
+        count = jsonRequest().queryParam("level", PersistentLogDAO.ERROR).get("/api/log/action/" + test.id + "/count")
+                .then().statusCode(200).extract().as(Integer.class);
+        assertEquals(1, count);
+        List<ActionLog> actionLogs = jsonRequest().queryParam("level", PersistentLogDAO.ERROR)
+                .get("/api/log/action/" + test.id)
+                .then().statusCode(200).extract().body().as(new ParameterizedTypeImpl(List.class, ActionLog.class));
+        assertEquals(1, actionLogs.size());
+        assertEquals("Failure", actionLogs.get(0).message);
+        assertNull(actionLogs.get(0).type);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testFailedBatchRetried(TestInfo info) {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        logSink.actionLog(test.id, "TEST_NEW", "http", PersistentLogDAO.ERROR, "First");
+        // PostgreSQL rejects NUL characters in text, failing the whole batch
+        logSink.actionLog(test.id, "TEST_NEW", "http", PersistentLogDAO.ERROR, "Invalid \u0000");
+        logSink.actionLog(test.id, "TEST_NEW", "http", PersistentLogDAO.ERROR, "Second");
+
+        List<ActionLog> actionLogs = jsonRequest().queryParam("level", PersistentLogDAO.ERROR)
+                .get("/api/log/action/" + test.id)
+                .then().statusCode(200).extract().body().as(new ParameterizedTypeImpl(List.class, ActionLog.class));
+        assertEquals(List.of("First", "Second"), actionLogs.stream().map(log -> log.message).sorted().toList());
+    }
 }
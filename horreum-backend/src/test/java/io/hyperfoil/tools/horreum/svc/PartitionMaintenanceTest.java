@@ -0,0 +1,234 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.TestInfo;
+
+import io.hyperfoil.tools.horreum.api.data.Test;
+
+import io.hyperfoil.tools.horreum.entity.PersistentLogDAO;
+import io.hyperfoil.tools.horreum.test.PartitioningTestProfile;
+import io.hyperfoil.tools.horreum.test.PostgresResource;
+import io.hyperfoil.tools.horreum.test.TestUtil;
+import io.quarkus.test.common.QuarkusTestResource;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.junit.TestProfile;
+import io.quarkus.test.oidc.server.OidcWiremockTestResource;
+
+/**
+ * Runs against a database converted with {@code horreum.db.partitioning}; the details of the conversion are checked
+ * on a scratch table shaped like the log tables.
+ */
+@QuarkusTest
+@QuarkusTestResource(PostgresResource.class)
+@QuarkusTestResource(OidcWiremockTestResource.class)
+@TestProfile(PartitioningTestProfile.class)
+public class PartitionMaintenanceTest extends BaseServiceTest {
+    @ConfigProperty(name = "quarkus.datasource.migration.jdbc.url")
+    String migrationUrl;
+
+    @ConfigProperty(name = "quarkus.datasource.migration.username")
+    String migrationUser;
+
+    @ConfigProperty(name = "quarkus.datasource.migration.password")
+    String migrationPassword;
+
+    @ConfigProperty(name = "quarkus.datasource.username")
+    String appUser;
+
+    @ConfigProperty(name = "horreum.transformationlog.max.lifespan")
+    String transformationLogMaxLifespan;
+
+    @Inject
+    PartitionMaintenance partitionMaintenance;
+
+    private Connection conn;
+
+    @BeforeEach
+    public void createScratchTable() throws SQLException {
+        conn = DriverManager.getConnection(migrationUrl, migrationUser, migrationPassword);
+        // partitions are aligned to months in UTC
+        execute("SET timezone = 'UTC'");
+        execute("CREATE TABLE partition_scratch (id bigserial PRIMARY KEY, testid integer NOT NULL, level integer NOT NULL, " +
+                "\"timestamp\" timestamptz NOT NULL, message text)");
+        execute("CREATE INDEX partition_scratch_testid ON partition_scratch (testid)");
+        execute("CREATE FUNCTION partition_scratch_upper() RETURNS trigger AS $$ BEGIN " +
+                "NEW.message := upper(NEW.message); RETURN NEW; END; $$ LANGUAGE plpgsql");
+        execute("CREATE TRIGGER partition_scratch_upper BEFORE INSERT ON partition_scratch " +
+                "FOR EACH ROW EXECUTE FUNCTION partition_scratch_upper()");
+        execute("ALTER TABLE partition_scratch ENABLE ROW LEVEL SECURITY");
+        execute("CREATE POLICY partition_scratch_read ON partition_scratch FOR SELECT USING (testid > 0)");
+        execute("GRANT SELECT, INSERT ON partition_scratch TO \"" + appUser + "\"");
+        execute("INSERT INTO partition_scratch (testid, level, \"timestamp\", message) VALUES " +
+                "(1, " + PersistentLogDAO.INFO + ", now(), 'current'), " +
+                "(1, " + PersistentLogDAO.INFO + ", now() - interval '2 months', 'expired'), " +
+                "(1, " + PersistentLogDAO.INFO + ", now() - interval '3 years', 'ancient'), " +
+                "(1, " + PersistentLogDAO.DEBUG + ", now() - interval '3 years', 'ancient debug')");
+    }
+
+    @AfterEach
+    public void dropScratchTable() throws SQLException {
+        try {
+            execute("DROP TABLE IF EXISTS partition_scratch CASCADE");
+            execute("DROP TABLE IF EXISTS partition_scratch_unpartitioned CASCADE");
+            execute("DROP FUNCTION IF EXISTS partition_scratch_upper()");
+        } finally {
+            conn.close();
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testConversionKeepsTableDefinition() throws SQLException {
+        execute("SELECT partition_by_timestamp('partition_scratch', true)");
+
+        assertEquals(List.of("partition_scratch"), strings("SELECT c.relname FROM pg_partitioned_table pt " +
+                "JOIN pg_class c ON c.oid = pt.partrelid WHERE c.relname = 'partition_scratch'"));
+        assertEquals(List.of("partition_scratch_read"),
+                strings("SELECT policyname FROM pg_policies WHERE tablename = 'partition_scratch'"));
+        assertEquals(List.of("true"),
+                strings("SELECT relrowsecurity::text FROM pg_class WHERE oid = 'partition_scratch'::regclass"));
+        assertEquals(List.of("true", "true", "false"), strings("SELECT has_table_privilege('" + appUser
+                + "', 'partition_scratch', p)::text FROM unnest(ARRAY['SELECT', 'INSERT', 'DELETE']) p"));
+        assertEquals(List.of("partition_scratch_upper"), strings("SELECT tgname FROM pg_trigger " +
+                "WHERE tgrelid = 'partition_scratch'::regclass AND NOT tgisinternal"));
+        List<String> indexes = strings("SELECT indexname FROM pg_indexes WHERE tablename = 'partition_scratch' ORDER BY 1");
+        assertTrue(indexes.contains("partition_scratch_testid"), indexes.toString());
+        assertTrue(indexes.contains("partition_scratch_pkey"), indexes.toString());
+        assertEquals(List.of("id, level, \"timestamp\""), primaryKey("partition_scratch"));
+
+        // rows are kept, older than two years in the default partition of their level
+        assertEquals(List.of("ANCIENT DEBUG:partition_scratch_debug_default", "ANCIENT:partition_scratch_info_default"),
+                strings("SELECT message || ':' || tableoid::regclass FROM partition_scratch " +
+                        "WHERE \"timestamp\" < now() - interval '2 years' ORDER BY 1"));
+        assertEquals(4, count("SELECT count(*) FROM partition_scratch"));
+        // the trigger still applies to new rows and the sequence is still owned by the table
+        execute("INSERT INTO partition_scratch (testid, level, \"timestamp\", message) VALUES (1, 0, now(), 'new')");
+        assertEquals(List.of("NEW"), strings("SELECT message FROM partition_scratch WHERE id = 5"));
+        assertEquals(List.of("partition_scratch.id"), strings("SELECT refobjid::regclass || '.' || a.attname FROM pg_depend d " +
+                "JOIN pg_attribute a ON a.attrelid = d.refobjid AND a.attnum = d.refobjsubid " +
+                "WHERE d.objid = 'partition_scratch_id_seq'::regclass AND d.deptype = 'a'"));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testTablesPartitioned(TestInfo info) throws SQLException {
+        assertEquals(List.of("id, \"timestamp\""), primaryKey("datapoint"));
+        for (String table : PartitionMaintenance.LOG_TABLES) {
+            assertEquals(List.of("l"), strings("SELECT partstrat FROM pg_partitioned_table WHERE partrelid = '" + table
+                    + "'::regclass"));
+            assertEquals(List.of("id, level, \"timestamp\""), primaryKey(table));
+            assertEquals(0, count("SELECT count(*) FROM pg_tables WHERE tablename = '" + table + "_unpartitioned'"));
+        }
+        partitionMaintenance.maintainPartitions();
+        assertEquals(1, count("SELECT count(*) FROM pg_class WHERE relname = 'actionlog_info_' || " +
+                "to_char(now() + interval '60 days', 'YYYY_MM')"));
+
+        Test test = createTest(createExampleTest(getTestName(info)));
+        logSink.actionLog(test.id, "TEST_NEW", "http", PersistentLogDAO.INFO, "Partitioned");
+        TestUtil.eventually(() -> {
+            try {
+                return List.of("actionlog_info_" + string("SELECT to_char(now(), 'YYYY_MM')"))
+                        .equals(strings("SELECT tableoid::regclass::text FROM actionlog WHERE testid = " + test.id));
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        int count = jsonRequest().get("/api/log/action/" + test.id + "/count")
+                .then().statusCode(200).extract().as(Integer.class);
+        assertEquals(1, count);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testAttachMovesRowsOutOfDefault() throws SQLException {
+        execute("SELECT partition_by_timestamp('partition_scratch', true)");
+        // beyond the partitions created ahead, so this lands in the default partition
+        execute("INSERT INTO partition_scratch (testid, level, \"timestamp\", message) " +
+                "VALUES (1, " + PersistentLogDAO.INFO + ", now() + interval '6 months', 'future')");
+        assertEquals(List.of("partition_scratch_info_default"),
+                strings("SELECT tableoid::regclass::text FROM partition_scratch WHERE message = 'FUTURE'"));
+
+        int created = count("SELECT create_time_partitions('partition_scratch_info', now(), now() + interval '7 months')");
+        assertEquals(4, created);
+        assertEquals(List.of("partition_scratch_info_" + string("SELECT to_char(now() + interval '6 months', 'YYYY_MM')")),
+                strings("SELECT tableoid::regclass::text FROM partition_scratch WHERE message = 'FUTURE'"));
+        assertEquals(List.of("ANCIENT"), strings("SELECT message FROM partition_scratch_info_default"));
+        // existing partitions are not created again
+        assertEquals(0, count("SELECT create_time_partitions('partition_scratch_info', now(), now() + interval '7 months')"));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testDropOnlyExpiredPartitions() throws SQLException {
+        execute("SELECT partition_by_timestamp('partition_scratch', true)");
+        String cutoff = "now() - interval '1 month'";
+        int expired = count("SELECT count(*) FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = 'partition_scratch_info'::regclass AND pg_get_expr(c.relpartbound, c.oid) != 'DEFAULT' " +
+                "AND substring(pg_get_expr(c.relpartbound, c.oid) FROM 'TO \\(''([^'']+)''\\)')::timestamptz <= " + cutoff);
+        int partitions = count("SELECT count(*) FROM pg_inherits WHERE inhparent = 'partition_scratch_info'::regclass");
+        assertTrue(expired > 0);
+
+        assertEquals(expired, count("SELECT drop_time_partitions('partition_scratch_info', " + cutoff + ")"));
+        assertEquals(partitions - expired,
+                count("SELECT count(*) FROM pg_inherits WHERE inhparent = 'partition_scratch_info'::regclass"));
+        // the partitions of the current month and the default one are kept, with the rows that did not expire
+        assertEquals(List.of("CURRENT"), strings("SELECT message FROM partition_scratch_info"));
+        assertEquals(1, count("SELECT count(*) FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = 'partition_scratch_info'::regclass AND pg_get_expr(c.relpartbound, c.oid) = 'DEFAULT'"));
+        // other levels have their own retention
+        assertEquals(List.of("ANCIENT DEBUG"), strings("SELECT message FROM partition_scratch_debug"));
+        assertEquals(0, count("SELECT drop_time_partitions('partition_scratch_info', " + cutoff + ")"));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testDefaultRetention() {
+        Duration maxLifespan = Duration.parse(transformationLogMaxLifespan);
+        for (int level = PersistentLogDAO.DEBUG; level <= PersistentLogDAO.ERROR; ++level) {
+            assertEquals(maxLifespan, partitionMaintenance.retention("transformationlog", level).orElseThrow());
+            assertFalse(partitionMaintenance.retention("datasetlog", level).isPresent());
+            assertFalse(partitionMaintenance.retention("actionlog", level).isPresent());
+        }
+    }
+
+    private List<String> primaryKey(String table) throws SQLException {
+        return strings("SELECT regexp_replace(pg_get_constraintdef(oid), 'PRIMARY KEY \\((.*)\\)', '\\1') " +
+                "FROM pg_constraint WHERE conrelid = '" + table + "'::regclass AND contype = 'p'");
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private List<String> strings(String sql) throws SQLException {
+        List<String> result = new ArrayList<>();
+        try (Statement statement = conn.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            while (rs.next()) {
+                result.add(rs.getString(1));
+            }
+        }
+        return result;
+    }
+
+    private String string(String sql) throws SQLException {
+        return strings(sql).get(0);
+    }
+
+    private int count(String sql) throws SQLException {
+        return Integer.parseInt(string(sql));
+    }
+}
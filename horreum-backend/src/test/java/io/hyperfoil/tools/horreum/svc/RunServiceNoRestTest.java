@@ -24,6 +24,7 @@ import io.hyperfoil.tools.horreum.api.services.RunService;
 import io.hyperfoil.tools.horreum.api.services.TestService;
 import io.hyperfoil.tools.horreum.entity.data.RunDAO;
 import io.hyperfoil.tools.horreum.entity.data.TestDAO;
+import io.hyperfoil.tools.horreum.server.RoleManager;
 import io.hyperfoil.tools.horreum.test.HorreumTestProfile;
 import io.hyperfoil.tools.horreum.test.PostgresResource;
 import io.quarkus.test.TestTransaction;
@@ -48,6 +49,9 @@ class RunServiceNoRestTest extends BaseServiceNoRestTest {
     @Inject
     ObjectMapper objectMapper;
 
+    @Inject
+    RoleManager roleManager;
+
     @org.junit.jupiter.api.Test
     void testUploadRun() {
         Test t1 = createSampleTest("test", null, null, null);
@@ -99,6 +103,20 @@ class RunServiceNoRestTest extends BaseServiceNoRestTest {
         assertTrue(run.trashed);
     }
 
+    @org.junit.jupiter.api.Test
+    void testListRunsSkipsRoleSwitches() {
+        Test created = testService.addTest(createSampleTest("test", null, null, null));
+        uploadRun(created.id, FOO_TEAM, JsonNodeFactory.instance.objectNode());
+
+        assertEquals(1, runService.listAllRuns(null, false, null, false, 10, 1, null, null).runs.size());
+        long issued = roleManager.getIssuedSwitches();
+        long skipped = roleManager.getSkippedSwitches();
+        // the roles are already set in this transaction
+        assertEquals(1, runService.listAllRuns(null, false, null, false, 10, 1, null, null).runs.size());
+        assertEquals(issued, roleManager.getIssuedSwitches());
+        assertTrue(roleManager.getSkippedSwitches() > skipped);
+    }
+
     // utility to create a sample test and add to Horreum
     private Test addTest(String name, String owner, String folder, Integer datastoreId) {
         Test test = createSampleTest(name, owner, folder, datastoreId);
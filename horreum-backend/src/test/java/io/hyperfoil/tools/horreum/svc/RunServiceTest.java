@@ -9,7 +9,9 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -17,6 +19,7 @@ import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
@@ -39,6 +42,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import io.hyperfoil.tools.horreum.api.SortDirection;
 import io.hyperfoil.tools.horreum.api.alerting.ChangeDetection;
+import io.hyperfoil.tools.horreum.api.alerting.TransformationLog;
 import io.hyperfoil.tools.horreum.api.alerting.Variable;
 import io.hyperfoil.tools.horreum.api.data.Access;
 import io.hyperfoil.tools.horreum.api.data.Dataset;
@@ -57,6 +61,7 @@ import io.hyperfoil.tools.horreum.api.services.DatasetService;
 import io.hyperfoil.tools.horreum.api.services.ExperimentService;
 import io.hyperfoil.tools.horreum.api.services.RunService;
 import io.hyperfoil.tools.horreum.bus.AsyncEventChannels;
+import io.hyperfoil.tools.horreum.entity.PersistentLogDAO;
 import io.hyperfoil.tools.horreum.entity.data.DatasetDAO;
 import io.hyperfoil.tools.horreum.entity.data.RunDAO;
 import io.hyperfoil.tools.horreum.mapper.DatasetMapper;
@@ -69,6 +74,7 @@ import io.quarkus.test.junit.QuarkusTest;
 import io.quarkus.test.junit.TestProfile;
 import io.quarkus.test.oidc.server.OidcWiremockTestResource;
 import io.restassured.RestAssured;
+import io.restassured.common.mapper.TypeRef;
 import io.restassured.response.Response;
 import io.restassured.specification.RequestSpecification;
 
@@ -246,6 +252,75 @@ public class RunServiceTest extends BaseServiceTest {
         assertTrue(objectNode.has("labelBar"), objectNode.toString());
     }
 
+    @org.junit.jupiter.api.Test
+    public void labelValuesExportNdjson() throws JsonProcessingException {
+        Test t = createTest(createExampleTest("my-test"));
+        String id = labelValuesSetup(t, true);
+
+        String body = jsonRequest()
+                .get("/api/run/" + id + "/labelValues/export?include=labelFoo")
+                .then()
+                .statusCode(200)
+                .contentType("application/x-ndjson")
+                .extract()
+                .asString();
+        String[] lines = body.split("\n");
+        assertEquals(1, lines.length, body);
+        JsonNode exported = new ObjectMapper().readTree(lines[0]);
+        assertEquals(Integer.parseInt(id), exported.get("runId").asInt());
+        JsonNode values = exported.get("values");
+        assertEquals("uno", values.get("labelFoo").asText(), values.toString());
+        assertFalse(values.has("labelBar"), values.toString());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void labelValuesExportCsv() {
+        Test t = createTest(createExampleTest("my-test"));
+        String id = labelValuesSetup(t, true);
+
+        String body = jsonRequest()
+                .get("/api/run/" + id + "/labelValues/export?format=csv")
+                .then()
+                .statusCode(200)
+                .contentType("text/csv")
+                .extract()
+                .asString();
+        List<String> lines = Arrays.asList(body.split("\n"));
+        assertEquals(3, lines.size(), body);
+        assertEquals("runId,datasetId,start,stop,label,value", lines.get(0));
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith(id + ",") && line.endsWith(",labelFoo,uno")),
+                body);
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith(id + ",") && line.endsWith(",labelBar,dox")),
+                body);
+
+        jsonRequest().get("/api/run/" + id + "/labelValues/export?format=xml").then().statusCode(400);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void labelValuesExportFilter() throws JsonProcessingException {
+        Test t = createTest(createExampleTest("my-test"));
+        String id = createTransformingSchema(t);
+
+        String body = jsonRequest()
+                .queryParam("filter", Maps.of("labelBar", Arrays.asList("dox", 30)))
+                .queryParam("multiFilter", true)
+                .get("/api/run/" + id + "/labelValues/export")
+                .then()
+                .statusCode(200)
+                .extract()
+                .asString();
+        String[] lines = body.split("\n");
+        assertEquals(1, lines.length, body);
+        assertEquals("dox", new ObjectMapper().readTree(lines[0]).get("values").get("labelBar").asText(), body);
+
+        // invalid filter is rejected before the response is committed
+        jsonRequest()
+                .queryParam("filter", "$.labelBar ? (")
+                .get("/api/run/" + id + "/labelValues/export")
+                .then()
+                .statusCode(400);
+    }
+
     @org.junit.jupiter.api.Test
     public void labelValuesInclude() {
         Test t = createTest(createExampleTest("my-test"));
@@ -547,6 +622,72 @@ public class RunServiceTest extends BaseServiceTest {
         validateScalarArray(ds, target);
     }
 
+    @org.junit.jupiter.api.Test
+    public void testTransformationWithManyTransformers(TestInfo info) throws InterruptedException {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        Schema rootSchema = createExampleSchema("Many", "Many", "Many", false);
+        ObjectNode data = runWithValue(-1, rootSchema);
+        Transformer[] transformers = new Transformer[11];
+        transformers[0] = createTransformer("root", rootSchema, "value => ({ root: value })",
+                new Extractor("value", "$.value", false));
+        for (int i = 1; i < transformers.length; ++i) {
+            Schema schema = createExampleSchema("Many" + i, "Many" + i, "Many" + i, false);
+            transformers[i] = createTransformer("t" + i, schema, "x => ({ value: x.value, size: x.values.length })",
+                    new Extractor("value", "$.value", false), new Extractor("values", "$.values", false));
+            data.set("nested" + i, runWithValue(i, schema));
+        }
+        addTransformer(test, transformers);
+
+        BlockingQueue<Dataset.EventNew> dataSetQueue = serviceMediator.getEventQueue(AsyncEventChannels.DATASET_NEW, test.id);
+        uploadRun(data, test.name);
+        Dataset.EventNew event = dataSetQueue.poll(POLL_DURATION_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(event);
+        Dataset dataset = DatasetMapper.from(DatasetDAO.findById(event.datasetId));
+        assertEquals(transformers.length, dataset.data.size(), dataset.data.toString());
+        List<JsonNode> nodes = StreamSupport.stream(dataset.data.spliterator(), false).toList();
+        assertTrue(nodes.stream().anyMatch(node -> node.path("root").asDouble() == -1), dataset.data.toString());
+        for (int i = 1; i < transformers.length; ++i) {
+            int value = i;
+            assertTrue(
+                    nodes.stream().anyMatch(node -> node.path("value").asDouble() == value && node.path("size").asInt() == 3),
+                    dataset.data.toString());
+        }
+        assertNull(dataSetQueue.poll(50, TimeUnit.MILLISECONDS));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testTransformationWithInvalidExtractor(TestInfo info) throws InterruptedException {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        Schema validSchema = createExampleSchema("Valid", "Valid", "Valid", false);
+        Schema invalidSchema = createExampleSchema("Invalid", "Invalid", "Invalid", false);
+        Transformer valid = createTransformer("valid", validSchema, "value => ({ valid: value })",
+                new Extractor("value", "$.value", false));
+        Transformer invalid = createTransformer("invalid", invalidSchema, "value => ({ invalid: value })",
+                new Extractor("value", "$.value[", false));
+        addTransformer(test, valid, invalid);
+        ObjectNode data = JsonNodeFactory.instance.objectNode();
+        data.set("valid", runWithValue(1, validSchema));
+        data.set("invalid", runWithValue(2, invalidSchema));
+
+        BlockingQueue<Dataset.EventNew> dataSetQueue = serviceMediator.getEventQueue(AsyncEventChannels.DATASET_NEW, test.id);
+        uploadRun(data, test.name);
+        Dataset.EventNew event = dataSetQueue.poll(POLL_DURATION_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(event);
+        Dataset dataset = DatasetMapper.from(DatasetDAO.findById(event.datasetId));
+        // only the transformer with the invalid JSONPath is missing its input
+        List<JsonNode> nodes = StreamSupport.stream(dataset.data.spliterator(), false).toList();
+        assertTrue(nodes.stream().anyMatch(node -> node.path("valid").asDouble() == 1), dataset.data.toString());
+        assertTrue(nodes.stream().anyMatch(node -> node.has("invalid") && node.path("invalid").isEmpty()),
+                dataset.data.toString());
+
+        List<TransformationLog> logs = jsonRequest().queryParam("level", PersistentLogDAO.ERROR)
+                .get("/api/log/transformation/" + test.id)
+                .then().statusCode(200).extract().as(new TypeRef<>() {
+                });
+        assertTrue(logs.stream().anyMatch(log -> log.message.contains("[" + invalid.id + "]")), logs.toString());
+        assertTrue(logs.stream().noneMatch(log -> log.message.contains("[" + valid.id + "]")), logs.toString());
+    }
+
     @org.junit.jupiter.api.Test
     public void testSelectRunBySchema(TestInfo info) throws InterruptedException {
         Schema schemaA = createExampleSchema("Aba", "Aba", "Aba", false);
@@ -706,6 +847,94 @@ public class RunServiceTest extends BaseServiceTest {
         });
     }
 
+    @org.junit.jupiter.api.Test
+    public void testRecalculateAll(TestInfo info) throws InterruptedException {
+        Test test1 = createTest(createExampleTest(getTestName(info) + "1"));
+        Test test2 = createTest(createExampleTest(getTestName(info) + "2"));
+        Schema schema = createExampleSchema(info);
+        BlockingQueue<Dataset.EventNew> queue1 = serviceMediator.getEventQueue(AsyncEventChannels.DATASET_NEW, test1.id);
+        BlockingQueue<Dataset.EventNew> queue2 = serviceMediator.getEventQueue(AsyncEventChannels.DATASET_NEW, test2.id);
+
+        long timestamp = System.currentTimeMillis();
+        List<Integer> runs1 = new ArrayList<>();
+        List<Integer> runs2 = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            runs1.add(uploadRun(timestamp + i * 1000, runWithValue(i, schema), test1.name));
+            assertNotNull(queue1.poll(10, TimeUnit.SECONDS));
+            runs2.add(uploadRun(timestamp + i * 1000, runWithValue(i, schema), test2.name));
+            assertNotNull(queue2.poll(10, TimeUnit.SECONDS));
+        }
+
+        // the first runs are out of the range
+        RestAssured.given().auth().oauth2(getAdminToken()).header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                .queryParam("from", timestamp + 500).queryParam("to", timestamp + 2000)
+                .post("/api/run/recalculateAll").then().statusCode(204);
+        for (int i = 1; i < 3; ++i) {
+            Dataset.EventNew event1 = queue1.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event1);
+            assertTrue(event1.isRecalculation);
+            assertEquals(runs1.get(i), event1.runId);
+            Dataset.EventNew event2 = queue2.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event2);
+            assertTrue(event2.isRecalculation);
+            assertEquals(runs2.get(i), event2.runId);
+        }
+        assertNull(queue1.poll(100, TimeUnit.MILLISECONDS));
+        assertNull(queue2.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testRecalculateDeletesDatasetData(TestInfo info) throws InterruptedException {
+        Test test = createExampleTest(getTestName(info));
+        test.fingerprintLabels = jsonArray("config");
+        test = createTest(test);
+        // datasets fail validation as the property is never present
+        ObjectNode jsonSchema = JsonNodeFactory.instance.objectNode().put("type", "object");
+        jsonSchema.putArray("required").add("missing");
+        Schema schema = createSchema(getTestName(info), uriForTest(info, "1.0"), jsonSchema);
+        addLabel(schema, "value", null, new Extractor("value", "$.value", false));
+        addLabel(schema, "config", null, new Extractor("config", "$.config", false));
+        addChangeDetectionVariable(test, schema.id);
+        addMissingDataRule(test, "rule", arrayOf("value"), null, 10000);
+        BlockingQueue<Dataset.EventNew> datasetQueue = serviceMediator.getEventQueue(AsyncEventChannels.DATASET_NEW,
+                test.id);
+
+        long timestamp = System.currentTimeMillis();
+        int runId = uploadRun(timestamp, runWithValue(1, schema).put("config", "foo"), test.name);
+        Dataset.EventNew event = datasetQueue.poll(10, TimeUnit.SECONDS);
+        assertNotNull(event);
+        int datasetId = event.datasetId;
+        List<String> tables = List.of("label_values", "dataset_schemas", "dataset_view", "fingerprint",
+                "dataset_validationerrors", "datapoint", "missingdata_ruleresult");
+        TestUtil.eventually(() -> tables.forEach(table -> assertNotEquals(0, countForDataset(table, datasetId), table)));
+
+        List<Integer> datasetIds = recalculateDatasetForRun(runId);
+        assertEquals(1, datasetIds.size());
+        assertNotEquals(datasetId, datasetIds.get(0));
+        for (String table : tables) {
+            assertEquals(0, countForDataset(table, datasetId), table);
+        }
+        assertEquals(0, countForDataset("dataset", datasetId));
+
+        // the run gets a new dataset with its own data
+        Dataset.EventNew recalculated = datasetQueue.poll(10, TimeUnit.SECONDS);
+        assertNotNull(recalculated);
+        assertTrue(recalculated.isRecalculation);
+        assertEquals(datasetIds.get(0), recalculated.datasetId);
+        TestUtil.eventually(
+                () -> tables.forEach(table -> assertNotEquals(0, countForDataset(table, datasetIds.get(0)), table)));
+    }
+
+    private long countForDataset(String table, int datasetId) {
+        return Util.withTx(tm, () -> {
+            try (CloseMe ignored = roleManager.withRoles(SYSTEM_ROLES)) {
+                String column = table.equals("dataset") ? "id" : "dataset_id";
+                return ((Number) em.createNativeQuery("SELECT count(*) FROM " + table + " WHERE " + column + " = ?1")
+                        .setParameter(1, datasetId).getSingleResult()).longValue();
+            }
+        });
+    }
+
     private void validateScalarArray(Dataset ds, String expectedTarget) {
         JsonNode n = ds.data;
         int outcome = n.path(0).findValue("outcome").asInt();
@@ -934,6 +1163,101 @@ public class RunServiceTest extends BaseServiceTest {
         assertEquals(1, runs.runs.size());
     }
 
+    @org.junit.jupiter.api.Test
+    public void testListAllRunsSearchIndex(TestInfo info) {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        long now = System.currentTimeMillis();
+        ObjectNode first = JsonNodeFactory.instance.objectNode().put("searchIdxAlpha", 1);
+        first.putObject("searchIdxNested").put("inner", 42);
+        ObjectNode second = JsonNodeFactory.instance.objectNode().put("searchIdxBeta", 2);
+        second.putArray("searchIdxItems").addObject().put("inner", 43);
+        int firstId = uploadRun(now, first, test.name);
+        int secondId = uploadRun(now + 1, second, test.name);
+
+        assertEquals(List.of(firstId), searchRuns(test, "searchIdxAlpha", false));
+        assertEquals(List.of(firstId), searchRuns(test, "searchIdxNested.inner", false));
+        assertEquals(List.of(firstId, secondId), searchRuns(test, "searchIdxAlpha searchIdxBeta", false));
+        assertEquals(List.of(), searchRuns(test, "searchIdxAlpha searchIdxBeta", true));
+        assertEquals(List.of(secondId), searchRuns(test, "$.searchIdxItems[*] ? (@.inner == 43)", false));
+        assertEquals(List.of(secondId), searchRuns(test, "@.inner > 42", false));
+        // plain keys are answered by the index, mixed with paths that need to be evaluated
+        assertEquals(List.of(firstId, secondId), searchRuns(test, "inner", false));
+        assertEquals(List.of(secondId), searchRuns(test, "inner searchIdxItems[*].inner", true));
+        assertEquals(List.of(firstId), searchRuns(test, "searchIdxNested.inner, searchIdxAlpha", true));
+        // expressions that cannot use the index
+        assertEquals(List.of(firstId, secondId),
+                searchRuns(test, "$.** ? (@.searchIdxAlpha == 1 || @.searchIdxBeta == 2)", false));
+
+        // updating the schema modifies the data and so must the index
+        Schema schema = createSchema("SearchIdx", "urn:search-idx:" + getTestName(info));
+        RestAssured.given().auth().oauth2(getTesterToken())
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN)
+                .body(schema.uri)
+                .post("/api/run/" + firstId + "/schema")
+                .then()
+                .statusCode(200);
+        assertEquals(List.of(firstId), searchRuns(test, "$.\"$schema\" ? (@ == \"" + schema.uri + "\")", false));
+
+        List<String> keys = jsonRequest().queryParam("query", "searchIdx").get("/api/run/autocomplete")
+                .then().statusCode(200).extract().body().as(new TypeRef<>() {
+                });
+        assertEquals(Set.of("searchIdxAlpha", "searchIdxNested", "searchIdxBeta", "searchIdxItems"), new HashSet<>(keys));
+        keys = jsonRequest().queryParam("query", "$.searchIdxNested.").get("/api/run/autocomplete")
+                .then().statusCode(200).extract().body().as(new TypeRef<>() {
+                });
+        assertEquals(List.of("inner"), keys);
+    }
+
+    private List<Integer> searchRuns(Test test, String query, boolean matchAll) {
+        RunService.RunsSummary runs = jsonRequest().queryParam("query", query).queryParam("matchAll", matchAll)
+                .get("/api/run/list")
+                .then()
+                .statusCode(200)
+                .extract()
+                .as(RunService.RunsSummary.class);
+        // other tests' runs may match as well
+        return runs.runs.stream().filter(run -> run.testid == test.id).map(run -> run.id).sorted().toList();
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testRunCounts(TestInfo info) throws InterruptedException {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        long now = System.currentTimeMillis();
+        String marker = "runCount" + test.id;
+        int firstId = uploadRun(now, JsonNodeFactory.instance.objectNode().put(marker, 1), test.name);
+        uploadRun(now + 1, JsonNodeFactory.instance.objectNode().put(marker, 2), test.name);
+        uploadRun(now + 2, JsonNodeFactory.instance.objectNode().put("other", 3), test.name);
+        assertRunCount(test.id, 3, 0);
+
+        trashRun(firstId, test.id, true);
+        assertRunCount(test.id, 2, 1);
+        assertEquals(2, listTestRuns(test.id, false, null, null, null, null).total);
+        assertEquals(3, listTestRuns(test.id, true, null, null, null, null).total);
+
+        // the total of a filtered listing counts the matches, not all runs
+        RunService.RunsSummary summary = jsonRequest().queryParam("query", marker).queryParam("trashed", true)
+                .queryParam("limit", 1).queryParam("page", 1).get("/api/run/list")
+                .then().statusCode(200).extract().as(RunService.RunsSummary.class);
+        assertEquals(2, summary.total);
+        assertEquals(1, summary.runs.size());
+        summary = jsonRequest().queryParam("query", marker).queryParam("trashed", true)
+                .queryParam("limit", 2).queryParam("page", 3).get("/api/run/list")
+                .then().statusCode(200).extract().as(RunService.RunsSummary.class);
+        assertEquals(2, summary.total);
+        assertEquals(0, summary.runs.size());
+
+        trashRun(firstId, test.id, false);
+        assertRunCount(test.id, 3, 0);
+    }
+
+    private void assertRunCount(int testId, long active, long trashed) {
+        RunService.RunCount count = jsonRequest().queryParam("testId", testId).get("/api/run/count")
+                .then().statusCode(200).extract().as(RunService.RunCount.class);
+        assertEquals(active, count.active);
+        assertEquals(trashed, count.trashed);
+        assertEquals(active + trashed, count.total);
+    }
+
     @org.junit.jupiter.api.Test
     public void testAddRunFromData() throws JsonProcessingException {
         Test test = createExampleTest("supersecret");
@@ -991,6 +1315,70 @@ public class RunServiceTest extends BaseServiceTest {
         assertTrue(runId > 0);
     }
 
+    @org.junit.jupiter.api.Test
+    public void testUploadMultipart() {
+        Test test = createTest(createExampleTest("multipart"));
+        ObjectNode data = simpleObject("urn:foo", "foo", "xxx");
+        data.put("start", 1).put("stop", 2).put("precise", 0.1234567890123456789);
+        ObjectNode metadata = simpleObject("urn:bar", "bar", "yyy");
+
+        int runId = uploadRun("$.start", "$.stop", data, metadata, test.name, test.owner, Access.PUBLIC);
+        assertEquals(data, getData(runId, null));
+        JsonNode storedMetadata = jsonRequest().get("/api/run/" + runId + "/metadata").then().statusCode(200)
+                .extract().body().as(JsonNode.class);
+        // the parsed object is wrapped into an array instead of being serialized and parsed again
+        assertEquals(JsonNodeFactory.instance.arrayNode().add(metadata), storedMetadata);
+
+        // metadata are validated on the parsed tree before anything is persisted
+        RestAssured.given().auth().oauth2(getUploaderToken())
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.MULTIPART_FORM_DATA)
+                .multiPart("data", "data.json", data.toString().getBytes(StandardCharsets.UTF_8), MediaType.APPLICATION_JSON)
+                .multiPart("metadata", "metadata.json", "{ \"foo\": \"bar\" }".getBytes(StandardCharsets.UTF_8),
+                        MediaType.APPLICATION_JSON)
+                .post("/api/run/data?start=$.start&stop=$.stop&test=" + test.name)
+                .then()
+                .statusCode(400);
+        assertEquals(1, jsonRequest().queryParam("testId", test.id).get("/api/run/count").then().statusCode(200)
+                .extract().body().as(RunService.RunCount.class).total);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testUploadTooLarge() {
+        Test test = createTest(createExampleTest("too_large"));
+        // horreum.upload.max-size is set to 1M in tests
+        ObjectNode data = simpleObject("urn:foo", "foo", "x".repeat(2 * 1024 * 1024));
+        byte[] bytes = data.toString().getBytes(StandardCharsets.UTF_8);
+
+        // rejected based on Content-Length
+        String message = RestAssured.given().auth().oauth2(getUploaderToken())
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                .body(bytes)
+                .post("/api/run/data?start=0&stop=0&test=" + test.name)
+                .then()
+                .statusCode(413)
+                .extract().asString();
+        assertTrue(message.contains("maximum upload size"), message);
+        // chunked request without Content-Length is rejected while streaming
+        RestAssured.given().auth().oauth2(getUploaderToken())
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON)
+                .body(new ByteArrayInputStream(bytes))
+                .post("/api/run/data?start=0&stop=0&test=" + test.name)
+                .then()
+                .statusCode(413);
+        // multipart upload
+        RestAssured.given().auth().oauth2(getUploaderToken())
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.MULTIPART_FORM_DATA)
+                .multiPart("data", "data.json", bytes, MediaType.APPLICATION_JSON)
+                .post("/api/run/data?start=0&stop=0&test=" + test.name)
+                .then()
+                .statusCode(413);
+        assertEquals(0, jsonRequest().queryParam("testId", test.id).get("/api/run/count").then().statusCode(200)
+                .extract().body().as(RunService.RunCount.class).total);
+
+        // smaller uploads are accepted
+        uploadRun("0", "0", test.name, test.owner, Access.PUBLIC, null, null, simpleObject("urn:foo", "foo", "xxx"));
+    }
+
     @org.junit.jupiter.api.Test
     public void testJavascriptExecution() throws InterruptedException {
         Test test = createExampleTest("supersecret");
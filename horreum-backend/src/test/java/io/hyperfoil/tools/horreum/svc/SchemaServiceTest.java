@@ -1,6 +1,7 @@
 package io.hyperfoil.tools.horreum.svc;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -291,6 +292,74 @@ class SchemaServiceTest extends BaseServiceTest {
         assertEquals(4, em.createNativeQuery("SELECT COUNT(*)::int FROM dataset_validationerrors").getSingleResult());
     }
 
+    @org.junit.jupiter.api.Test
+    void testValidateRunWithReferencedSchema() throws IOException, InterruptedException {
+        JsonNode allowAny = load("/allow-any.json");
+        Schema allowAnySchema = createSchema("any", allowAny.path("$id").asText(), allowAny);
+        ObjectNode referencing = JsonNodeFactory.instance.objectNode();
+        referencing.put("$id", "urn:referencing:schema");
+        referencing.put("$schema", "https://json-schema.org/draft/2019-09/schema");
+        referencing.put("$ref", allowAnySchema.uri);
+        Schema referencingSchema = createSchema("referencing", "urn:referencing:schema", referencing);
+
+        Test test = createTest(createExampleTest("referencingTest"));
+        BlockingQueue<Schema.ValidationEvent> runValidations = serviceMediator.getEventQueue(AsyncEventChannels.RUN_VALIDATED,
+                test.id);
+
+        ObjectNode data = JsonNodeFactory.instance.objectNode().put("$schema", referencingSchema.uri).put("foo", "bar");
+        uploadRun(data.toString(), test.name);
+        Schema.ValidationEvent runValidation = runValidations.poll(10, TimeUnit.SECONDS);
+        assertNotNull(runValidation);
+        assertEquals(0, runValidation.errors.size());
+
+        // updating the referenced schema must affect validation against the referencing one
+        JsonNode allowNone = load("/allow-none.json");
+        allowAnySchema.schema = allowNone.deepCopy();
+        ((ObjectNode) allowAnySchema.schema).set("$id", allowAny.path("$id").deepCopy());
+        updateSchema(allowAnySchema);
+
+        int runId = uploadRun(data.toString(), test.name);
+        Schema.ValidationEvent runValidation2;
+        do {
+            runValidation2 = runValidations.poll(10, TimeUnit.SECONDS);
+            assertNotNull(runValidation2);
+        } while (runValidation2.id != runId);
+        assertEquals(2, runValidation2.errors.size());
+        runValidation2.errors.forEach(e -> assertEquals(referencingSchema.id, e.schemaId));
+    }
+
+    @org.junit.jupiter.api.Test
+    void testValidateRunWithSchemaReferencedBeforeCreated() throws IOException, InterruptedException {
+        JsonNode allowNone = load("/allow-none.json");
+        String referencedUri = allowNone.path("$id").asText();
+        ObjectNode referencing = JsonNodeFactory.instance.objectNode();
+        referencing.put("$id", "urn:referencing:missing");
+        referencing.put("$schema", "https://json-schema.org/draft/2019-09/schema");
+        referencing.putObject("properties").putObject("nested").put("$ref", referencedUri);
+        Schema referencingSchema = createSchema("referencing-missing", "urn:referencing:missing", referencing);
+
+        Test test = createTest(createExampleTest("referencingMissingTest"));
+        BlockingQueue<Schema.ValidationEvent> runValidations = serviceMediator.getEventQueue(AsyncEventChannels.RUN_VALIDATED,
+                test.id);
+        ObjectNode data = JsonNodeFactory.instance.objectNode().put("$schema", referencingSchema.uri);
+        data.putObject("nested").put("foo", "bar");
+        uploadRun(data.toString(), test.name);
+        assertNotNull(runValidations.poll(10, TimeUnit.SECONDS));
+
+        // the schema compiled while the reference was missing must not be used anymore
+        createSchema("referenced-later", referencedUri, allowNone);
+
+        int runId = uploadRun(data.toString(), test.name);
+        Schema.ValidationEvent runValidation;
+        do {
+            runValidation = runValidations.poll(10, TimeUnit.SECONDS);
+            assertNotNull(runValidation);
+        } while (runValidation.id != runId);
+        assertFalse(runValidation.errors.isEmpty());
+        runValidation.errors.forEach(e -> assertEquals(referencingSchema.id, e.schemaId));
+        runValidation.errors.forEach(e -> assertNotEquals("Execution error", e.error.path("type").asText()));
+    }
+
     @org.junit.jupiter.api.Test
     void testEditSchema() {
         Schema schema = createSchema("My Schema", "urn:my:schema");
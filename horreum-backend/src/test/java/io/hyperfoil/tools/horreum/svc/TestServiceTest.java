@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -14,6 +15,8 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import jakarta.inject.Inject;
+
 import org.junit.jupiter.api.TestInfo;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -72,6 +75,9 @@ import io.restassured.response.Response;
 @TestProfile(InMemoryAMQTestProfile.class)
 class TestServiceTest extends BaseServiceTest {
 
+    @Inject
+    RecalculationEngine recalculationEngine;
+
     @org.junit.jupiter.api.Test
     void testListTests() {
         int count = 10;
@@ -172,6 +178,90 @@ class TestServiceTest extends BaseServiceTest {
         assertEquals(NUM_DATASETS, datasets.stream().map(ds -> ds.run.id).collect(Collectors.toSet()).size());
     }
 
+    @org.junit.jupiter.api.Test
+    public void testRecalculateResumesFromCheckpoint(TestInfo info) throws InterruptedException {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        Schema schema = createExampleSchema(info);
+
+        BlockingQueue<Dataset.EventNew> newDatasetQueue = serviceMediator.getEventQueue(AsyncEventChannels.DATASET_NEW,
+                test.id);
+        final int NUM_RUNS = 4;
+        long timestamp = System.currentTimeMillis();
+        List<Integer> runIds = new ArrayList<>();
+        for (int i = 0; i < NUM_RUNS; ++i) {
+            runIds.add(uploadRun(timestamp + i, runWithValue(i, schema), test.name));
+            assertNotNull(newDatasetQueue.poll(10, TimeUnit.SECONDS));
+        }
+
+        // recalculation interrupted after the second run
+        Util.withTx(tm, () -> {
+            try (CloseMe ignored = roleManager.withRoles(SYSTEM_ROLES)) {
+                em.createNativeQuery(
+                        "INSERT INTO run_recalculation (testid, last_start, last_run, total, finished, datasets, started) " +
+                                "VALUES (?1, ?2, ?3, ?4, 2, 2, now())")
+                        .setParameter(1, test.id).setParameter(2, Instant.ofEpochMilli(timestamp + 1))
+                        .setParameter(3, runIds.get(1)).setParameter(4, NUM_RUNS).executeUpdate();
+                return null;
+            }
+        });
+        recalculationEngine.onStart(null);
+
+        for (int i = 2; i < NUM_RUNS; ++i) {
+            Dataset.EventNew event = newDatasetQueue.poll(10, TimeUnit.SECONDS);
+            assertNotNull(event);
+            assertTrue(event.isRecalculation);
+            assertEquals(runIds.get(i), event.runId);
+        }
+        TestUtil.eventually(() -> {
+            TestService.RecalculationStatus status = jsonRequest().get("/api/test/" + test.id + "/recalculate")
+                    .then().statusCode(200).extract().body().as(TestService.RecalculationStatus.class);
+            assertEquals(NUM_RUNS, status.totalRuns);
+            return status.finished == status.totalRuns;
+        });
+        assertNull(newDatasetQueue.poll(100, TimeUnit.MILLISECONDS));
+        Util.withTx(tm, () -> {
+            try (CloseMe ignored = roleManager.withRoles(SYSTEM_ROLES)) {
+                assertEquals(0L, em.createNativeQuery("SELECT count(*) FROM run_recalculation WHERE testid = ?1", Long.class)
+                        .setParameter(1, test.id).getSingleResult());
+                return null;
+            }
+        });
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testRecalculationLeasedByAnotherReplica(TestInfo info) {
+        Test test = createTest(createExampleTest(getTestName(info)));
+        String ownerOfRecalculation = "SELECT owner FROM run_recalculation WHERE testid = ?1";
+        Util.withTx(tm, () -> {
+            try (CloseMe ignored = roleManager.withRoles(SYSTEM_ROLES)) {
+                em.createNativeQuery(
+                        "INSERT INTO run_recalculation (testid, total, finished, datasets, started, owner, lease_until) " +
+                                "VALUES (?1, 0, 0, 0, now(), 'other-replica', now() + interval '1 hour')")
+                        .setParameter(1, test.id).executeUpdate();
+                return null;
+            }
+        });
+        recalculationEngine.resumeExpired();
+        assertNull(recalculationEngine.getStatus(test.id));
+        Util.withTx(tm, () -> {
+            try (CloseMe ignored = roleManager.withRoles(SYSTEM_ROLES)) {
+                assertEquals("other-replica", em.createNativeQuery(ownerOfRecalculation, String.class)
+                        .setParameter(1, test.id).getSingleResult());
+                // the other replica crashed
+                em.createNativeQuery("UPDATE run_recalculation SET lease_until = now() - interval '1 second' WHERE testid = ?1")
+                        .setParameter(1, test.id).executeUpdate();
+                return null;
+            }
+        });
+        recalculationEngine.resumeExpired();
+        TestUtil.eventually(() -> Util.withTx(tm, () -> {
+            try (CloseMe ignored = roleManager.withRoles(SYSTEM_ROLES)) {
+                return em.createNativeQuery(ownerOfRecalculation, String.class).setParameter(1, test.id)
+                        .getResultList().isEmpty();
+            }
+        }));
+    }
+
     @org.junit.jupiter.api.Test
     public void testAddTestAction(TestInfo info) {
         Test test = createTest(createExampleTest(getTestName(info)));
@@ -6,6 +6,7 @@ import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
@@ -696,4 +697,84 @@ class TestServiceWithAsyncProcessingTest extends BaseServiceTest {
         assertTrue(values.has("labelFoo"), values.toString());
         assertTrue(values.has("labelBar"), values.toString());
     }
+
+    @org.junit.jupiter.api.Test
+    public void labelValuesPagingByDataset() {
+        Test t = createTest(createExampleTest("my-test"));
+        labelValuesSetup(t, false);
+        for (int i = 1; i <= 5; ++i) {
+            int runId = uploadRun("{ \"foo\": " + i + ", \"bar\": \"v" + i + "\"}", t.name, "urn:foo").get(0);
+            recalculateDatasetForRun(runId);
+        }
+        List<ExportedLabelValues> all = labelValues(t.id, "");
+        assertEquals(5, all.size());
+
+        // every page holds whole datasets, with all of their label values, regardless of the number of labels
+        List<ExportedLabelValues> paged = new ArrayList<>();
+        for (int page = 0; page < 3; ++page) {
+            List<ExportedLabelValues> values = labelValues(t.id, "?limit=2&page=" + page);
+            assertEquals(page < 2 ? 2 : 1, values.size(), values.toString());
+            for (ExportedLabelValues value : values) {
+                assertEquals(2, value.values.size(), value.values.toString());
+            }
+            paged.addAll(values);
+        }
+        assertEquals(all.stream().map(v -> v.datasetId).toList(), paged.stream().map(v -> v.datasetId).toList());
+        // newest runs first
+        assertEquals(5, paged.get(0).values.get("labelFoo").asInt());
+        assertEquals(1, paged.get(4).values.get("labelFoo").asInt());
+
+        // page past the end
+        assertEquals(0, labelValues(t.id, "?limit=2&page=3").size());
+        assertEquals(0, labelValues(t.id, "?limit=10&page=1").size());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void labelValuesDatasetsWithoutValues() {
+        Test t = createTest(createExampleTest("my-test"));
+        int labelledRunId = Integer.parseInt(labelValuesSetup(t, true));
+        // no schema, so the dataset has no label values
+        int emptyRunId = uploadRun("{ \"foo\": 42 }", t.name);
+        recalculateDatasetForRun(emptyRunId);
+
+        List<ExportedLabelValues> values = labelValues(t.id, "");
+        assertEquals(2, values.size(), values.toString());
+        assertEquals(emptyRunId, values.get(0).runId);
+        assertTrue(values.get(0).values.isEmpty(), values.get(0).values.toString());
+        assertEquals(labelledRunId, values.get(1).runId);
+        assertEquals(2, values.get(1).values.size());
+
+        // datasets without the included labels are left out
+        values = labelValues(t.id, "?include=labelFoo");
+        assertEquals(1, values.size(), values.toString());
+        assertEquals(labelledRunId, values.get(0).runId);
+        assertEquals(1, values.get(0).values.size());
+
+        values = labelValues(t.id, "?exclude=labelFoo");
+        assertEquals(1, values.size(), values.toString());
+        assertEquals(labelledRunId, values.get(0).runId);
+        assertTrue(values.get(0).values.containsKey("labelBar"));
+
+        // the empty dataset is on the first page without filters, but not with include
+        assertEquals(emptyRunId, labelValues(t.id, "?limit=1&page=0").get(0).runId);
+        assertEquals(labelledRunId, labelValues(t.id, "?include=labelBar&limit=1&page=0").get(0).runId);
+        assertEquals(0, labelValues(t.id, "?include=labelBar&limit=1&page=1").size());
+
+        // the same applies to label values of a single run
+        List<ExportedLabelValues> runValues = jsonRequest().get("/api/run/" + emptyRunId + "/labelValues").then()
+                .statusCode(200).extract().body().as(new TypeRef<>() {
+                });
+        assertEquals(1, runValues.size());
+        assertTrue(runValues.get(0).values.isEmpty());
+        runValues = jsonRequest().get("/api/run/" + emptyRunId + "/labelValues?include=labelFoo").then()
+                .statusCode(200).extract().body().as(new TypeRef<>() {
+                });
+        assertEquals(0, runValues.size());
+    }
+
+    private List<ExportedLabelValues> labelValues(int testId, String query) {
+        return jsonRequest().get("/api/test/" + testId + "/labelValues" + query).then().statusCode(200)
+                .extract().body().as(new TypeRef<>() {
+                });
+    }
 }
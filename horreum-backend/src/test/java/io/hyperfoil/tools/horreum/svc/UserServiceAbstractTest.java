@@ -4,6 +4,8 @@ import static io.hyperfoil.tools.horreum.api.services.UserService.KeyType.USER;
 import static io.hyperfoil.tools.horreum.svc.UserServiceImpl.DEFAULT_API_KEY_ACTIVE_DAYS;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -28,6 +30,9 @@ import org.mockito.Mockito;
 import io.hyperfoil.tools.horreum.api.services.UserService;
 import io.hyperfoil.tools.horreum.entity.user.UserApiKey;
 import io.hyperfoil.tools.horreum.entity.user.UserInfo;
+import io.hyperfoil.tools.horreum.server.ApiKeyAuthenticationMechanism;
+import io.hyperfoil.tools.horreum.server.ApiKeyIdentityProvider;
+import io.hyperfoil.tools.horreum.server.IdentityCache;
 import io.hyperfoil.tools.horreum.server.SecurityBootstrap;
 import io.hyperfoil.tools.horreum.server.WithRoles;
 import io.hyperfoil.tools.horreum.svc.user.UserBackEnd;
@@ -39,6 +44,7 @@ import io.quarkus.security.runtime.QuarkusSecurityIdentity;
 import io.quarkus.test.junit.QuarkusMock;
 import io.quarkus.test.security.TestIdentityAssociation;
 import io.quarkus.test.security.TestSecurity;
+import io.smallrye.mutiny.Uni;
 
 /**
  * Test for {@link UserServiceImpl} that is executed for every back-end
@@ -60,6 +66,12 @@ public abstract class UserServiceAbstractTest {
     @Inject
     TimeService timeService;
 
+    @Inject
+    ApiKeyIdentityProvider apiKeyIdentityProvider;
+
+    @Inject
+    IdentityCache identityCache;
+
     /**
      * Runs a section of a test under a different user
      */
@@ -548,6 +560,13 @@ public abstract class UserServiceAbstractTest {
                     // one key
                     List<UserService.ApiKeyResponse> keys = userService.apiKeys();
                     assertEquals(1, keys.size());
+
+                    // authenticate with the key, second time from the cache
+                    assertEquals(apiUser, authenticate(key).getPrincipal().getName());
+                    assertEquals(apiUser, authenticate(key).getPrincipal().getName());
+                    assertNull(keys.get(0).access);
+                    identityCache.flushAccess();
+                    assertNotNull(userService.apiKeys().get(0).access);
                     assertEquals(DEFAULT_API_KEY_ACTIVE_DAYS, keys.get(0).toExpiration);
                     assertFalse(keys.get(0).isRevoked);
 
@@ -581,11 +600,18 @@ public abstract class UserServiceAbstractTest {
 
                     // should be revoked now
                     assertTrue(userService.apiKeys().get(0).isRevoked);
+                    assertNull(authenticate(key));
                     assertThrows(ServiceException.class,
                             () -> userService.renameApiKey(keys.get(0).id, "Rename revoked key should throw"));
                 });
     }
 
+    private SecurityIdentity authenticate(String key) {
+        return apiKeyIdentityProvider
+                .authenticate(new ApiKeyAuthenticationMechanism.Request(key), supplier -> Uni.createFrom().item(supplier))
+                .await().indefinitely();
+    }
+
     @Transactional
     void setApiKeyCreation(long keyId, Instant creation) {
         UserApiKey apiKey = UserApiKey.findById(keyId);
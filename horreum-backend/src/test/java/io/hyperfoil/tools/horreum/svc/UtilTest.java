@@ -20,6 +20,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
@@ -30,6 +31,8 @@ import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
+import io.hyperfoil.tools.horreum.entity.FingerprintDAO;
+
 public class UtilTest {
 
     public static class StringHandler extends OutputStreamHandler {
@@ -250,6 +253,56 @@ public class UtilTest {
         }
     }
 
+    private static JsonNode evaluateProxy(String function, String input) throws JsonProcessingException {
+        return Util.evaluateOnce(function, new ObjectMapper().readTree(input), Util.JsInputMode.PROXY, Util::convertToJson,
+                (s, t) -> Assertions.fail(t.getMessage()),
+                (s) -> {
+                    //do nothing for this test
+                });
+    }
+
+    @org.junit.jupiter.api.Test
+    public void evaluateOnceProxyNestedAccess() throws JsonProcessingException {
+        String input = "{\"foo\":{\"bar\":[1,2,{\"baz\":\"x\"}]},\"num\":1.5}";
+        assertEquals(new TextNode("x"), evaluateProxy("input => input.foo.bar[2].baz", input));
+        assertEquals(3L, evaluateProxy("input => input.foo.bar.length", input).asLong());
+        assertEquals(1.5, evaluateProxy("input => input.num", input).asDouble());
+        assertTrue(evaluateProxy("input => input.missing === undefined", input).asBoolean());
+        assertEquals("[\"foo\",\"num\"]", evaluateProxy("input => Object.keys(input)", input).toString());
+        assertEquals(input, evaluateProxy("input => JSON.stringify(input)", input).asText());
+        assertTrue(evaluateProxy("input => input instanceof Object", input).asBoolean());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void evaluateOnceProxyArrayFunctions() throws JsonProcessingException {
+        String input = "[{\"v\":1},{\"v\":2},{\"v\":3}]";
+        assertEquals(6L, evaluateProxy("input => input.map(x => x.v).reduce((a, b) => a + b, 0)", input).asLong());
+        assertEquals("[{\"v\":2},{\"v\":3}]", evaluateProxy("input => input.filter(x => x.v > 1)", input).toString());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void evaluateOnceProxyResult() throws JsonProcessingException {
+        String input = "{\"foo\":{\"bar\":42},\"list\":[1,2]}";
+        assertEquals("{\"bar\":42}", evaluateProxy("input => input.foo", input).toString());
+        assertEquals("{\"a\":{\"bar\":42},\"b\":[1,2],\"c\":\"c\"}",
+                evaluateProxy("input => ({ a: input.foo, b: input.list, c: 'c' })", input).toString());
+        assertEquals("{\"bar\":42,\"added\":true}",
+                evaluateProxy("input => ({ ...input.foo, added: true })", input).toString());
+        assertEquals("{\"bar\":43}", evaluateProxy("input => { input.foo.bar += 1; return input.foo; }", input).toString());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void evaluateOnceProxyValueInput() {
+        JsonNode result = Util.evaluateOnce("input => input + 1", new LongNode(41), Util.JsInputMode.PROXY,
+                Util::convertToJson, (s, t) -> Assertions.fail(t.getMessage()), s -> {
+                });
+        assertEquals(42L, result.asLong());
+        result = Util.evaluateOnce("input => input === null", null, Util.JsInputMode.PROXY,
+                Util::convertToJson, (s, t) -> Assertions.fail(t.getMessage()), s -> {
+                });
+        assertTrue(result.asBoolean());
+    }
+
     @org.junit.jupiter.api.Test
     void testDecomposeJsonPathInvalid() {
         assertNull(Util.decomposeJsonPath(""));
@@ -279,4 +332,16 @@ public class UtilTest {
         assertEquals("My Key", decomposedJsonPath.root());
         assertEquals("$.whatever", decomposedJsonPath.jsonpath());
     }
+
+    @org.junit.jupiter.api.Test
+    void testFingerprintHash() {
+        JsonNode fp = Util.parseFingerprint("{\"buildType\":\"release\",\"nodes\":\"3\",\"cpus\":4.0}");
+        assertEquals(FingerprintDAO.hash(fp),
+                FingerprintDAO.hash(Util.parseFingerprint("{\"cpus\":4,\"nodes\":\"3\",\"buildType\":\"release\"}")));
+        assertNotEquals(FingerprintDAO.hash(fp),
+                FingerprintDAO.hash(Util.parseFingerprint("{\"buildType\":\"release\",\"nodes\":3,\"cpus\":4}")));
+        assertNotEquals(FingerprintDAO.hash(fp), FingerprintDAO.hash(JsonNodeFactory.instance.objectNode()));
+        assertEquals(FingerprintDAO.NULL_HASH, FingerprintDAO.hash(Util.parseFingerprint(null)));
+        assertNotEquals(FingerprintDAO.NULL_HASH, FingerprintDAO.hash(JsonNodeFactory.instance.objectNode()));
+    }
 }
@@ -18,6 +18,8 @@ public class AMQPInMemoryResource implements QuarkusTestResourceLifecycleManager
         Map<String, String> props6 = InMemoryConnector.switchOutgoingChannelsToInMemory("run-recalc-out");
         Map<String, String> props7 = InMemoryConnector.switchIncomingChannelsToInMemory("schema-sync-in");
         Map<String, String> props8 = InMemoryConnector.switchOutgoingChannelsToInMemory("schema-sync-out");
+        Map<String, String> props9 = InMemoryConnector.switchIncomingChannelsToInMemory("dataset-batch-event-in");
+        Map<String, String> props10 = InMemoryConnector.switchOutgoingChannelsToInMemory("dataset-batch-event-out");
         env.putAll(props1);
         env.putAll(props2);
         env.putAll(props3);
@@ -26,6 +28,8 @@ public class AMQPInMemoryResource implements QuarkusTestResourceLifecycleManager
         env.putAll(props6);
         env.putAll(props7);
         env.putAll(props8);
+        env.putAll(props9);
+        env.putAll(props10);
         return env;
     }
 
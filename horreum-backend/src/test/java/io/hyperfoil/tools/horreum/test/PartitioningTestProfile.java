@@ -0,0 +1,14 @@
+package io.hyperfoil.tools.horreum.test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class PartitioningTestProfile extends HorreumTestProfile {
+
+    @Override
+    public Map<String, String> getConfigOverrides() {
+        Map<String, String> configOverrides = new HashMap<>(super.getConfigOverrides());
+        configOverrides.put("horreum.db.partitioning", "true");
+        return configOverrides;
+    }
+}
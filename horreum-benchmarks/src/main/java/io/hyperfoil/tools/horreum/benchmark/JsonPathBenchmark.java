@@ -0,0 +1,48 @@
+package io.hyperfoil.tools.horreum.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.hyperfoil.tools.horreum.svc.Util;
+
+/**
+ * JSONPath evaluation in Java, used e.g. for extracting run start/stop and filtering runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonPathBenchmark {
+    @Param({ "1KB", "1MB" })
+    String size;
+
+    @Param({ "$.metadata.env", "$.results[*].throughput", "$.results[?(@.cpu > 0.9)].iteration" })
+    String jsonPath;
+
+    JsonNode input;
+
+    @Setup
+    public void setup() {
+        input = Payloads.run(Payloads.parseSize(size), 42);
+    }
+
+    @Benchmark
+    public Object findJsonPath() {
+        return Util.findJsonPath(input, jsonPath);
+    }
+}
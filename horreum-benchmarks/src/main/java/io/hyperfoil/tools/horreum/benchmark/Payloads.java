@@ -0,0 +1,148 @@
+package io.hyperfoil.tools.horreum.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Generators of synthetic but realistically shaped data: run uploads of a given size, the JSON schema
+ * describing them and label values as returned by the database.
+ */
+public final class Payloads {
+    public static final String SCHEMA_URI = "urn:horreum:benchmark:run:1.0";
+    private static final String[] ENVIRONMENTS = { "aws-m7g.large", "aws-m7i.xlarge", "baremetal-xeon", "ocp-4.15" };
+    private static final String[] OPERATIONS = { "read", "write", "update", "delete", "scan" };
+    // approximate size of a serialized result element, used to reach the requested run size
+    private static final int RESULT_SIZE = result(new Random(0), 0).toString().length() + 1;
+
+    private Payloads() {
+    }
+
+    /**
+     * @param size size with an optional unit: <code>B</code>, <code>KB</code>, <code>MB</code> or <code>GB</code>
+     * @return size in bytes
+     */
+    public static long parseSize(String size) {
+        String str = size.trim().toUpperCase(Locale.ROOT);
+        long multiplier = 1;
+        if (str.endsWith("GB")) {
+            multiplier = 1024L * 1024 * 1024;
+        } else if (str.endsWith("MB")) {
+            multiplier = 1024L * 1024;
+        } else if (str.endsWith("KB")) {
+            multiplier = 1024L;
+        }
+        return Long.parseLong(str.replaceAll("[A-Z]+$", "").trim()) * multiplier;
+    }
+
+    /**
+     * Creates run data of approximately <code>bytes</code> when serialized; most of the size is in the
+     * <code>results</code> array which is what label extractors usually iterate through.
+     */
+    public static ObjectNode run(long bytes, long seed) {
+        Random random = new Random(seed);
+        ObjectNode run = JsonNodeFactory.instance.objectNode();
+        run.put("$schema", SCHEMA_URI);
+        run.put("name", "benchmark-" + seed);
+        run.put("startTime", Instant.ofEpochSecond(1700000000L + seed).toString());
+        ObjectNode metadata = run.putObject("metadata");
+        metadata.put("env", ENVIRONMENTS[random.nextInt(ENVIRONMENTS.length)]);
+        metadata.put("version", "1." + random.nextInt(20) + "." + random.nextInt(10));
+        metadata.put("host", "host-" + random.nextInt(100) + ".example.com");
+        metadata.put("cpus", 2 << random.nextInt(5));
+        ArrayNode results = run.putArray("results");
+        long count = Math.max(1, (bytes - run.toString().length()) / RESULT_SIZE);
+        for (int i = 0; i < count; ++i) {
+            results.add(result(random, i));
+        }
+        return run;
+    }
+
+    private static ObjectNode result(Random random, int iteration) {
+        ObjectNode result = JsonNodeFactory.instance.objectNode();
+        result.put("iteration", iteration);
+        result.put("operation", OPERATIONS[iteration % OPERATIONS.length]);
+        result.put("throughput", 10000 + random.nextGaussian() * 500);
+        result.put("cpu", random.nextDouble());
+        ObjectNode latency = result.putObject("latency");
+        double p50 = 1 + random.nextDouble();
+        latency.put("p50", p50);
+        latency.put("p99", p50 * (2 + random.nextDouble()));
+        latency.put("max", p50 * (10 + 10 * random.nextDouble()));
+        result.putArray("tags").add("iteration-" + iteration).add(random.nextBoolean() ? "warm" : "cold");
+        return result;
+    }
+
+    /**
+     * JSON schema (draft 7) the runs created by {@link #run(long, long)} conform to.
+     */
+    public static JsonNode schema() {
+        JsonNodeFactory f = JsonNodeFactory.instance;
+        ObjectNode number = f.objectNode().put("type", "number");
+        ObjectNode latency = f.objectNode().put("type", "object");
+        latency.putObject("properties").setAll(Map.of("p50", number, "p99", number, "max", number));
+        latency.putArray("required").add("p50").add("p99");
+        ObjectNode result = f.objectNode().put("type", "object");
+        ObjectNode resultProperties = result.putObject("properties");
+        resultProperties.putObject("iteration").put("type", "integer").put("minimum", 0);
+        ArrayNode operations = resultProperties.putObject("operation").putArray("enum");
+        for (String operation : OPERATIONS) {
+            operations.add(operation);
+        }
+        resultProperties.set("throughput", number);
+        resultProperties.putObject("cpu").put("type", "number").put("minimum", 0).put("maximum", 1);
+        resultProperties.set("latency", latency);
+        resultProperties.putObject("tags").put("type", "array").putObject("items").put("type", "string");
+        result.putArray("required").add("iteration").add("throughput").add("latency");
+
+        ObjectNode schema = f.objectNode();
+        schema.put("$schema", "http://json-schema.org/draft-07/schema#");
+        schema.put("$id", SCHEMA_URI);
+        schema.put("type", "object");
+        ObjectNode properties = schema.putObject("properties");
+        properties.putObject("$schema").put("type", "string");
+        properties.putObject("name").put("type", "string");
+        properties.putObject("startTime").put("type", "string").put("format", "date-time");
+        ObjectNode metadata = properties.putObject("metadata").put("type", "object");
+        metadata.putObject("properties").putObject("cpus").put("type", "integer");
+        metadata.putArray("required").add("env").add("version");
+        properties.putObject("results").put("type", "array").set("items", result);
+        schema.putArray("required").add("$schema").add("metadata").add("results");
+        return schema;
+    }
+
+    /**
+     * Label values rows in the shape returned by the label values queries: run ID, dataset ID, start, stop and
+     * the label values of the dataset aggregated with <code>jsonb_object_agg</code>, as raw bytes read by the JDBC driver.
+     */
+    public static List<Object[]> labelValuesRows(int datasets, int labels, long seed) {
+        Random random = new Random(seed);
+        List<Object[]> rows = new ArrayList<>(datasets);
+        for (int dataset = 0; dataset < datasets; ++dataset) {
+            // runs usually produce a single dataset
+            int runId = 1000 + dataset;
+            Instant start = Instant.ofEpochSecond(1700000000L + 3600L * dataset);
+            Instant stop = start.plusSeconds(600);
+            ObjectNode values = JsonNodeFactory.instance.objectNode();
+            for (int label = 0; label < labels; ++label) {
+                if (label % 3 == 0) {
+                    values.put("label" + label, ENVIRONMENTS[label % ENVIRONMENTS.length]);
+                } else {
+                    values.put("label" + label, random.nextGaussian() * 100);
+                }
+            }
+            rows.add(new Object[] { runId, 2000 + dataset, start, stop,
+                    values.toString().getBytes(StandardCharsets.UTF_8) });
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,57 @@
+package io.hyperfoil.tools.horreum.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.hyperfoil.tools.horreum.svc.ProxyJacksonObject;
+
+/**
+ * Member access through {@link ProxyJacksonObject} from Java; evaluation of JavaScript functions with proxied input
+ * is covered by JsEvaluationBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProxyJacksonBenchmark {
+    @Param({ "1KB", "1MB", "100MB" })
+    String size;
+
+    ObjectNode input;
+
+    @Setup
+    public void setup() {
+        input = Payloads.run(Payloads.parseSize(size), 42);
+    }
+
+    @Benchmark
+    public void getMembers(Blackhole blackhole) {
+        for (JsonNode result : input.get("results")) {
+            ProxyJacksonObject proxy = new ProxyJacksonObject((ObjectNode) result);
+            blackhole.consume(proxy.getMember("throughput"));
+            blackhole.consume(proxy.getMember("latency"));
+        }
+    }
+
+    @Benchmark
+    public Object getMemberKeys() {
+        return new ProxyJacksonObject(input).getMemberKeys();
+    }
+}
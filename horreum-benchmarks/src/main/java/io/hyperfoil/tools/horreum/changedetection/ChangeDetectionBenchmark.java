@@ -0,0 +1,122 @@
+package io.hyperfoil.tools.horreum.changedetection;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.hyperfoil.tools.horreum.api.data.changeDetection.ChangeDetectionModelType;
+import io.hyperfoil.tools.horreum.entity.alerting.ChangeDAO;
+import io.hyperfoil.tools.horreum.entity.alerting.DataPointDAO;
+import io.hyperfoil.tools.horreum.entity.alerting.VariableDAO;
+import io.hyperfoil.tools.horreum.entity.data.DatasetDAO;
+import io.hyperfoil.tools.horreum.entity.data.RunDAO;
+
+/**
+ * Analysis of a single variable by the change detection models, without loading the datapoints. This lives in the
+ * package of the models to set their injected mapper.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChangeDetectionBenchmark {
+    @Param({ "100", "10000" })
+    int dataPointCount;
+
+    ObjectMapper mapper = new ObjectMapper();
+    RelativeDifferenceChangeDetectionModel relativeDifference = new RelativeDifferenceChangeDetectionModel();
+    FixedThresholdModel fixedThreshold = new FixedThresholdModel();
+    EDivisiveModel eDivisive = new EDivisiveModel();
+
+    // newest first, as passed by AlertingServiceImpl
+    List<DataPointDAO> dataPoints;
+    RunningStatistics statistics;
+    JsonNode relativeDifferenceConfig;
+    JsonNode fixedThresholdConfig;
+    JsonNode eDivisiveConfig;
+
+    @Setup
+    public void setup() {
+        relativeDifference.mapper = mapper;
+        fixedThreshold.mapper = mapper;
+        eDivisive.mapper = mapper;
+
+        VariableDAO variable = new VariableDAO();
+        variable.id = 1;
+        variable.name = "throughput";
+        Random random = new Random(42);
+        dataPoints = new ArrayList<>(dataPointCount);
+        statistics = new RunningStatistics();
+        for (int i = dataPointCount - 1; i >= 0; --i) {
+            RunDAO run = new RunDAO();
+            run.id = 1000 + i;
+            DatasetDAO dataset = new DatasetDAO();
+            dataset.id = 2000 + i;
+            dataset.run = run;
+            DataPointDAO dataPoint = new DataPointDAO();
+            dataPoint.id = i;
+            dataPoint.variable = variable;
+            dataPoint.dataset = dataset;
+            dataPoint.timestamp = Instant.ofEpochSecond(1700000000L + 3600L * i);
+            // small regression in the last tenth of the series
+            dataPoint.value = (i > dataPointCount * 9 / 10 ? 9500 : 10000) + random.nextGaussian() * 200;
+            dataPoints.add(dataPoint);
+            statistics.add(dataPoint.value);
+        }
+
+        relativeDifferenceConfig = mapper.valueToTree(relativeDifference.config().defaults);
+        ObjectNode fixed = mapper.valueToTree(fixedThreshold.config().defaults);
+        fixed.set("min", JsonNodeFactory.instance.objectNode().put("value", 9000).put("enabled", true).put("inclusive", true));
+        fixed.set("max", JsonNodeFactory.instance.objectNode().put("value", 11000).put("enabled", true).put("inclusive", true));
+        fixedThresholdConfig = fixed;
+        eDivisiveConfig = JsonNodeFactory.instance.objectNode().put("model", ChangeDetectionModelType.names.EDIVISIVE);
+    }
+
+    @Benchmark
+    public void relativeDifferenceFull(Blackhole blackhole) throws ChangeDetectionException {
+        relativeDifference.analyze(dataPoints, relativeDifferenceConfig, consumer(blackhole));
+    }
+
+    @Benchmark
+    public void relativeDifferenceIncremental(Blackhole blackhole) throws ChangeDetectionException {
+        List<DataPointDAO> recent = dataPoints.subList(0, relativeDifference.recentDataPoints(relativeDifferenceConfig));
+        relativeDifference.analyze(recent, statistics, relativeDifferenceConfig, consumer(blackhole));
+    }
+
+    @Benchmark
+    public void fixedThreshold(Blackhole blackhole) throws ChangeDetectionException {
+        fixedThreshold.analyze(dataPoints, fixedThresholdConfig, consumer(blackhole));
+    }
+
+    @Benchmark
+    public void eDivisive(Blackhole blackhole) throws ChangeDetectionException {
+        eDivisive.analyze(dataPoints, eDivisiveConfig, consumer(blackhole));
+    }
+
+    private static Consumer<ChangeDAO> consumer(Blackhole blackhole) {
+        return blackhole::consume;
+    }
+}
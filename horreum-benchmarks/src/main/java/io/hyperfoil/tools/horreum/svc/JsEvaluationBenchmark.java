@@ -0,0 +1,103 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.graalvm.polyglot.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.hyperfoil.tools.horreum.benchmark.Payloads;
+
+/**
+ * JavaScript evaluation as done for label extraction, transformers and variable calculation. This lives in the
+ * package of {@link Util} because the evaluation entry points are package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsEvaluationBenchmark {
+    private static final String SUM_THROUGHPUT = "run => run.results.reduce((sum, r) => sum + r.throughput, 0)";
+    private static final String READ_METADATA = "run => run.metadata.env + '/' + run.metadata.version";
+    private static final String LAST_RESULT = "run => run.results[run.results.length - 1].latency.p99";
+    // combination functions of labels; every other label is extracted without a function
+    private static final String[] COMBINATION_FUNCTIONS = {
+            "values => values.reduce((a, b) => a + b, 0) / values.length",
+            "values => Math.max(...values)",
+            "values => values.filter(v => v > 10000).length",
+            "values => values.map(v => v / 1000)",
+            "values => ({ min: Math.min(...values), max: Math.max(...values) })",
+    };
+
+    @Param({ "1KB", "1MB" })
+    String size;
+
+    @Param({ "COPY", "PROXY" })
+    String inputMode;
+
+    JsonNode input;
+    Util.JsInputMode mode;
+    List<Label> labels;
+
+    record Label(String function, JsonNode value) {
+    }
+
+    @Setup
+    public void setup() {
+        input = Payloads.run(Payloads.parseSize(size), 42);
+        mode = Util.JsInputMode.valueOf(inputMode);
+        JsonNode throughput = Util.OBJECT_MAPPER.valueToTree(Util.findJsonPath(input, "$.results[*].throughput"));
+        labels = new ArrayList<>();
+        for (String function : COMBINATION_FUNCTIONS) {
+            labels.add(new Label(function, throughput));
+            labels.add(new Label(null, throughput));
+        }
+    }
+
+    @Benchmark
+    public Object evaluateOnceReduce() {
+        return Util.evaluateOnce(SUM_THROUGHPUT, input, mode, Value::asDouble, JsEvaluationBenchmark::fail, out -> {
+        });
+    }
+
+    @Benchmark
+    public Object evaluateOnceMetadata() {
+        return Util.evaluateOnce(READ_METADATA, input, mode, Value::asString, JsEvaluationBenchmark::fail, out -> {
+        });
+    }
+
+    @Benchmark
+    public Object evaluateOnceLastResult() {
+        return Util.evaluateOnce(LAST_RESULT, input, mode, Value::asDouble, JsEvaluationBenchmark::fail, out -> {
+        });
+    }
+
+    @Benchmark
+    public void evaluateWithCombinationFunction(Blackhole blackhole) {
+        Util.evaluateWithCombinationFunction(labels, Label::function, Label::value, mode,
+                (label, value) -> blackhole.consume(Util.convertToJson(value)),
+                label -> blackhole.consume(label.value),
+                (label, exception, code) -> fail(code, exception),
+                blackhole::consume);
+    }
+
+    private static void fail(String code, Throwable throwable) {
+        throw new IllegalStateException("Evaluation failed: " + code, throwable);
+    }
+}
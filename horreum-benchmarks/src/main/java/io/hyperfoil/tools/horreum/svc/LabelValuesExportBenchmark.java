@@ -0,0 +1,69 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.hyperfoil.tools.horreum.api.data.ExportedLabelValues;
+import io.hyperfoil.tools.horreum.benchmark.Payloads;
+
+/**
+ * Mapping of the label values query results, one row per dataset with the label values aggregated by the database,
+ * into {@link ExportedLabelValues} by {@link LabelValuesService}, and the streamed export in both formats. The
+ * <code>jsonb</code> column is parsed from bytes for each row as by the JDBC type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LabelValuesExportBenchmark {
+    @Param({ "100", "10000" })
+    int datasets;
+
+    @Param({ "10", "50" })
+    int labels;
+
+    @Param({ "NDJSON", "CSV" })
+    LabelValuesService.ExportFormat format;
+
+    List<Object[]> rows;
+
+    @Setup
+    public void setup() {
+        rows = Payloads.labelValuesRows(datasets, labels, 42);
+    }
+
+    @Benchmark
+    public List<ExportedLabelValues> map() throws IOException {
+        return LabelValuesService.toExportedLabelValues(parsedRows());
+    }
+
+    @Benchmark
+    public void export() throws IOException {
+        LabelValuesService.export(parsedRows().iterator(), format, OutputStream.nullOutputStream(), Util.OBJECT_MAPPER);
+    }
+
+    private List<Object[]> parsedRows() throws IOException {
+        List<Object[]> parsed = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            parsed.add(new Object[] { row[0], row[1], row[2], row[3], Util.OBJECT_MAPPER.readTree((byte[]) row[4]) });
+        }
+        return parsed;
+    }
+}
@@ -0,0 +1,73 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.hyperfoil.tools.horreum.benchmark.Payloads;
+import io.hyperfoil.tools.horreum.entity.ValidationErrorDAO;
+import io.hyperfoil.tools.horreum.entity.data.SchemaDAO;
+
+/**
+ * JSON schema compilation and validation of uploaded data by {@link SchemaServiceImpl}; validation looks the schema up
+ * in the cache of compiled schemas, which is filled in the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchemaValidationBenchmark {
+    private static final String URI = "urn:horreum:benchmark:validation";
+
+    @Param({ "1KB", "1MB" })
+    String size;
+
+    SchemaServiceImpl schemaService;
+    SchemaDAO schema;
+    ObjectNode input;
+
+    @Setup
+    public void setup() {
+        schemaService = new SchemaServiceImpl();
+        schema = new SchemaDAO();
+        schema.id = 1;
+        schema.uri = URI;
+        schema.schema = Payloads.schema();
+        schemaService.compileSchema(schema, List.of(schema), schemaService.compiledSchemasGeneration);
+        input = Payloads.run(Payloads.parseSize(size), 42).put("$schema", URI);
+        List<ValidationErrorDAO> errors = validate();
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("Generated payload does not conform to the schema: "
+                    + errors.stream().map(e -> e.error).toList());
+        }
+    }
+
+    @Benchmark
+    public SchemaServiceImpl.CompiledSchema compile() {
+        // the generation is stale, so the result does not replace the cached schema
+        return schemaService.compileSchema(schema, List.of(schema), schemaService.compiledSchemasGeneration - 1);
+    }
+
+    @Benchmark
+    public List<ValidationErrorDAO> validate() {
+        List<ValidationErrorDAO> errors = new ArrayList<>();
+        schemaService.validateData(input, null, errors);
+        return errors;
+    }
+}
@@ -0,0 +1,133 @@
+package io.hyperfoil.tools.horreum.svc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.hyperfoil.tools.horreum.benchmark.Payloads;
+
+/**
+ * Evaluation of transformer extractors on a run, in a single query for all transformers as done by
+ * {@link RunServiceImpl} and per transformer as done before (and when the single query fails). Unlike the other
+ * benchmarks this needs a PostgreSQL database migrated by Horreum; the test, schemas, transformers and run are
+ * inserted in a transaction that is rolled back at the end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformerExtractionBenchmark {
+    private static final String[] JSONPATHS = { "$.metadata.env", "$.results[*].throughput",
+            "$.results[*] ? (@.cpu > 0.9).iteration" };
+
+    @Param({ "jdbc:postgresql://localhost:5432/horreum" })
+    String jdbcUrl;
+
+    @Param({ "dbadmin" })
+    String user;
+
+    @Param({ "secret" })
+    String password;
+
+    @Param({ "1MB" })
+    String size;
+
+    @Param({ "10", "60" })
+    int transformers;
+
+    Connection connection;
+    int runId;
+    List<Integer> transformerIds;
+
+    @Setup
+    public void setup() throws SQLException {
+        connection = DriverManager.getConnection(jdbcUrl, user, password);
+        connection.setAutoCommit(false);
+        int testId = insert("INSERT INTO test (id, name, owner, access) " +
+                "VALUES (nextval('test_id_seq'), 'extraction-benchmark', 'benchmark-team', 0) RETURNING id");
+        long bytes = Payloads.parseSize(size) / transformers;
+        ObjectNode data = JsonNodeFactory.instance.objectNode();
+        transformerIds = new ArrayList<>();
+        for (int i = 0; i < transformers; ++i) {
+            String uri = "urn:horreum:benchmark:extraction:" + i;
+            int schemaId = insert("INSERT INTO schema (id, uri, name, owner, access) " +
+                    "VALUES (nextval('schema_id_seq'), ?, ?, 'benchmark-team', 0) RETURNING id", uri, uri);
+            int transformerId = insert("INSERT INTO transformer (id, name, schema_id, owner, access) " +
+                    "VALUES (nextval('transformeridgenerator'), ?, " + schemaId + ", 'benchmark-team', 0) RETURNING id",
+                    "t" + i);
+            for (int j = 0; j < JSONPATHS.length; ++j) {
+                update("INSERT INTO transformer_extractors (transformer_id, name, jsonpath, isarray) VALUES (?, ?, ?, ?)",
+                        transformerId, "e" + j, JSONPATHS[j], j > 0);
+            }
+            update("INSERT INTO test_transformers (test_id, transformer_id) VALUES (?, ?)", testId, transformerId);
+            transformerIds.add(transformerId);
+            data.set("nested" + i, Payloads.run(bytes, i).put("$schema", uri));
+        }
+        runId = insert("INSERT INTO run (id, testid, data, start, stop, owner, access) " +
+                "VALUES (nextval('run_id_seq'), " + testId + ", ?::jsonb, now(), now(), 'benchmark-team', 0) RETURNING id",
+                data.toString());
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.rollback();
+        connection.close();
+    }
+
+    @Benchmark
+    public void singleQuery(Blackhole blackhole) throws SQLException {
+        blackhole.consume(RunServiceImpl.extractData(connection, runId, transformerIds));
+    }
+
+    @Benchmark
+    public void queryPerTransformer(Blackhole blackhole) throws SQLException {
+        for (int transformerId : transformerIds) {
+            blackhole.consume(RunServiceImpl.extractData(connection, runId, List.of(transformerId)));
+        }
+    }
+
+    private int insert(String sql, Object... params) throws SQLException {
+        try (PreparedStatement statement = prepare(sql, params); ResultSet rs = statement.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private void update(String sql, Object... params) throws SQLException {
+        try (PreparedStatement statement = prepare(sql, params)) {
+            statement.executeUpdate();
+        }
+    }
+
+    private PreparedStatement prepare(String sql, Object... params) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        for (int i = 0; i < params.length; ++i) {
+            statement.setObject(i + 1, params[i]);
+        }
+        return statement;
+    }
+}
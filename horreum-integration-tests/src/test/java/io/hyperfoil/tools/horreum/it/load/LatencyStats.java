@@ -0,0 +1,52 @@
+package io.hyperfoil.tools.horreum.it.load;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of requests to a single endpoint; recorded by a single thread and merged afterwards.
+ */
+final class LatencyStats {
+    private long[] latencies = new long[1024];
+    private int count;
+    private int errors;
+
+    void record(long nanos) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, 2 * count);
+        }
+        latencies[count++] = nanos;
+    }
+
+    void error() {
+        errors++;
+    }
+
+    void merge(LatencyStats other) {
+        for (int i = 0; i < other.count; ++i) {
+            record(other.latencies[i]);
+        }
+        errors += other.errors;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int errors() {
+        return errors;
+    }
+
+    /**
+     * @param percentile value between 0 and 100
+     * @return latency in milliseconds
+     */
+    double percentile(double percentile) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,187 @@
+package io.hyperfoil.tools.horreum.it.load;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import org.junit.jupiter.api.Tag;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.hyperfoil.tools.HorreumClient;
+import io.hyperfoil.tools.horreum.api.SortDirection;
+import io.hyperfoil.tools.horreum.api.data.Access;
+import io.hyperfoil.tools.horreum.api.data.Run;
+import io.hyperfoil.tools.horreum.api.data.Test;
+import io.hyperfoil.tools.horreum.it.ItResource;
+import io.hyperfoil.tools.horreum.it.profile.InContainerProfile;
+import io.quarkus.logging.Log;
+import io.quarkus.test.junit.QuarkusIntegrationTest;
+import io.quarkus.test.junit.TestProfile;
+
+/**
+ * Measures latency percentiles and throughput of the database heavy endpoints against a database seeded
+ * with {@link LoadScale#labelValues()} label values. Runs only in the <code>load</code> profile:
+ *
+ * <pre>
+ * mvn -Pload -pl horreum-integration-tests verify -Dhorreum.load.runs=10000
+ * </pre>
+ *
+ * The report is printed to the log and written to <code>target/load-report.json</code>
+ * (<code>-Dhorreum.load.report=...</code>) so that runs can be compared.
+ */
+@QuarkusIntegrationTest
+@TestProfile(InContainerProfile.class)
+@Tag("load")
+public class LoadBenchmarkIT {
+    private final LoadScale scale = LoadScale.fromSystemProperties();
+
+    @org.junit.jupiter.api.Test
+    public void testLoad() throws Exception {
+        Log.infof("Seeding %d tests with %d runs and %d label values", scale.tests(), scale.tests() * scale.runs(),
+                scale.labelValues());
+        List<Test> tests;
+        List<Integer> runIds;
+        try (HorreumClient client = client()) {
+            LoadSeeder seeder = new LoadSeeder(client, scale);
+            tests = seeder.seed();
+            runIds = seeder.runIds();
+        }
+        String filter = JsonNodeFactory.instance.objectNode().put(LoadSeeder.FILTERING_LABEL, "env-1").toString();
+
+        Map<String, BiConsumer<HorreumClient, Random>> endpoints = new LinkedHashMap<>();
+        endpoints.put("labelValues", (client, random) -> client.testService.getTestLabelValues(
+                randomTest(tests, random), "{}", "", "", true, true, "", "Ascending", 100, random.nextInt(10),
+                null, null, false));
+        endpoints.put("labelValuesFiltered", (client, random) -> client.testService.getTestLabelValues(
+                randomTest(tests, random), filter, "", "", true, true, "", "Ascending", 100, 0, null, null, false));
+        endpoints.put("listTestRuns", (client, random) -> client.runService.listTestRuns(
+                randomTest(tests, random), false, 20, 1 + random.nextInt(10), "start", SortDirection.Descending));
+        endpoints.put("listAllRuns", (client, random) -> client.runService.listAllRuns(
+                null, false, null, false, 20, 1 + random.nextInt(10), "start", SortDirection.Descending));
+        endpoints.put("listDatasetsByTest", (client, random) -> client.datasetService.listByTest(
+                randomTest(tests, random), null, 20, 1 + random.nextInt(10), "start", SortDirection.Descending, null));
+        endpoints.put("getRun", (client, random) -> client.runService.getRun(runIds.get(random.nextInt(runIds.size()))));
+        endpoints.put("uploadRun", (client, random) -> client.runService.addRun(
+                String.valueOf(randomTest(tests, random)), LoadSeeder.OWNER, Access.PUBLIC, run(random)));
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(scale.concurrency());
+        List<HorreumClient> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < scale.concurrency(); ++i) {
+                clients.add(client());
+            }
+            for (var endpoint : endpoints.entrySet()) {
+                execute(executor, clients, endpoint.getValue(), scale.warmup());
+                long start = System.nanoTime();
+                LatencyStats stats = execute(executor, clients, endpoint.getValue(), scale.requests());
+                results.put(endpoint.getKey(), new Result(stats, System.nanoTime() - start));
+            }
+        } finally {
+            executor.shutdownNow();
+            clients.forEach(HorreumClient::close);
+        }
+        report(results);
+        results.forEach((name, result) -> assertEquals(0, result.stats.errors(), "Errors in " + name));
+    }
+
+    private LatencyStats execute(ExecutorService executor, List<HorreumClient> clients,
+            BiConsumer<HorreumClient, Random> request, int requests) throws InterruptedException, ExecutionException {
+        List<Future<LatencyStats>> futures = new ArrayList<>();
+        for (int i = 0; i < clients.size(); ++i) {
+            HorreumClient client = clients.get(i);
+            // distribute the remainder to the first workers
+            int count = requests / clients.size() + (i < requests % clients.size() ? 1 : 0);
+            Random random = new Random(i);
+            futures.add(executor.submit(() -> {
+                LatencyStats stats = new LatencyStats();
+                for (int j = 0; j < count; ++j) {
+                    long start = System.nanoTime();
+                    try {
+                        request.accept(client, random);
+                        stats.record(System.nanoTime() - start);
+                    } catch (Exception e) {
+                        Log.debug("Request failed", e);
+                        stats.error();
+                    }
+                }
+                return stats;
+            }));
+        }
+        LatencyStats stats = new LatencyStats();
+        for (Future<LatencyStats> future : futures) {
+            stats.merge(future.get());
+        }
+        return stats;
+    }
+
+    private void report(Map<String, Result> results) throws IOException {
+        ObjectNode report = JsonNodeFactory.instance.objectNode();
+        report.put("timestamp", Instant.now().toString());
+        report.putPOJO("scale", scale);
+        ArrayNode endpoints = report.putArray("endpoints");
+        StringBuilder table = new StringBuilder(String.format("%n%-20s %8s %7s %10s %10s %10s%n",
+                "Endpoint", "Requests", "Errors", "p50 [ms]", "p99 [ms]", "req/s"));
+        results.forEach((name, result) -> {
+            double throughput = result.stats.count() * 1e9 / result.wallNanos;
+            endpoints.addObject()
+                    .put("name", name)
+                    .put("requests", result.stats.count())
+                    .put("errors", result.stats.errors())
+                    .put("p50", result.stats.percentile(50))
+                    .put("p99", result.stats.percentile(99))
+                    .put("throughput", throughput);
+            table.append(String.format("%-20s %8d %7d %10.2f %10.2f %10.1f%n", name, result.stats.count(),
+                    result.stats.errors(), result.stats.percentile(50), result.stats.percentile(99), throughput));
+        });
+        Log.info(table);
+        File file = new File(System.getProperty("horreum.load.report", "target/load-report.json"));
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, report);
+        Log.infof("Load report written to %s", file.getAbsolutePath());
+    }
+
+    private Run run(Random random) {
+        ObjectNode data = JsonNodeFactory.instance.objectNode().put("$schema", LoadSeeder.SCHEMA_URI);
+        ObjectNode labels = data.putObject("labels");
+        labels.put("l0", "env-" + random.nextInt(LoadSeeder.ENVIRONMENTS));
+        for (int i = 1; i < scale.labels(); ++i) {
+            labels.put("l" + i, 1000 + 100 * random.nextDouble());
+        }
+        Run run = new Run();
+        run.start = Instant.now();
+        run.stop = run.start;
+        run.data = data;
+        return run;
+    }
+
+    private static int randomTest(List<Test> tests, Random random) {
+        return tests.get(random.nextInt(tests.size())).id;
+    }
+
+    private static HorreumClient client() {
+        return new HorreumClient.Builder()
+                .horreumUrl("http://localhost:" + System.getProperty("quarkus.http.test-port"))
+                .horreumUser("horreum.bootstrap")
+                .horreumPassword(ItResource.HORREUM_BOOTSTRAP_PASSWORD)
+                .build();
+    }
+
+    private record Result(LatencyStats stats, long wallNanos) {
+    }
+}
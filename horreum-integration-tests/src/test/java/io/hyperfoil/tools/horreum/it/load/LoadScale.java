@@ -0,0 +1,31 @@
+package io.hyperfoil.tools.horreum.it.load;
+
+/**
+ * Scale of the synthetic data and of the load, configured through system properties
+ * (<code>-Dhorreum.load.runs=10000</code>). The defaults produce 1M label values.
+ *
+ * @param tests number of tests
+ * @param runs number of runs per test, each producing a single dataset
+ * @param labels number of labels (and label values per dataset)
+ * @param requests number of measured requests per endpoint
+ * @param warmup number of requests per endpoint executed before the measurement
+ * @param concurrency number of concurrent clients
+ * @param seedTimeoutSeconds maximum time to wait for Horreum to calculate datasets and label values of a test
+ */
+record LoadScale(int tests, int runs, int labels, int requests, int warmup, int concurrency, long seedTimeoutSeconds) {
+
+    static LoadScale fromSystemProperties() {
+        return new LoadScale(
+                Integer.getInteger("horreum.load.tests", 10),
+                Integer.getInteger("horreum.load.runs", 1000),
+                Integer.getInteger("horreum.load.labels", 100),
+                Integer.getInteger("horreum.load.requests", 1000),
+                Integer.getInteger("horreum.load.warmup", 100),
+                Integer.getInteger("horreum.load.concurrency", 8),
+                Long.getLong("horreum.load.seed-timeout", 1800));
+    }
+
+    long labelValues() {
+        return (long) tests * runs * labels;
+    }
+}
@@ -0,0 +1,187 @@
+package io.hyperfoil.tools.horreum.it.load;
+
+import static io.hyperfoil.tools.horreum.infra.common.Const.DEFAULT_DB_PASSWORD;
+import static io.hyperfoil.tools.horreum.infra.common.Const.DEFAULT_DB_USERNAME;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+import io.hyperfoil.tools.HorreumClient;
+import io.hyperfoil.tools.horreum.api.alerting.ChangeDetection;
+import io.hyperfoil.tools.horreum.api.alerting.Variable;
+import io.hyperfoil.tools.horreum.api.data.Access;
+import io.hyperfoil.tools.horreum.api.data.Extractor;
+import io.hyperfoil.tools.horreum.api.data.Label;
+import io.hyperfoil.tools.horreum.api.data.Schema;
+import io.hyperfoil.tools.horreum.api.data.Test;
+import io.hyperfoil.tools.horreum.api.data.changeDetection.ChangeDetectionModelType;
+import io.hyperfoil.tools.horreum.api.services.TestService;
+import io.hyperfoil.tools.horreum.infra.common.HorreumResources;
+import io.quarkus.logging.Log;
+
+/**
+ * Seeds the database with synthetic tests, runs, datasets and label values.
+ * Schema, labels, tests and variables are created through the REST API; runs are inserted directly into the
+ * database in bulk (the triggers maintain the derived tables) and then Horreum recalculates datasets and
+ * label values through the regular processing pipeline.
+ */
+final class LoadSeeder {
+    static final String SCHEMA_URI = "urn:horreum:load:1.0";
+    static final String OWNER = "dev-team";
+    static final String FILTERING_LABEL = "label0";
+    static final int ENVIRONMENTS = 10;
+    private static final int RUNS_PER_INSERT = 1000;
+    private static final long START_EPOCH_SECONDS = 1700000000L;
+
+    //@formatter:off
+    private static final String INSERT_RUNS = """
+            INSERT INTO run (id, start, stop, description, testid, data, owner, access, trashed)
+            SELECT nextval('run_id_seq'), to_timestamp(? + i * 60), to_timestamp(? + i * 60 + 30), 'load run ' || i, ?,
+               jsonb_build_object('$schema', ?::text, 'labels', (
+                  SELECT jsonb_object_agg('l' || l, CASE WHEN l = 0 THEN to_jsonb('env-' || (i % ?)) ELSE to_jsonb(round((1000 + 100 * random())::numeric, 2)) END)
+                  FROM generate_series(0, ? - 1) l)),
+               ?, 0, false
+            FROM generate_series(?, ? - 1) i
+            """;
+    private static final String RUN_IDS = "SELECT id FROM run WHERE testid = ?";
+    private static final String COUNT_LABEL_VALUES = """
+            SELECT count(*) FROM label_values lv JOIN dataset d ON d.id = lv.dataset_id WHERE d.testid = ?
+            """;
+    //@formatter:on
+
+    private final HorreumClient client;
+    private final LoadScale scale;
+    private final List<Integer> runIds = new ArrayList<>();
+
+    LoadSeeder(HorreumClient client, LoadScale scale) {
+        this.client = client;
+        this.scale = scale;
+    }
+
+    List<Test> seed() throws SQLException, InterruptedException {
+        createSchema();
+        List<Test> tests = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection(HorreumResources.postgreSQLResource.getJdbcUrl(),
+                DEFAULT_DB_USERNAME, DEFAULT_DB_PASSWORD)) {
+            for (int i = 0; i < scale.tests(); ++i) {
+                Test test = new Test();
+                test.name = "load-test-" + i;
+                test.owner = OWNER;
+                test.access = Access.PUBLIC;
+                test = client.testService.addTest(test);
+                createVariable(test);
+                long start = System.nanoTime();
+                insertRuns(connection, test);
+                loadRunIds(connection, test);
+                client.testService.recalculateTestDatasets(test.id);
+                awaitLabelValues(connection, test);
+                Log.infof("Seeded test %s with %d runs in %d ms", test.name, scale.runs(),
+                        (System.nanoTime() - start) / 1_000_000);
+                tests.add(test);
+            }
+        }
+        return tests;
+    }
+
+    private void createSchema() {
+        Schema schema = new Schema();
+        schema.uri = SCHEMA_URI;
+        schema.name = "load";
+        schema.owner = OWNER;
+        schema.access = Access.PUBLIC;
+        schema.id = client.schemaService.addSchema(schema);
+        for (int i = 0; i < scale.labels(); ++i) {
+            Label label = new Label();
+            label.name = "label" + i;
+            label.extractors = List.of(new Extractor("l" + i, "$.labels.l" + i, false));
+            label.owner = OWNER;
+            label.access = Access.PUBLIC;
+            label.filtering = i == 0;
+            label.metrics = i != 0;
+            client.schemaService.addLabel(schema.id, label);
+        }
+    }
+
+    private void createVariable(Test test) {
+        Variable variable = new Variable();
+        variable.testId = test.id;
+        variable.name = "label1";
+        variable.order = 0;
+        variable.labels = List.of("label1");
+        ChangeDetection changeDetection = new ChangeDetection();
+        changeDetection.model = ChangeDetectionModelType.names.RELATIVE_DIFFERENCE;
+        changeDetection.config = JsonNodeFactory.instance.objectNode()
+                .put("window", 1).put("filter", "mean").put("threshold", 0.2).put("minPrevious", 5);
+        Set<ChangeDetection> changeDetections = new HashSet<>();
+        changeDetections.add(changeDetection);
+        variable.changeDetection = changeDetections;
+        client.alertingService.updateVariables(test.id, List.of(variable));
+    }
+
+    private void insertRuns(Connection connection, Test test) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_RUNS)) {
+            for (int from = 0; from < scale.runs(); from += RUNS_PER_INSERT) {
+                statement.setLong(1, START_EPOCH_SECONDS);
+                statement.setLong(2, START_EPOCH_SECONDS);
+                statement.setInt(3, test.id);
+                statement.setString(4, SCHEMA_URI);
+                statement.setInt(5, ENVIRONMENTS);
+                statement.setInt(6, scale.labels());
+                statement.setString(7, OWNER);
+                statement.setInt(8, from);
+                statement.setInt(9, Math.min(from + RUNS_PER_INSERT, scale.runs()));
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    private void loadRunIds(Connection connection, Test test) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(RUN_IDS)) {
+            statement.setInt(1, test.id);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    runIds.add(rs.getInt(1));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return IDs of all runs inserted by {@link #seed()}
+     */
+    List<Integer> runIds() {
+        return runIds;
+    }
+
+    private void awaitLabelValues(Connection connection, Test test) throws SQLException, InterruptedException {
+        long expected = (long) scale.runs() * scale.labels();
+        long deadline = System.currentTimeMillis() + scale.seedTimeoutSeconds() * 1000;
+        try (PreparedStatement statement = connection.prepareStatement(COUNT_LABEL_VALUES)) {
+            statement.setInt(1, test.id);
+            for (;;) {
+                long count;
+                try (ResultSet rs = statement.executeQuery()) {
+                    rs.next();
+                    count = rs.getLong(1);
+                }
+                TestService.RecalculationStatus status = client.testService.getTestRecalculationStatus(test.id);
+                if (count >= expected && status.finished >= status.totalRuns) {
+                    return;
+                } else if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Timed out waiting for label values of test %s: %d/%d, runs %d/%d"
+                            .formatted(test.name, count, expected, status.finished, status.totalRuns));
+                }
+                Thread.sleep(1000);
+            }
+        }
+    }
+}